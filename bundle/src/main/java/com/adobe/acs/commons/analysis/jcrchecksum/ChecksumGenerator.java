@@ -24,6 +24,7 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Utility that generates checksums for JCR paths.  The checksum is calculated using a depth first traversal
@@ -58,4 +59,23 @@ public interface ChecksumGenerator {
      */
     Map<String, String> generateChecksums(Session session, String path, ChecksumGeneratorOptions options)
             throws RepositoryException, IOException;
+
+    /**
+     * Same as {@link #generateChecksums(Session, String, ChecksumGeneratorOptions)}, but passes each checksum to the
+     * consumer as soon as it is known. The consumer is never called concurrently, but possibly from other threads
+     * than the calling one. All checksums have been passed once this method returns.
+     *
+     * @param session  the session
+     * @param path     the root path to generate checksums for
+     * @param options  the {@link ChecksumGeneratorOptions} that define the checksum generation
+     * @param consumer accepts the abs path and checksum of each entry
+     * @throws RepositoryException
+     * @throws IOException
+     */
+    default void generateChecksums(Session session, String path, ChecksumGeneratorOptions options,
+                                   BiConsumer<String, String> consumer) throws RepositoryException, IOException {
+        for (Map.Entry<String, String> entry : generateChecksums(session, path, options).entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
 }
\ No newline at end of file
@@ -46,6 +46,10 @@ public interface ChecksumGeneratorOptions {
 
     String NODE_NAME_EXCLUDES = "excludeNodeNames";
 
+    String MERKLE_TREE = "merkleTree";
+
+    String MERKLE_TREE_DEPTH = "merkleTreeDepth";
+
     /**
      * For a node to be checksumable, its primaryType must exists in getIncludedNodesTypes() and not exist in
      * getExcludedNodeTypes().
@@ -83,4 +87,21 @@ public interface ChecksumGeneratorOptions {
     default Set<String> getExcludedNodeNames() {
         return  Collections.EMPTY_SET;
     }
+
+    /**
+     * In Merkle tree mode, every traversed node that is not checksumable gets a checksum aggregating the checksums
+     * of its sub-trees, so two instances can be compared top-down, only descending into sub-trees that differ.
+     * @return true to generate the checksums in Merkle tree mode
+     */
+    default boolean isMerkleTree() {
+        return false;
+    }
+
+    /**
+     * @return the depth relative to the root path down to which checksums are reported in Merkle tree mode;
+     * deeper sub-trees are only reported as part of their ancestors. -1 reports all checksums.
+     */
+    default int getMerkleTreeDepth() {
+        return -1;
+    }
 }
\ No newline at end of file
@@ -22,10 +22,14 @@ import com.adobe.acs.commons.analysis.jcrchecksum.ChecksumGenerator;
 import com.adobe.acs.commons.analysis.jcrchecksum.ChecksumGeneratorOptions;
 import com.adobe.acs.commons.analysis.jcrchecksum.impl.options.DefaultChecksumGeneratorOptions;
 import org.apache.commons.codec.digest.DigestUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.jackrabbit.vault.util.Text;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,18 +52,51 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 
 /**
  * Utility that generates checksums for JCR paths.  The checksum is calculated using a depth first traversal
  * and calculates an aggregate checksum on the nodes with the specified node types
  * (via {@link ChecksumGeneratorOptions}).
  */
-@Component
+@Component(metatype = true,
+        label = "ACS AEM Commons - JCR Checksum Generator",
+        description = "Generates checksums for JCR paths.")
 @Service
 @SuppressWarnings("squid:S2070") // SHA1 not used cryptographically
 public class ChecksumGeneratorImpl implements ChecksumGenerator {
     private static final Logger log = LoggerFactory.getLogger(ChecksumGeneratorImpl.class);
 
+    private static final int DEFAULT_PARALLELISM = 0;
+
+    @org.apache.felix.scr.annotations.Property(label = "Merkle Tree Parallelism",
+            description = "Number of threads digesting binaries in Merkle tree mode. 0 uses the number of processors."
+                    + " [ Default: 0 ]",
+            intValue = DEFAULT_PARALLELISM)
+    public static final String PROP_PARALLELISM = "merkle-tree.parallelism";
+
+    private static final int DEFAULT_DIGEST_CACHE_SIZE = 100000;
+
+    @org.apache.felix.scr.annotations.Property(label = "Binary Digest Cache Size",
+            description = "Number of binary digests reused across runs in Merkle tree mode as long as the binary and "
+                    + "its node's jcr:lastModified are unchanged. [ Default: 100000 ]",
+            intValue = DEFAULT_DIGEST_CACHE_SIZE)
+    public static final String PROP_DIGEST_CACHE_SIZE = "merkle-tree.digest-cache-size";
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private Cache<String, String> digestCache = CacheBuilder.newBuilder().maximumSize(DEFAULT_DIGEST_CACHE_SIZE).build();
+
+    @Activate
+    protected void activate(final Map<String, Object> config) {
+        final int configuredParallelism = PropertiesUtil.toInteger(config.get(PROP_PARALLELISM), DEFAULT_PARALLELISM);
+        parallelism = configuredParallelism > 0 ? configuredParallelism : Runtime.getRuntime().availableProcessors();
+        digestCache = CacheBuilder.newBuilder()
+                .maximumSize(PropertiesUtil.toInteger(config.get(PROP_DIGEST_CACHE_SIZE), DEFAULT_DIGEST_CACHE_SIZE))
+                .build();
+    }
+
     /**
      * Convenience method for  generateChecksums(session, path, new DefaultChecksumGeneratorOptions()).
      *
@@ -96,9 +133,43 @@ public class ChecksumGeneratorImpl implements ChecksumGenerator {
             return new LinkedHashMap<>();
         }
 
+        if (options.isMerkleTree()) {
+            final Map<String, String> checksums = new LinkedHashMap<>();
+            generateChecksums(session, path, options, checksums::put);
+            return checksums;
+        }
+
         return traverseTree(node, options);
     }
 
+    /**
+     * Generates the checksums in Merkle tree mode if enabled by the options, reporting each checksum as soon as its
+     * sub-tree is complete.
+     *
+     * @param session the session
+     * @param path the root path to generate checksums for
+     * @param options the {@link ChecksumGeneratorOptions} that define the checksum generation
+     * @param consumer accepts the abs path and checksum of each entry
+     * @throws RepositoryException
+     * @throws IOException
+     */
+    @Override
+    public void generateChecksums(Session session, String path, ChecksumGeneratorOptions options,
+                                  BiConsumer<String, String> consumer) throws RepositoryException, IOException {
+        if (!options.isMerkleTree()) {
+            ChecksumGenerator.super.generateChecksums(session, path, options, consumer);
+            return;
+        }
+
+        final Node node = session.getNode(path);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            new MerkleChecksumTraversal(this, options, consumer, digestCache, pool, parallelism * 2).run(node);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * Traverse the tree for candidate aggregate nodes.
      * @param node the current node being traversed
@@ -145,7 +216,7 @@ public class ChecksumGeneratorImpl implements ChecksumGenerator {
      * @return true if the node represents a checksum-able node system
      * @throws RepositoryException
      */
-    private boolean isChecksumable(Node node, ChecksumGeneratorOptions options) throws RepositoryException {
+    boolean isChecksumable(Node node, ChecksumGeneratorOptions options) throws RepositoryException {
         final Set<String> nodeTypeIncludes = options.getIncludedNodeTypes();
         final Set<String> nodeTypeExcludes = options.getExcludedNodeTypes();
 
@@ -309,7 +380,7 @@ public class ChecksumGeneratorImpl implements ChecksumGenerator {
      * @return a list of the property's value(s)
      * @throws RepositoryException
      */
-    private List<Value> getPropertyValues(final Property property) throws RepositoryException {
+    List<Value> getPropertyValues(final Property property) throws RepositoryException {
         final List<Value> values = new ArrayList<>();
 
         if (property.isMultiple()) {
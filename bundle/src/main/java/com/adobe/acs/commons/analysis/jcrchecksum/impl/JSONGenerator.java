@@ -25,9 +25,11 @@ import com.adobe.acs.commons.analysis.jcrchecksum.impl.options.DefaultChecksumGe
 import com.google.gson.stream.JsonWriter;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.Binary;
 import javax.jcr.Item;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -40,11 +42,19 @@ import javax.jcr.Session;
 import javax.jcr.Value;
 import javax.jcr.ValueFormatException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Utility that generates checksums for JCR paths.
@@ -72,6 +82,7 @@ public final class JSONGenerator {
                                     ChecksumGeneratorOptions opts, JsonWriter out)
             throws RepositoryException, IOException {
         Node node = null;
+        final Dump dump = new Dump(opts, out, null, Integer.MAX_VALUE, null);
 
         if (paths.size() > 1) {
             out.beginArray();
@@ -86,7 +97,7 @@ public final class JSONGenerator {
                         node = (Node) item;
                     }
                 }
-                traverseTree(node, opts, out);
+                dump.traverseTree(node);
             } catch (PathNotFoundException e) {
                 out.name("ERROR");
                 out.value("WARN: Path doesn't exist: " + path);
@@ -103,232 +114,460 @@ public final class JSONGenerator {
         }
     }
 
-    private static void traverseTree(Node node, ChecksumGeneratorOptions opts,
-                                     JsonWriter out) throws IOException {
-        Set<String> nodeTypes = opts.getIncludedNodeTypes();
-        Set<String> nodeTypeExcludes = opts.getExcludedNodeTypes();
-        if (node != null) {
-            String primaryNodeType;
+    /**
+     * Generates one page of the JSON dump of the paths, so large trees can be dumped over several requests.
+     * The page is an object with the dumped aggregate nodes under "nodes", the errors of paths that cannot be read
+     * under "errors" and, if the page is full, the cursor to request the next page with under "cursor".
+     * Paths are dumped in lexicographic order, and the nodes below a path in JCR traversal order; resuming from a
+     * cursor assumes that order has not changed since.
+     *
+     * @param session        the session
+     * @param paths          the root paths to dump
+     * @param opts           the options selecting the aggregate nodes and excluded properties
+     * @param out            the writer to write the page to
+     * @param cursor         the cursor returned with the previous page, or null to start
+     * @param maxNodes       the maximum number of aggregate nodes in the page
+     * @param binaryExecutor hashes the binaries of an aggregate node in parallel; null to hash them inline
+     * @return the cursor of the next page, or null if the dump is complete
+     * @throws RepositoryException
+     * @throws IOException
+     */
+    public static String generateJSON(Session session, Set<String> paths, ChecksumGeneratorOptions opts,
+                                      JsonWriter out, String cursor, int maxNodes, ExecutorService binaryExecutor)
+            throws RepositoryException, IOException {
+        final Dump dump = new Dump(opts, out, StringUtils.trimToNull(cursor), Math.max(1, maxNodes), binaryExecutor);
+        final Map<String, String> errors = new TreeMap<>();
+
+        out.beginObject();
+        out.name("nodes");
+        out.beginObject();
+
+        for (String path : new TreeSet<>(paths)) {
+            if (dump.isFull()) {
+                break;
+            } else if (dump.isBeforeCursor(path)) {
+                continue;
+            }
+
             try {
-                primaryNodeType = node.getPrimaryNodeType().getName();
-                if (nodeTypes.contains(primaryNodeType)
-                        && !nodeTypeExcludes.contains(primaryNodeType)) {
-                    generateNodeJSON(node, opts, out);
-                } else {
-                    NodeIterator nodeIterator = node.getNodes();
-                    while (nodeIterator.hasNext()) {
-                        primaryNodeType = node.getPrimaryNodeType().getName();
-                        Node child = nodeIterator.nextNode();
-                        if (nodeTypes.contains(primaryNodeType)) {
-                            generateNodeJSON(child, opts, out);
-                        } else {
-                            traverseTree(child, opts, out);
-                        }
-                    }
+                final Item item = session.getItem(path);
+                if (item.isNode()) {
+                    dump.traverseTree((Node) item);
                 }
+            } catch (PathNotFoundException e) {
+                errors.put(path, "WARN: Path doesn't exist: " + path);
             } catch (RepositoryException e) {
-                log.error("Error while traversing tree {}", e.getMessage());
+                errors.put(path, "Unable to read path: " + e.getMessage());
+            }
+
+            final String missingCursor = dump.dropMissingCursor(path);
+            if (missingCursor != null) {
+                // Continue with the next path, the skipped nodes below this one are reported instead of silently lost
+                errors.put(missingCursor, "Cursor not found, it was moved or deleted since the previous page: "
+                        + "the nodes after it below " + path + " were skipped");
             }
         }
-    }
 
-    private static void generateNodeJSON(Node node,
-                                         ChecksumGeneratorOptions opts, JsonWriter out)
-            throws RepositoryException, IOException {
-        out.name(node.getPath());
-        out.beginObject();
+        final String missingCursor = dump.dropMissingCursor(null);
+        if (missingCursor != null) {
+            errors.put(missingCursor, "Cursor not found, it is not below any of the paths: "
+                    + "the nodes after it were skipped");
+        }
 
-        outputProperties(node, opts, out);
+        out.endObject();
 
-        outputChildNodes(node, opts, out);
+        if (!errors.isEmpty()) {
+            out.name("errors");
+            out.beginObject();
+            for (Map.Entry<String, String> error : errors.entrySet()) {
+                out.name(error.getKey()).value(error.getValue());
+            }
+            out.endObject();
+        }
 
+        final String nextCursor = dump.getNextCursor();
+        if (nextCursor != null) {
+            out.name("cursor").value(nextCursor);
+        }
         out.endObject();
+
+        return nextCursor;
     }
 
-    private static void generateSubnodeJSON(Node node,
-                                            ChecksumGeneratorOptions opts, JsonWriter out)
-            throws RepositoryException, IOException {
+    /**
+     * State of a single JSON dump.
+     */
+    private static final class Dump {
+        /* Binaries of an aggregate node hashed in parallel at most, each holding an open stream until it is hashed */
+        private static final int MAX_PENDING_BINARY_DIGESTS = 32;
 
-        out.name(node.getName());
-        out.beginObject();
+        private final ChecksumGeneratorOptions opts;
 
-        outputProperties(node, opts, out);
+        private final JsonWriter out;
 
-        outputChildNodes(node, opts, out);
+        /* Path of the last aggregate node of the previous page, until it is passed */
+        private String cursor;
 
-        out.endObject();
+        private final int maxNodes;
 
-    }
+        private int nodes;
 
-    /**
-     * @param node
-     * @param opts
-     * @param out
-     * @throws RepositoryException
-     * @throws JSONException
-     * @throws ValueFormatException
-     * @throws IOException 
-     */
-    private static void outputProperties(Node node,
-                                         ChecksumGeneratorOptions opts, JsonWriter out)
-            throws RepositoryException, ValueFormatException, IOException {
-        Set<String> excludes = opts.getExcludedProperties();
-
-        SortedMap<String, Property> props = new TreeMap<>();
-        PropertyIterator propertyIterator = node.getProperties();
-
-        // sort the properties by name as the JCR makes no guarantees on property order
-        while (propertyIterator.hasNext()) {
-            Property property = propertyIterator.nextProperty();
-            //skip the property if it is in the excludes list
-            if (excludes.contains(property.getName())) {
-                continue;
-            } else {
-                props.put(property.getName(), property);
+        private String lastNodePath;
+
+        private final ExecutorService binaryExecutor;
+
+        /* Binary digests of the current aggregate node by property path and value index */
+        private final Map<String, Future<String>> binaryDigests = new HashMap<>();
+
+        private Dump(ChecksumGeneratorOptions opts, JsonWriter out, String cursor, int maxNodes,
+                     ExecutorService binaryExecutor) {
+            this.opts = opts;
+            this.out = out;
+            this.cursor = cursor;
+            this.maxNodes = maxNodes;
+            this.binaryExecutor = binaryExecutor;
+        }
+
+        private boolean isFull() {
+            return nodes >= maxNodes;
+        }
+
+        private String getNextCursor() {
+            return isFull() ? lastNodePath : null;
+        }
+
+        /**
+         * @return true if the node at the path was dumped in a previous page, including all its sub-nodes
+         */
+        private boolean isBeforeCursor(String path) {
+            if (cursor == null) {
+                return false;
+            } else if (cursor.equals(path)) {
+                // Resume right after the cursor
+                cursor = null;
+                return true;
             }
+            return !isCursorBelow(path);
         }
 
-        for (Property property : props.values()) {
-            outputProperty(property, opts, out);
+        private boolean isCursorBelow(String path) {
+            return cursor.startsWith("/".equals(path) ? path : path + "/");
         }
-    }
 
-    @SuppressWarnings("squid:S3776")
-    private static void outputProperty(Property property, ChecksumGeneratorOptions opts, JsonWriter out)
-            throws RepositoryException, IOException {
-        Set<String> sortValues = opts.getSortedProperties();
-        if (property.isMultiple()) {
-            out.name(property.getName());
-            // create an array for multi value output
-            out.beginArray();
-            boolean isSortedValues = sortValues.contains(property.getName());
-            Value[] values = property.getValues();
-            TreeMap<String, Value> sortedValueMap = new TreeMap<>();
-            for (Value v : values) {
-                int type = v.getType();
-                if (type == PropertyType.BINARY) {
-                    if (isSortedValues) {
-                        try {
-                            java.io.InputStream stream =
-                                    v.getBinary().getStream();
-                            String ckSum = DigestUtils.sha1Hex(stream);
-                            stream.close();
-                            sortedValueMap.put(ckSum, v);
-                        } catch (IOException e) {
-                            sortedValueMap.put("ERROR: generating hash for binary of "
-                                    + property.getPath() + " : " + e.getMessage(), v);
-                        }
-                    } else {
-                        outputPropertyValue(property, v, out);
+        /**
+         * Stops looking for the cursor once the tree it was in has been traversed without finding it, i.e. the cursor
+         * node was moved or deleted since the previous page. Otherwise all remaining nodes would be skipped.
+         *
+         * @param path the root path that was traversed, or null once all root paths were traversed
+         * @return the cursor if it was not found, otherwise null
+         */
+        private String dropMissingCursor(String path) {
+            if (cursor == null || (path != null && !cursor.equals(path) && !isCursorBelow(path))) {
+                return null;
+            }
+            final String missing = cursor;
+            cursor = null;
+            return missing;
+        }
+
+        private void traverseTree(Node node) throws IOException {
+            Set<String> nodeTypes = opts.getIncludedNodeTypes();
+            Set<String> nodeTypeExcludes = opts.getExcludedNodeTypes();
+            if (node != null && !isFull()) {
+                String primaryNodeType;
+                try {
+                    if (isBeforeCursor(node.getPath())) {
+                        return;
                     }
-                } else {
-                    String val = v.getString();
-                    if (isSortedValues) {
-                        sortedValueMap.put(val, v);
+                    primaryNodeType = node.getPrimaryNodeType().getName();
+                    if (nodeTypes.contains(primaryNodeType)
+                            && !nodeTypeExcludes.contains(primaryNodeType)) {
+                        generateNodeJSON(node);
                     } else {
-                        outputPropertyValue(property, v, out);
+                        NodeIterator nodeIterator = node.getNodes();
+                        while (nodeIterator.hasNext() && !isFull()) {
+                            primaryNodeType = node.getPrimaryNodeType().getName();
+                            Node child = nodeIterator.nextNode();
+                            if (nodeTypes.contains(primaryNodeType)) {
+                                if (!isBeforeCursor(child.getPath())) {
+                                    generateNodeJSON(child);
+                                }
+                            } else {
+                                traverseTree(child);
+                            }
+                        }
                     }
+                } catch (RepositoryException e) {
+                    log.error("Error while traversing tree {}", e.getMessage());
                 }
             }
-            if (isSortedValues) {
-                for (Value v : sortedValueMap.values()) {
-                    outputPropertyValue(property, v, out);
-                }
+        }
+
+        private void generateNodeJSON(Node node)
+                throws RepositoryException, IOException {
+            if (binaryExecutor != null) {
+                submitBinaryDigests(node);
+            }
+
+            try {
+                out.name(node.getPath());
+                out.beginObject();
+
+                outputProperties(node);
+
+                outputChildNodes(node);
+
+                out.endObject();
+            } finally {
+                binaryDigests.clear();
+            }
+
+            nodes++;
+            lastNodePath = node.getPath();
+            if (maxNodes != Integer.MAX_VALUE) {
+                // Paged dumps are streamed node by node
+                out.flush();
             }
-            out.endArray();
-            // end multi value property output
-        } else {
-            out.name(property.getName());
-            outputPropertyValue(property, property.getValue(), out);
         }
-    }
 
-    /**
-     * @param node
-     * @param opts
-     * @param out
-     * @throws RepositoryException
-     * @throws IOException 
-     * @throws JSONException
-     */
-    private static void outputChildNodes(Node node, ChecksumGeneratorOptions opts, JsonWriter out)
-            throws RepositoryException, IOException {
-        Set<String> nodeTypeExcludes = opts.getExcludedNodeTypes();
+        private void generateSubnodeJSON(Node node)
+                throws RepositoryException, IOException {
+
+            out.name(node.getName());
+            out.beginObject();
 
-        NodeIterator nodeIterator = node.getNodes();
+            outputProperties(node);
+
+            outputChildNodes(node);
+
+            out.endObject();
 
-        TreeMap<String, Node> childSortMap = new TreeMap<>();
-        boolean hasOrderedChildren = false;
-        try {
-            hasOrderedChildren = node.getPrimaryNodeType().hasOrderableChildNodes();
-        } catch (Exception expected) {
-            // ignore
         }
-        while (nodeIterator.hasNext()) {
-            Node child = nodeIterator.nextNode();
-            if (!nodeTypeExcludes
-                    .contains(child.getPrimaryNodeType().getName())) {
-                if (hasOrderedChildren) {
-                    //output child node if parent is has orderable children
-                    out.name(child.getName());
-                    out.beginObject();
-                    generateSubnodeJSON(child, opts, out);
-                    out.endObject();
+
+        /**
+         * Submits the digests of the binaries that will be dumped for the aggregate node, so they are computed in
+         * parallel while the node is written. Streams are opened on the calling thread, which owns the session, so at
+         * most {@link #MAX_PENDING_BINARY_DIGESTS} are submitted; the remaining binaries are hashed inline.
+         */
+        private void submitBinaryDigests(Node node) throws RepositoryException {
+            PropertyIterator propertyIterator = node.getProperties();
+            while (propertyIterator.hasNext() && binaryDigests.size() < MAX_PENDING_BINARY_DIGESTS) {
+                Property property = propertyIterator.nextProperty();
+                if (opts.getExcludedProperties().contains(property.getName())) {
+                    continue;
+                }
+                Value[] values = property.isMultiple() ? property.getValues() : new Value[]{property.getValue()};
+                for (int i = 0; i < values.length && binaryDigests.size() < MAX_PENDING_BINARY_DIGESTS; i++) {
+                    if (values[i].getType() == PropertyType.BINARY) {
+                        final Binary binary = values[i].getBinary();
+                        final InputStream stream = binary.getStream();
+                        binaryDigests.put(property.getPath() + "#" + i, binaryExecutor.submit(() -> {
+                            try (InputStream in = stream) {
+                                return DigestUtils.sha1Hex(in);
+                            } finally {
+                                binary.dispose();
+                            }
+                        }));
+                    }
+                }
+            }
+
+            NodeIterator nodeIterator = node.getNodes();
+            while (nodeIterator.hasNext() && binaryDigests.size() < MAX_PENDING_BINARY_DIGESTS) {
+                Node child = nodeIterator.nextNode();
+                if (!opts.getExcludedNodeTypes().contains(child.getPrimaryNodeType().getName())) {
+                    submitBinaryDigests(child);
+                }
+            }
+        }
+
+        private String getBinaryDigest(Property property, Value value, int index) throws RepositoryException, IOException {
+            final Future<String> digest = binaryDigests.get(property.getPath() + "#" + index);
+            if (digest != null) {
+                try {
+                    return digest.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while hashing binary", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+
+            final String hashed;
+            final Binary binary = value.getBinary();
+            try (InputStream stream = binary.getStream()) {
+                hashed = DigestUtils.sha1Hex(stream);
+            } finally {
+                binary.dispose();
+            }
+            // Sorted values are output after sorting by their digest, which is not computed twice
+            binaryDigests.put(property.getPath() + "#" + index, CompletableFuture.completedFuture(hashed));
+            return hashed;
+        }
+
+        /**
+         * @param node
+         * @throws RepositoryException
+         * @throws ValueFormatException
+         * @throws IOException
+         */
+        private void outputProperties(Node node)
+                throws RepositoryException, ValueFormatException, IOException {
+            Set<String> excludes = opts.getExcludedProperties();
+
+            SortedMap<String, Property> props = new TreeMap<>();
+            PropertyIterator propertyIterator = node.getProperties();
+
+            // sort the properties by name as the JCR makes no guarantees on property order
+            while (propertyIterator.hasNext()) {
+                Property property = propertyIterator.nextProperty();
+                //skip the property if it is in the excludes list
+                if (excludes.contains(property.getName())) {
+                    continue;
                 } else {
-                    // otherwise put the child nodes into a sorted map
-                    // to output them with consistent ordering
-                    childSortMap.put(child.getName(), child);
+                    props.put(property.getName(), property);
                 }
             }
+
+            for (Property property : props.values()) {
+                outputProperty(property);
+            }
         }
-        // output the non-ordered child nodes in sorted order (lexicographically)
-        for (Node child : childSortMap.values()) {
-            out.name(child.getName());
-            out.beginObject();
-            generateSubnodeJSON(child, opts, out);
-            out.endObject();
+
+        @SuppressWarnings("squid:S3776")
+        private void outputProperty(Property property)
+                throws RepositoryException, IOException {
+            Set<String> sortValues = opts.getSortedProperties();
+            if (property.isMultiple()) {
+                out.name(property.getName());
+                // create an array for multi value output
+                out.beginArray();
+                boolean isSortedValues = sortValues.contains(property.getName());
+                Value[] values = property.getValues();
+                // sort key to value index, so binaries are output with the digest already computed for them
+                TreeMap<String, Integer> sortedValueMap = new TreeMap<>();
+                for (int i = 0; i < values.length; i++) {
+                    Value v = values[i];
+                    int type = v.getType();
+                    if (type == PropertyType.BINARY) {
+                        if (isSortedValues) {
+                            try {
+                                String ckSum = getBinaryDigest(property, v, i);
+                                sortedValueMap.put(ckSum, i);
+                            } catch (IOException e) {
+                                sortedValueMap.put("ERROR: generating hash for binary of "
+                                        + property.getPath() + " : " + e.getMessage(), i);
+                            }
+                        } else {
+                            outputPropertyValue(property, v, i);
+                        }
+                    } else {
+                        String val = v.getString();
+                        if (isSortedValues) {
+                            sortedValueMap.put(val, i);
+                        } else {
+                            outputPropertyValue(property, v, i);
+                        }
+                    }
+                }
+                if (isSortedValues) {
+                    for (int i : sortedValueMap.values()) {
+                        outputPropertyValue(property, values[i], i);
+                    }
+                }
+                out.endArray();
+                // end multi value property output
+            } else {
+                out.name(property.getName());
+                outputPropertyValue(property, property.getValue(), 0);
+            }
         }
-    }
 
-    private static void outputPropertyValue(Property property, Value value, JsonWriter out)
-            throws RepositoryException, IOException {
+        /**
+         * @param node
+         * @throws RepositoryException
+         * @throws IOException
+         */
+        private void outputChildNodes(Node node)
+                throws RepositoryException, IOException {
+            Set<String> nodeTypeExcludes = opts.getExcludedNodeTypes();
 
-        if (value.getType() == PropertyType.STRING) {
-            out.value(value.getString());
-        } else if (value.getType() == PropertyType.BINARY) {
+            NodeIterator nodeIterator = node.getNodes();
+
+            TreeMap<String, Node> childSortMap = new TreeMap<>();
+            boolean hasOrderedChildren = false;
             try {
-                java.io.InputStream stream = value.getBinary().getStream();
-                String ckSum = DigestUtils.sha1Hex(stream);
-                stream.close();
-                out.value(ckSum);
-            } catch (IOException e) {
-                out.value("ERROR: calculating hash for binary of " + property.getPath() + " : " + e.getMessage());
+                hasOrderedChildren = node.getPrimaryNodeType().hasOrderableChildNodes();
+            } catch (Exception expected) {
+                // ignore
+            }
+            while (nodeIterator.hasNext()) {
+                Node child = nodeIterator.nextNode();
+                if (!nodeTypeExcludes
+                        .contains(child.getPrimaryNodeType().getName())) {
+                    if (hasOrderedChildren) {
+                        //output child node if parent is has orderable children
+                        out.name(child.getName());
+                        out.beginObject();
+                        generateSubnodeJSON(child);
+                        out.endObject();
+                    } else {
+                        // otherwise put the child nodes into a sorted map
+                        // to output them with consistent ordering
+                        childSortMap.put(child.getName(), child);
+                    }
+                }
             }
-        } else if (value.getType() == PropertyType.BOOLEAN) {
-            out.value(value.getBoolean());
-        } else if (value.getType() == PropertyType.DATE) {
-            Calendar cal = value.getDate();
-            if (cal != null) {
+            // output the non-ordered child nodes in sorted order (lexicographically)
+            for (Node child : childSortMap.values()) {
+                out.name(child.getName());
+                out.beginObject();
+                generateSubnodeJSON(child);
+                out.endObject();
+            }
+        }
+
+        /**
+         * @param index the index of the value in the property
+         */
+        private void outputPropertyValue(Property property, Value value, int index)
+                throws RepositoryException, IOException {
+
+            if (value.getType() == PropertyType.STRING) {
+                out.value(value.getString());
+            } else if (value.getType() == PropertyType.BINARY) {
+                try {
+                    out.value(getBinaryDigest(property, value, index));
+                } catch (IOException e) {
+                    out.value("ERROR: calculating hash for binary of " + property.getPath() + " : " + e.getMessage());
+                }
+            } else if (value.getType() == PropertyType.BOOLEAN) {
+                out.value(value.getBoolean());
+            } else if (value.getType() == PropertyType.DATE) {
+                Calendar cal = value.getDate();
+                if (cal != null) {
+                    out.beginObject();
+                    out.name("type");
+                    out.value(PropertyType.nameFromValue(value.getType()));
+                    out.name("val");
+                    out.value(cal.getTime().toString());
+                    out.endObject();
+                }
+            } else if (value.getType() == PropertyType.LONG) {
+                out.value(value.getLong());
+            } else if (value.getType() == PropertyType.DOUBLE) {
+                out.value(value.getDouble());
+            } else if (value.getType() == PropertyType.DECIMAL) {
+                out.value(value.getDecimal());
+            } else {
                 out.beginObject();
                 out.name("type");
                 out.value(PropertyType.nameFromValue(value.getType()));
                 out.name("val");
-                out.value(cal.getTime().toString());
+                out.value(value.getString());
                 out.endObject();
             }
-        } else if (value.getType() == PropertyType.LONG) {
-            out.value(value.getLong());
-        } else if (value.getType() == PropertyType.DOUBLE) {
-            out.value(value.getDouble());
-        } else if (value.getType() == PropertyType.DECIMAL) {
-            out.value(value.getDecimal());
-        } else {
-            out.beginObject();
-            out.name("type");
-            out.value(PropertyType.nameFromValue(value.getType()));
-            out.name("val");
-            out.value(value.getString());
-            out.endObject();
         }
     }
 }
@@ -0,0 +1,321 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.analysis.jcrchecksum.impl;
+
+import com.adobe.acs.commons.analysis.jcrchecksum.ChecksumGeneratorOptions;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.DamConstants;
+import com.google.common.cache.Cache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+/**
+ * Generates the checksums of a content tree in Merkle tree mode (see {@link ChecksumGeneratorOptions#isMerkleTree()}).
+ *
+ * The tree is traversed on the calling thread, as JCR sessions must not be shared across threads, while binaries are
+ * digested in parallel on the executor. Checksums are aggregated and reported as soon as their sub-tree is complete.
+ * Binary digests are reused from the digest cache when the binary and its node's jcr:lastModified are unchanged, and
+ * from dam:sha1 for original renditions of assets. The dam:sha1 property is taken as is and not verified against the
+ * binary; checksums are identical to the ones of the default traversal only as long as dam:sha1 is up to date.
+ */
+@SuppressWarnings("squid:S2070") // SHA1 not used cryptographically
+final class MerkleChecksumTraversal {
+    private static final Logger log = LoggerFactory.getLogger(MerkleChecksumTraversal.class);
+
+    private static final String ORIGINAL_RENDITION_CONTENT = "/" + JcrConstants.JCR_CONTENT + "/"
+            + DamConstants.RENDITIONS_FOLDER + "/" + DamConstants.ORIGINAL_FILE + "/" + JcrConstants.JCR_CONTENT;
+
+    private final ChecksumGeneratorImpl generator;
+
+    private final ChecksumGeneratorOptions options;
+
+    private final BiConsumer<String, String> consumer;
+
+    private final Cache<String, String> digestCache;
+
+    private final Executor executor;
+
+    /* Bounds the binary streams opened ahead of their digest */
+    private final Semaphore pendingDigests;
+
+    MerkleChecksumTraversal(final ChecksumGeneratorImpl generator, final ChecksumGeneratorOptions options,
+                            final BiConsumer<String, String> consumer, final Cache<String, String> digestCache,
+                            final Executor executor, final int maxPendingDigests) {
+        this.generator = generator;
+        this.options = options;
+        this.consumer = consumer;
+        this.digestCache = digestCache;
+        this.executor = executor;
+        this.pendingDigests = new Semaphore(maxPendingDigests);
+    }
+
+    /**
+     * Traverses the tree and waits for all checksums to be reported.
+     *
+     * @param root the root node of the tree
+     * @throws RepositoryException
+     * @throws IOException
+     */
+    void run(final Node root) throws RepositoryException, IOException {
+        final CompletableFuture<String> checksum = traverse(root, 0);
+        try {
+            checksum.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> traverse(final Node node, final int depth) throws RepositoryException, IOException {
+        if (generator.isExcludedSubTree(node, options)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<String> checksum;
+        if (generator.isChecksumable(node, options) && !generator.isExcludedNodeName(node, options)) {
+            checksum = generatedNodeChecksum(node.getPath(), node);
+        } else {
+            // Sub-trees are keyed by their absolute path so the aggregate does not depend on the child order
+            final Map<String, CompletableFuture<String>> subTrees = new TreeMap<>();
+            final NodeIterator children = node.getNodes();
+            while (children.hasNext()) {
+                final Node child = children.nextNode();
+                subTrees.put(child.getPath(), traverse(child, depth + 1));
+            }
+            checksum = aggregate(subTrees);
+        }
+
+        final String path = node.getPath();
+        return checksum.thenApply(value -> {
+            if (value != null && (options.getMerkleTreeDepth() < 0 || depth <= options.getMerkleTreeDepth())) {
+                report(path, value);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Mirrors {@link ChecksumGeneratorImpl#generatedNodeChecksum(String, Node, ChecksumGeneratorOptions)}.
+     */
+    private CompletableFuture<String> generatedNodeChecksum(final String aggregateNodePath, final Node node)
+            throws RepositoryException, IOException {
+        if (generator.isExcludedSubTree(node, options)) {
+            return CompletableFuture.completedFuture("");
+        }
+
+        final Map<String, CompletableFuture<String>> checksums = new LinkedHashMap<>();
+
+        if (!generator.isExcludedNodeName(node, options)) {
+            checksums.put(generator.getChecksumKey(aggregateNodePath, node.getPath()),
+                    generatePropertyChecksums(aggregateNodePath, node));
+        }
+
+        final Map<String, CompletableFuture<String>> lexicographicallySortedChecksums = new TreeMap<>();
+        final boolean hasOrderedChildren = generator.hasOrderedChildren(node);
+        final NodeIterator children = node.getNodes();
+
+        while (children.hasNext()) {
+            final Node child = children.nextNode();
+
+            if (!generator.isExcludedSubTree(child, options) && !generator.isExcludedNodeType(child, options)) {
+                final String key = generator.getChecksumKey(aggregateNodePath, child.getPath());
+                if (hasOrderedChildren) {
+                    checksums.put(key, generatedNodeChecksum(aggregateNodePath, child));
+                } else {
+                    lexicographicallySortedChecksums.put(key, generatedNodeChecksum(aggregateNodePath, child));
+                }
+            }
+        }
+
+        checksums.putAll(lexicographicallySortedChecksums);
+
+        return aggregate(checksums);
+    }
+
+    /**
+     * Mirrors {@link ChecksumGeneratorImpl#generatePropertyChecksums(String, Node, ChecksumGeneratorOptions)}.
+     */
+    private CompletableFuture<String> generatePropertyChecksums(final String aggregateNodePath, final Node node)
+            throws RepositoryException, IOException {
+        final SortedMap<String, CompletableFuture<String>> propertyChecksums = new TreeMap<>();
+        final PropertyIterator properties = node.getProperties();
+
+        while (properties.hasNext()) {
+            final Property property = properties.nextProperty();
+
+            if (options.getExcludedProperties().contains(property.getName())) {
+                continue;
+            }
+
+            final List<CompletableFuture<String>> checksums = new ArrayList<>();
+            final List<Value> values = generator.getPropertyValues(property);
+            for (int i = 0; i < values.size(); i++) {
+                final Value value = values.get(i);
+                if (value.getType() == PropertyType.BINARY) {
+                    checksums.add(getBinaryChecksum(property, value, i));
+                } else {
+                    checksums.add(CompletableFuture.completedFuture(ChecksumGeneratorImpl.getStringChecksum(value)));
+                }
+            }
+
+            final boolean sort = !options.getSortedProperties().contains(property.getName());
+            propertyChecksums.put(generator.getChecksumKey(aggregateNodePath, property.getPath()),
+                    CompletableFuture.allOf(checksums.toArray(new CompletableFuture[0])).thenApply(v -> {
+                        final List<String> joined = new ArrayList<>(checksums.size());
+                        for (final CompletableFuture<String> checksum : checksums) {
+                            joined.add(checksum.join());
+                        }
+                        if (sort) {
+                            Collections.sort(joined);
+                        }
+                        return StringUtils.join(joined, ",");
+                    }));
+        }
+
+        return aggregate(propertyChecksums);
+    }
+
+    private CompletableFuture<String> getBinaryChecksum(final Property property, final Value value, final int index)
+            throws RepositoryException, IOException {
+        final String damSha1 = getDamSha1(property);
+        if (damSha1 != null) {
+            return CompletableFuture.completedFuture(damSha1);
+        }
+
+        final String cacheKey = getDigestCacheKey(property, value, index);
+        final String cached = cacheKey == null ? null : digestCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        try {
+            pendingDigests.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to digest " + property.getPath());
+        }
+
+        final InputStream stream;
+        try {
+            stream = value.getBinary().getStream();
+        } catch (RepositoryException | RuntimeException e) {
+            pendingDigests.release();
+            throw e;
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = stream) {
+                final String digest = DigestUtils.sha1Hex(in);
+                if (cacheKey != null) {
+                    digestCache.put(cacheKey, digest);
+                }
+                return digest;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                pendingDigests.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * @return the dam:sha1 of the asset if the property is the binary of its original rendition
+     */
+    private String getDamSha1(final Property property) throws RepositoryException {
+        if (property.isMultiple() || !JcrConstants.JCR_DATA.equals(property.getName())) {
+            return null;
+        }
+
+        final Node resource = property.getParent();
+        if (!resource.getPath().endsWith(ORIGINAL_RENDITION_CONTENT)) {
+            return null;
+        }
+
+        final Node assetContent = resource.getParent().getParent().getParent();
+        if (!assetContent.hasNode(DamConstants.METADATA_FOLDER)) {
+            return null;
+        }
+
+        final Node metadata = assetContent.getNode(DamConstants.METADATA_FOLDER);
+        if (metadata.hasProperty(DamConstants.PN_SHA1)) {
+            log.trace("Using dam:sha1 of [ {} ]", assetContent.getPath());
+            return StringUtils.trimToNull(metadata.getProperty(DamConstants.PN_SHA1).getString());
+        }
+        return null;
+    }
+
+    /**
+     * @return the key of the binary's digest, or null if its node has no jcr:lastModified to tell changes apart
+     */
+    private String getDigestCacheKey(final Property property, final Value value, final int index) throws RepositoryException {
+        final Node node = property.getParent();
+        if (!node.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
+            return null;
+        }
+
+        return property.getPath() + "[" + index + "]@"
+                + node.getProperty(JcrConstants.JCR_LASTMODIFIED).getDate().getTimeInMillis()
+                + "/" + value.getBinary().getSize();
+    }
+
+    private CompletableFuture<String> aggregate(final Map<String, CompletableFuture<String>> checksums) {
+        return CompletableFuture.allOf(checksums.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            final Map<String, String> resolved = new LinkedHashMap<>();
+            for (final Map.Entry<String, CompletableFuture<String>> entry : checksums.entrySet()) {
+                final String checksum = entry.getValue().join();
+                if (checksum != null) {
+                    resolved.put(entry.getKey(), checksum);
+                }
+            }
+            return generator.aggregateChecksums(resolved);
+        });
+    }
+
+    private synchronized void report(final String path, final String checksum) {
+        log.debug("Merkle Tree Node: {} ~> {}", path, checksum);
+        consumer.accept(path, checksum);
+    }
+}
@@ -22,6 +22,8 @@ import org.osgi.annotation.versioning.ProviderType;
 import com.adobe.acs.commons.analysis.jcrchecksum.ChecksumGenerator;
 import com.adobe.acs.commons.analysis.jcrchecksum.ChecksumGeneratorOptions;
 import com.adobe.acs.commons.util.InfoWriter;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
 
 import java.util.Arrays;
 import java.util.HashSet;
@@ -45,6 +47,10 @@ public abstract class AbstractChecksumGeneratorOptions implements ChecksumGenera
 
     protected Set<String> excludedSubTrees = new HashSet<String>();
 
+    protected boolean merkleTree = false;
+
+    protected int merkleTreeDepth = -1;
+
 
     public void addIncludedNodeTypes(String... data) {
         if (data != null) {
@@ -107,6 +113,27 @@ public abstract class AbstractChecksumGeneratorOptions implements ChecksumGenera
         }
     }
 
+    public boolean isMerkleTree() {
+        return this.merkleTree;
+    }
+
+    public void setMerkleTree(boolean merkleTree) {
+        this.merkleTree = merkleTree;
+    }
+
+    public int getMerkleTreeDepth() {
+        return this.merkleTreeDepth;
+    }
+
+    public void setMerkleTreeDepth(int merkleTreeDepth) {
+        this.merkleTreeDepth = merkleTreeDepth;
+    }
+
+    protected void addMerkleTreeOptions(SlingHttpServletRequest request) {
+        this.setMerkleTree(Boolean.parseBoolean(request.getParameter(MERKLE_TREE)));
+        this.setMerkleTreeDepth(NumberUtils.toInt(request.getParameter(MERKLE_TREE_DEPTH), -1));
+    }
+
     public String toString() {
         InfoWriter iw = new InfoWriter();
 
@@ -117,6 +144,8 @@ public abstract class AbstractChecksumGeneratorOptions implements ChecksumGenera
         iw.message("Node Name Excludes: {}", this.getExcludedNodeNames());
         iw.message("Sub Tree Excludes: {}", this.getExcludedSubTrees());
         iw.message("Sorted Properties: {}", this.getSortedProperties());
+        iw.message("Merkle Tree: {}", this.isMerkleTree());
+        iw.message("Merkle Tree Depth: {}", this.getMerkleTreeDepth());
 
         return iw.toString();
     }
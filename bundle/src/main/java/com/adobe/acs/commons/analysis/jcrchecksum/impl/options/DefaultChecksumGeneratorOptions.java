@@ -61,6 +61,7 @@ public class DefaultChecksumGeneratorOptions extends AbstractChecksumGeneratorOp
 
     public DefaultChecksumGeneratorOptions(SlingHttpServletRequest request) {
         this();
+        this.addMerkleTreeOptions(request);
     }
 
 }
\ No newline at end of file
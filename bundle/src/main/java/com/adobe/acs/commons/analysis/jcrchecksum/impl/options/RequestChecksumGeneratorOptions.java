@@ -44,6 +44,7 @@ public class RequestChecksumGeneratorOptions extends AbstractChecksumGeneratorOp
         this.addExcludedNodeTypes(request.getParameterValues(NODE_TYPE_EXCLUDES));
         this.addExcludedProperties(request.getParameterValues(PROPERTY_EXCLUDES));
         this.addSortedProperties(request.getParameterValues(SORTED_PROPERTIES));
+        this.addMerkleTreeOptions(request);
     }
 
     public static Set<String> getPaths(SlingHttpServletRequest request) throws IOException {
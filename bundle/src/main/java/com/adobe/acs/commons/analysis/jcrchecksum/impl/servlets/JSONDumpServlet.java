@@ -25,12 +25,17 @@ import com.adobe.acs.commons.analysis.jcrchecksum.impl.options.RequestChecksumGe
 import com.google.gson.stream.JsonWriter;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,10 +48,15 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @SuppressWarnings("serial")
-@Component
+@Component(metatype = true,
+        label = "ACS AEM Commons - JCR Checksum JSON Dump Servlet",
+        description = "Dumps JCR paths as JSON for comparison.")
 @Properties({
     @Property(
             name="sling.servlet.paths",
@@ -65,6 +75,46 @@ public class JSONDumpServlet extends BaseChecksumServlet {
             + ServletConstants.JSON_SERVLET_SELECTOR + "."
             + ServletConstants.JSON_SERVLET_EXTENSION;
 
+    private static final int DEFAULT_MAX_NODES_PER_RESPONSE = 1000;
+
+    @Property(label = "Max Nodes per Response",
+            description = "Maximum number of aggregate nodes in a paged dump response, requested with the "
+                    + "maxNodes or cursor parameters. [ Default: 1000 ]",
+            intValue = DEFAULT_MAX_NODES_PER_RESPONSE)
+    public static final String PROP_MAX_NODES_PER_RESPONSE = "max-nodes-per-response";
+
+    private static final int DEFAULT_BINARY_HASHING_THREADS = 0;
+
+    @Property(label = "Binary Hashing Threads",
+            description = "Number of threads hashing the binaries of an aggregate node in parallel. "
+                    + "0 hashes binaries on the request thread. [ Default: 0 ]",
+            intValue = DEFAULT_BINARY_HASHING_THREADS)
+    public static final String PROP_BINARY_HASHING_THREADS = "binary-hashing.threads";
+
+    private int maxNodesPerResponse = DEFAULT_MAX_NODES_PER_RESPONSE;
+
+    private transient ExecutorService binaryExecutor;
+
+    @Activate
+    protected void activate(final Map<String, Object> config) {
+        maxNodesPerResponse = Math.max(1, PropertiesUtil.toInteger(config.get(PROP_MAX_NODES_PER_RESPONSE),
+                DEFAULT_MAX_NODES_PER_RESPONSE));
+
+        final int threads = PropertiesUtil.toInteger(config.get(PROP_BINARY_HASHING_THREADS),
+                DEFAULT_BINARY_HASHING_THREADS);
+        if (threads > 0) {
+            binaryExecutor = Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (binaryExecutor != null) {
+            binaryExecutor.shutdownNow();
+            binaryExecutor = null;
+        }
+    }
+
     @Override
     public final void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws
     ServletException, IOException {
@@ -123,8 +173,17 @@ public class JSONDumpServlet extends BaseChecksumServlet {
 
             JsonWriter jsonWriter = new JsonWriter(response.getWriter());
 
+            String cursor = request.getParameter(ServletConstants.CURSOR);
+            String maxNodes = request.getParameter(ServletConstants.MAX_NODES);
+
             try {
-                JSONGenerator.generateJSON(session, paths, options, jsonWriter);
+                if (cursor != null || maxNodes != null) {
+                    int limit = NumberUtils.toInt(StringUtils.trimToNull(maxNodes), maxNodesPerResponse);
+                    JSONGenerator.generateJSON(session, paths, options, jsonWriter, cursor,
+                            Math.min(limit, maxNodesPerResponse), binaryExecutor);
+                } else {
+                    JSONGenerator.generateJSON(session, paths, options, jsonWriter);
+                }
                 jsonWriter.close();
             } catch (RepositoryException e) {
                 throw new ServletException("Error accessing repository", e);
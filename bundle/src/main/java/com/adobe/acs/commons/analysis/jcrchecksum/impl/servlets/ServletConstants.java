@@ -35,4 +35,8 @@ public final class ServletConstants {
     public static final String JSON_SERVLET_EXTENSION = "json";
 
     public static final String OPTIONS_NAME = "optionsName";
+
+    public static final String CURSOR = "cursor";
+
+    public static final String MAX_NODES = "maxNodes";
 }
@@ -20,30 +20,52 @@ package com.adobe.acs.commons.ccvar.impl;
 import com.adobe.acs.commons.ccvar.ContentVariableProvider;
 import com.adobe.acs.commons.ccvar.PropertyConfigService;
 import com.adobe.acs.commons.ccvar.util.PropertyAggregatorUtil;
+import com.day.cq.commons.jcr.JcrConstants;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default {@link ContentVariableProvider} provided that will aggregate the current and inherited page properties
- * based on the request information passed in.
+ * based on the request information passed in. The aggregated properties are cached per page and user, and dropped when
+ * the page or one of its ancestors changes.
  */
-@Component(service = ContentVariableProvider.class)
-public class AllPagePropertiesContentVariableProvider implements ContentVariableProvider {
+@Component(service = {ContentVariableProvider.class, ResourceChangeListener.class},
+        property = ResourceChangeListener.PATHS + "=/content")
+public class AllPagePropertiesContentVariableProvider implements ContentVariableProvider, ResourceChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(AllPagePropertiesContentVariableProvider.class);
 
     public static final String PAGE_PROP_PREFIX = "page_properties";
     private static final String INHERITED_PAGE_PROP_PREFIX = "inherited_page_properties";
 
+    private static final int MAX_CACHED_PAGES = 1000;
+    // bounds how long changed permissions of a user go unnoticed
+    private static final long CACHE_TTL_MINUTES = 10;
+
+    private final Cache<Pair<String, String>, Map<String, Object>> pagePropertiesCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PAGES)
+            .expireAfterWrite(CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+            .build();
+
     @Reference
     private PropertyConfigService propertyConfigService;
 
@@ -63,6 +85,21 @@ public class AllPagePropertiesContentVariableProvider implements ContentVariable
             return;
         }
 
+        // The properties are read with the permissions of the current user, so they are only shared with the same user
+        Pair<String, String> cacheKey = Pair.of(page.getPath(), resource.getResourceResolver().getUserID());
+        Map<String, Object> pageProperties = pagePropertiesCache.getIfPresent(cacheKey);
+        if (pageProperties == null) {
+            pageProperties = Collections.unmodifiableMap(collectPageProperties(page));
+            pagePropertiesCache.put(cacheKey, pageProperties);
+        }
+        for (Map.Entry<String, Object> entry : pageProperties.entrySet()) {
+            map.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Map<String, Object> collectPageProperties(Page page) {
+        Map<String, Object> map = new HashMap<>();
+
         // Add current page properties
         addPagePropertiesToMap(map, page, PAGE_PROP_PREFIX, propertyConfigService);
 
@@ -71,6 +108,7 @@ public class AllPagePropertiesContentVariableProvider implements ContentVariable
             addPagePropertiesToMap(map, page, INHERITED_PAGE_PROP_PREFIX, propertyConfigService);
             page = page.getParent();
         }
+        return map;
     }
 
     /**
@@ -98,4 +136,17 @@ public class AllPagePropertiesContentVariableProvider implements ContentVariable
         Page page = pageManager.getContainingPage(request.getResource());
         return page != null && page.getPath().startsWith("/content/");
     }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            // A change of a page's content affects the page and, through inheritance, all pages below
+            String pagePath = StringUtils.substringBefore(change.getPath(), "/" + JcrConstants.JCR_CONTENT);
+            pagePropertiesCache.asMap().keySet().removeIf(key -> isSameOrDescendant(key.getLeft(), pagePath));
+        }
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestorPath) {
+        return path.equals(ancestorPath) || path.startsWith(ancestorPath + "/");
+    }
 }
@@ -17,6 +17,7 @@
  */
 package com.adobe.acs.commons.ccvar.util;
 
+import com.adobe.acs.commons.ccvar.PropertyConfigService;
 import com.adobe.acs.commons.ccvar.TransformAction;
 import org.apache.commons.lang3.StringUtils;
 
@@ -24,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,6 +85,16 @@ public class ContentVariableReplacementUtil {
         return contentVariableReplacements.get(key);
     }
 
+    /**
+     * Cheaply checks whether the string might contain placeholders, without matching them.
+     *
+     * @param string The full input string
+     * @return Whether the string contains the beginning of a placeholder
+     */
+    public static boolean hasPlaceholder(String string) {
+        return StringUtils.contains(string, PLACEHOLDER_BEGIN);
+    }
+
     /**
      * Takes the current string and returns the placeholder value. Ex: ((value))
      *
@@ -114,13 +126,61 @@ public class ContentVariableReplacementUtil {
      * @return The fully replaced value
      */
     public static String doReplacement(String input, String key, String replacement, TransformAction action) {
+        return input.replace(getPlaceholder(key), transform(replacement, action));
+    }
+
+    /**
+     * Replaces all placeholders found in the input string in a single pass. Placeholders without a content variable
+     * are kept as is and replaced values are not scanned for further placeholders. The content variables are only
+     * requested once the first placeholder is found, so strings without placeholders are returned as is.
+     *
+     * @param input The input string possibly containing placeholders
+     * @param contentVariableReplacements Supplies the current map of content variable keys and values
+     * @param propertyConfigService The service used to look up the actions found in the placeholder keys
+     * @return The replaced string, or the input itself if nothing was replaced
+     */
+    public static String replacePlaceholders(String input, Supplier<Map<String, Object>> contentVariableReplacements,
+                                             PropertyConfigService propertyConfigService) {
+        if (!hasPlaceholder(input)) {
+            return input;
+        }
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(input);
+        StringBuilder result = null;
+        int copiedUntil = 0;
+        while (matcher.find()) {
+            String key = matcher.group(1);
+            Map<String, Object> replacements = contentVariableReplacements.get();
+            if (!hasKey(replacements, key)) {
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(input.length());
+            }
+            result.append(input, copiedUntil, matcher.start())
+                    .append(transform(String.valueOf(getValue(replacements, key)), propertyConfigService.getAction(key)));
+            copiedUntil = matcher.end();
+        }
+        if (result == null) {
+            return input;
+        }
+        return result.append(input, copiedUntil, input.length()).toString();
+    }
+
+    /**
+     * Executes the action on the replacement, if any, and applies the base escaping unless the action disables it.
+     *
+     * @param replacement The value to be replaced and optionally transformed
+     * @param action The action found in the placeholder key
+     * @return The transformed value
+     */
+    private static String transform(String replacement, TransformAction action) {
         if (action != null) {
             if (action.disableEscaping()) {
-                return input.replace(getPlaceholder(key), action.execute(replacement));
+                return action.execute(replacement);
             }
-            return input.replace(getPlaceholder(key), baseEscaping(action.execute(replacement)));
+            return baseEscaping(action.execute(replacement));
         }
-        return input.replace(getPlaceholder(key), baseEscaping(replacement));
+        return baseEscaping(replacement);
     }
 
     /**
@@ -16,7 +16,7 @@
  * limitations under the License.
  */
 
-@Version("5.0.14")
+@Version("5.1.0")
 package com.adobe.acs.commons.ccvar.util;
 
 import org.osgi.annotation.versioning.Version;
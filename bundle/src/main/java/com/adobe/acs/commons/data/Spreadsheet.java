@@ -19,6 +19,7 @@ package com.adobe.acs.commons.data;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,8 +32,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.apache.commons.collections4.CollectionUtils;
@@ -152,21 +157,11 @@ public class Spreadsheet {
         rowCount = sheet.getLastRowNum();
         final Iterator<Row> rows = sheet.rowIterator();
 
-        Row firstRow = rows.next();
-        headerRow = readRow(firstRow, locale).stream()
-                .map(v -> v != null ? convertHeaderName(v.toString()) : null)
-                .collect(Collectors.toList());
-        headerTypes = readRow(firstRow, locale).stream()
-                .map(Variant::toString)
-                .collect(Collectors.toMap(
-                        this::convertHeaderName,
-                        this::detectTypeFromName,
-                        this::upgradeToArray
-                ));
+        readHeader(readRow(rows.next(), locale));
 
         Iterable<Row> remainingRows = () -> rows;
         dataRows = StreamSupport.stream(remainingRows.spliterator(), false)
-                .map(row -> buildRow(row, locale))
+                .map(row -> buildRow(row.getRowNum(), readRow(row, locale)))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toList());
@@ -174,6 +169,81 @@ public class Spreadsheet {
         return this;
     }
 
+    /**
+     * Read the input file lazily, one row at a time, using the streaming XLSX
+     * parser instead of loading the whole workbook. This overload will
+     * implicitly use the default JVM locale for numeric and date/time conversions.
+     *
+     * @return Data rows in the order they appear in the sheet; must be closed when done
+     * @throws IOException if the file couldn't be read
+     * @see #streamDataRows(Locale)
+     */
+    public Stream<Map<String, CompositeVariant>> streamDataRows() throws IOException {
+        return streamDataRows(Locale.getDefault());
+    }
+
+    /**
+     * Read the input file lazily, one row at a time, using the streaming XLSX
+     * parser instead of loading the whole workbook. Memory use does not grow
+     * with the number of rows, which makes this suitable for very large sheets.
+     * The header row is read before this method returns, so header names and
+     * types are available right away. Data rows are parsed as the stream is
+     * consumed and are not retained, so they are not available through
+     * {@link #getDataRowsAsCompositeVariants()}. The stream holds a temporary
+     * copy of the file and must be closed, e.g. with try-with-resources.
+     *
+     * @param locale The locale to be used for numeric and date/time conversions.
+     * @return Data rows in the order they appear in the sheet; must be closed when done
+     * @throws IOException if the file or its header row couldn't be read
+     */
+    public Stream<Map<String, CompositeVariant>> streamDataRows(Locale locale) throws IOException {
+        XlsxSheetReader reader = new XlsxSheetReader(inputStream, locale);
+        try {
+            List<Variant> firstRow = reader.nextRow();
+            if (firstRow == null) {
+                throw new IOException("Spreadsheet does not contain a header row");
+            }
+            readHeader(firstRow);
+            rowCount = reader.getLastRowNum();
+        } catch (IOException | RuntimeException ex) {
+            reader.close();
+            throw ex;
+        }
+        Spliterator<Map<String, CompositeVariant>> rows = new Spliterators.AbstractSpliterator<Map<String, CompositeVariant>>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Map<String, CompositeVariant>> action) {
+                try {
+                    for (List<Variant> data = reader.nextRow(); data != null; data = reader.nextRow()) {
+                        rowCount = Math.max(rowCount, reader.getLastRowNum());
+                        Optional<Map<String, CompositeVariant>> row = buildRow(reader.getRowNum(), data);
+                        if (row.isPresent()) {
+                            action.accept(row.get());
+                            return true;
+                        }
+                    }
+                    return false;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(reader::close);
+    }
+
+    private void readHeader(List<Variant> firstRow) {
+        headerRow = firstRow.stream()
+                .map(v -> v != null ? convertHeaderName(v.toString()) : null)
+                .collect(Collectors.toList());
+        headerTypes = firstRow.stream()
+                .map(Variant::toString)
+                .collect(Collectors.toMap(
+                        this::convertHeaderName,
+                        this::detectTypeFromName,
+                        this::upgradeToArray
+                ));
+    }
+
     private List<Variant> readRow(Row row, Locale locale) {
         Iterator<Cell> iterator = row.cellIterator();
         List<Variant> rowOut = new ArrayList<>();
@@ -189,10 +259,9 @@ public class Spreadsheet {
     }
 
     @SuppressWarnings("squid:S3776")
-    private Optional<Map<String, CompositeVariant>> buildRow(Row row, Locale locale) {
+    private Optional<Map<String, CompositeVariant>> buildRow(int rowNum, List<Variant> data) {
         Map<String, CompositeVariant> out = new LinkedHashMap<>();
-        out.put(ROW_NUMBER, new CompositeVariant(row.getRowNum()));
-        List<Variant> data = readRow(row, locale);
+        out.put(ROW_NUMBER, new CompositeVariant(rowNum));
         boolean empty = true;
         for (int i = 0; i < data.size() && i < getHeaderRow().size(); i++) {
             String colName = getHeaderRow().get(i);
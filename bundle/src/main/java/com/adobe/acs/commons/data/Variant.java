@@ -137,27 +137,21 @@ public final class Variant {
                     setValue(cell.getBooleanCellValue());
                     break;
                 case NUMERIC:
-                    double number = cell.getNumericCellValue();
-                    if (Math.floor(number) == number) {
-                        setValue((long) number);
-                    } else {
-                        setValue(number);
-                    }
-                    if (DateUtil.isCellDateFormatted(cell)) {
-                        setValue(cell.getDateCellValue());
-                        baseType = Calendar.class;
-                    }
                     DataFormatter dataFormatter = new DataFormatter(locale);
+                    String formatted;
                     if (cellType == CellType.FORMULA) {
-                        setValue(dataFormatter.formatCellValue(cell));
+                        formatted = dataFormatter.formatCellValue(cell);
                     } else {
                         CellStyle cellStyle = cell.getCellStyle();
-                        setValue(dataFormatter.formatRawCellContents(
+                        formatted = dataFormatter.formatRawCellContents(
                                 cell.getNumericCellValue(),
                                 cellStyle.getDataFormat(),
                                 cellStyle.getDataFormatString()
-                        ));
+                        );
                     }
+                    setNumericValue(cell.getNumericCellValue(),
+                            DateUtil.isCellDateFormatted(cell) ? cell.getDateCellValue() : null,
+                            formatted);
                     break;
                 case STRING:
                     setValue(cell.getStringCellValue().trim());
@@ -172,6 +166,26 @@ public final class Variant {
         }
     }
 
+    /**
+     * Set the value of a numeric cell, shared by the cell-based and the streaming spreadsheet readers.
+     *
+     * @param number Raw numeric value of the cell
+     * @param date Date value if the cell is date formatted, otherwise null
+     * @param formatted Cell value as it is displayed in the spreadsheet
+     */
+    void setNumericValue(double number, Date date, String formatted) {
+        if (Math.floor(number) == number) {
+            setValue((long) number);
+        } else {
+            setValue(number);
+        }
+        if (date != null) {
+            setValue(date);
+            baseType = Calendar.class;
+        }
+        setValue(formatted);
+    }
+
     @SuppressWarnings("squid:S3776")
     public final <T> void setValue(T val) {
         if (val == null) {
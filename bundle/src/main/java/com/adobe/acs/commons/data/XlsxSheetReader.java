@@ -0,0 +1,343 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Pull parser for the first worksheet of an XLSX file. Rows are read from the
+ * sheet XML one at a time, so memory use does not grow with the number of rows;
+ * only the shared string table and the cell styles are held in memory. Cell
+ * values are converted the same way as {@link Variant#Variant(org.apache.poi.ss.usermodel.Cell, Locale)}.
+ */
+final class XlsxSheetReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxSheetReader.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final String GENERAL_FORMAT = "General";
+
+    private final Path file;
+    private final OPCPackage pkg;
+    private final List<String> sharedStrings;
+    private final StylesTable styles;
+    private final boolean date1904;
+    private final DataFormatter dataFormatter;
+    private final InputStream sheetData;
+    private final XMLStreamReader sheet;
+    private int rowNum = -1;
+    private int lastRowNum = -1;
+
+    /**
+     * Open the workbook. The input is spooled to a temporary file first, as the
+     * zip container can only be read lazily from a file.
+     *
+     * @param in XLSX file contents
+     * @param locale The locale to be used for numeric and date/time conversions.
+     * @throws IOException if the file couldn't be read
+     */
+    XlsxSheetReader(InputStream in, Locale locale) throws IOException {
+        file = Files.createTempFile("spreadsheet", ".xlsx");
+        OPCPackage openedPackage = null;
+        InputStream openedSheet = null;
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            openedPackage = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(openedPackage);
+            sharedStrings = readSharedStrings(openedPackage);
+            styles = reader.getStylesTable();
+            try (InputStream workbook = reader.getWorkbookData()) {
+                date1904 = isDate1904(workbook);
+            }
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("Spreadsheet does not contain any sheets");
+            }
+            openedSheet = sheets.next();
+            sheet = XML_INPUT_FACTORY.createXMLStreamReader(openedSheet);
+            readDimension();
+        } catch (IOException | OpenXML4JException | XMLStreamException | RuntimeException ex) {
+            closeQuietly(openedSheet, openedPackage);
+            deleteQuietly(file);
+            throw ex instanceof IOException ? (IOException) ex : new IOException("Unable to read spreadsheet", ex);
+        }
+        pkg = openedPackage;
+        sheetData = openedSheet;
+        dataFormatter = new DataFormatter(locale);
+    }
+
+    /**
+     * @return the cells of the next row, null for blank cells, or null at the end of the sheet
+     * @throws IOException if the sheet couldn't be parsed
+     */
+    List<Variant> nextRow() throws IOException {
+        try {
+            while (sheet.hasNext()) {
+                if (sheet.next() == START_ELEMENT && "row".equals(sheet.getLocalName())) {
+                    String ref = sheet.getAttributeValue(null, "r");
+                    rowNum = ref == null ? rowNum + 1 : Integer.parseInt(ref) - 1;
+                    lastRowNum = Math.max(lastRowNum, rowNum);
+                    return readCells();
+                }
+            }
+            return null;
+        } catch (XMLStreamException | RuntimeException ex) {
+            throw new IOException("Unable to parse spreadsheet row " + (rowNum + 1), ex);
+        }
+    }
+
+    /**
+     * @return zero-based number of the row last returned by {@link #nextRow()}
+     */
+    int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @return zero-based number of the last row of the sheet as declared in its
+     * dimension, or of the last row read so far if the sheet declares none
+     */
+    int getLastRowNum() {
+        return lastRowNum;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(sheetData, pkg);
+        try {
+            sheet.close();
+        } catch (XMLStreamException ex) {
+            LOG.debug("Unable to close sheet parser", ex);
+        }
+        deleteQuietly(file);
+    }
+
+    private void readDimension() throws XMLStreamException {
+        while (sheet.hasNext()) {
+            if (sheet.next() == START_ELEMENT) {
+                if ("dimension".equals(sheet.getLocalName())) {
+                    String ref = sheet.getAttributeValue(null, "ref");
+                    if (ref != null) {
+                        String last = ref.contains(":") ? ref.substring(ref.indexOf(':') + 1) : ref;
+                        lastRowNum = new CellReference(last).getRow();
+                    }
+                } else if ("sheetData".equals(sheet.getLocalName())) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Variant> readCells() throws XMLStreamException {
+        List<Variant> cells = new ArrayList<>();
+        int column = -1;
+        while (sheet.hasNext()) {
+            int event = sheet.next();
+            if (event == END_ELEMENT && "row".equals(sheet.getLocalName())) {
+                break;
+            } else if (event == START_ELEMENT && "c".equals(sheet.getLocalName())) {
+                String ref = sheet.getAttributeValue(null, "r");
+                column = ref == null ? column + 1 : new CellReference(ref).getCol();
+                Variant value = readCell(sheet.getAttributeValue(null, "t"), sheet.getAttributeValue(null, "s"));
+                while (column > cells.size()) {
+                    cells.add(null);
+                }
+                cells.add(value.isEmpty() ? null : value);
+            }
+        }
+        return cells;
+    }
+
+    private Variant readCell(String type, String styleIndex) throws XMLStreamException {
+        String value = null;
+        while (sheet.hasNext()) {
+            int event = sheet.next();
+            if (event == END_ELEMENT && "c".equals(sheet.getLocalName())) {
+                break;
+            } else if (event == START_ELEMENT && "v".equals(sheet.getLocalName())) {
+                value = sheet.getElementText();
+            } else if (event == START_ELEMENT && "is".equals(sheet.getLocalName())) {
+                value = readText(sheet, "is");
+            }
+        }
+        Variant variant = new Variant();
+        if (value == null) {
+            return variant;
+        }
+        switch (type == null ? "n" : type) {
+            case "s":
+                variant.setValue(sharedStrings.get(Integer.parseInt(value.trim())).trim());
+                break;
+            case "inlineStr":
+            case "str":
+            case "d":
+                variant.setValue(value.trim());
+                break;
+            case "b":
+                variant.setValue("1".equals(value.trim()) || "true".equalsIgnoreCase(value.trim()));
+                break;
+            case "e":
+                // Errors are treated as blank cells
+                break;
+            case "n":
+            default:
+                readNumber(variant, Double.parseDouble(value), styleIndex);
+                break;
+        }
+        return variant;
+    }
+
+    private void readNumber(Variant variant, double number, String styleIndex) {
+        int formatIndex = 0;
+        String formatString = null;
+        if (styles != null && styleIndex != null) {
+            XSSFCellStyle style = styles.getStyleAt(Integer.parseInt(styleIndex));
+            if (style != null) {
+                formatIndex = style.getDataFormat();
+                formatString = style.getDataFormatString();
+            }
+        }
+        if (formatString == null) {
+            formatString = GENERAL_FORMAT;
+        }
+        Date date = null;
+        if (DateUtil.isValidExcelDate(number) && DateUtil.isADateFormat(formatIndex, formatString)) {
+            date = DateUtil.getJavaDate(number, date1904);
+        }
+        variant.setNumericValue(number, date, dataFormatter.formatRawCellContents(number, formatIndex, formatString));
+    }
+
+    private static List<String> readSharedStrings(OPCPackage pkg) throws IOException, XMLStreamException {
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<>();
+        try (InputStream in = parts.get(0).getInputStream()) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == START_ELEMENT && "si".equals(reader.getLocalName())) {
+                        strings.add(readText(reader, "si"));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return strings;
+    }
+
+    private static boolean isDate1904(InputStream workbook) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(workbook);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == START_ELEMENT) {
+                    if ("workbookPr".equals(reader.getLocalName())) {
+                        String value = reader.getAttributeValue(null, "date1904");
+                        return "1".equals(value) || "true".equalsIgnoreCase(value);
+                    } else if ("sheets".equals(reader.getLocalName())) {
+                        break;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Concatenate the text runs of a rich text element, skipping phonetic hints.
+     */
+    private static String readText(XMLStreamReader reader, String element) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        boolean phonetic = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == END_ELEMENT && element.equals(reader.getLocalName())) {
+                break;
+            } else if (event == END_ELEMENT && "rPh".equals(reader.getLocalName())) {
+                phonetic = false;
+            } else if (event == START_ELEMENT && "rPh".equals(reader.getLocalName())) {
+                phonetic = true;
+            } else if (event == START_ELEMENT && "t".equals(reader.getLocalName()) && !phonetic) {
+                text.append(reader.getElementText());
+            }
+        }
+        return text.toString();
+    }
+
+    private static void closeQuietly(InputStream sheetData, OPCPackage pkg) {
+        try {
+            if (sheetData != null) {
+                sheetData.close();
+            }
+        } catch (IOException ex) {
+            LOG.debug("Unable to close sheet data", ex);
+        }
+        if (pkg != null) {
+            // Read-only packages are released with revert(), close() would try to save them
+            pkg.revert();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOG.warn("Unable to delete temporary file {}", file, ex);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
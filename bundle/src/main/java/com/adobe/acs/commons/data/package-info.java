@@ -18,7 +18,7 @@
 /**
  * Data handling functions
  */
-@Version("2.3.0")
+@Version("2.4.0")
 package com.adobe.acs.commons.data;
 
 import org.osgi.annotation.versioning.Version;
\ No newline at end of file
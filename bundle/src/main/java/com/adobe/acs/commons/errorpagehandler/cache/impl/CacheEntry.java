@@ -18,67 +18,112 @@
 
 package com.adobe.acs.commons.errorpagehandler.cache.impl;
 
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 class CacheEntry {
-    private String data;
+    private volatile String data;
 
-    private final AtomicInteger hits;
+    private volatile int bytes;
 
-    private final AtomicInteger misses;
+    private final LongAdder hits;
 
-    private Date expiresAt;
+    private final LongAdder misses;
+
+    private volatile long expiresAt;
+
+    private volatile boolean populated;
+
+    private final AtomicBoolean refreshing;
 
     public CacheEntry() {
-        this.hits = new AtomicInteger();
-        this.misses = new AtomicInteger();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.refreshing = new AtomicBoolean();
         this.data = "";
-        this.expiresAt = new Date(0);
+        this.expiresAt = 0;
     }
 
     public final String getData() {
-        if (data == null) {
-            return "";
-        } else {
-            return data;
-        }
+        return data;
     }
 
     public final void setData(final String data) {
         if (data == null) {
             this.data = "";
+            this.bytes = 0;
         } else {
             this.data = data;
+            this.bytes = data.getBytes(StandardCharsets.UTF_8).length;
         }
+        this.populated = true;
     }
 
     public final int getHits() {
-        return hits.get();
+        return hits.intValue();
     }
 
     public final void incrementHits() {
-        this.hits.incrementAndGet();
+        this.hits.increment();
     }
 
     public final int getMisses() {
-        return misses.get();
+        return misses.intValue();
     }
 
     public final void incrementMisses() {
-        this.misses.incrementAndGet();
+        this.misses.increment();
     }
 
     public final boolean isExpired(final Date date) {
-        return expiresAt.before(date);
+        return expiresAt < date.getTime();
     }
 
     public final void setExpiresIn(final int expiresInSeconds) {
         final Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.SECOND, expiresInSeconds);
-        this.expiresAt = calendar.getTime();
+        this.expiresAt = calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return true once data has been rendered into this entry, even if it has since expired
+     */
+    final boolean isPopulated() {
+        return populated;
+    }
+
+    /**
+     * Claims the refresh of this entry. Only one caller at a time succeeds; the others keep serving the current data.
+     *
+     * @return true if the caller must render the error page and call {@link #endRefresh()} afterwards
+     */
+    final boolean tryBeginRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+
+    final void endRefresh() {
+        refreshing.set(false);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the refresh in flight to end, at most for the given time.
+     *
+     * @return true if data has been rendered into this entry
+     */
+    final synchronized boolean awaitPopulated(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (!populated && refreshing.get() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return populated;
     }
 
     public final float getHitRate() {
@@ -100,10 +145,10 @@ class CacheEntry {
     }
 
     final int getTotal() {
-        return this.hits.get() + this.misses.get();
+        return this.getHits() + this.getMisses();
     }
 
     final int getBytes() {
-        return getData().getBytes(Charset.forName("UTF-8")).length;
+        return bytes;
     }
 }
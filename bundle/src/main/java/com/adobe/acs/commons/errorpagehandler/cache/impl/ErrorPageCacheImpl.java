@@ -21,8 +21,6 @@ package com.adobe.acs.commons.errorpagehandler.cache.impl;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.openmbean.CompositeDataSupport;
@@ -37,32 +35,59 @@ import javax.management.openmbean.TabularType;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.acs.commons.util.ResourceDataUtil;
 import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.replication.ReplicationAction;
+import com.day.cq.replication.ReplicationEvent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
-public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorPageCache, ErrorPageCacheMBean {
+public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorPageCache, ErrorPageCacheMBean, EventHandler {
     private static final Logger log = LoggerFactory.getLogger(ErrorPageCacheImpl.class);
 
     private static final int KB_IN_BYTES = 1000;
 
-    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+    public static final long DEFAULT_MAX_SIZE_IN_KB = 10 * 1000L; // 10 MB
+
+    private static final long FIRST_RENDER_TIMEOUT_MILLIS = 10 * 1000L;
+
+    private final Cache<String, CacheEntry> cache;
 
     private final int ttl;
 
     private final boolean serveAuthenticatedFromCache;
 
+    private final long maxSizeInKB;
+
+    /* How long to wait for the first rendering of an error page in flight before rendering it again */
+    private long firstRenderTimeoutMillis = FIRST_RENDER_TIMEOUT_MILLIS;
 
     public ErrorPageCacheImpl(int ttl, boolean serveAuthenticatedFromCache) throws NotCompliantMBeanException {
+        this(ttl, serveAuthenticatedFromCache, DEFAULT_MAX_SIZE_IN_KB);
+    }
+
+    public ErrorPageCacheImpl(int ttl, boolean serveAuthenticatedFromCache, long maxSizeInKB) throws NotCompliantMBeanException {
         super(ErrorPageCacheMBean.class);
         this.ttl = ttl;
         this.serveAuthenticatedFromCache = serveAuthenticatedFromCache;
+        this.maxSizeInKB = maxSizeInKB > 0 ? maxSizeInKB : DEFAULT_MAX_SIZE_IN_KB;
+        // Entries are weighed by their rendered size; placeholders of error pages not rendered yet weigh their key only
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1) // writes only happen on misses; keeps the weight bound cache-wide
+                .maximumWeight(this.maxSizeInKB * KB_IN_BYTES)
+                .weigher((String key, CacheEntry entry) -> key.length() + entry.getBytes())
+                .build();
 
         log.info("Starting ACS AEM Commons Error Page Handler Cache");
         log.info(" > TTL (in seconds): {}", ttl);
         log.info(" > Serve authenticated requests from cache: {}", serveAuthenticatedFromCache);
+        log.info(" > Max size (in KB): {}", this.maxSizeInKB);
     }
 
 
@@ -78,30 +103,30 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
         }
 
         final long start = System.currentTimeMillis();
-        CacheEntry cacheEntry = cache.get(path);
-        final boolean newEntry = cacheEntry == null;
-
-        if (newEntry || cacheEntry.isExpired(new Date())) {
+        CacheEntry cacheEntry = cache.getIfPresent(path);
 
-            // Cache Miss
-            String data = getIncludeAsString(path, request, response);
-
-            if (data == null) {
-                log.debug("Error page representation to cache is null. Setting to empty string.");
-                data = "";
-            }
-
-            if (newEntry) {
-                cacheEntry = new CacheEntry();
-            }
+        if (cacheEntry == null) {
+            final CacheEntry newEntry = new CacheEntry();
+            final CacheEntry existing = cache.asMap().putIfAbsent(path, newEntry);
+            cacheEntry = existing == null ? newEntry : existing;
+        }
 
-            cacheEntry.setData(data);
-            cacheEntry.setExpiresIn(ttl);
-            cacheEntry.incrementMisses();
+        if (!cacheEntry.isExpired(new Date())) {
+            // Cache Hit
+            return serveHit(path, cacheEntry, start, "HIT");
+        }
 
-            if (newEntry) {
-                // Add entry to cache
-                cache.put(path, cacheEntry);
+        if (cacheEntry.tryBeginRefresh()) {
+            // Cache Miss; this request renders the error page on behalf of all concurrent requests
+            try {
+                cacheEntry.setData(getIncludeAsString(path, request, response));
+                cacheEntry.setExpiresIn(ttl);
+                cacheEntry.incrementMisses();
+
+                // Re-weigh the entry, unless it was invalidated or evicted while rendering
+                cache.asMap().replace(path, cacheEntry, cacheEntry);
+            } finally {
+                cacheEntry.endRefresh();
             }
 
             if (log.isDebugEnabled()) {
@@ -109,21 +134,83 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
                 log.debug("Served cache MISS for [ {} ] in [ {} ] ms", path, time);
             }
 
-            return data;
+            return cacheEntry.getData();
+        } else if (cacheEntry.isPopulated()) {
+            // Another request is refreshing this entry; serve the stale data meanwhile
+            return serveHit(path, cacheEntry, start, "STALE HIT");
+        } else if (awaitFirstRender(cacheEntry)) {
+            // The first rendering of this error page was in flight; serve its result
+            return serveHit(path, cacheEntry, start, "HIT");
         } else {
-            // Cache Hit
+            // The first rendering did not finish in time or failed; render without caching
+            log.debug("First rendering of [ {} ] did not finish within {} ms, rendering it again", path,
+                    firstRenderTimeoutMillis);
+            cacheEntry.incrementMisses();
+            return StringUtils.defaultString(getIncludeAsString(path, request, response));
+        }
+    }
 
-            final String data = cacheEntry.getData();
+    private boolean awaitFirstRender(final CacheEntry cacheEntry) {
+        try {
+            return cacheEntry.awaitPopulated(firstRenderTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            cacheEntry.incrementHits();
-            cache.put(path, cacheEntry);
+    private String serveHit(final String path, final CacheEntry cacheEntry, final long start, final String type) {
+        final String data = cacheEntry.getData();
 
-            if (log.isDebugEnabled()) {
-                final long time = System.currentTimeMillis() - start;
-                log.debug("Served cache HIT for [ {} ] in [ {} ] ms", path, time);
+        cacheEntry.incrementHits();
+
+        if (log.isDebugEnabled()) {
+            final long time = System.currentTimeMillis() - start;
+            log.debug("Served cache {} for [ {} ] in [ {} ] ms", type, path, time);
+        }
+
+        return data;
+    }
+
+    /**
+     * Removes the cached representations of an error page, e.g. once it is (de)activated.
+     *
+     * @param pagePath the path of the error page, of its content or of one of its ancestors
+     * @return the number of removed entries
+     */
+    public final int invalidate(final String pagePath) {
+        int removed = 0;
+
+        for (final String key : cache.asMap().keySet()) {
+            final int dot = key.indexOf('.', key.lastIndexOf('/'));
+            final String resourcePath = dot < 0 ? key : key.substring(0, dot);
+            if (StringUtils.equals(pagePath, resourcePath)
+                    || StringUtils.startsWith(pagePath, resourcePath + "/" + JcrConstants.JCR_CONTENT)
+                    || StringUtils.startsWith(resourcePath, pagePath + "/")) {
+                cache.invalidate(key);
+                removed++;
             }
+        }
 
-            return data;
+        if (removed > 0) {
+            log.debug("Invalidated [ {} ] error page cache entries for [ {} ]", removed, pagePath);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void handleEvent(final Event event) {
+        ReplicationAction replicationAction = ReplicationAction.fromEvent(event);
+        if (replicationAction == null) {
+            final ReplicationEvent replicationEvent = ReplicationEvent.fromEvent(event);
+            replicationAction = replicationEvent == null ? null : replicationEvent.getReplicationAction();
+        }
+
+        if (replicationAction != null && replicationAction.getPaths() != null) {
+            for (final String path : replicationAction.getPaths()) {
+                invalidate(path);
+            }
         }
     }
 
@@ -138,11 +225,17 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
         return ttl;
     }
 
+    @Override
+    @SuppressWarnings("checkstyle:abbreviationaswordinname")
+    public final long getMaxCacheSizeInKB() {
+        return maxSizeInKB;
+    }
+
     @Override
     public final int getTotalHits() {
         int hits = 0;
 
-        for (final CacheEntry entry : this.cache.values()) {
+        for (final CacheEntry entry : this.cache.asMap().values()) {
             hits = hits + entry.getHits();
         }
 
@@ -151,14 +244,14 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
 
     @Override
     public final int getCacheEntriesCount() {
-        return this.cache.size();
+        return (int) this.cache.size();
     }
 
     @Override
     public final int getTotalMisses() {
         int misses = 0;
 
-        for (final Map.Entry<String, CacheEntry> entry : this.cache.entrySet()) {
+        for (final Map.Entry<String, CacheEntry> entry : this.cache.asMap().entrySet()) {
             misses = misses + entry.getValue().getMisses();
         }
 
@@ -174,7 +267,7 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
     public final long getCacheSizeInKB() {
         long bytes = 0;
 
-        for (final CacheEntry entry : this.cache.values()) {
+        for (final CacheEntry entry : this.cache.asMap().values()) {
             bytes = bytes + entry.getBytes();
         }
 
@@ -201,7 +294,7 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
                         new String[]{"errorPage" })
         );
 
-        for (final Map.Entry<String, CacheEntry> entry : this.cache.entrySet()) {
+        for (final Map.Entry<String, CacheEntry> entry : this.cache.asMap().entrySet()) {
             final CacheEntry cacheEntry = entry.getValue();
 
             final Map<String, Object> data = new HashMap<String, Object>();
@@ -222,12 +315,12 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
 
     @Override
     public final void clearCache() {
-        this.cache.clear();
+        this.cache.invalidateAll();
     }
 
     @Override
     public final String getCacheData(final String errorPage) {
-        final CacheEntry cacheEntry = this.cache.get(StringUtils.trim(errorPage));
+        final CacheEntry cacheEntry = this.cache.getIfPresent(StringUtils.trim(errorPage));
         if (cacheEntry == null) {
             return "";
         }
@@ -235,6 +328,11 @@ public class ErrorPageCacheImpl extends AnnotatedStandardMBean implements ErrorP
         return cacheEntry.getData();
     }
 
+    @Override
+    public final int invalidateCacheData(final String errorPage) {
+        return invalidate(StringUtils.trim(errorPage));
+    }
+
     public String getIncludeAsString(final String path, final SlingHttpServletRequest slingRequest, final SlingHttpServletResponse slingResponse) {
        return ResourceDataUtil.getIncludeAsString(path, slingRequest, slingResponse);
     }
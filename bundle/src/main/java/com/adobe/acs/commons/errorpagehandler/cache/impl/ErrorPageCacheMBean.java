@@ -44,6 +44,10 @@ public interface ErrorPageCacheMBean {
     @SuppressWarnings("checkstyle:abbreviationaswordinname")
     long getCacheSizeInKB();
 
+    @Description("Maximum cache size in KB, beyond which the least recently used error pages are evicted")
+    @SuppressWarnings("checkstyle:abbreviationaswordinname")
+    long getMaxCacheSizeInKB();
+
     @Description("Details for each cache entry")
     TabularData getCacheEntries() throws OpenDataException;
 
@@ -53,4 +57,7 @@ public interface ErrorPageCacheMBean {
 
     @Description("Get the cached data for a specific Error Page. (Ex. getCacheData('/content/site/error/404.html'))")
     String getCacheData(String errorPage);
+
+    @Description("Invalidate the cached data for an Error Page and the resources below it. (Ex. invalidateCacheData('/content/site/error/404'))")
+    int invalidateCacheData(String errorPage);
 }
@@ -64,6 +64,8 @@ import org.apache.sling.auth.core.AuthUtil;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,6 +78,8 @@ import com.day.cq.commons.PathInfo;
 import com.day.cq.commons.inherit.HierarchyNodeInheritanceValueMap;
 import com.day.cq.commons.inherit.InheritanceValueMap;
 import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.replication.ReplicationAction;
+import com.day.cq.replication.ReplicationEvent;
 
 @Component(
         label = "ACS AEM Commons - Error Page Handler",
@@ -212,6 +216,12 @@ public final class ErrorPageHandlerImpl implements ErrorPageHandlerService {
     private static final String PROP_TTL = "cache.ttl";
     private static final String LEGACY_PROP_TTL = "ttl";
 
+    @Property(label = "Max cache size (in KB)",
+            description = "Maximum size of all cached error pages in KB. Least recently used error pages are evicted "
+                    + "beyond it. [ Default: 10000 ]",
+            longValue = ErrorPageCacheImpl.DEFAULT_MAX_SIZE_IN_KB)
+    private static final String PROP_MAX_SIZE_IN_KB = "cache.max-size-in-kb";
+
     /* Enable/Disables error images */
     private static final boolean DEFAULT_ERROR_IMAGES_ENABLED = false;
 
@@ -897,14 +907,19 @@ public final class ErrorPageHandlerImpl implements ErrorPageHandlerService {
         boolean serveAuthenticatedFromCache = PropertiesUtil.toBoolean(config.get(PROP_SERVE_AUTHENTICATED_FROM_CACHE),
                 PropertiesUtil.toBoolean(LEGACY_PROP_SERVE_AUTHENTICATED_FROM_CACHE,
                         DEFAULT_SERVE_AUTHENTICATED_FROM_CACHE));
+
+        long maxSizeInKB = PropertiesUtil.toLong(config.get(PROP_MAX_SIZE_IN_KB),
+                ErrorPageCacheImpl.DEFAULT_MAX_SIZE_IN_KB);
         try {
-            cache = new ErrorPageCacheImpl(ttl, serveAuthenticatedFromCache);
+            cache = new ErrorPageCacheImpl(ttl, serveAuthenticatedFromCache, maxSizeInKB);
 
             Dictionary<String, Object> serviceProps = new Hashtable<String, Object>();
             serviceProps.put("jmx.objectname", "com.adobe.acs.commons:type=ErrorPageHandlerCache");
+            // Replicated error pages are invalidated from the cache
+            serviceProps.put(EventConstants.EVENT_TOPIC, new String[]{ReplicationAction.EVENT_TOPIC, ReplicationEvent.EVENT_TOPIC});
 
-            cacheRegistration = componentContext.getBundleContext().registerService(DynamicMBean.class.getName(),
-                    cache, serviceProps);
+            cacheRegistration = componentContext.getBundleContext().registerService(
+                    new String[]{DynamicMBean.class.getName(), EventHandler.class.getName()}, cache, serviceProps);
         } catch (NotCompliantMBeanException e) {
             log.error("Unable to create cache", e);
         }
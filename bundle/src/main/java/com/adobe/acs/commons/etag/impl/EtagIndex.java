@@ -0,0 +1,173 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.etag.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/** Remembers the ETag of the last response per request, so that conditional requests can be answered without rendering the
+ * response again. An entry is only valid as long as the last modification date of the requested resource is unchanged, and it
+ * is dropped when the requested resource or its subtree changes. */
+class EtagIndex {
+
+    static final class Entry {
+        private final String resourcePath;
+        private final String etag;
+        private final long lastModified;
+        private final long contentLength;
+        private final Map<String, List<String>> headers;
+
+        Entry(String resourcePath, String etag, long lastModified, long contentLength, Map<String, List<String>> headers) {
+            this.resourcePath = resourcePath;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentLength = contentLength;
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        String getResourcePath() {
+            return resourcePath;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        long getContentLength() {
+            return contentLength;
+        }
+
+        /** @return the headers which need to be sent along with a 304 response */
+        Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+    }
+
+    private final Cache<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    EtagIndex(long maxEntries, long ttlSeconds) {
+        entries = CacheBuilder.newBuilder().maximumSize(maxEntries).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    }
+
+    /** @param request the request
+     * @return the key identifying the response, built from the resource path, selectors, extension, suffix and query string */
+    static String getKey(SlingHttpServletRequest request) {
+        RequestPathInfo pathInfo = request.getRequestPathInfo();
+        StringBuilder key = new StringBuilder(pathInfo.getResourcePath());
+        if (pathInfo.getSelectorString() != null) {
+            key.append('.').append(pathInfo.getSelectorString());
+        }
+        if (pathInfo.getExtension() != null) {
+            key.append('.').append(pathInfo.getExtension());
+        }
+        if (pathInfo.getSuffix() != null) {
+            key.append(pathInfo.getSuffix());
+        }
+        if (StringUtils.isNotEmpty(request.getQueryString())) {
+            key.append('?').append(request.getQueryString());
+        }
+        return key.toString();
+    }
+
+    /** @param key the request key
+     * @param lastModified the current last modification date of the requested resource
+     * @return the entry, or {@code null} if there is none or it was created for another version of the resource */
+    Entry get(String key, long lastModified) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.getLastModified() != lastModified) {
+            entries.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    /** Drops all entries for resources which are affected by a change of the given paths, i.e. the changed path is the resource
+     * itself, below it, or above it.
+     * 
+     * @param changedPaths the changed paths */
+    void invalidate(Collection<String> changedPaths) {
+        if (changedPaths.isEmpty()) {
+            return;
+        }
+        entries.asMap().values().removeIf(entry -> changedPaths.stream()
+                .anyMatch(changedPath -> isAffected(entry.getResourcePath(), changedPath)));
+    }
+
+    static boolean isAffected(String resourcePath, String changedPath) {
+        return changedPath.equals(resourcePath)
+                || changedPath.startsWith(resourcePath + "/")
+                || resourcePath.startsWith(changedPath + "/");
+    }
+
+    void clear() {
+        entries.invalidateAll();
+    }
+
+    long size() {
+        return entries.size();
+    }
+
+    void recordHit(Entry entry) {
+        hits.increment();
+        bytesSaved.add(entry.getContentLength());
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        bytesSaved.reset();
+    }
+}
@@ -24,12 +24,21 @@ import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -42,11 +51,17 @@ import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.engine.EngineConstants;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -56,14 +71,23 @@ import org.slf4j.LoggerFactory;
 import com.adobe.acs.commons.etag.impl.EtagMessageDigestServletFilter.Config;
 import com.adobe.acs.commons.util.BufferedServletOutput.ResponseWriteMethod;
 import com.adobe.acs.commons.util.BufferedSlingHttpServletResponse;
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
 import com.google.common.io.BaseEncoding;
 
 /** Generates the ETag response header from a message digest of the response. This header is supposed to be cached also on the
- * dispatcher! */
-@Component(configurationPolicy = ConfigurationPolicy.REQUIRE, property = EngineConstants.SLING_FILTER_SCOPE + "="
-        + EngineConstants.FILTER_SCOPE_REQUEST)
+ * dispatcher!
+ * 
+ * Optionally the ETags are kept in an index, so that conditional requests for an unchanged resource can be answered with a 304
+ * without rendering the response at all. */
+@Component(service = { Filter.class, DynamicMBean.class },
+        configurationPolicy = ConfigurationPolicy.REQUIRE, property = {
+        EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+        "jmx.objectname=com.adobe.acs.commons:type=ETag Filter" })
 @Designate(ocd = Config.class)
-public class EtagMessageDigestServletFilter implements Filter {
+public class EtagMessageDigestServletFilter extends AnnotatedStandardMBean
+        implements Filter, ResourceChangeListener, EtagMessageDigestServletFilterMBean {
 
     private static final String WEAK_TAG_PREFIX = "W/";
 
@@ -98,16 +122,44 @@ public class EtagMessageDigestServletFilter implements Filter {
 
         @AttributeDefinition(name = "Add as HTML comment", description = "If set to 'true' this filter will also emit a HTML comment at the very end of each HTML document exposing the ETag. This may be helpful to debug issues with stale HTML cache entries in case the ETag header is not properly propagated.")
         boolean addAsHtmlComment() default false;
+
+        @AttributeDefinition(name = "Answer conditional requests from index", description = "If set to 'true' the ETag of each anonymous GET response is remembered per resource path, selectors, extension, suffix and query string. A request with a matching If-None-Match header is then answered with a 304 without rendering the response, as long as the last modification date of the requested resource is unchanged and neither the resource nor its subtree changed. Only enable this if the responses do not depend on other resources than the requested one, or if a stale 304 for up to the configured time to live is acceptable.")
+        boolean indexEnabled() default false;
+
+        @AttributeDefinition(name = "Index size", description = "The maximum number of ETags kept in the index.")
+        int indexMaxEntries() default 10000;
+
+        @AttributeDefinition(name = "Index time to live", description = "The number of seconds after which an ETag is removed from the index, independent of any changes.")
+        int indexTtlSeconds() default 300;
+
+        @AttributeDefinition(name = "Index invalidation paths", description = "Changes below these paths invalidate the ETags of the affected resources in the index.")
+        String[] resource_paths() default { "/content" };
     }
 
     private static final Logger log = LoggerFactory.getLogger(EtagMessageDigestServletFilter.class);
 
     private Config configuration;
     private Collection<String> ignoredHeaderNames;
+    private EtagIndex etagIndex;
+    private ServiceRegistration<ResourceChangeListener> resourceChangeListenerRegistration;
+
+    public EtagMessageDigestServletFilter() throws NotCompliantMBeanException {
+        super(EtagMessageDigestServletFilterMBean.class);
+    }
 
     @Activate
-    public void activate(Config configuration) {
+    public void activate(BundleContext bundleContext, Config configuration) {
         this.configuration = configuration;
+        unregisterResourceChangeListener();
+        if (configuration.indexEnabled()) {
+            etagIndex = new EtagIndex(configuration.indexMaxEntries(), configuration.indexTtlSeconds());
+            // only listen to changes if there is an index to invalidate
+            Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put(ResourceChangeListener.PATHS, configuration.resource_paths());
+            resourceChangeListenerRegistration = bundleContext.registerService(ResourceChangeListener.class, this, properties);
+        } else {
+            etagIndex = null;
+        }
         if (configuration.ignoredResponseHeaders() != null && configuration.ignoredResponseHeaders().length > 0) {
             // turn to lower case
             ignoredHeaderNames = Arrays.asList(configuration.ignoredResponseHeaders()).stream().map(String::toLowerCase)
@@ -117,6 +169,19 @@ public class EtagMessageDigestServletFilter implements Filter {
         }
     }
 
+    @Deactivate
+    public void deactivate() {
+        unregisterResourceChangeListener();
+        etagIndex = null;
+    }
+
+    private void unregisterResourceChangeListener() {
+        if (resourceChangeListenerRegistration != null) {
+            resourceChangeListenerRegistration.unregister();
+            resourceChangeListenerRegistration = null;
+        }
+    }
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         // no-op
@@ -150,6 +215,18 @@ public class EtagMessageDigestServletFilter implements Filter {
     }
 
     private void doFilterWithMessageDigest(SlingHttpServletRequest slingHttpServletRequest, SlingHttpServletResponse slingHttpServletResponse,  FilterChain chain) throws IOException, ServletException {
+        String indexKey = null;
+        long lastModified = 0;
+        EtagIndex index = etagIndex;
+        // responses for authenticated users may differ per user, which the index cannot tell apart
+        if (index != null && slingHttpServletRequest.getMethod().equals(HttpConstants.METHOD_GET)
+                && slingHttpServletRequest.getAuthType() == null) {
+            indexKey = EtagIndex.getKey(slingHttpServletRequest);
+            lastModified = getLastModified(slingHttpServletRequest.getResource());
+            if (isUnmodifiedAccordingToIndex(index, indexKey, lastModified, slingHttpServletRequest, slingHttpServletResponse)) {
+                return;
+            }
+        }
         ByteArrayOutputStream outputStream = configuration.enabledForOutputStream() ? new ByteArrayOutputStream() : null;
         try (BufferedSlingHttpServletResponse bufferedResponse = new BufferedSlingHttpServletResponse(slingHttpServletResponse,
                 new StringWriter(), outputStream)) {
@@ -175,6 +252,10 @@ public class EtagMessageDigestServletFilter implements Filter {
                 slingHttpServletRequest.getRequestProgressTracker().log("ETag from digest calculated with {0}: {1}",
                         configuration.messageDigestAlgorithm(), digest);
                 slingHttpServletResponse.setHeader(HttpConstants.HEADER_ETAG, "\"" + digest + "\"");
+                if (indexKey != null && slingHttpServletResponse.getStatus() == HttpStatus.SC_OK) {
+                    index.put(indexKey, new EtagIndex.Entry(slingHttpServletRequest.getResource().getPath(), digest, lastModified,
+                            getContentLength(bufferedResponse), getHeadersFor304(slingHttpServletResponse)));
+                }
                 if (isUnmodified(slingHttpServletRequest.getHeaders(HttpHeaders.IF_NONE_MATCH), digest)) {
                     log.debug(
                             "Digest is equal to one of the given ETags in the If-None-Match request header, returning empty response with a 304");
@@ -194,6 +275,66 @@ public class EtagMessageDigestServletFilter implements Filter {
         }
     }
 
+    /** Answers a conditional request with a 304 if the ETag in the index for the requested (and unchanged) resource matches.
+     * 
+     * @return {@code true} in case the response was not modified and a 304 was sent, otherwise {@code false} */
+    private boolean isUnmodifiedAccordingToIndex(EtagIndex index, String indexKey, long lastModified,
+            SlingHttpServletRequest slingHttpServletRequest, SlingHttpServletResponse slingHttpServletResponse) {
+        Enumeration<String> ifNoneMatchETags = slingHttpServletRequest.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatchETags == null || !ifNoneMatchETags.hasMoreElements()) {
+            return false;
+        }
+        EtagIndex.Entry entry = index.get(indexKey, lastModified);
+        if (entry == null || !isUnmodified(ifNoneMatchETags, entry.getEtag())) {
+            index.recordMiss();
+            return false;
+        }
+        log.debug("ETag from index is equal to one of the given ETags in the If-None-Match request header, returning a 304 without rendering");
+        index.recordHit(entry);
+        slingHttpServletRequest.getRequestProgressTracker().log("ETag {0} from index matches, skipping rendering", entry.getEtag());
+        slingHttpServletResponse.setHeader(HttpConstants.HEADER_ETAG, "\"" + entry.getEtag() + "\"");
+        for (Map.Entry<String, List<String>> header : entry.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                slingHttpServletResponse.addHeader(header.getKey(), value);
+            }
+        }
+        slingHttpServletResponse.setStatus(HttpStatus.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /** @return the last modification date of the resource or of its content node, or -1 if unknown */
+    static long getLastModified(Resource resource) {
+        long lastModified = resource.getResourceMetadata().getModificationTime();
+        Resource content = resource.getChild(JcrConstants.JCR_CONTENT);
+        if (content != null) {
+            Calendar pageLastModified = content.getValueMap().get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+            if (pageLastModified != null) {
+                lastModified = Math.max(lastModified, pageLastModified.getTimeInMillis());
+            }
+        }
+        return lastModified;
+    }
+
+    /** @return the number of bytes of a binary response, or the number of characters of a text response */
+    private static long getContentLength(BufferedSlingHttpServletResponse bufferedResponse) {
+        if (bufferedResponse.getBufferedServletOutput().getWriteMethod() == ResponseWriteMethod.OUTPUTSTREAM) {
+            return bufferedResponse.getBufferedServletOutput().getBufferedBytes().length;
+        }
+        return bufferedResponse.getBufferedServletOutput().getBufferedString().length();
+    }
+
+    /** @return the ignored response headers, which are to be sent along with a 304 response as well (except for the date) */
+    private Map<String, List<String>> getHeadersFor304(SlingHttpServletResponse slingHttpServletResponse) {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (String name : slingHttpServletResponse.getHeaderNames()) {
+            String lowerCaseName = name.toLowerCase();
+            if (ignoredHeaderNames.contains(lowerCaseName) && !HttpHeaders.DATE.equalsIgnoreCase(name)) {
+                headers.put(name, new ArrayList<>(slingHttpServletResponse.getHeaders(name)));
+            }
+        }
+        return headers;
+    }
+
     /** Handles conditional requests like outlined in RFC7232.
      * 
      * @param slingHttpServletRequest
@@ -262,6 +403,48 @@ public class EtagMessageDigestServletFilter implements Filter {
         return hexDigest;
     }
 
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        EtagIndex index = etagIndex;
+        if (index != null) {
+            index.invalidate(changes.stream().map(ResourceChange::getPath).collect(Collectors.toSet()));
+        }
+    }
+
+    @Override
+    public long getIndexHits() {
+        return etagIndex != null ? etagIndex.getHits() : 0;
+    }
+
+    @Override
+    public long getIndexMisses() {
+        return etagIndex != null ? etagIndex.getMisses() : 0;
+    }
+
+    @Override
+    public long getIndexBytesSaved() {
+        return etagIndex != null ? etagIndex.getBytesSaved() : 0;
+    }
+
+    @Override
+    public long getIndexSize() {
+        return etagIndex != null ? etagIndex.size() : 0;
+    }
+
+    @Override
+    public void clearIndex() {
+        if (etagIndex != null) {
+            etagIndex.clear();
+        }
+    }
+
+    @Override
+    public void resetIndexStatistics() {
+        if (etagIndex != null) {
+            etagIndex.resetStatistics();
+        }
+    }
+
     @Override
     public void destroy() {
         // no-op
@@ -0,0 +1,42 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.etag.impl;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@Description("ACS AEM Commons - Digest-based ETag Servlet Filter")
+public interface EtagMessageDigestServletFilterMBean {
+
+    @Description("Number of conditional requests answered with a 304 from the ETag index without rendering the response")
+    long getIndexHits();
+
+    @Description("Number of conditional requests which could not be answered from the ETag index")
+    long getIndexMisses();
+
+    @Description("Size of the responses which did not need to be rendered because of ETag index hits (number of characters for text responses)")
+    long getIndexBytesSaved();
+
+    @Description("Number of entries in the ETag index")
+    long getIndexSize();
+
+    @Description("Remove all entries from the ETag index")
+    void clearIndex();
+
+    @Description("Reset the hit, miss and bytes saved statistics")
+    void resetIndexStatistics();
+}
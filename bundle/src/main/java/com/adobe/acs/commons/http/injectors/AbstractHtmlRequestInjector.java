@@ -45,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import com.adobe.acs.commons.util.BufferedHttpServletResponse;
 import com.adobe.acs.commons.util.BufferedServletOutput.ResponseWriteMethod;
+import com.adobe.acs.commons.util.impl.InjectingHttpServletResponse;
 
 public abstract class AbstractHtmlRequestInjector implements Filter {
     private static final Logger log = LoggerFactory.getLogger(AbstractHtmlRequestInjector.class);
@@ -69,6 +70,17 @@ public abstract class AbstractHtmlRequestInjector implements Filter {
         final HttpServletRequest request = (HttpServletRequest) servletRequest;
         final HttpServletResponse response = (HttpServletResponse) servletResponse;
 
+        final String injectionMarker = getInjectMarker();
+        if (injectionMarker != null) {
+            // Stream the response, injecting in front of the marker as it passes by
+            try (InjectingHttpServletResponse injectingResponse = new InjectingHttpServletResponse(response,
+                    injectionMarker, InjectingHttpServletResponse.Position.FIRST, () -> true,
+                    printWriter -> inject(request, response, printWriter))) {
+                filterChain.doFilter(request, injectingResponse);
+            }
+            return;
+        }
+
         // Prepare to capture the original response
         try (BufferedHttpServletResponse originalResponse = new BufferedHttpServletResponse(response, new StringWriter(), null)) {
 
@@ -106,6 +118,18 @@ public abstract class AbstractHtmlRequestInjector implements Filter {
 
     protected abstract int getInjectIndex(String originalContents);
 
+    /**
+     * Injectors which inject in front of the first occurrence of a fixed marker (like {@code </body>}) should return
+     * it here. The response is then streamed to the client and the content is injected as the marker passes by,
+     * instead of buffering the whole response to call {@link #getInjectIndex(String)}.
+     *
+     * @return the marker to inject in front of, or {@code null} to buffer the response and use
+     * {@link #getInjectIndex(String)}
+     */
+    protected String getInjectMarker() {
+        return null;
+    }
+
     @Override
     public void destroy() {
 
@@ -18,5 +18,5 @@
 /**
  * Http Injectors.
  */
-@org.osgi.annotation.versioning.Version("2.1.2")
+@org.osgi.annotation.versioning.Version("2.2.0")
 package com.adobe.acs.commons.http.injectors;
\ No newline at end of file
@@ -195,4 +195,34 @@ public interface HttpCacheConfig {
     default long getExpiryForUpdate() {
         return -1L;
     }
+
+    /**
+     * Determines if concurrent cache misses for the same cache key are coalesced: only the first request renders the
+     * response, the others wait for it to be cached and are served from the cache.
+     *
+     * @return true if request coalescing is enabled for this config
+     */
+    default boolean isRequestCoalescingEnabled() {
+        return false;
+    }
+
+    /**
+     * Gets the maximum time a coalesced request waits for the response to be cached, before rendering it itself.
+     * Value is in miliseconds.
+     *
+     * @return the request coalescing timeout
+     */
+    default long getRequestCoalescingTimeout() {
+        return 0L;
+    }
+
+    /**
+     * Determines if stale content is served: when the cache store still keeps an invalidated or expired entry, it is
+     * delivered while a single request renders the fresh response.
+     *
+     * @return true if stale content is served for this config
+     */
+    default boolean isServeStaleEnabled() {
+        return false;
+    }
 }
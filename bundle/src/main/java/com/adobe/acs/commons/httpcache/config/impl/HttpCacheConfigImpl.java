@@ -54,6 +54,7 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -79,6 +80,8 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 @Service
 public class HttpCacheConfigImpl implements HttpCacheConfig {
     private static final Logger log = LoggerFactory.getLogger(HttpCacheConfigImpl.class);
+    /** Back references, quotes and comments in a regex */
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z-]*x");
     static final String FILTER_SCOPE_REQUEST = "REQUEST";
     static final String FILTER_SCOPE_INCLUDE = "INCLUDE";
 
@@ -100,6 +103,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
     static final String PROP_REQUEST_URI_PATTERNS = "httpcache.config.requesturi.patterns";
     private List<String> requestUriPatterns;
     private List<Pattern> requestUriPatternsAsRegEx = Collections.emptyList();
+    private Pattern requestUriPatternsCombined;
 
     // Request URIs - Blacklisted.
     @Property(label = "Blacklisted request URI patterns",
@@ -109,6 +113,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
     static final String PROP_BLACKLISTED_REQUEST_URI_PATTERNS =
             "httpcache.config.requesturi.patterns.blacklisted";
     private List<Pattern> blacklistedRequestUriPatternsAsRegEx = Collections.emptyList();
+    private Pattern blacklistedRequestUriPatternsCombined;
 
     // Authentication requirement
     // @formatter:off
@@ -136,6 +141,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
               cardinality = Integer.MAX_VALUE)
     static final String PROP_CACHE_INVALIDATION_PATH_PATTERNS = "httpcache.config.invalidation.oak.paths";
     private List<Pattern> cacheInvalidationPathPatternsAsRegEx = Collections.emptyList();
+    private Pattern cacheInvalidationPathPatternsCombined;
 
     // Cache store
     // @formatter:off
@@ -250,6 +256,28 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
     static final String PROP_EXPIRY_ON_UPDATE = "httpcache.config.expiry.on.update";
     static final long DEFAULT_EXPIRY_ON_UPDATE = 0L;
     private long expiryOnUpdate;
+
+    @Property(label = "Request coalescing",
+        description = "Lets only the first of concurrent cache misses for the same cache key render the response, while the others wait for it to be cached.",
+        boolValue = HttpCacheConfigImpl.DEFAULT_REQUEST_COALESCING)
+    static final String PROP_REQUEST_COALESCING = "httpcache.config.request-coalescing";
+    static final boolean DEFAULT_REQUEST_COALESCING = false;
+    private boolean requestCoalescing;
+
+    @Property(label = "Request coalescing timeout",
+        description = "Maximum time in milliseconds a coalesced request waits for the response to be cached, before rendering it itself.",
+        longValue = HttpCacheConfigImpl.DEFAULT_REQUEST_COALESCING_TIMEOUT)
+    static final String PROP_REQUEST_COALESCING_TIMEOUT = "httpcache.config.request-coalescing.timeout";
+    static final long DEFAULT_REQUEST_COALESCING_TIMEOUT = 5000L;
+    private long requestCoalescingTimeout;
+
+    @Property(label = "Serve stale",
+        description = "Serves the stale entry kept by the cache store for an invalidated or expired response, while a single request refreshes it. "
+                + "Requires a grace period on the cache store.",
+        boolValue = HttpCacheConfigImpl.DEFAULT_SERVE_STALE)
+    static final String PROP_SERVE_STALE = "httpcache.config.serve-stale";
+    static final boolean DEFAULT_SERVE_STALE = false;
+    private boolean serveStale;
     private String cacheConfigExtensionTarget;
     private String cacheKeyFactoryTarget;
 
@@ -263,6 +291,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
         requestUriPatterns = Arrays.asList(PropertiesUtil.toStringArray(configs.get(PROP_REQUEST_URI_PATTERNS), new
                 String[]{}));
         requestUriPatternsAsRegEx = compileToPatterns(requestUriPatterns);
+        requestUriPatternsCombined = combine(requestUriPatternsAsRegEx);
 
         responseHeaderExclusions = ParameterUtil.toPatterns(PropertiesUtil.toStringArray(configs.get(PROP_RESPONSE_HEADER_EXCLUSIONS), new String[]{}));
         excludedCookieKeys = Arrays.asList(PropertiesUtil.toStringArray(configs.get(PROP_RESPONSE_COOKIE_KEY_EXCLUSIONS), new String[]{}));
@@ -271,6 +300,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
         List<String> blacklistedRequestUriPatterns = Arrays.asList(PropertiesUtil.toStringArray(configs
                 .get(PROP_BLACKLISTED_REQUEST_URI_PATTERNS), new String[]{}));
         blacklistedRequestUriPatternsAsRegEx = compileToPatterns(blacklistedRequestUriPatterns);
+        blacklistedRequestUriPatternsCombined = combine(blacklistedRequestUriPatternsAsRegEx);
 
         // Authentication requirement.
         authenticationRequirement = PropertiesUtil.toString(configs.get(PROP_AUTHENTICATION_REQUIREMENT),
@@ -284,10 +314,18 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
         expiryOnAccess = PropertiesUtil.toLong(configs.get(PROP_EXPIRY_ON_ACCESS), DEFAULT_EXPIRY_ON_ACCESS);
         expiryOnUpdate = PropertiesUtil.toLong(configs.get(PROP_EXPIRY_ON_UPDATE), DEFAULT_EXPIRY_ON_UPDATE);
 
+        // Request coalescing
+        requestCoalescing = PropertiesUtil.toBoolean(configs.get(PROP_REQUEST_COALESCING), DEFAULT_REQUEST_COALESCING);
+        requestCoalescingTimeout = PropertiesUtil.toLong(configs.get(PROP_REQUEST_COALESCING_TIMEOUT), DEFAULT_REQUEST_COALESCING_TIMEOUT);
+
+        // Stale content
+        serveStale = PropertiesUtil.toBoolean(configs.get(PROP_SERVE_STALE), DEFAULT_SERVE_STALE);
+
         // Cache invalidation paths.
         List<String> cacheInvalidationPathPatterns = Arrays.asList(PropertiesUtil.toStringArray(configs
                 .get(PROP_CACHE_INVALIDATION_PATH_PATTERNS), new String[]{}));
         cacheInvalidationPathPatternsAsRegEx = compileToPatterns(cacheInvalidationPathPatterns);
+        cacheInvalidationPathPatternsCombined = combine(cacheInvalidationPathPatternsAsRegEx);
 
         order = PropertiesUtil.toInteger(configs.get(PROP_ORDER), DEFAULT_ORDER);
 
@@ -324,6 +362,37 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
         return patterns;
     }
 
+    /**
+     * Combines compiled Patterns into a single alternation, so that matching takes a single regex evaluation.
+     *
+     * @param patterns the Patterns to combine
+     * @return the combined Pattern, or null if there is nothing to combine or the Patterns cannot be combined safely
+     */
+    private Pattern combine(final List<Pattern> patterns) {
+        if (patterns.size() < 2) {
+            return null;
+        }
+
+        final StringBuilder combined = new StringBuilder();
+        for (Pattern pattern : patterns) {
+            // Group numbering, quoting and comments do not survive the combination.
+            if (pattern.flags() != 0 || NOT_COMBINABLE.matcher(pattern.pattern()).find()) {
+                return null;
+            }
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern.pattern()).append(')');
+        }
+
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            log.debug("Patterns {} cannot be combined", patterns, e);
+            return null;
+        }
+    }
+
     @Deactivate
     protected void deactivate(Map<String, Object> configs) {
         log.info("HttpCacheConfigImpl deactivated.");
@@ -355,14 +424,14 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
 
         // Match request URI.
         final String uri = request.getRequestURI();
-        if (!this.matches(this.requestUriPatternsAsRegEx, uri)) {
+        if (!this.matches(this.requestUriPatternsAsRegEx, this.requestUriPatternsCombined, uri)) {
             // Does not match URI Whitelist
             log.trace("Rejected: Request URI does not match the white-listed URI patterns");
             return false;
         }
 
         // Match blacklisted URI.
-        if (this.matches(this.blacklistedRequestUriPatternsAsRegEx, uri)) {
+        if (this.matches(this.blacklistedRequestUriPatternsAsRegEx, this.blacklistedRequestUriPatternsCombined, uri)) {
             // Matches URI Blacklist; reject
             log.trace("Rejected: Request URI does match a black-listed URI pattern");
             return false;
@@ -382,10 +451,14 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
      * Matching the given data with the set of compiled patterns.
      *
      * @param patterns
+     * @param combined the patterns combined into one, or null
      * @param data
      * @return
      */
-    private boolean matches(List<Pattern> patterns, String data) {
+    private boolean matches(List<Pattern> patterns, Pattern combined, String data) {
+        if (combined != null) {
+            return combined.matcher(data).matches();
+        }
         for (Pattern pattern : patterns) {
             final Matcher matcher = pattern.matcher(data);
             if (matcher.matches()) {
@@ -413,7 +486,7 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
 
     @Override
     public boolean canInvalidate(final String path) {
-        return matches(cacheInvalidationPathPatternsAsRegEx, path);
+        return matches(cacheInvalidationPathPatternsAsRegEx, cacheInvalidationPathPatternsCombined, path);
     }
 
     @Override
@@ -456,6 +529,21 @@ public class HttpCacheConfigImpl implements HttpCacheConfig {
         return expiryOnUpdate;
     }
 
+    @Override
+    public boolean isRequestCoalescingEnabled() {
+        return requestCoalescing;
+    }
+
+    @Override
+    public long getRequestCoalescingTimeout() {
+        return requestCoalescingTimeout;
+    }
+
+    @Override
+    public boolean isServeStaleEnabled() {
+        return serveStale;
+    }
+
     @Override
     public int getOrder() {
         return this.order;
@@ -19,9 +19,11 @@ package com.adobe.acs.commons.httpcache.engine;
 
 import com.adobe.acs.commons.httpcache.exception.HttpCacheDataStreamException;
 import com.adobe.acs.commons.httpcache.store.TempSink;
+import com.adobe.acs.commons.httpcache.util.ByteBufferInputStream;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +45,10 @@ public class CacheContent {
     private Map<String, List<String>> headers = new HashMap<>();
     /** Response content as input stream */
     private InputStream dataInputStream;
+    /** Response content as encoded bytes, if held by the cache store */
+    private ByteBuffer data;
+    /** Gzip compressed variant of the response content, if pre-compressed by the cache store */
+    private ByteBuffer gzipData;
     /** Temp sink attached to this cache content */
     private TempSink tempSink;
 
@@ -121,6 +127,30 @@ public class CacheContent {
         this.dataInputStream = dataInputStream;
     }
 
+    /**
+     * Construct <code>CacheContent</code> from the encoded response bytes held by a cache store. The buffers are
+     * shared with the cache store and must not be modified; they are written to the response as they are.
+     *
+     * @param status
+     * @param charEncoding
+     * @param contentType
+     * @param headers
+     * @param data response content
+     * @param gzipData gzip compressed variant of the response content, or null
+     * @param writeMethod
+     */
+    public CacheContent(int status, String charEncoding, String contentType, Map<String, List<String>> headers,
+            ByteBuffer data, ByteBuffer gzipData, HttpCacheServletResponseWrapper.ResponseWriteMethod writeMethod) {
+
+        this.writeMethod = writeMethod;
+        this.status = status;
+        this.charEncoding = charEncoding;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.data = data;
+        this.gzipData = gzipData;
+    }
+
     /**
      * No argument constructor for the build method.
      */
@@ -194,9 +224,30 @@ public class CacheContent {
      * @return
      */
     public InputStream getInputDataStream() {
+        if (dataInputStream == null && data != null) {
+            dataInputStream = new ByteBufferInputStream(data.duplicate());
+        }
         return dataInputStream;
     }
 
+    /**
+     * Get the response content as encoded bytes, if held by the cache store.
+     *
+     * @return view of the response content that must not be modified, or null if it is only available as a stream
+     */
+    public ByteBuffer getDataBuffer() {
+        return data == null ? null : data.duplicate();
+    }
+
+    /**
+     * Get the gzip compressed variant of the response content, if pre-compressed by the cache store.
+     *
+     * @return view of the compressed response content that must not be modified, or null
+     */
+    public ByteBuffer getGzipDataBuffer() {
+        return gzipData == null ? null : gzipData.duplicate();
+    }
+
     /**
      * Get the temp size attached to this cache content.
      * @return
@@ -97,6 +97,54 @@ public interface HttpCacheEngine {
             cacheConfig) throws HttpCachePersistenceException, HttpCacheKeyCreationException,
             HttpCacheDataStreamException;
 
+    /**
+     * Deliver the stale response kept by the cache store, if serving stale content is enabled for the cache config.
+     * Stale content is not delivered to the first request finding it: that request renders the fresh response, while
+     * the following ones get the stale content until the fresh response is cached. A request rendering the response
+     * must have {@link #releaseCacheMiss(SlingHttpServletRequest, HttpCacheConfig)} called once it is done.
+     *
+     * @param request
+     * @param response
+     * @param cacheConfig
+     * @return True if stale content got delivered.
+     * @throws HttpCachePersistenceException
+     * @throws HttpCacheKeyCreationException
+     * @throws HttpCacheDataStreamException
+     */
+    default boolean deliverStaleCacheContent(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                             HttpCacheConfig cacheConfig) throws HttpCachePersistenceException,
+            HttpCacheKeyCreationException, HttpCacheDataStreamException {
+        return false;
+    }
+
+    /**
+     * Coalesce a cache miss with a concurrent cache miss for the same cache key, if request coalescing is enabled for
+     * the cache config. The first request missing the cache renders the response; the following ones wait for it to
+     * be cached, up to the configured request coalescing timeout. A request rendering the response must have {@link
+     * #releaseCacheMiss(SlingHttpServletRequest, HttpCacheConfig)} called once it is done.
+     *
+     * @param request
+     * @param cacheConfig
+     * @return True if the response got cached while waiting and the request can be served from cache.
+     * @throws HttpCachePersistenceException
+     * @throws HttpCacheKeyCreationException
+     */
+    default boolean coalesceCacheMiss(SlingHttpServletRequest request, HttpCacheConfig cacheConfig) throws
+            HttpCachePersistenceException, HttpCacheKeyCreationException {
+        return false;
+    }
+
+    /**
+     * Release the cache miss rendered by the given request, if it has not been handed over to the cache store
+     * already, so that the requests coalesced with it stop waiting.
+     *
+     * @param request
+     * @param cacheConfig
+     */
+    default void releaseCacheMiss(SlingHttpServletRequest request, HttpCacheConfig cacheConfig) {
+        // no request coalescing
+    }
+
     /**
      * Wrap the response so that response stream can be duplicated.
      *
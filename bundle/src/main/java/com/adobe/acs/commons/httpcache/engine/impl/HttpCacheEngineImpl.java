@@ -62,11 +62,15 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
@@ -121,6 +125,14 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
     /** Method name that binds cache handling rules */
     static final String METHOD_NAME_TO_BIND_CACHE_HANDLING_RULES = "httpCacheHandlingRule";
 
+    /** Request attribute holding the cache misses rendered by a request, when request coalescing is enabled */
+    private static final String ATTR_CACHE_MISSES = HttpCacheEngineImpl.class.getName() + ".cacheMisses";
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+    private static final int WRITE_CHUNK_SIZE = 8192;
+
     // formatter:off
     @Property(label = "Global HttpCacheHandlingRules",
             description = "List of Service pid of HttpCacheHandlingRule applicable for all cache configs.",
@@ -156,6 +168,9 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
 
     private final HttpCacheEngineMBeanDelegate mBeanDelegate = new HttpCacheEngineMBeanDelegate();
     private final HttpCacheEngineBindingsDelegate bindingsDelegate = new HttpCacheEngineBindingsDelegate();
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong staleRefreshes = new AtomicLong();
     //-------------------<OSGi specific methods>---------------//
 
     @Activate
@@ -221,7 +236,8 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         // Get the first accepting cache config based on the cache config order.
         HttpCacheConfig bestCacheConfig = null;
 
-        for (HttpCacheConfig cacheConfig : bindingsDelegate.getCacheConfigs()) {
+        // Only the configs which may accept the request URI are evaluated.
+        for (HttpCacheConfig cacheConfig : bindingsDelegate.getCacheConfigMatcher().getCandidates(request.getRequestURI())) {
             if (bestCacheConfig != null) {
                 // A matching HttpCacheConfig has been found, so check for order + acceptance conflicts
                 if (bestCacheConfig.getOrder() == cacheConfig.getOrder()) {
@@ -264,10 +280,85 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         }
 
         prepareCachedResponse(response, cacheContent);
-        return executeCacheContentDeliver(request, response, cacheContent);
+        return executeCacheContentDeliver(request, response, cacheConfig, cacheContent);
+    }
+
+
+
+    @Override
+    public boolean deliverStaleCacheContent(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                            HttpCacheConfig cacheConfig) throws HttpCacheKeyCreationException,
+            HttpCacheDataStreamException, HttpCachePersistenceException {
+        if (!cacheConfig.isServeStaleEnabled()) {
+            return false;
+        }
+
+        final CacheKey cacheKey = cacheConfig.buildCacheKey(request);
+        final CacheContent staleContent = getCacheStore(cacheConfig).getStaleIfPresent(cacheKey);
+        if (staleContent == null) {
+            return false;
+        }
+
+        final RequestCoalescer.Flight flight = requestCoalescer.lead(cacheKey);
+        if (flight != null || !isRequestDeliverableFromCacheAccordingToHandlingRules(request, response, cacheConfig, staleContent)) {
+            IOUtils.closeQuietly(staleContent.getInputDataStream());
+            if (flight != null) {
+                // First request finding the stale content, this request refreshes the response.
+                getCacheMisses(request, true).put(cacheKey, flight);
+                staleRefreshes.incrementAndGet();
+            }
+            return false;
+        }
+
+        prepareCachedResponse(response, staleContent);
+        final boolean delivered = executeCacheContentDeliver(request, response, cacheConfig, staleContent);
+        staleHits.incrementAndGet();
+        return delivered;
     }
 
+    @Override
+    public boolean coalesceCacheMiss(SlingHttpServletRequest request, HttpCacheConfig cacheConfig) throws
+            HttpCacheKeyCreationException, HttpCachePersistenceException {
+        if (!cacheConfig.isRequestCoalescingEnabled()) {
+            return false;
+        }
+
+        final CacheKey cacheKey = cacheConfig.buildCacheKey(request);
+        final Map<CacheKey, RequestCoalescer.Flight> cacheMisses = getCacheMisses(request, false);
+        if (cacheMisses != null && cacheMisses.containsKey(cacheKey)) {
+            // This request already renders the response, refreshing stale content.
+            return false;
+        }
+        final RequestCoalescer.Flight flight = requestCoalescer.lead(cacheKey);
+        if (flight != null) {
+            // First miss for this key, this request renders the response.
+            getCacheMisses(request, true).put(cacheKey, flight);
+            return false;
+        }
+
+        if (!requestCoalescer.await(cacheKey, cacheConfig.getRequestCoalescingTimeout())) {
+            log.debug("Timed out waiting for a concurrent request to cache the response for the url [ {} ]",
+                    request.getRequestURI());
+            return false;
+        }
+        // Fall through to rendering if the concurrent response did not qualify for caching.
+        return getCacheStore(cacheConfig).contains(cacheKey);
+    }
 
+    @Override
+    public void releaseCacheMiss(SlingHttpServletRequest request, HttpCacheConfig cacheConfig) {
+        final Map<CacheKey, RequestCoalescer.Flight> cacheMisses = getCacheMisses(request, false);
+        if (cacheMisses == null || cacheMisses.isEmpty()) {
+            return;
+        }
+        try {
+            releaseFlight(cacheMisses.remove(cacheConfig.buildCacheKey(request)));
+        } catch (HttpCacheKeyCreationException e) {
+            log.error("Error releasing cache miss, releasing all cache misses of the request", e);
+            cacheMisses.values().forEach(RequestCoalescer.Flight::release);
+            cacheMisses.clear();
+        }
+    }
 
     @Override
     public HttpCacheServletResponseWrapper wrapResponse(SlingHttpServletRequest request, SlingHttpServletResponse
@@ -298,17 +389,32 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         final String contentType = responseWrapper.getContentType();
         
         // Construct the cache content.
+        RequestCoalescer.Flight flight = null;
+        CacheContent cacheContent = null;
         try {
             final CacheKey cacheKey = cacheConfig.buildCacheKey(request);
-            final CacheContent cacheContent = new CacheContent().build(responseWrapper, status, charEncoding, contentType, extractedHeaders);
+            final Map<CacheKey, RequestCoalescer.Flight> cacheMisses = getCacheMisses(request, false);
+            flight = cacheMisses != null ? cacheMisses.remove(cacheKey) : null;
+            cacheContent = new CacheContent().build(responseWrapper, status, charEncoding, contentType, extractedHeaders);
         
             // Persist in cache.
             if (isRequestCachableAccordingToHandlingRules(request, response, cacheConfig, cacheContent)) {
-                throttledTaskRunner.scheduleWork(putToStore(cacheConfig, cacheKey, cacheContent));
+                // The coalesced requests get released and the temp sink input stream gets closed
+                // once the response is in the cache store.
+                throttledTaskRunner.scheduleWork(putToStore(cacheConfig, cacheKey, cacheContent, flight));
+                flight = null;
+                cacheContent = null;
                 log.debug("Response for the URI cached - {}", request.getRequestURI());
             }
         } catch (HttpCacheException e) {
             log.error("Error creating http cache content", e);
+        } finally {
+            releaseFlight(flight);
+            // Close the temp sink input stream of content that was not handed to the cache store,
+            // which also deletes the temp file.
+            if (null != cacheContent) {
+                IOUtils.closeQuietly(cacheContent.getInputDataStream());
+            }
         }
 
     }
@@ -317,8 +423,8 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
     @Override
     public boolean isPathPotentialToInvalidate(String path) {
 
-        // Check all the configs to see if this path is of interest.
-        for (HttpCacheConfig config : bindingsDelegate.getCacheConfigs()) {
+        // Check the configs which may be invalidated by this path to see if it is of interest.
+        for (HttpCacheConfig config : bindingsDelegate.getCacheConfigMatcher().getInvalidationCandidates(path)) {
             if (config.canInvalidate(path)) {
                 return true;
             }
@@ -330,7 +436,7 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
     @Override
     public void invalidateCache(String path) throws HttpCachePersistenceException, HttpCacheKeyCreationException {
         // Find out all the cache config which has this path applicable for invalidation.
-        for (HttpCacheConfig cacheConfig : bindingsDelegate.getCacheConfigs()) {
+        for (HttpCacheConfig cacheConfig : bindingsDelegate.getCacheConfigMatcher().getInvalidationCandidates(path)) {
             if (cacheConfig.canInvalidate(path)) {
                 // Execute custom rules.
                 executeCustomRuleInvalidations(path, cacheConfig);
@@ -338,13 +444,15 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         }
     }
 
-    private Runnable putToStore(final HttpCacheConfig cacheConfig, final CacheKey cacheKey, final CacheContent cacheContent) {
+    private Runnable putToStore(final HttpCacheConfig cacheConfig, final CacheKey cacheKey, final CacheContent cacheContent,
+                                final RequestCoalescer.Flight flight) {
         return () -> {
             try {
-                getCacheStore(cacheConfig).put(cacheKey, cacheContent);
+                getCacheStore(cacheConfig).put(cacheKey, cacheContent, cacheConfig);
             } catch (HttpCacheException e) {
                 log.error("Error storing http response in httpcache", e);
             } finally {
+                releaseFlight(flight);
                 // Close the temp sink input stream.
                 if (null != cacheContent) {
                     IOUtils.closeQuietly(cacheContent.getInputDataStream());
@@ -353,6 +461,30 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         };
     }
 
+    private static void releaseFlight(RequestCoalescer.Flight flight) {
+        if (flight != null) {
+            flight.release();
+        }
+    }
+
+    /**
+     * Get the cache misses rendered by the request. Kept per cache key, as included requests are rendered within the
+     * same request.
+     *
+     * @param request
+     * @param create true to create the cache misses if not present yet
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<CacheKey, RequestCoalescer.Flight> getCacheMisses(SlingHttpServletRequest request, boolean create) {
+        Map<CacheKey, RequestCoalescer.Flight> cacheMisses = (Map<CacheKey, RequestCoalescer.Flight>) request.getAttribute(ATTR_CACHE_MISSES);
+        if (cacheMisses == null && create) {
+            cacheMisses = new HashMap<>();
+            request.setAttribute(ATTR_CACHE_MISSES, cacheMisses);
+        }
+        return cacheMisses;
+    }
+
 
 
     /**
@@ -393,6 +525,31 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         return mBeanDelegate.getRegisteredPersistenceStores(bindingsDelegate.getCacheStoresMap());
     }
 
+    @Override
+    public long getStaleHitsCount() {
+        return staleHits.get();
+    }
+
+    @Override
+    public long getStaleRefreshesCount() {
+        return staleRefreshes.get();
+    }
+
+    @Override
+    public long getCoalescedRequestsCount() {
+        return requestCoalescer.getCoalescedRequests();
+    }
+
+    @Override
+    public long getCoalescingTimeoutsCount() {
+        return requestCoalescer.getTimedOutRequests();
+    }
+
+    @Override
+    public int getCacheMissesInFlightCount() {
+        return requestCoalescer.getInFlightCount();
+    }
+
     /**
      * Binds cache config. Cache config could come and go at run time.
      *
@@ -493,10 +650,10 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
     }
 
 
-    private boolean executeCacheContentDeliver(SlingHttpServletRequest request, SlingHttpServletResponse response, CacheContent cacheContent) throws HttpCacheDataStreamException {
+    private boolean executeCacheContentDeliver(SlingHttpServletRequest request, SlingHttpServletResponse response, HttpCacheConfig cacheConfig, CacheContent cacheContent) throws HttpCacheDataStreamException {
         // Copy the cached data into the servlet output stream.
         try {
-            serveCacheContentIntoResponse(response, cacheContent);
+            serveCacheContentIntoResponse(request, response, cacheConfig, cacheContent);
 
             if (log.isDebugEnabled()) {
                 log.debug("Response delivered from cache for the url [ {} ]", request.getRequestURI());
@@ -507,8 +664,21 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         }
     }
 
-    private void serveCacheContentIntoResponse(SlingHttpServletResponse response, CacheContent cacheContent)
-            throws IOException {
+    private void serveCacheContentIntoResponse(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                               HttpCacheConfig cacheConfig, CacheContent cacheContent) throws IOException {
+        final ByteBuffer data = cacheContent.getDataBuffer();
+        final boolean requestScope = HttpCacheConfig.FilterScope.REQUEST == cacheConfig.getFilterScope();
+        if (data != null && (requestScope
+                || HttpCacheServletResponseWrapper.ResponseWriteMethod.OUTPUTSTREAM.equals(cacheContent.getWriteMethod()))) {
+            // The cached bytes are encoded with the cached character encoding already, so even content written
+            // through a writer goes to the output stream as it is, unless the writer has been obtained.
+            final OutputStream outputStream = getOutputStream(response);
+            if (outputStream != null) {
+                writeBuffer(requestScope ? selectContentEncoding(request, response, cacheContent, data) : data, outputStream);
+                return;
+            }
+        }
+
         if(HttpCacheServletResponseWrapper.ResponseWriteMethod.OUTPUTSTREAM.equals(cacheContent.getWriteMethod())){
             try {
                 IOUtils.copy(cacheContent.getInputDataStream(), response.getOutputStream());
@@ -521,6 +691,47 @@ public class HttpCacheEngineImpl extends AnnotatedStandardMBean implements HttpC
         }
     }
 
+    /**
+     * Picks the pre-compressed variant of the content if there is one and the client accepts it.
+     */
+    private ByteBuffer selectContentEncoding(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                             CacheContent cacheContent, ByteBuffer data) {
+        ByteBuffer body = data;
+        final ByteBuffer gzipData = cacheContent.getGzipDataBuffer();
+        if (gzipData != null) {
+            response.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+            if (CacheUtils.acceptsGzip(request.getHeader(HEADER_ACCEPT_ENCODING))) {
+                response.setHeader(HEADER_CONTENT_ENCODING, "gzip");
+                body = gzipData;
+            }
+        }
+        response.setContentLength(body.remaining());
+        return body;
+    }
+
+    private static OutputStream getOutputStream(SlingHttpServletResponse response) throws IOException {
+        try {
+            return response.getOutputStream();
+        } catch (IllegalStateException ex) {
+            // in this case, either the writer has already been obtained or the response doesn't support getOutputStream()
+            return null;
+        }
+    }
+
+    private static void writeBuffer(ByteBuffer buffer, OutputStream outputStream) throws IOException {
+        if (buffer.hasArray()) {
+            outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        // Memory-mapped buffer, copy it in chunks.
+        final byte[] chunk = new byte[Math.min(WRITE_CHUNK_SIZE, buffer.remaining())];
+        while (buffer.hasRemaining()) {
+            final int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+    }
+
     private void executeCustomRuleInvalidations(String path, HttpCacheConfig cacheConfig) throws HttpCachePersistenceException, HttpCacheKeyCreationException {
         for (final Map.Entry<String, HttpCacheHandlingRule> entry : bindingsDelegate.getCacheHandlingRules().entrySet()) {
             // Apply rule if it's a configured global or cache-config tied rule.
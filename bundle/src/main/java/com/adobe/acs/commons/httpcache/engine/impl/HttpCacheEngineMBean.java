@@ -40,6 +40,21 @@ public interface HttpCacheEngineMBean {
     @Description("Registered Persistence Stores")
     TabularData getRegisteredPersistenceStores() throws OpenDataException;
 
+    @Description("Number of requests served with stale content while the response was refreshed")
+    long getStaleHitsCount();
+
+    @Description("Number of refreshes of stale content")
+    long getStaleRefreshesCount();
+
+    @Description("Number of cache misses which waited for a concurrent request to render the response")
+    long getCoalescedRequestsCount();
+
+    @Description("Number of coalesced cache misses which timed out waiting and rendered the response themselves")
+    long getCoalescingTimeoutsCount();
+
+    @Description("Number of cache misses currently being rendered with request coalescing enabled")
+    int getCacheMissesInFlightCount();
+
     @Description("Invalidate")
     void invalidateCache(@Name(value="Path") String path) throws HttpCachePersistenceException, HttpCacheKeyCreationException;
 }
@@ -0,0 +1,107 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.engine.impl;
+
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the cache misses being rendered, so that concurrent misses for the same cache key can wait for the
+ * first one to be cached instead of rendering the same response again.
+ */
+class RequestCoalescer {
+
+    private final ConcurrentMap<CacheKey, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+
+    /**
+     * Registers a cache miss being rendered for the given key.
+     *
+     * @param cacheKey the cache key
+     * @return the flight to release once the response is cached, or null if another request is already rendering it
+     */
+    Flight lead(CacheKey cacheKey) {
+        final Flight flight = new Flight(cacheKey);
+        return inFlight.putIfAbsent(cacheKey, flight) == null ? flight : null;
+    }
+
+    /**
+     * Waits for the cache miss being rendered for the given key, if any.
+     *
+     * @param cacheKey      the cache key
+     * @param timeoutMillis the maximum time to wait
+     * @return true if no response is being rendered anymore, false if the wait timed out or got interrupted
+     */
+    boolean await(CacheKey cacheKey, long timeoutMillis) {
+        final Flight flight = inFlight.get(cacheKey);
+        if (flight == null) {
+            return true;
+        }
+        coalescedRequests.incrementAndGet();
+        try {
+            if (flight.latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timedOutRequests.incrementAndGet();
+        return false;
+    }
+
+    long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    long getTimedOutRequests() {
+        return timedOutRequests.get();
+    }
+
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A cache miss being rendered. Releasing it wakes up the requests waiting for it; releasing it more than once
+     * has no effect.
+     */
+    final class Flight {
+        private final CacheKey cacheKey;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private Flight(CacheKey cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        CacheKey getCacheKey() {
+            return cacheKey;
+        }
+
+        void release() {
+            inFlight.remove(cacheKey, this);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.engine.impl.delegate;
+
+import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
+import com.adobe.acs.commons.httpcache.config.impl.HttpCacheConfigImpl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static com.adobe.acs.commons.util.impl.RegexUtil.literalPrefix;
+
+/**
+ * HttpCacheConfigMatcher
+ * <p>
+ * Pre-partitions the bound cache configs by the literal prefixes of their request URI and invalidation path patterns,
+ * so that only the configs which can possibly match a request URI or a JCR path get evaluated.
+ * </p>
+ * <p>
+ * The partitioning only applies to {@link HttpCacheConfigImpl}, which rejects any request not matching its request URI
+ * patterns and any path not matching its invalidation path patterns. Other configs are always candidates. Candidates
+ * are returned in the order of the configs the matcher got built with.
+ * </p>
+ */
+public class HttpCacheConfigMatcher {
+
+    private final List<HttpCacheConfig> cacheConfigs;
+    private final Node requestUriTrie;
+    private final Node invalidationPathTrie;
+
+    /**
+     * @param cacheConfigs the cache configs, in evaluation order
+     */
+    public HttpCacheConfigMatcher(List<HttpCacheConfig> cacheConfigs) {
+        this.cacheConfigs = new ArrayList<>(cacheConfigs);
+        this.requestUriTrie = buildTrie(HttpCacheConfig::getRequestUriPatterns);
+        this.invalidationPathTrie = buildTrie(HttpCacheConfig::getJCRInvalidationPathPatterns);
+    }
+
+    /**
+     * @param requestUri the request URI
+     * @return the cache configs which may accept a request with the given URI
+     */
+    public List<HttpCacheConfig> getCandidates(String requestUri) {
+        return collect(requestUriTrie, requestUri);
+    }
+
+    /**
+     * @param path the JCR path
+     * @return the cache configs which may be invalidated by a change to the given path
+     */
+    public List<HttpCacheConfig> getInvalidationCandidates(String path) {
+        return collect(invalidationPathTrie, path);
+    }
+
+    private Node buildTrie(Function<HttpCacheConfig, List<Pattern>> patterns) {
+        final Node root = new Node();
+        for (int i = 0; i < cacheConfigs.size(); i++) {
+            final HttpCacheConfig cacheConfig = cacheConfigs.get(i);
+            if (cacheConfig.getClass() != HttpCacheConfigImpl.class) {
+                // Unknown matching logic, always a candidate.
+                root.cacheConfigs.set(i);
+                continue;
+            }
+            for (Pattern pattern : patterns.apply(cacheConfig)) {
+                root.getOrCreate(literalPrefix(pattern)).cacheConfigs.set(i);
+            }
+        }
+        return root;
+    }
+
+    private List<HttpCacheConfig> collect(Node root, String data) {
+        final BitSet candidates = (BitSet) root.cacheConfigs.clone();
+        Node node = root;
+        if (data != null) {
+            for (int i = 0; i < data.length(); i++) {
+                node = node.children.get(data.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                candidates.or(node.cacheConfigs);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<HttpCacheConfig> result = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            result.add(cacheConfigs.get(i));
+        }
+        return result;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final BitSet cacheConfigs = new BitSet();
+
+        private Node getOrCreate(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+    }
+}
@@ -46,6 +46,9 @@ public class HttpCacheEngineBindingsDelegate {
     /** Thread safe list to contain the registered HttpCacheConfig references. */
     private CopyOnWriteArrayList<HttpCacheConfig> cacheConfigs = new CopyOnWriteArrayList<>();
 
+    /** Matcher of the registered HttpCacheConfig references, rebuilt whenever they change. */
+    private volatile HttpCacheConfigMatcher cacheConfigMatcher = new HttpCacheConfigMatcher(Collections.emptyList());
+
     /** Thread safe hash map to contain the registered cache store references. */
     private final ConcurrentHashMap<String, HttpCacheStore> cacheStoresMap = new ConcurrentHashMap<>();
 
@@ -83,6 +86,7 @@ public class HttpCacheEngineBindingsDelegate {
 
         Collections.sort(tmp, new HttpCacheConfigComparator());
         this.cacheConfigs = tmp;
+        this.cacheConfigMatcher = new HttpCacheConfigMatcher(tmp);
 
         this.cacheConfigConfigs.put(cacheConfig, configs);
 
@@ -107,6 +111,7 @@ public class HttpCacheEngineBindingsDelegate {
             // Remove the entry from the map.
             cacheConfigs.remove(cacheConfig);
             cacheConfigConfigs.remove(cacheConfig);
+            cacheConfigMatcher = new HttpCacheConfigMatcher(cacheConfigs);
 
             log.debug("Total number of cache configs after removal: {}", cacheConfigs.size());
             return;
@@ -175,6 +180,10 @@ public class HttpCacheEngineBindingsDelegate {
         return Collections.unmodifiableList(cacheConfigs);
     }
 
+    public HttpCacheConfigMatcher getCacheConfigMatcher() {
+        return cacheConfigMatcher;
+    }
+
     public Map<String, HttpCacheStore> getCacheStoresMap() {
         return cacheStoresMap;
     }
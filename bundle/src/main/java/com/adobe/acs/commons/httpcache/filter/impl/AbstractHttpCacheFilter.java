@@ -62,7 +62,16 @@ public abstract class AbstractHttpCacheFilter implements Filter {
             // An accepting cacheConfig must exist and all cache rules must be met.
             if (cacheConfig != null && cacheEngine.isRequestCacheable(slingRequest, cacheConfig)) {
                 // Check if cached response available for this request.
-                if (cacheEngine.isCacheHit(slingRequest, cacheConfig)) {
+                final boolean cacheHit = cacheEngine.isCacheHit(slingRequest, cacheConfig);
+                if (!cacheHit && cacheEngine.deliverStaleCacheContent(slingRequest, slingResponse, cacheConfig)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Delivered stale cached request [ {} ] in {} ms", slingRequest.getResource().getPath(),
+                                System.currentTimeMillis() - start);
+                    }
+                    return;
+                }
+                // Otherwise check if it becomes available while waiting for a concurrent request rendering it.
+                if (cacheHit || cacheEngine.coalesceCacheMiss(slingRequest, cacheConfig)) {
                     // Deliver the response from cache.
                     if (cacheEngine.deliverCacheContent(slingRequest, slingResponse, cacheConfig)) {
                         if (log.isDebugEnabled()) {
@@ -82,21 +91,28 @@ public abstract class AbstractHttpCacheFilter implements Filter {
             log.error("HttpCache exception while dealing with request. Passed on the control to filter chain.", e);
         }
 
-        // Pass on the request to filter chain.
-        chain.doFilter(request, slingResponse);
-
         try {
-            // If the request has the attribute marked, cache the response.
-            if (isResponseCacheable) {
-                cacheEngine.cacheResponse(slingRequest, slingResponse, cacheConfig);
-            }
+            // Pass on the request to filter chain.
+            chain.doFilter(request, slingResponse);
 
-            if (log.isTraceEnabled()) {
-                log.trace("Delivered un-cached request [ {} ] in {} ms",  slingRequest.getResource().getPath(),
-                        System.currentTimeMillis() - start);
+            try {
+                // If the request has the attribute marked, cache the response.
+                if (isResponseCacheable) {
+                    cacheEngine.cacheResponse(slingRequest, slingResponse, cacheConfig);
+                }
+
+                if (log.isTraceEnabled()) {
+                    log.trace("Delivered un-cached request [ {} ] in {} ms",  slingRequest.getResource().getPath(),
+                            System.currentTimeMillis() - start);
+                }
+            } catch (HttpCacheException e) {
+                log.error("HttpCache exception while dealing with response. Returned the filter chain response", e);
+            }
+        } finally {
+            if (cacheConfig != null) {
+                // Let requests coalesced with this one render the response themselves if it did not get cached.
+                cacheEngine.releaseCacheMiss(slingRequest, cacheConfig);
             }
-        } catch (HttpCacheException e) {
-            log.error("HttpCache exception while dealing with response. Returned the filter chain response", e);
         }
     }
 
@@ -50,6 +50,19 @@ public interface HttpCacheStore {
      */
     void put(CacheKey key, CacheContent content) throws HttpCacheDataStreamException;
 
+    /**
+     * Put an item into the cache, recording the cache config the item got cached for. Stores may use the cache config
+     * to find the affected items on {@link #invalidate(HttpCacheConfig)} without scanning the whole cache.
+     *
+     * @param key         Object holding the key attributes.
+     * @param content     Object holding the content which needs to be cached.
+     * @param cacheConfig Cache config the content got cached for.
+     * @throws HttpCacheDataStreamException Failure when reading the input stream.
+     */
+    default void put(CacheKey key, CacheContent content, HttpCacheConfig cacheConfig) throws HttpCacheDataStreamException {
+        put(key, content);
+    }
+
     /**
      * Check if there is an entry in cache for the given key.
      *
@@ -66,6 +79,17 @@ public interface HttpCacheStore {
      */
     CacheContent getIfPresent(CacheKey key);
 
+    /**
+     * Get the stale Cache item given a key: an item which got invalidated or expired, and which the store still keeps
+     * for a grace period. Stores not keeping stale items return null.
+     *
+     * @param key Object holding the key attributes.
+     * @return Object holding the stale content. Null if no stale content is kept for the key.
+     */
+    default CacheContent getStaleIfPresent(CacheKey key) {
+        return null;
+    }
+
     /**
      * Get the number of entries in the cache.
      *
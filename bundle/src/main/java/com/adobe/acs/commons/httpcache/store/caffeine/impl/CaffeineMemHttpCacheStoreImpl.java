@@ -24,8 +24,11 @@ import com.adobe.acs.commons.httpcache.exception.HttpCacheKeyCreationException;
 import com.adobe.acs.commons.httpcache.keys.CacheKey;
 import com.adobe.acs.commons.httpcache.store.HttpCacheStore;
 import com.adobe.acs.commons.httpcache.store.TempSink;
+import com.adobe.acs.commons.httpcache.store.mem.impl.CacheKeyIndex;
 import com.adobe.acs.commons.httpcache.store.mem.impl.MemCachePersistenceObject;
 import com.adobe.acs.commons.httpcache.store.mem.impl.MemTempSinkImpl;
+import com.adobe.acs.commons.httpcache.store.mem.impl.StaleEntries;
+import com.adobe.acs.commons.httpcache.util.ByteBufferInputStream;
 import com.adobe.acs.commons.util.impl.AbstractCacheMBean;
 import com.adobe.acs.commons.util.impl.exception.CacheMBeanException;
 import com.github.benmanes.caffeine.cache.*;
@@ -48,10 +51,8 @@ import javax.management.openmbean.CompositeType;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.OpenType;
 import javax.management.openmbean.SimpleType;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * In-memory cache store implementation. Uses Caffeine Cache.
@@ -100,6 +101,21 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
     private static final String PROP_MAX_SIZE_IN_MB = "httpcache.cachestore.caffeine.maxsize";
     private long maxSizeInMb;
 
+    private static final long DEFAULT_GRACE_PERIOD = 0L; // Defaults to 0 meaning no stale entries.
+    @Property(label = "Grace period",
+            description = "Time in seconds invalidated or expired entries are kept as stale entries, which cache "
+                    + "configs serving stale content deliver while the response is refreshed. Stale entries are "
+                    + "bounded by the maximum size of this store as well. Default to 0 meaning no stale entries.",
+            longValue = DEFAULT_GRACE_PERIOD)
+    private static final String PROP_GRACE_PERIOD = "httpcache.cachestore.caffeine.graceperiod";
+
+    private static final boolean DEFAULT_GZIP = false;
+    @Property(label = "Pre-compress",
+            description = "Keep a gzip compressed variant of textual entries, delivered as it is to clients "
+                    + "accepting gzip. The compressed variant counts towards the maximum size of this store.",
+            boolValue = DEFAULT_GZIP)
+    private static final String PROP_GZIP = "httpcache.cachestore.caffeine.gzip";
+    private boolean gzip;
 
     /** Megabyte to byte */
     private static final long MEGABYTE = 1024L * 1024L;
@@ -110,16 +126,25 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
     private Cache<CacheKey, MemCachePersistenceObject> cache;
     private Expiry<CacheKey, MemCachePersistenceObject> expiryPolicy;
 
+    /** Secondary index of the cached keys used for invalidation */
+    private final CacheKeyIndex keyIndex = new CacheKeyIndex();
+
+    /** Invalidated and expired entries kept for the grace period */
+    private volatile StaleEntries staleEntries = new StaleEntries(DEFAULT_GRACE_PERIOD, 0L);
+
     @Activate
     protected void activate(Map<String, Object> config) {
         // Read config and populate values.
         ttl = PropertiesUtil.toLong(config.get(PROP_TTL), DEFAULT_TTL);
         maxSizeInMb = PropertiesUtil.toLong(config.get(PROP_MAX_SIZE_IN_MB), DEFAULT_MAX_SIZE_IN_MB);
+        long gracePeriod = PropertiesUtil.toLong(config.get(PROP_GRACE_PERIOD), DEFAULT_GRACE_PERIOD);
+        gzip = PropertiesUtil.toBoolean(config.get(PROP_GZIP), DEFAULT_GZIP);
         expiryPolicy = new CacheExpiryPolicy(ttl);
 
         // Initializing the cache.
         // If cache is present, invalidate all and reinitialize the cache.
         deactivate();
+        staleEntries = new StaleEntries(gracePeriod, maxSizeInMb * MEGABYTE);
 
         // Recording cache usage stats enabled.
         try {
@@ -135,6 +160,7 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
         if (cache != null) {
             cache.invalidateAll();
         }
+        staleEntries.clear();
     }
 
     private Cache<CacheKey, MemCachePersistenceObject> buildCache() {
@@ -156,15 +182,50 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
         return ttl;
     }
 
+    @Override
+    public long getGracePeriod() {
+        return staleEntries.getGracePeriod();
+    }
+
+    @Override
+    public long getStaleEntriesCount() {
+        return staleEntries.size();
+    }
+
+    @Override
+    public long getInvalidationIndexSize() {
+        return keyIndex.size();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return keyIndex.getInvalidationCount();
+    }
+
+    @Override
+    public long getInvalidationCandidatesExamined() {
+        return keyIndex.getCandidatesExamined();
+    }
+
+    @Override
+    public long getInvalidatedEntriesCount() {
+        return keyIndex.getEntriesInvalidated();
+    }
+
+    @Override
+    public long getInvalidationTime() {
+        return keyIndex.getInvalidationTimeInMillis();
+    }
+
     @Override
     protected long getBytesLength(MemCachePersistenceObject cacheObj) {
-        return cacheObj.getBytes().length;
+        return cacheObj.getWeight();
     }
 
     @Override
     protected void addCacheData(Map<String, Object> data, MemCachePersistenceObject cacheObj) {
         int hitCount = cacheObj.getHitCount();
-        long size = cacheObj.getBytes().length;
+        long size = cacheObj.getBytesLength();
         data.put(AbstractCacheMBean.JMX_PN_STATUS, cacheObj.getStatus());
         data.put(AbstractCacheMBean.JMX_PN_SIZE, FileUtils.byteCountToDisplaySize(size));
         data.put(AbstractCacheMBean.JMX_PN_CONTENTTYPE, cacheObj.getContentType());
@@ -177,7 +238,7 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
     protected String toString(MemCachePersistenceObject cacheObj) throws CacheMBeanException {
         try {
             return IOUtils.toString(
-                    new ByteArrayInputStream(cacheObj.getBytes()),
+                    new ByteBufferInputStream(cacheObj.getData()),
                     cacheObj.getCharEncoding());
         } catch (IOException e) {
             throw new CacheMBeanException("Error getting the content from the cacheObject", e);
@@ -198,12 +259,17 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
     }
 
     /**
-     * Removal listener for cache entry items.
+     * Removal listener for cache entry items. Keeps the key index in sync with the cache, and keeps expired entries
+     * as stale entries.
      */
-    private static class MemCacheEntryRemovalListener implements RemovalListener<CacheKey, MemCachePersistenceObject> {
+    private class MemCacheEntryRemovalListener implements RemovalListener<CacheKey, MemCachePersistenceObject> {
         @Override
         public void onRemoval(CacheKey cacheKey, MemCachePersistenceObject memCachePersistenceObject, RemovalCause removalCause) {
-            //do nothing as of now
+            // Removal notifications are delivered asynchronously, the index only drops the key if it was not put again.
+            keyIndex.remove(cacheKey, memCachePersistenceObject);
+            if (removalCause == RemovalCause.EXPIRED) {
+                staleEntries.add(cacheKey, memCachePersistenceObject);
+            }
         }
     }
 
@@ -214,17 +280,29 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
 
         @Override
         public int weigh(CacheKey memCacheKey, MemCachePersistenceObject memCachePersistenceObject) {
-            // Size of the byte array.
-            return memCachePersistenceObject.getBytes().length;
+            // Size of the byte arrays.
+            return memCachePersistenceObject.getWeight();
         }
     }
 
     //-------------------------<CacheStore interface specific implementation>
     @Override
     public void put(CacheKey key, CacheContent content) throws HttpCacheDataStreamException {
-        cache.put(key, new MemCachePersistenceObject().buildForCaching(content.getStatus(), content.getCharEncoding(),
-                content.getContentType(), content.getHeaders(), content.getInputDataStream(), content.getWriteMethod()));
+        put(key, content, null);
+    }
 
+    @Override
+    public void put(CacheKey key, CacheContent content, HttpCacheConfig cacheConfig) throws HttpCacheDataStreamException {
+        final MemCachePersistenceObject value = new MemCachePersistenceObject().buildForCaching(content.getStatus(),
+                content.getCharEncoding(), content.getContentType(), content.getHeaders(), content.getInputDataStream(),
+                content.getWriteMethod());
+        if (gzip) {
+            value.buildGzipVariant();
+        }
+        // Register before putting, so a removal of the value racing with this put finds its registration.
+        keyIndex.add(key, value, cacheConfig);
+        cache.put(key, value);
+        staleEntries.remove(key);
     }
 
     @Override
@@ -245,8 +323,19 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
         // Increment hit count
         value.incrementHitCount();
 
-        return new CacheContent(value.getStatus(), value.getCharEncoding(), value.getContentType(), value.getHeaders(), new
-                ByteArrayInputStream(value.getBytes()));
+        return new CacheContent(value.getStatus(), value.getCharEncoding(), value.getContentType(), value.getHeaders(),
+                value.getData(), value.getGzipData(), value.getWriteMethod());
+    }
+
+    @Override
+    public CacheContent getStaleIfPresent(CacheKey key) {
+        CacheContent content = staleEntries.getIfPresent(key);
+        if (content == null && staleEntries.isEnabled()) {
+            // Expired entries are handed over to the stale entries by the cache maintenance.
+            cache.cleanUp();
+            content = staleEntries.getIfPresent(key);
+        }
+        return content;
     }
 
     @Override
@@ -256,35 +345,53 @@ public class CaffeineMemHttpCacheStoreImpl extends AbstractCaffeineCacheMBean<Ca
 
     @Override
     public void invalidate(CacheKey invalidationKey) {
-        final ConcurrentMap<CacheKey, MemCachePersistenceObject> cacheAsMap = cache.asMap();
+        final long start = System.nanoTime();
+        long examined = 0;
+        long invalidated = 0;
 
-        for (CacheKey key : cacheAsMap.keySet()) {
+        for (CacheKey key : keyIndex.getInvalidationCandidates(invalidationKey)) {
+            examined++;
             if (key.isInvalidatedBy(invalidationKey)) {
-                cache.invalidate(key);
+                invalidateKey(key);
+                invalidated++;
             }
         }
+        keyIndex.recordInvalidation(examined, invalidated, start);
     }
 
     @Override
     public void invalidate(HttpCacheConfig cacheConfig) {
-        ConcurrentMap<CacheKey, MemCachePersistenceObject> cacheAsMap = cache.asMap();
-        for (CacheKey key : cacheAsMap.keySet()) {
+        final long start = System.nanoTime();
+        long examined = 0;
+        long invalidated = 0;
+
+        for (CacheKey key : keyIndex.getCandidates(cacheConfig)) {
+            examined++;
             // Match the cache key with cache config.
             try {
                 if (cacheConfig.knows(key)) {
                     // If matches, invalidate that particular key.
-                    cache.invalidate(key);
+                    invalidateKey(key);
+                    invalidated++;
                 }
             } catch (HttpCacheKeyCreationException e) {
                 log.error("Could not invalidate HTTP cache. Falling back to full cache invalidation.", e);
                 this.invalidateAll();
+                break;
             }
         }
+        keyIndex.recordInvalidation(examined, invalidated, start);
     }
 
     @Override
     public void invalidateAll() {
         cache.invalidateAll();
+        staleEntries.clear();
+    }
+
+    private void invalidateKey(CacheKey key) {
+        // Keep the invalidated entry as stale entry, if stale entries are enabled.
+        staleEntries.add(key, cache.asMap().remove(key));
     }
 
     @Override
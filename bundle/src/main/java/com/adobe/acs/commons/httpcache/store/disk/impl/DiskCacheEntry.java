@@ -0,0 +1,172 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.disk.impl;
+
+import com.adobe.acs.commons.httpcache.engine.HttpCacheServletResponseWrapper;
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index entry of the disk cache store. Holds the response meta data and the location of the record within
+ * its segment file; the response body itself stays on disk.
+ */
+public final class DiskCacheEntry {
+    private final CacheKey key;
+    private final DiskSegment segment;
+    /** Position of the record header within the segment */
+    private final long offset;
+    /** Total length of the record (header, meta data and body) */
+    private final long recordLength;
+    /** Position of the response body within the segment */
+    private final long bodyOffset;
+    private final long bodyLength;
+
+    private final int status;
+    private final String charEncoding;
+    private final String contentType;
+    private final Map<String, List<String>> headers;
+    private final HttpCacheServletResponseWrapper.ResponseWriteMethod writeMethod;
+
+    private final long created;
+    /** Epoch millis after which the entry is expired or 0 if the entry never expires */
+    private final long expires;
+
+    private final AtomicInteger hitCount = new AtomicInteger(0);
+    private volatile long lastAccessed;
+
+    @SuppressWarnings("squid:S00107")
+    DiskCacheEntry(CacheKey key, DiskSegment segment, long offset, long recordLength, long bodyOffset, long bodyLength,
+                   int status, String charEncoding, String contentType, Map<String, List<String>> headers,
+                   HttpCacheServletResponseWrapper.ResponseWriteMethod writeMethod, long created, long expires) {
+        this.key = key;
+        this.segment = segment;
+        this.offset = offset;
+        this.recordLength = recordLength;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.status = status;
+        this.charEncoding = charEncoding;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.writeMethod = writeMethod;
+        this.created = created;
+        this.expires = expires;
+        this.lastAccessed = created;
+    }
+
+    /**
+     * Creates a copy of this entry pointing to a new location, used when compaction moves a record.
+     */
+    DiskCacheEntry relocate(DiskSegment newSegment, long newOffset) {
+        final DiskCacheEntry relocated = new DiskCacheEntry(key, newSegment, newOffset, recordLength,
+                newOffset + (bodyOffset - offset), bodyLength, status, charEncoding, contentType, headers, writeMethod,
+                created, expires);
+        relocated.hitCount.set(hitCount.get());
+        relocated.lastAccessed = lastAccessed;
+        return relocated;
+    }
+
+    public CacheKey getKey() {
+        return key;
+    }
+
+    DiskSegment getSegment() {
+        return segment;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    long getRecordLength() {
+        return recordLength;
+    }
+
+    long getBodyOffset() {
+        return bodyOffset;
+    }
+
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getCharEncoding() {
+        return charEncoding;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get a copy of the headers, safe for the caller to modify.
+     *
+     * @return Returned in <code>Map<String, List<String>></code> format.
+     */
+    public Map<String, List<String>> getHeaders() {
+        final Map<String, List<String>> copy = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    public HttpCacheServletResponseWrapper.ResponseWriteMethod getWriteMethod() {
+        return writeMethod;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    boolean isExpired(long now) {
+        return expires > 0 && now >= expires;
+    }
+
+    /**
+     * Increments the hit for this cache entry and records the access time used for eviction.
+     */
+    void touch(long now) {
+        hitCount.incrementAndGet();
+        lastAccessed = now;
+    }
+
+    long getLastAccessed() {
+        return lastAccessed;
+    }
+
+    /**
+     * @return the number of times this cache entry has been requested
+     */
+    public int getHitCount() {
+        return hitCount.get();
+    }
+}
@@ -19,66 +19,514 @@ package com.adobe.acs.commons.httpcache.store.disk.impl;
 
 import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
 import com.adobe.acs.commons.httpcache.engine.CacheContent;
+import com.adobe.acs.commons.httpcache.engine.HttpCacheServletResponseWrapper;
 import com.adobe.acs.commons.httpcache.exception.HttpCacheDataStreamException;
+import com.adobe.acs.commons.httpcache.exception.HttpCacheKeyCreationException;
 import com.adobe.acs.commons.httpcache.keys.CacheKey;
 import com.adobe.acs.commons.httpcache.store.HttpCacheStore;
 import com.adobe.acs.commons.httpcache.store.TempSink;
-import org.apache.commons.lang3.NotImplementedException;
+import com.adobe.acs.commons.httpcache.util.ByteBufferInputStream;
+import com.adobe.acs.commons.util.DynamicObjectInputStream;
+import com.adobe.acs.commons.util.impl.AbstractJCRCacheMBean;
+import com.adobe.acs.commons.util.impl.exception.CacheMBeanException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ACS AEM Commons - HTTP Cache - Disk based cache store implementation.
+ * <p>
+ * Responses are appended to segment files on the local disk, see {@link DiskSegment} for the record layout. The cache
+ * keys and response meta data are kept in an in-memory index, the bodies stay on disk and are read through
+ * memory-mapped buffers, so that large amounts of rendered content can be cached without heap pressure. The index is
+ * rebuilt from the segment files on activation, so the cache survives a bundle restart.
+ * <p>
+ * Entries are evicted least recently used first once the live data exceeds the configured maximum size, and expire
+ * after the configured TTL. A scheduled run purges expired entries and compacts segments which mostly hold dead
+ * records.
  */
+@Component(
+        label = "ACS AEM Commons - HTTP Cache - Disk cache store",
+        description = "Cache data store implementation for storage in memory-mapped segment files on the local disk.",
+        metatype = true
+)
+@Properties({
+        @Property(
+                name = HttpCacheStore.KEY_CACHE_STORE_TYPE,
+                value = HttpCacheStore.VALUE_DISK_CACHE_STORE_TYPE,
+                propertyPrivate = true
+        ),
+        @Property(
+                name = "jmx.objectname",
+                value = "com.adobe.acs.commons.httpcache:type=HTTP Cache - Disk Cache Store",
+                propertyPrivate = true
+        ),
+        @Property(
+                name = "webconsole.configurationFactory.nameHint",
+                value = "TTL: {httpcache.cachestore.ttl}, Max size in MB: {httpcache.cachestore.maxsize}",
+                propertyPrivate = true
+        ),
+        @Property(
+                label = "Cache clean-up schedule",
+                description = "Purges expired entries and compacts segment files. [every minute = 0 * * * * ?] "
+                        + "Visit www.cronmaker.com to generate cron expressions.",
+                name = "scheduler.expression",
+                value = "0 0/5 * 1/1 * ? *"
+        ),
+        @Property(
+                label = "Allow concurrent executions",
+                description = "Allow concurrent executions of this Scheduled Service. This is almost always false.",
+                name = "scheduler.concurrent",
+                propertyPrivate = true,
+                boolValue = false
+        )
+})
+@Service(value = {HttpCacheStore.class, Runnable.class})
+public class DiskHttpCacheStoreImpl extends AbstractJCRCacheMBean<CacheKey, DiskCacheEntry> implements HttpCacheStore, DiskCacheMBean, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(DiskHttpCacheStoreImpl.class);
 
-// TODO - Placeholder component. To be implemented.
-/*
-@Component
-@Service
-@Property(name = HttpCacheStore.KEY_CACHE_STORE_TYPE,
-          value = HttpCacheStore.VALUE_DISK_CACHE_STORE_TYPE,
-          propertyPrivate = true)
-*/
-public class DiskHttpCacheStoreImpl implements HttpCacheStore {
+    /** Megabyte to byte */
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final String SEGMENTS_DIRECTORY = "segments";
+    private static final String TEMP_DIRECTORY = "tmp";
+
+    private static final long DEFAULT_TTL = -1L; // Defaults to -1 meaning no TTL.
+    @Property(label = "TTL",
+            description = "TTL for all entries in this cache in seconds. Default to -1 meaning no TTL.",
+            longValue = DEFAULT_TTL)
+    private static final String PROP_TTL = HttpCacheStore.PN_TTL;
+    private long ttl;
+
+    private static final long DEFAULT_MAX_SIZE_IN_MB = 1024L; // Defaults to 1GB.
+    @Property(label = "Maximum size of this store in MB",
+            description = "Default to 1024MB. If cache size goes beyond this size, least recently used entries will be "
+                    + "evicted from the cache",
+            longValue = DEFAULT_MAX_SIZE_IN_MB)
+    private static final String PROP_MAX_SIZE_IN_MB = HttpCacheStore.PN_MAXSIZE;
+    private long maxSizeInBytes;
+
+    public static final String PN_ROOTPATH = "httpcache.cachestore.disk.rootpath";
+    @Property(label = "Root directory",
+            description = "File system directory holding the cache segment files. Defaults to the data area of the "
+                    + "ACS AEM Commons bundle.",
+            value = "")
+    private static final String PROP_ROOTPATH = PN_ROOTPATH;
+
+    public static final String PN_SEGMENTSIZE = "httpcache.cachestore.disk.segmentsize";
+    private static final long DEFAULT_SEGMENT_SIZE_IN_MB = 64L;
+    /** Segments are mapped as a whole once sealed, which is limited to 2GB; one entry may exceed the segment size. */
+    private static final long MAX_SEGMENT_SIZE_IN_MB = 1024L;
+    @Property(label = "Segment size in MB",
+            description = "Size after which a segment file is sealed and a new one is started. Default to 64MB, at most 1024MB.",
+            longValue = DEFAULT_SEGMENT_SIZE_IN_MB)
+    private static final String PROP_SEGMENTSIZE = PN_SEGMENTSIZE;
+    private long segmentSizeInBytes;
+
+    public static final String PN_COMPACTION_THRESHOLD = "httpcache.cachestore.disk.compaction.threshold";
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 50;
+    @Property(label = "Compaction threshold in percent",
+            description = "Sealed segments holding at least this percentage of dead (invalidated, evicted or expired) "
+                    + "data are compacted. Default to 50.",
+            intValue = DEFAULT_COMPACTION_THRESHOLD)
+    private static final String PROP_COMPACTION_THRESHOLD = PN_COMPACTION_THRESHOLD;
+    private int compactionThreshold;
+
+    @Reference
+    private DynamicClassLoaderManager dclm;
+
+    protected Clock clock;
+
+    /** Index of all live entries */
+    private final Map<CacheKey, DiskCacheEntry> index = new ConcurrentHashMap<>();
+    /** All segments of the store by id */
+    private final Map<Integer, DiskSegment> segments = new ConcurrentHashMap<>();
+    /** Serializes appends to the active segment */
+    private final Lock writeLock = new ReentrantLock();
+    /** Serializes eviction and compaction runs */
+    private final Lock maintenanceLock = new ReentrantLock();
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private volatile DiskSegment activeSegment;
+    private int nextSegmentId;
+
+    private File segmentDirectory;
+    private File tempDirectory;
+
+    public DiskHttpCacheStoreImpl() throws NotCompliantMBeanException {
+        super(DiskCacheMBean.class);
+        clock = Clock.systemUTC();
+    }
+
+    @Activate
+    protected void activate(ComponentContext context) throws IOException {
+        final Dictionary<?, ?> properties = context.getProperties();
+        ttl = PropertiesUtil.toLong(properties.get(PROP_TTL), DEFAULT_TTL);
+        maxSizeInBytes = PropertiesUtil.toLong(properties.get(PROP_MAX_SIZE_IN_MB), DEFAULT_MAX_SIZE_IN_MB) * MEGABYTE;
+        long segmentSizeInMb = PropertiesUtil.toLong(properties.get(PROP_SEGMENTSIZE), DEFAULT_SEGMENT_SIZE_IN_MB);
+        if (segmentSizeInMb > MAX_SEGMENT_SIZE_IN_MB) {
+            log.warn("Segment size of {}MB exceeds the maximum, using {}MB instead.", segmentSizeInMb, MAX_SEGMENT_SIZE_IN_MB);
+            segmentSizeInMb = MAX_SEGMENT_SIZE_IN_MB;
+        }
+        segmentSizeInBytes = segmentSizeInMb * MEGABYTE;
+        compactionThreshold = PropertiesUtil.toInteger(properties.get(PROP_COMPACTION_THRESHOLD), DEFAULT_COMPACTION_THRESHOLD);
+
+        final File rootDirectory = getRootDirectory(context, PropertiesUtil.toString(properties.get(PROP_ROOTPATH), ""));
+        segmentDirectory = new File(rootDirectory, SEGMENTS_DIRECTORY);
+        tempDirectory = new File(rootDirectory, TEMP_DIRECTORY);
+        FileUtils.forceMkdir(segmentDirectory);
+        FileUtils.forceMkdir(tempDirectory);
+        // Spooled responses of a previous run are of no use anymore.
+        FileUtils.cleanDirectory(tempDirectory);
+
+        loadSegments();
+
+        log.info("DiskHttpCacheStoreImpl activated with {} entries in {} segments at {}.", index.size(), segments.size(),
+                rootDirectory);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        writeLock.lock();
+        try {
+            // Segments are only closed, not removed, so the cache survives a restart.
+            for (DiskSegment segment : segments.values()) {
+                IOUtils.closeQuietly(segment);
+            }
+            segments.clear();
+            index.clear();
+            liveBytes.set(0);
+            activeSegment = null;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("DiskHttpCacheStoreImpl deactivated.");
+    }
+
+    private File getRootDirectory(ComponentContext context, String rootPath) {
+        if (StringUtils.isNotBlank(rootPath)) {
+            return new File(rootPath);
+        }
+        final File dataFile = context.getBundleContext().getDataFile("httpcache-disk");
+        if (dataFile != null) {
+            return dataFile;
+        }
+        log.warn("Bundle data area is not available, falling back to the temp directory for the disk cache store.");
+        return new File(System.getProperty("java.io.tmpdir"), "acs-commons-httpcache-disk");
+    }
+
+    /**
+     * Rebuilds the index from the segment files left by a previous run.
+     */
+    private void loadSegments() throws IOException {
+        final TreeMap<Integer, File> files = new TreeMap<>();
+        final File[] candidates = segmentDirectory.listFiles();
+        if (candidates != null) {
+            for (File file : candidates) {
+                final int id = DiskSegment.parseId(file.getName());
+                if (id >= 0) {
+                    files.put(id, file);
+                }
+            }
+        }
+
+        writeLock.lock();
+        try {
+            final long now = clock.millis();
+            for (Integer id : files.keySet()) {
+                final DiskSegment segment = DiskSegment.open(segmentDirectory, id);
+                segments.put(id, segment);
+                segment.scan((offset, recordLength, created, expires, meta, bodyOffset, bodyLength) ->
+                        loadRecord(segment, offset, recordLength, created, expires, meta, bodyOffset, bodyLength, now));
+                segment.seal();
+                nextSegmentId = id + 1;
+            }
+            activeSegment = openSegment();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @SuppressWarnings({"squid:S00107", "unchecked"})
+    private boolean loadRecord(DiskSegment segment, long offset, long recordLength, long created, long expires,
+                               byte[] meta, long bodyOffset, long bodyLength, long now) {
+        if (expires > 0 && now >= expires) {
+            return false;
+        }
+        try (ObjectInputStream in = new DynamicObjectInputStream(new ByteArrayInputStream(meta),
+                dclm.getDynamicClassLoader())) {
+            final CacheKey key = (CacheKey) in.readObject();
+            final int status = in.readInt();
+            final String charEncoding = (String) in.readObject();
+            final String contentType = (String) in.readObject();
+            final Map<String, List<String>> headers = (Map<String, List<String>>) in.readObject();
+            final String writeMethod = (String) in.readObject();
+
+            final DiskCacheEntry entry = new DiskCacheEntry(key, segment, offset, recordLength, bodyOffset, bodyLength,
+                    status, charEncoding, contentType, headers, toWriteMethod(writeMethod), created, expires);
+            final DiskCacheEntry previous = index.put(key, entry);
+            if (previous != null) {
+                retire(previous);
+            }
+            liveBytes.addAndGet(recordLength);
+            return true;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.debug("Dropping unreadable disk cache record at {} of segment {}", offset, segment.getId(), e);
+            return false;
+        }
+    }
+
+    private static HttpCacheServletResponseWrapper.ResponseWriteMethod toWriteMethod(String name) {
+        return name == null ? null : HttpCacheServletResponseWrapper.ResponseWriteMethod.valueOf(name);
+    }
+
+    /* Must be called while holding the write lock. */
+    private DiskSegment openSegment() throws IOException {
+        final DiskSegment segment = DiskSegment.open(segmentDirectory, nextSegmentId++);
+        segments.put(segment.getId(), segment);
+        return segment;
+    }
+
+    /* Must be called while holding the write lock. */
+    private DiskSegment getWritableSegment() throws IOException {
+        if (activeSegment == null) {
+            throw new IOException("Disk cache store is not active");
+        }
+        if (activeSegment.size() >= segmentSizeInBytes) {
+            activeSegment.seal();
+            activeSegment = openSegment();
+        }
+        return activeSegment;
+    }
+
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> source) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        if (source != null) {
+            for (Map.Entry<String, List<String>> entry : source.entrySet()) {
+                if (!"Sling-Tracer-Protocol-Version".equals(entry.getKey()) && !"Sling-Tracer-Request-Id".equals(entry.getKey())) {
+                    // Do NOT cache Sling Tracer headers as this makes debugging difficult and confusing!
+                    headers.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] serializeMeta(CacheKey key, CacheContent content, Map<String, List<String>> headers)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(key);
+            out.writeInt(content.getStatus());
+            out.writeObject(content.getCharEncoding());
+            out.writeObject(content.getContentType());
+            out.writeObject(headers);
+            out.writeObject(content.getWriteMethod() == null ? null : content.getWriteMethod().name());
+        }
+        return bytes.toByteArray();
+    }
+
+    private long getExpiry(CacheKey key, long now) {
+        if (key.getExpiryForCreation() > 0) {
+            return now + key.getExpiryForCreation();
+        } else if (ttl > 0) {
+            return now + ttl * 1000L;
+        }
+        return 0L;
+    }
+
+    /**
+     * Marks the record of an entry which left the index as dead.
+     */
+    private void retire(DiskCacheEntry entry) {
+        entry.getSegment().markDead(entry.getOffset(), entry.getRecordLength());
+        liveBytes.addAndGet(-entry.getRecordLength());
+    }
+
+    private boolean remove(CacheKey key, DiskCacheEntry entry) {
+        if (index.remove(key, entry)) {
+            retire(entry);
+            return true;
+        }
+        return false;
+    }
+
+    //-------------------------<CacheStore interface specific implementation>
     @Override
     public void put(CacheKey key, CacheContent content) throws HttpCacheDataStreamException {
-        throw new NotImplementedException();
+        final long start = clock.millis();
+        incrementLoadCount();
+
+        final DiskCacheEntry entry;
+        try {
+            final Map<String, List<String>> headers = copyHeaders(content.getHeaders());
+            final byte[] meta = serializeMeta(key, content, headers);
+            final long expires = getExpiry(key, start);
+
+            writeLock.lock();
+            try {
+                final DiskSegment segment = getWritableSegment();
+                final long offset = segment.size();
+                final long bodyLength = segment.append(start, expires, meta, content.getInputDataStream());
+                final long bodyOffset = offset + DiskSegment.HEADER_LENGTH + meta.length;
+                entry = new DiskCacheEntry(key, segment, offset, bodyOffset - offset + bodyLength, bodyOffset,
+                        bodyLength, content.getStatus(), content.getCharEncoding(), content.getContentType(),
+                        headers, content.getWriteMethod(), start, expires);
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            incrementLoadExceptionCount();
+            throw new HttpCacheDataStreamException("Unable to write cache entry to disk", e);
+        }
+
+        liveBytes.addAndGet(entry.getRecordLength());
+        final DiskCacheEntry previous = index.put(key, entry);
+        if (previous != null) {
+            retire(previous);
+        }
+
+        incrementLoadSuccessCount();
+        incrementTotalLoadTime(clock.millis() - start);
+
+        if (liveBytes.get() > maxSizeInBytes) {
+            evict();
+        }
     }
 
     @Override
     public boolean contains(CacheKey key) {
-        throw new NotImplementedException();
+        final DiskCacheEntry entry = index.get(key);
+        return entry != null && !entry.isExpired(clock.millis());
     }
 
     @Override
     public CacheContent getIfPresent(CacheKey key) {
-        throw new NotImplementedException();
+        final long start = clock.millis();
+        incrementRequestCount();
+
+        final DiskCacheEntry entry = index.get(key);
+        if (entry != null) {
+            if (entry.isExpired(start)) {
+                if (remove(key, entry)) {
+                    incrementEvictionCount(1);
+                }
+            } else {
+                try {
+                    final ByteBuffer body = entry.getSegment().read(entry.getBodyOffset(), entry.getBodyLength());
+                    entry.touch(start);
+                    incrementHitCount();
+                    incrementTotalLookupTime(clock.millis() - start);
+                    return new CacheContent(entry.getStatus(), entry.getCharEncoding(), entry.getContentType(),
+                            entry.getHeaders(), body, null, entry.getWriteMethod());
+                } catch (IOException e) {
+                    // The segment was compacted away in between; treat as a miss.
+                    log.debug("Unable to read disk cache entry for {}", key, e);
+                }
+            }
+        }
+
+        incrementMissCount();
+        incrementTotalLookupTime(clock.millis() - start);
+        return null;
     }
 
     @Override
     public long size() {
-        throw new NotImplementedException();
+        return index.size();
     }
 
     @Override
-    public void invalidate(CacheKey key) {
-        throw new NotImplementedException();
+    public void invalidate(CacheKey invalidationKey) {
+        long evicted = 0;
+        for (Map.Entry<CacheKey, DiskCacheEntry> entry : index.entrySet()) {
+            if (entry.getKey().isInvalidatedBy(invalidationKey) && remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        incrementEvictionCount(evicted);
     }
 
     @Override
     public void invalidate(HttpCacheConfig cacheConfig) {
-        throw new NotImplementedException();
+        long evicted = 0;
+        try {
+            for (Map.Entry<CacheKey, DiskCacheEntry> entry : index.entrySet()) {
+                // Match the cache key with cache config.
+                if (cacheConfig.knows(entry.getKey()) && remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            }
+        } catch (HttpCacheKeyCreationException e) {
+            log.error("Could not invalidate HTTP cache. Falling back to full cache invalidation.", e);
+            this.invalidateAll();
+        }
+        incrementEvictionCount(evicted);
     }
 
     @Override
     public void invalidateAll() {
-        throw new NotImplementedException();
+        writeLock.lock();
+        try {
+            final long evicted = index.size();
+            index.clear();
+            liveBytes.set(0);
+            for (DiskSegment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            if (activeSegment != null) {
+                activeSegment = openSegment();
+            }
+            incrementEvictionCount(evicted);
+        } catch (IOException e) {
+            activeSegment = null;
+            log.error("Unable to open a new disk cache segment after invalidating the cache", e);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public TempSink createTempSink() {
-        throw new NotImplementedException();
+        return new DiskTempSinkImpl(tempDirectory);
     }
 
     @Override
@@ -86,5 +534,178 @@ public class DiskHttpCacheStoreImpl implements HttpCacheStore {
         return HttpCacheStore.VALUE_DISK_CACHE_STORE_TYPE;
     }
 
+    //-------------------------<Eviction and compaction>
+
+    /**
+     * Evicts the least recently used entries until the live data is back under 90% of the maximum size.
+     */
+    private void evict() {
+        if (!maintenanceLock.tryLock()) {
+            // Another thread is already making room.
+            return;
+        }
+        try {
+            final long target = maxSizeInBytes / 10 * 9;
+            final List<DiskCacheEntry> candidates = new ArrayList<>(index.values());
+            candidates.sort(Comparator.comparingLong(DiskCacheEntry::getLastAccessed));
+
+            long evicted = 0;
+            for (DiskCacheEntry entry : candidates) {
+                if (liveBytes.get() <= target) {
+                    break;
+                }
+                if (remove(entry.getKey(), entry)) {
+                    evicted++;
+                }
+            }
+            incrementEvictionCount(evicted);
+            log.debug("Evicted {} entries from the disk cache store", evicted);
+
+            compact();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private void purgeExpired() {
+        final long now = clock.millis();
+        long evicted = 0;
+        for (Map.Entry<CacheKey, DiskCacheEntry> entry : index.entrySet()) {
+            if (entry.getValue().isExpired(now) && remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        incrementEvictionCount(evicted);
+    }
+
+    /* Must be called while holding the maintenance lock. */
+    private void compact() {
+        for (DiskSegment segment : new ArrayList<>(segments.values())) {
+            if (segment != activeSegment && segment.isSealed()
+                    && segment.getDeadBytes() * 100 >= segment.size() * compactionThreshold) {
+                try {
+                    compact(segment);
+                } catch (IOException e) {
+                    log.warn("Unable to compact disk cache segment {}", segment.getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the remaining live records of a segment into the active segment and removes the segment.
+     */
+    private void compact(DiskSegment segment) throws IOException {
+        int moved = 0;
+        for (DiskCacheEntry entry : index.values()) {
+            if (entry.getSegment() != segment) {
+                continue;
+            }
+
+            final DiskCacheEntry relocated;
+            writeLock.lock();
+            try {
+                final DiskSegment target = getWritableSegment();
+                relocated = entry.relocate(target, target.copyRecord(segment, entry.getOffset(), entry.getRecordLength()));
+            } finally {
+                writeLock.unlock();
+            }
+
+            if (index.replace(entry.getKey(), entry, relocated)) {
+                moved++;
+            } else {
+                // Invalidated while being copied.
+                relocated.getSegment().markDead(relocated.getOffset(), relocated.getRecordLength());
+            }
+        }
+
+        segments.remove(segment.getId());
+        segment.delete();
+        log.debug("Compacted disk cache segment {}, moved {} live entries", segment.getId(), moved);
+    }
+
+    @Override
+    public void run() {
+        purgeExpiredEntries();
+    }
+
+    @Override
+    public void purgeExpiredEntries() {
+        purgeExpired();
+        maintenanceLock.lock();
+        try {
+            compact();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    //-------------------------<Mbean specific implementation>
+
+    @Override
+    public long getTtl() {
+        return ttl;
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
 
+    @Override
+    public String getReclaimableSize() {
+        long dead = 0;
+        for (DiskSegment segment : segments.values()) {
+            dead += segment.getDeadBytes();
+        }
+        return FileUtils.byteCountToDisplaySize(dead);
+    }
+
+    @Override
+    public void clearCache() {
+        invalidateAll();
+    }
+
+    @Override
+    protected Map<CacheKey, DiskCacheEntry> getCacheAsMap() {
+        return index;
+    }
+
+    @Override
+    protected long getBytesLength(DiskCacheEntry cacheObj) {
+        return cacheObj.getBodyLength();
+    }
+
+    @Override
+    @SuppressWarnings("squid:S1192")
+    protected void addCacheData(Map<String, Object> data, DiskCacheEntry cacheObj) {
+        int hitCount = cacheObj.getHitCount();
+        long size = cacheObj.getBodyLength();
+        data.put(JMX_PN_STATUS, cacheObj.getStatus());
+        data.put(JMX_PN_SIZE, FileUtils.byteCountToDisplaySize(size));
+        data.put(JMX_PN_CONTENTTYPE, cacheObj.getContentType());
+        data.put(JMX_PN_CHARENCODING, cacheObj.getCharEncoding());
+        data.put(JMX_PN_HITS, hitCount);
+        data.put(JMX_PN_TOTALSIZESERVED, FileUtils.byteCountToDisplaySize(hitCount * size));
+    }
+
+    @Override
+    protected String toString(DiskCacheEntry cacheObj) throws CacheMBeanException {
+        try {
+            return IOUtils.toString(
+                    new ByteBufferInputStream(cacheObj.getSegment().read(cacheObj.getBodyOffset(), cacheObj.getBodyLength())),
+                    StringUtils.defaultIfEmpty(cacheObj.getCharEncoding(), "UTF-8"));
+        } catch (IOException e) {
+            throw new CacheMBeanException("Error getting the content from the cacheObject", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("squid:S1192")
+    protected CompositeType getCacheEntryType() throws OpenDataException {
+        return new CompositeType(JMX_PN_CACHEENTRY, JMX_PN_CACHEENTRY,
+                new String[] { JMX_PN_CACHEKEY, JMX_PN_STATUS, JMX_PN_SIZE, JMX_PN_CONTENTTYPE, JMX_PN_CHARENCODING, JMX_PN_HITS, JMX_PN_TOTALSIZESERVED },
+                new String[] { JMX_PN_CACHEKEY, JMX_PN_STATUS, JMX_PN_SIZE, JMX_PN_CONTENTTYPE, JMX_PN_CHARENCODING, JMX_PN_HITS, JMX_PN_TOTALSIZESERVED },
+                new OpenType[] { SimpleType.STRING, SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.STRING });
+    }
 }
@@ -0,0 +1,375 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.disk.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only segment file of the disk cache store.
+ * <p>
+ * Every cache entry is written as a single record:
+ * <pre>
+ * int  magic
+ * byte state (live / dead)
+ * long created (epoch millis)
+ * long expires (epoch millis, 0 = never)
+ * int  meta data length
+ * long body length
+ * byte[] meta data (serialized cache key and response meta data)
+ * byte[] body
+ * </pre>
+ * Records are never rewritten, except for the state byte which is flipped to dead on invalidation so that the
+ * entry is not resurrected when the index is rebuilt from disk. Space held by dead records is reclaimed by compaction,
+ * which copies the remaining live records into the active segment and deletes the old file.
+ * <p>
+ * Writes must be serialized by the caller; reads only lock to remap the active segment. Once a segment is sealed it
+ * is memory-mapped as a whole, so that reads are served straight from the page cache without copying the body onto
+ * the heap. The active segment is mapped from its start up to its current size and remapped as it grows, in steps of
+ * at least {@link #REMAP_STEP} bytes so that the number of mappings stays bounded; only reads of the most recent
+ * records below that step are copied onto the heap.
+ */
+final class DiskSegment implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DiskSegment.class);
+
+    static final int MAGIC = 0xACDC0001;
+    static final byte STATE_DEAD = 0;
+    static final byte STATE_LIVE = 1;
+
+    static final int STATE_OFFSET = 4;
+    static final int BODY_LENGTH_OFFSET = 25;
+    static final int HEADER_LENGTH = 33;
+
+    private static final String FILE_PREFIX = "segment-";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** Minimum growth of the active segment before it is mapped again */
+    static final long REMAP_STEP = 1024L * 1024L;
+
+    private final int id;
+    private final File file;
+    private final FileChannel channel;
+    private final AtomicLong deadBytes = new AtomicLong();
+
+    /** Current write position, only advanced by the single writer */
+    private volatile long size;
+    /** Set once the segment is sealed and no further writes are expected */
+    private volatile boolean sealed;
+    /** Read-only mapping of the whole segment, available once the segment is sealed */
+    private volatile ByteBuffer sealedBuffer;
+    /** Read-only mapping of the start of the active segment, replaced as the segment grows */
+    private volatile ByteBuffer activeBuffer;
+
+    private DiskSegment(int id, File file, FileChannel channel) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Opens (or creates) the segment with the given id in the given directory.
+     */
+    static DiskSegment open(File directory, int id) throws IOException {
+        final File file = new File(directory, fileName(id));
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new DiskSegment(id, file, channel);
+    }
+
+    static String fileName(int id) {
+        return String.format("%s%08d%s", FILE_PREFIX, id, FILE_SUFFIX);
+    }
+
+    /**
+     * @return the segment id encoded in the file name or -1 if the file is not a segment file.
+     */
+    static int parseId(String fileName) {
+        if (fileName == null || !fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long getDeadBytes() {
+        return deadBytes.get();
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Appends a record at the end of the segment, streaming the body from the given input stream.
+     *
+     * @return the length of the body written.
+     */
+    long append(long created, long expires, byte[] meta, InputStream body) throws IOException {
+        final long start = size;
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).put(STATE_LIVE).putLong(created).putLong(expires).putInt(meta.length).putLong(0L);
+        header.flip();
+
+        long position = start;
+        try {
+            position += writeFully(header, position);
+            position += writeFully(ByteBuffer.wrap(meta), position);
+
+            long bodyLength = 0;
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                position += writeFully(ByteBuffer.wrap(buffer, 0, read), position);
+                bodyLength += read;
+            }
+
+            // Body length is only known once the body has been streamed; patch it into the header.
+            final ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+            length.putLong(bodyLength).flip();
+            writeFully(length, start + BODY_LENGTH_OFFSET);
+
+            size = position;
+            return bodyLength;
+        } catch (IOException e) {
+            // Drop the partially written record.
+            channel.truncate(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a complete record from another segment to the end of this segment.
+     *
+     * @return the offset of the copied record within this segment.
+     */
+    long copyRecord(DiskSegment source, long offset, long recordLength) throws IOException {
+        final long start = size;
+        try {
+            writeFully(source.read(offset, recordLength), start);
+        } catch (IOException e) {
+            channel.truncate(start);
+            throw e;
+        }
+        size = start + recordLength;
+        return start;
+    }
+
+    /**
+     * Returns a read-only view of the given region of this segment. Regions of the active segment which are not yet
+     * covered by its mapping are mapped again, unless the segment grew by less than {@link #REMAP_STEP} since the last
+     * mapping; such regions are read onto the heap.
+     */
+    ByteBuffer read(long position, long length) throws IOException {
+        final ByteBuffer sealedView = sealedBuffer;
+        if (sealedView != null) {
+            return slice(sealedView, position, length);
+        }
+        ByteBuffer mapped = activeBuffer;
+        if (mapped == null || position + length > mapped.capacity()) {
+            mapped = remap(position + length);
+        }
+        if (mapped != null) {
+            return slice(mapped, position, length);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Record at " + position + " of segment " + file + " is too large to be read");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer mapped, long position, long length) {
+        final ByteBuffer view = mapped.duplicate();
+        view.position((int) position);
+        view.limit((int) (position + length));
+        return view.slice();
+    }
+
+    /**
+     * Maps the active segment up to its current size if the given end is not covered by the current mapping yet.
+     *
+     * @return the mapping covering the given end, or null if the region is to be read onto the heap
+     */
+    private synchronized ByteBuffer remap(long end) throws IOException {
+        final ByteBuffer mapped = activeBuffer;
+        if (mapped != null && end <= mapped.capacity()) {
+            return mapped;
+        }
+        final long current = size;
+        final long mappedSize = mapped == null ? 0 : mapped.capacity();
+        if (sealed || current < end || current > Integer.MAX_VALUE || current - mappedSize < REMAP_STEP) {
+            return null;
+        }
+        final ByteBuffer remapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, current);
+        activeBuffer = remapped;
+        return remapped;
+    }
+
+    /**
+     * Flips the state byte of a record to dead so the record is skipped when the segment is scanned again.
+     */
+    void markDead(long offset, long recordLength) {
+        deadBytes.addAndGet(recordLength);
+        try {
+            writeFully(ByteBuffer.wrap(new byte[]{STATE_DEAD}), offset + STATE_OFFSET);
+        } catch (IOException e) {
+            log.warn("Unable to mark record at {} of segment {} as dead", offset, file, e);
+        }
+    }
+
+    /**
+     * Seals the segment; no further writes are expected and the segment gets mapped as a whole.
+     */
+    synchronized void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            // A single mapping is limited to 2GB; the segment keeps being served by positional reads.
+            log.warn("Segment {} of {} bytes is too large to be mapped, reads will be copied onto the heap", file, size);
+        } else if (size > 0) {
+            sealedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        activeBuffer = null;
+        sealed = true;
+    }
+
+    /**
+     * Scans all records of the segment. A torn record at the end of the segment, left by an interrupted write, is
+     * truncated.
+     */
+    void scan(RecordVisitor visitor) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        long position = 0;
+        final long fileSize = channel.size();
+
+        while (position + HEADER_LENGTH <= fileSize) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+
+            final int magic = header.getInt();
+            final byte state = header.get();
+            final long created = header.getLong();
+            final long expires = header.getLong();
+            final int metaLength = header.getInt();
+            final long bodyLength = header.getLong();
+            final long recordLength = HEADER_LENGTH + metaLength + bodyLength;
+
+            if (magic != MAGIC || metaLength < 0 || bodyLength < 0 || position + recordLength > fileSize) {
+                break;
+            }
+
+            if (state == STATE_LIVE) {
+                final ByteBuffer meta = ByteBuffer.allocate(metaLength);
+                readFully(meta, position + HEADER_LENGTH);
+                if (!visitor.visit(position, recordLength, created, expires, meta.array(),
+                        position + HEADER_LENGTH + metaLength, bodyLength)) {
+                    markDead(position, recordLength);
+                }
+            } else {
+                deadBytes.addAndGet(recordLength);
+            }
+            position += recordLength;
+        }
+
+        if (position < fileSize) {
+            log.warn("Truncating segment {} at {} bytes, trailing data is incomplete", file, position);
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    /**
+     * Closes the file channel. Mapped buffers handed out before remain readable until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and removes the segment file.
+     */
+    void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            log.debug("Unable to close segment {}", file, e);
+        }
+        if (!file.delete() && file.exists()) {
+            log.warn("Unable to delete segment file {}", file);
+        }
+    }
+
+    private int writeFully(ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment " + file);
+            }
+            current += read;
+        }
+    }
+
+    /**
+     * Callback for {@link #scan(RecordVisitor)}.
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @return false if the record should be marked as dead.
+         */
+        @SuppressWarnings("squid:S00107")
+        boolean visit(long offset, long recordLength, long created, long expires, byte[] meta, long bodyOffset,
+                      long bodyLength) throws IOException;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.disk.impl;
+
+import com.adobe.acs.commons.httpcache.exception.HttpCacheDataStreamException;
+import com.adobe.acs.commons.httpcache.store.TempSink;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TempSink implementation for the disk cache store. Spools the response to a temporary file instead of the heap. The
+ * temporary file is removed once the input stream handed out by {@link #createInputStream()} is closed.
+ */
+public class DiskTempSinkImpl implements TempSink {
+    private static final String TEMP_FILE_PREFIX = "sink-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final File directory;
+    private File file;
+    private OutputStream outputStream;
+
+    public DiskTempSinkImpl(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public OutputStream createOutputStream() throws HttpCacheDataStreamException {
+        if (null == outputStream) {
+            try {
+                file = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, directory);
+                outputStream = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            } catch (IOException e) {
+                throw new HttpCacheDataStreamException("Unable to create temp sink file", e);
+            }
+        }
+        return outputStream;
+    }
+
+    @Override
+    public InputStream createInputStream() throws HttpCacheDataStreamException {
+        if (null == file) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        try {
+            // Make sure everything buffered reached the file before reading it back.
+            outputStream.flush();
+            IOUtils.closeQuietly(outputStream);
+            return Files.newInputStream(file.toPath(), StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(file);
+            throw new HttpCacheDataStreamException("Unable to read temp sink file", e);
+        }
+    }
+
+    @Override
+    public long length() {
+        if (null == file || !file.exists()) {
+            return -1;
+        }
+        return file.length();
+    }
+}
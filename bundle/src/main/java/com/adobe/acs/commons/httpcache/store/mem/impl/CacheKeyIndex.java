@@ -0,0 +1,235 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.mem.impl;
+
+import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
+import com.adobe.acs.commons.httpcache.keys.AbstractCacheKey;
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Secondary index of the keys held by a cache store, used to find the entries affected by an invalidation without
+ * scanning the whole cache.
+ * <p>
+ * Keys are indexed by their hierarchy resource path and by the cache config they were cached for. Only keys relying
+ * on the default {@link AbstractCacheKey#isInvalidatedBy(CacheKey)} (matching on the hierarchy resource path) can be
+ * looked up by path; other keys are always returned as invalidation candidates, as are keys put without a cache
+ * config. Candidates still have to be verified by the caller.
+ * <p>
+ * Each key is registered together with the cache value it was put with, and is only unregistered for that same value.
+ * This keeps the index consistent when removal notifications of a cache arrive after the key was put again.
+ */
+public class CacheKeyIndex {
+
+    private static final ClassValue<Boolean> PATH_INDEXABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return AbstractCacheKey.class.isAssignableFrom(type)
+                        && AbstractCacheKey.class.equals(type.getMethod("isInvalidatedBy", CacheKey.class).getDeclaringClass());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final Map<CacheKey, Registration> registrations = new ConcurrentHashMap<>();
+    private final Map<String, Set<CacheKey>> keysByPath = new ConcurrentHashMap<>();
+    private final Map<HttpCacheConfig, Set<CacheKey>> keysByConfig = new ConcurrentHashMap<>();
+    /** Keys which cannot be looked up by path */
+    private final Set<CacheKey> unindexedByPath = ConcurrentHashMap.newKeySet();
+    /** Keys put without a cache config */
+    private final Set<CacheKey> unindexedByConfig = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong candidatesExamined = new AtomicLong();
+    private final AtomicLong entriesInvalidated = new AtomicLong();
+    private final AtomicLong invalidationTime = new AtomicLong();
+
+    /**
+     * Registers a key which was put into the cache with the given value.
+     *
+     * @param key         the cache key
+     * @param value       the cache value the key was put with
+     * @param cacheConfig the cache config the value was cached for, may be null
+     */
+    public void add(CacheKey key, Object value, HttpCacheConfig cacheConfig) {
+        registrations.compute(key, (k, previous) -> {
+            if (previous != null) {
+                unlink(k, previous);
+            }
+            final Registration registration = new Registration(value, cacheConfig, indexablePath(k));
+            link(k, registration);
+            return registration;
+        });
+    }
+
+    /**
+     * Unregisters a key, provided it is still registered for the given value.
+     *
+     * @param key   the cache key
+     * @param value the cache value which got removed from the cache
+     */
+    public void remove(CacheKey key, Object value) {
+        registrations.computeIfPresent(key, (k, registration) -> {
+            if (registration.value != value) {
+                return registration;
+            }
+            unlink(k, registration);
+            return null;
+        });
+    }
+
+    /**
+     * Unregisters all keys.
+     */
+    public void clear() {
+        registrations.clear();
+        keysByPath.clear();
+        keysByConfig.clear();
+        unindexedByPath.clear();
+        unindexedByConfig.clear();
+    }
+
+    /**
+     * @return the keys which may be invalidated by the given invalidation key.
+     */
+    public Collection<CacheKey> getInvalidationCandidates(CacheKey invalidationKey) {
+        final List<CacheKey> candidates = new ArrayList<>(unindexedByPath);
+        final String path = invalidationKey.getHierarchyResourcePath();
+        if (path != null) {
+            candidates.addAll(keysByPath.getOrDefault(path, Collections.emptySet()));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the keys which may belong to the given cache config.
+     */
+    public Collection<CacheKey> getCandidates(HttpCacheConfig cacheConfig) {
+        final List<CacheKey> candidates = new ArrayList<>(unindexedByConfig);
+        candidates.addAll(keysByConfig.getOrDefault(cacheConfig, Collections.emptySet()));
+        return candidates;
+    }
+
+    /**
+     * Records the cost of an invalidation.
+     *
+     * @param examined    the number of candidates examined
+     * @param invalidated the number of entries invalidated
+     * @param startNanos  the {@link System#nanoTime()} the invalidation started at
+     */
+    public void recordInvalidation(long examined, long invalidated, long startNanos) {
+        invalidationCount.incrementAndGet();
+        candidatesExamined.addAndGet(examined);
+        entriesInvalidated.addAndGet(invalidated);
+        invalidationTime.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    public long size() {
+        return registrations.size();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public long getCandidatesExamined() {
+        return candidatesExamined.get();
+    }
+
+    public long getEntriesInvalidated() {
+        return entriesInvalidated.get();
+    }
+
+    public long getInvalidationTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(invalidationTime.get());
+    }
+
+    private static String indexablePath(CacheKey key) {
+        if (key.getHierarchyResourcePath() != null && PATH_INDEXABLE.get(key.getClass())) {
+            return key.getHierarchyResourcePath();
+        }
+        return null;
+    }
+
+    /* Called while holding the registration of the key. */
+    private void link(CacheKey key, Registration registration) {
+        if (registration.path != null) {
+            keysByPath.compute(registration.path, (path, keys) -> {
+                final Set<CacheKey> set = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                set.add(key);
+                return set;
+            });
+        } else {
+            unindexedByPath.add(key);
+        }
+
+        if (registration.cacheConfig != null) {
+            keysByConfig.compute(registration.cacheConfig, (config, keys) -> {
+                final Set<CacheKey> set = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                set.add(key);
+                return set;
+            });
+        } else {
+            unindexedByConfig.add(key);
+        }
+    }
+
+    /* Called while holding the registration of the key. */
+    private void unlink(CacheKey key, Registration registration) {
+        if (registration.path != null) {
+            keysByPath.computeIfPresent(registration.path, (path, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        } else {
+            unindexedByPath.remove(key);
+        }
+
+        if (registration.cacheConfig != null) {
+            keysByConfig.computeIfPresent(registration.cacheConfig, (config, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        } else {
+            unindexedByConfig.remove(key);
+        }
+    }
+
+    private static final class Registration {
+        private final Object value;
+        private final HttpCacheConfig cacheConfig;
+        private final String path;
+
+        private Registration(Object value, HttpCacheConfig cacheConfig, String path) {
+            this.value = value;
+            this.cacheConfig = cacheConfig;
+            this.path = path;
+        }
+    }
+}
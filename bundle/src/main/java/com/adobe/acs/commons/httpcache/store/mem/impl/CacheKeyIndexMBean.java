@@ -0,0 +1,41 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.mem.impl;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX attributes of cache stores backed by a {@link CacheKeyIndex}.
+ */
+public interface CacheKeyIndexMBean {
+
+    @Description("Number of cache keys tracked by the invalidation index")
+    long getInvalidationIndexSize();
+
+    @Description("Number of invalidations served through the invalidation index")
+    long getInvalidationCount();
+
+    @Description("Number of cache entries examined by invalidations")
+    long getInvalidationCandidatesExamined();
+
+    @Description("Number of cache entries removed by invalidations")
+    long getInvalidatedEntriesCount();
+
+    @Description("Total time spent on invalidations in milliseconds")
+    long getInvalidationTime();
+}
@@ -24,7 +24,7 @@ import com.adobe.granite.jmx.annotation.Description;
  * JMX MBean for MEM cache store.
  */
 @Description("ACS AEM Commons - Http Cache - Mem Cache")
-public interface MemCacheMBean extends CacheMBean {
+public interface MemCacheMBean extends CacheMBean, CacheKeyIndexMBean, StaleEntriesMBean {
 
     @Description("Cache TTL in Seconds. -1 value represent no TTL.")
     long getTtl();
@@ -23,23 +23,31 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Value for cache item in mem store.
  */
 public class MemCachePersistenceObject implements Serializable {
+    /** Smallest response body worth compressing */
+    static final int MIN_GZIP_LENGTH = 1024;
+
     /** Response status **/
     private int status;
     /** Response character encoding */
@@ -50,6 +58,8 @@ public class MemCachePersistenceObject implements Serializable {
     transient Multimap<String, String> headers;
     /** Byte array to hold the data from the stream */
     private byte[] bytes;
+    /** Gzip compressed variant of the data, if any */
+    private byte[] gzipBytes;
     private HttpCacheServletResponseWrapper.ResponseWriteMethod writeMethod;
 
     AtomicInteger count = new AtomicInteger(0);
@@ -156,6 +166,77 @@ public class MemCachePersistenceObject implements Serializable {
     }
 
 
+    /**
+     * Get the length of the data without copying it.
+     *
+     * @return number of bytes of the response content
+     */
+    public int getBytesLength() {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * Get the data as a buffer backed by the cached bytes. The buffer must not be modified.
+     *
+     * @return buffer over the response content
+     */
+    public ByteBuffer getData() {
+        return bytes == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Get the gzip compressed data as a buffer backed by the cached bytes. The buffer must not be modified.
+     *
+     * @return buffer over the compressed response content, or null if there is no compressed variant
+     */
+    public ByteBuffer getGzipData() {
+        return gzipBytes == null ? null : ByteBuffer.wrap(gzipBytes);
+    }
+
+    /**
+     * Get the memory held by this entry's data, including its compressed variant.
+     *
+     * @return number of bytes held
+     */
+    public int getWeight() {
+        return getBytesLength() + (gzipBytes == null ? 0 : gzipBytes.length);
+    }
+
+    /**
+     * Pre-compresses the data with gzip if it is textual, not encoded already and large enough to benefit from it.
+     * The compressed variant is only kept if it is smaller than the data.
+     *
+     * @throws HttpCacheDataStreamException
+     */
+    public MemCachePersistenceObject buildGzipVariant() throws HttpCacheDataStreamException {
+        if (bytes == null || bytes.length < MIN_GZIP_LENGTH || !isCompressible(contentType)
+                || (headers != null && headers.keySet().stream().anyMatch("Content-Encoding"::equalsIgnoreCase))) {
+            return this;
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new HttpCacheDataStreamException("Unable to compress the cached data", e);
+        }
+        if (compressed.size() < bytes.length) {
+            this.gzipBytes = compressed.toByteArray();
+        }
+        return this;
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final String mimeType = StringUtils.substringBefore(contentType, ";").trim().toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/")
+                || mimeType.endsWith("/json") || mimeType.endsWith("+json")
+                || mimeType.endsWith("/xml") || mimeType.endsWith("+xml")
+                || mimeType.endsWith("/javascript");
+    }
+
     /**
      * Increments the hit for this cache entry.
      */
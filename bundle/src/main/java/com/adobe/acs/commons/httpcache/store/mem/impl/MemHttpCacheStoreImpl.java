@@ -24,10 +24,12 @@ import com.adobe.acs.commons.httpcache.exception.HttpCacheKeyCreationException;
 import com.adobe.acs.commons.httpcache.keys.CacheKey;
 import com.adobe.acs.commons.httpcache.store.HttpCacheStore;
 import com.adobe.acs.commons.httpcache.store.TempSink;
+import com.adobe.acs.commons.httpcache.util.ByteBufferInputStream;
 import com.adobe.acs.commons.util.impl.AbstractGuavaCacheMBean;
 import com.adobe.acs.commons.util.impl.exception.CacheMBeanException;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.cache.Weigher;
@@ -49,10 +51,8 @@ import javax.management.openmbean.CompositeType;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.OpenType;
 import javax.management.openmbean.SimpleType;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -94,14 +94,38 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
     private static final String PROP_MAX_SIZE_IN_MB = "httpcache.cachestore.memcache.maxsize";
     private static final long DEFAULT_MAX_SIZE_IN_MB = 10L; // Defaults to 10MB.
 
+    @Property(label = "Grace period",
+              description = "Time in seconds invalidated or expired entries are kept as stale entries, which cache "
+                      + "configs serving stale content deliver while the response is refreshed. Stale entries are "
+                      + "bounded by the maximum size of this store as well. Default to 0 meaning no stale entries.",
+              longValue = MemHttpCacheStoreImpl.DEFAULT_GRACE_PERIOD)
+    private static final String PROP_GRACE_PERIOD = "httpcache.cachestore.memcache.graceperiod";
+    private static final long DEFAULT_GRACE_PERIOD = 0L; // Defaults to 0 meaning no stale entries.
+
+    @Property(label = "Pre-compress",
+              description = "Keep a gzip compressed variant of textual entries, delivered as it is to clients "
+                      + "accepting gzip. The compressed variant counts towards the maximum size of this store.",
+              boolValue = MemHttpCacheStoreImpl.DEFAULT_GZIP)
+    private static final String PROP_GZIP = "httpcache.cachestore.memcache.gzip";
+    private static final boolean DEFAULT_GZIP = false;
+    private boolean gzip;
+
     /** Cache - Uses Google Guava's cache */
     private Cache<CacheKey, MemCachePersistenceObject> cache;
 
+    /** Secondary index of the cached keys used for invalidation */
+    private final CacheKeyIndex keyIndex = new CacheKeyIndex();
+
+    /** Invalidated and expired entries kept for the grace period */
+    private volatile StaleEntries staleEntries = new StaleEntries(DEFAULT_GRACE_PERIOD, 0L);
+
     @Activate
     protected void activate(Map<String, Object> configs) {
         // Read config and populate values.
         ttl = PropertiesUtil.toLong(configs.get(PROP_TTL), DEFAULT_TTL);
         long maxSizeInMb = PropertiesUtil.toLong(configs.get(PROP_MAX_SIZE_IN_MB), DEFAULT_MAX_SIZE_IN_MB);
+        long gracePeriod = PropertiesUtil.toLong(configs.get(PROP_GRACE_PERIOD), DEFAULT_GRACE_PERIOD);
+        gzip = PropertiesUtil.toBoolean(configs.get(PROP_GZIP), DEFAULT_GZIP);
 
         // Initializing the cache.
         // If cache is present, invalidate all and reinitailize the cache.
@@ -110,6 +134,8 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
             cache.invalidateAll();
             log.info("Mem cache already present. Invalidating the cache and re-initializing it.");
         }
+        staleEntries.clear();
+        staleEntries = new StaleEntries(gracePeriod, maxSizeInMb * MEGABYTE);
         if (ttl != DEFAULT_TTL) {
             // If ttl is present, attach it to guava cache configuration.
             cache = CacheBuilder.newBuilder()
@@ -135,17 +161,22 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
     @Deactivate
     protected void deactivate(Map<String, Object> configs) {
         cache.invalidateAll();
+        staleEntries.clear();
         log.info("MemHttpCacheStoreImpl deactivated.");
     }
 
     /**
-     * Removal listener for cache entry items.
+     * Removal listener for cache entry items. Keeps the key index in sync with the cache, and keeps expired entries
+     * as stale entries.
      */
-    private static class MemCacheEntryRemovalListener implements RemovalListener<CacheKey, MemCachePersistenceObject> {
-        private static final Logger log = LoggerFactory.getLogger(MemCacheEntryRemovalListener.class);
+    private class MemCacheEntryRemovalListener implements RemovalListener<CacheKey, MemCachePersistenceObject> {
 
         @Override
         public void onRemoval(RemovalNotification<CacheKey, MemCachePersistenceObject> removalNotification) {
+            keyIndex.remove(removalNotification.getKey(), removalNotification.getValue());
+            if (removalNotification.getCause() == RemovalCause.EXPIRED) {
+                staleEntries.add(removalNotification.getKey(), removalNotification.getValue());
+            }
             log.debug("Mem cache entry for uri {} removed due to {}", removalNotification.getKey(),
                     removalNotification.getCause().name());
         }
@@ -158,16 +189,29 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
 
         @Override
         public int weigh(CacheKey memCacheKey, MemCachePersistenceObject memCachePersistenceObject) {
-            // Size of the byte array.
-            return memCachePersistenceObject.getBytes().length;
+            // Size of the byte arrays.
+            return memCachePersistenceObject.getWeight();
         }
     }
 
     //-------------------------<CacheStore interface specific implementation>
     @Override
     public void put(CacheKey key, CacheContent content) throws HttpCacheDataStreamException {
-        cache.put(key, new MemCachePersistenceObject().buildForCaching(content.getStatus(), content.getCharEncoding(),
-                content.getContentType(), content.getHeaders(), content.getInputDataStream(), content.getWriteMethod()));
+        put(key, content, null);
+    }
+
+    @Override
+    public void put(CacheKey key, CacheContent content, HttpCacheConfig cacheConfig) throws HttpCacheDataStreamException {
+        final MemCachePersistenceObject value = new MemCachePersistenceObject().buildForCaching(content.getStatus(),
+                content.getCharEncoding(), content.getContentType(), content.getHeaders(), content.getInputDataStream(),
+                content.getWriteMethod());
+        if (gzip) {
+            value.buildGzipVariant();
+        }
+        // Register before putting, so a removal of the value racing with this put finds its registration.
+        keyIndex.add(key, value, cacheConfig);
+        cache.put(key, value);
+        staleEntries.remove(key);
     }
 
     @Override
@@ -188,8 +232,19 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
         // Increment hit count
         value.incrementHitCount();
 
-        return new CacheContent(value.getStatus(), value.getCharEncoding(), value.getContentType(), value.getHeaders(), new
-                ByteArrayInputStream(value.getBytes()), value.getWriteMethod());
+        return new CacheContent(value.getStatus(), value.getCharEncoding(), value.getContentType(), value.getHeaders(),
+                value.getData(), value.getGzipData(), value.getWriteMethod());
+    }
+
+    @Override
+    public CacheContent getStaleIfPresent(CacheKey key) {
+        CacheContent content = staleEntries.getIfPresent(key);
+        if (content == null && staleEntries.isEnabled()) {
+            // Expired entries are handed over to the stale entries by the cache maintenance.
+            cache.cleanUp();
+            content = staleEntries.getIfPresent(key);
+        }
+        return content;
     }
 
     @Override
@@ -199,35 +254,53 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
 
     @Override
     public void invalidate(CacheKey invalidationKey) {
-        final ConcurrentMap<CacheKey, MemCachePersistenceObject> cacheAsMap = cache.asMap();
+        final long start = System.nanoTime();
+        long examined = 0;
+        long invalidated = 0;
 
-        for (CacheKey key : cacheAsMap.keySet()) {
+        for (CacheKey key : keyIndex.getInvalidationCandidates(invalidationKey)) {
+            examined++;
             if (key.isInvalidatedBy(invalidationKey)) {
-                cache.invalidate(key);
+                invalidateKey(key);
+                invalidated++;
             }
         }
+        keyIndex.recordInvalidation(examined, invalidated, start);
     }
 
     @Override
     public void invalidate(HttpCacheConfig cacheConfig) {
-        ConcurrentMap<CacheKey, MemCachePersistenceObject> cacheAsMap = cache.asMap();
-        for (CacheKey key : cacheAsMap.keySet()) {
+        final long start = System.nanoTime();
+        long examined = 0;
+        long invalidated = 0;
+
+        for (CacheKey key : keyIndex.getCandidates(cacheConfig)) {
+            examined++;
             // Match the cache key with cache config.
             try {
                 if (cacheConfig.knows(key)) {
                     // If matches, invalidate that particular key.
-                    cache.invalidate(key);
+                    invalidateKey(key);
+                    invalidated++;
                 }
             } catch (HttpCacheKeyCreationException e) {
                 log.error("Could not invalidate HTTP cache. Falling back to full cache invalidation.", e);
                 this.invalidateAll();
+                break;
             }
         }
+        keyIndex.recordInvalidation(examined, invalidated, start);
     }
 
     @Override
     public void invalidateAll() {
         cache.invalidateAll();
+        staleEntries.clear();
+    }
+
+    private void invalidateKey(CacheKey key) {
+        // Keep the invalidated entry as stale entry, if stale entries are enabled.
+        staleEntries.add(key, cache.asMap().remove(key));
     }
 
     @Override
@@ -251,6 +324,41 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
         return this.ttl;
     }
 
+    @Override
+    public long getGracePeriod() {
+        return staleEntries.getGracePeriod();
+    }
+
+    @Override
+    public long getStaleEntriesCount() {
+        return staleEntries.size();
+    }
+
+    @Override
+    public long getInvalidationIndexSize() {
+        return keyIndex.size();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return keyIndex.getInvalidationCount();
+    }
+
+    @Override
+    public long getInvalidationCandidatesExamined() {
+        return keyIndex.getCandidatesExamined();
+    }
+
+    @Override
+    public long getInvalidatedEntriesCount() {
+        return keyIndex.getEntriesInvalidated();
+    }
+
+    @Override
+    public long getInvalidationTime() {
+        return keyIndex.getInvalidationTimeInMillis();
+    }
+
     @Override
     protected Cache<CacheKey, MemCachePersistenceObject> getCache() {
         return cache;
@@ -258,14 +366,14 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
 
     @Override
     protected long getBytesLength(MemCachePersistenceObject cacheObj) {
-        return cacheObj.getBytes().length;
+        return cacheObj.getWeight();
     }
 
     @Override
     @SuppressWarnings("squid:S1192")
     protected void addCacheData(Map<String, Object> data, MemCachePersistenceObject cacheObj) {
         int hitCount = cacheObj.getHitCount();
-        long size = cacheObj.getBytes().length;
+        long size = cacheObj.getBytesLength();
         data.put(JMX_PN_STATUS, cacheObj.getStatus());
         data.put(JMX_PN_SIZE, FileUtils.byteCountToDisplaySize(size));
         data.put(JMX_PN_CONTENTTYPE, cacheObj.getContentType());
@@ -279,7 +387,7 @@ public class MemHttpCacheStoreImpl extends AbstractGuavaCacheMBean<CacheKey, Mem
     protected String toString(MemCachePersistenceObject cacheObj) throws CacheMBeanException{
         try {
             return IOUtils.toString(
-                    new ByteArrayInputStream(cacheObj.getBytes()),
+                    new ByteBufferInputStream(cacheObj.getData()),
                     cacheObj.getCharEncoding());
         } catch (IOException e) {
             throw new CacheMBeanException("Error getting the content from the cacheObject", e);
@@ -0,0 +1,110 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.mem.impl;
+
+import com.adobe.acs.commons.httpcache.engine.CacheContent;
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the entries invalidated or expired from an in-memory cache store for a grace period, so they can still be
+ * served as stale content while a fresh response is rendered.
+ * <p>
+ * Stale entries are bounded by weight as well; the least recently stale entries are dropped first.
+ */
+public class StaleEntries {
+
+    private final long gracePeriod;
+    private final Cache<CacheKey, MemCachePersistenceObject> entries;
+
+    /**
+     * @param gracePeriod   time in seconds an entry is kept once stale, 0 or less disables keeping stale entries
+     * @param maximumWeight maximum total size in bytes of the stale entries
+     */
+    public StaleEntries(long gracePeriod, long maximumWeight) {
+        this.gracePeriod = gracePeriod;
+        if (gracePeriod > 0) {
+            entries = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumWeight)
+                    .weigher((CacheKey key, MemCachePersistenceObject value) -> value.getWeight())
+                    .expireAfterWrite(gracePeriod, TimeUnit.SECONDS)
+                    .build();
+        } else {
+            entries = null;
+        }
+    }
+
+    /**
+     * @return true if stale entries are kept
+     */
+    public boolean isEnabled() {
+        return entries != null;
+    }
+
+    /**
+     * Keeps an entry which is not fresh anymore.
+     *
+     * @param key   the cache key
+     * @param value the value removed from the cache, may be null
+     */
+    public void add(CacheKey key, MemCachePersistenceObject value) {
+        if (entries != null && value != null) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Drops the stale entry of a key, typically because a fresh entry got cached.
+     *
+     * @param key the cache key
+     */
+    public void remove(CacheKey key) {
+        if (entries != null) {
+            entries.invalidate(key);
+        }
+    }
+
+    public void clear() {
+        if (entries != null) {
+            entries.invalidateAll();
+        }
+    }
+
+    /**
+     * @return the stale content of the given key, or null if there is none
+     */
+    public CacheContent getIfPresent(CacheKey key) {
+        final MemCachePersistenceObject value = entries != null ? entries.getIfPresent(key) : null;
+        if (value == null) {
+            return null;
+        }
+        return new CacheContent(value.getStatus(), value.getCharEncoding(), value.getContentType(), value.getHeaders(),
+                value.getData(), value.getGzipData(), value.getWriteMethod());
+    }
+
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+
+    public long size() {
+        return entries != null ? entries.size() : 0;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.mem.impl;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX attributes of cache stores keeping {@link StaleEntries}.
+ */
+public interface StaleEntriesMBean {
+
+    @Description("Grace period in seconds stale entries are kept for. 0 or less means stale entries are not kept.")
+    long getGracePeriod();
+
+    @Description("Number of stale entries kept")
+    long getStaleEntriesCount();
+}
@@ -103,4 +103,40 @@ public class CacheUtils {
                 }
         ).collect(Collectors.toList());
     }
+
+    /**
+     * Checks whether an Accept-Encoding request header value accepts gzip encoded content.
+     *
+     * @param acceptEncoding the Accept-Encoding header value, may be null
+     * @return true if gzip, or any encoding, is accepted with a non-zero quality value
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return false;
+        }
+        boolean accepted = false;
+        for (String coding : StringUtils.split(acceptEncoding, ',')) {
+            final String name = StringUtils.substringBefore(coding, ";").trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return getQuality(coding) > 0;
+            } else if ("*".equals(name)) {
+                accepted = getQuality(coding) > 0;
+            }
+        }
+        return accepted;
+    }
+
+    private static float getQuality(String coding) {
+        for (String parameter : StringUtils.split(StringUtils.substringAfter(coding, ";"), ';')) {
+            final String[] pair = StringUtils.split(parameter, "=", 2);
+            if (pair.length == 2 && "q".equalsIgnoreCase(pair[0].trim())) {
+                try {
+                    return Float.parseFloat(pair[1].trim());
+                } catch (NumberFormatException e) {
+                    return 0f;
+                }
+            }
+        }
+        return 1f;
+    }
 }
@@ -37,6 +37,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
@@ -54,20 +55,31 @@ import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.commons.mime.MimeTypeService;
 import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.jcr.RepositoryException;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Dictionary;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -146,6 +158,15 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
     private static final String TYPE_QUALITY = "quality";
 
     private static final String TYPE_PROGRESSIVE = "progressive";
+
+    private static final String TYPE_RESIZE = "resize";
+
+    private static final String TYPE_BOUNDED_RESIZE = "bounded-resize";
+
+    private static final String KEY_WIDTH = "width";
+    private static final String KEY_WIDTH_ALIAS = "w";
+    private static final String KEY_HEIGHT = "height";
+    private static final String KEY_HEIGHT_ALIAS = "h";
     private static final String PROP_ADD_URL_PARAMETERS = "addUrlParams";
 
     /* Asset Rendition Pattern Picker */
@@ -159,6 +180,23 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
             value = DEFAULT_ASSET_RENDITION_PICKER_REGEX)
     private static final String PROP_ASSET_RENDITION_PICKER_REGEX = "prop.asset-rendition-picker-regex";
 
+    private static final boolean DEFAULT_RENDITION_CACHE_ENABLED = false;
+
+    @Property(label = "Rendition Cache",
+            description = "Caches transformed images on disk, keyed by image, last modification and transforms."
+                    + " [ Default: false ]",
+            boolValue = DEFAULT_RENDITION_CACHE_ENABLED)
+    private static final String PROP_RENDITION_CACHE_ENABLED = "rendition-cache.enabled";
+
+    private static final long DEFAULT_RENDITION_CACHE_MAX_SIZE_IN_MB = 256L;
+
+    @Property(label = "Rendition Cache Max Size (in MB)",
+            description = "Least recently served renditions are evicted beyond this size. [ Default: 256 ]",
+            longValue = DEFAULT_RENDITION_CACHE_MAX_SIZE_IN_MB)
+    private static final String PROP_RENDITION_CACHE_MAX_SIZE_IN_MB = "rendition-cache.max-size-in-mb";
+
+    private static final long BYTES_IN_MB = 1024L * 1024L;
+
     private final transient Map<String, NamedImageTransformer> namedImageTransformers =
             new ConcurrentHashMap<String, NamedImageTransformer>();
 
@@ -171,6 +209,8 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
 
     private transient RenditionPatternPicker renditionPatternPicker =
             new RenditionPatternPicker(Pattern.compile(DEFAULT_ASSET_RENDITION_PICKER_REGEX));
+
+    private transient volatile RenditionCache renditionCache;
     
     /**
      * Only accept requests that.
@@ -211,11 +251,6 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
     protected final void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response) throws
             ServletException, IOException {
 
-         // Warn when this servlet is used
-         AVOID_USAGE_LOGGER.warn("An image is transformed on-the-fly, which can be a very resource intensive operation. "
-              + "If done frequently, you should consider switching to dynamic AEM web-optimized images or creating such a rendition upfront using processing profiles. "
-              + "See https://adobe-consulting-services.github.io/acs-aem-commons/features/named-image-transform/index.html for more details.");
-
         // Get the transform names from the suffix
         final List<NamedImageTransformer> selectedNamedImageTransformers = getNamedImageTransformers(request);
 
@@ -224,16 +259,52 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
 
         final Image image = resolveImage(request);
         final String mimeType = getMimeType(request, image);
-        Layer layer = getLayer(image);
 
-        // Adjust layer to image orientation
-        processImageOrientation(image.getResource(), layer);
-        
-        if (layer == null) {
+        final RenditionCache cache = this.renditionCache;
+        final String cacheKey = cache == null ? null : getCacheKey(request, image, imageTransformersWithParams);
+        final RenditionCache.Renderer renderer = out -> render(request, image, mimeType, imageTransformersWithParams, out);
+
+        response.setContentType(mimeType);
+
+        final boolean rendered;
+        if (cacheKey == null) {
+            rendered = renderer.render(response.getOutputStream());
+        } else {
+            rendered = cache.write(cacheKey, renderer, response.getOutputStream());
+        }
+
+        if (!rendered) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
-        
+
+        response.flushBuffer();
+    }
+
+    /**
+     * Transforms the image and encodes it into the given stream.
+     *
+     * @return false if the image could not be read
+     */
+    private boolean render(final SlingHttpServletRequest request, final Image image, final String mimeType,
+                           final ValueMap imageTransformersWithParams, final OutputStream out) throws IOException {
+        // Warn when an image is transformed
+        AVOID_USAGE_LOGGER.warn("An image is transformed on-the-fly, which can be a very resource intensive operation. "
+              + "If done frequently, you should consider switching to dynamic AEM web-optimized images or creating such a rendition upfront using processing profiles. "
+              + "See https://adobe-consulting-services.github.io/acs-aem-commons/features/named-image-transform/index.html for more details.");
+
+        Layer layer = getSubsampledLayer(image, imageTransformersWithParams);
+        if (layer == null) {
+            layer = getLayer(image);
+        }
+
+        if (layer == null) {
+            return false;
+        }
+
+        // Adjust layer to image orientation
+        processImageOrientation(image.getResource(), layer);
+
         // Transform the image
         layer = this.transform(layer, imageTransformersWithParams, request);
 
@@ -245,15 +316,53 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
         final boolean progressiveJpeg = isProgressiveJpeg(mimeType,
                 imageTransformersWithParams.get(TYPE_PROGRESSIVE, EMPTY_PARAMS));
 
-        response.setContentType(mimeType);
-
         if (progressiveJpeg) {
-            ProgressiveJpeg.write(layer, quality, response.getOutputStream());
+            ProgressiveJpeg.write(layer, quality, out);
         } else {
-            layer.write(mimeType, quality, response.getOutputStream());
+            layer.write(mimeType, quality, out);
+        }
+        return true;
+    }
+
+    /**
+     * Builds the rendition cache key out of the image, the versions of the image and of the referenced file,
+     * the requested suffix and the transforms it resolves to.
+     *
+     * @return the key, or null if the image's version cannot be determined
+     */
+    private String getCacheKey(final SlingHttpServletRequest request, final Image image,
+                               final ValueMap imageTransformersWithParams) {
+        final Calendar lastModified = image.getLastModified();
+        if (lastModified == null) {
+            return null;
         }
 
-        response.flushBuffer();
+        final StringBuilder key = new StringBuilder(image.getResource().getPath())
+                .append('@').append(lastModified.getTimeInMillis());
+
+        final String reference = image.getFileReference();
+        if (StringUtils.isNotBlank(reference)) {
+            final Resource referencedResource = request.getResourceResolver().getResource(reference);
+            if (referencedResource == null) {
+                return null;
+            }
+            final Asset asset = DamUtil.resolveToAsset(referencedResource);
+            final long referenceLastModified = asset != null ? asset.getLastModified()
+                    : referencedResource.getResourceMetadata().getModificationTime();
+            key.append('|').append(reference).append('@').append(referenceLastModified);
+        }
+
+        key.append('|').append(request.getRequestPathInfo().getSuffix());
+
+        // Transforms in the order they are applied, each with its params sorted by name
+        for (final String type : imageTransformersWithParams.keySet()) {
+            key.append('|').append(type).append(':');
+            final Map<String, Object> params = new TreeMap<>(imageTransformersWithParams.get(type, EMPTY_PARAMS));
+            for (final Map.Entry<String, Object> param : params.entrySet()) {
+                key.append(param.getKey()).append('=').append(param.getValue()).append('&');
+            }
+        }
+        return key.toString();
     }
 
     /**
@@ -525,6 +634,109 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
       return urlParams;
   }
 
+    /**
+     * Decodes a downscaled Image layer when the only transform resizes the referenced image well below its
+     * original size, so that large originals are not decoded at full resolution.
+     *
+     * @param image the Image to get the layer from
+     * @param imageTransformersWithParams the transforms and their params
+     * @return the subsampled layer, or null if the image must be decoded in full
+     */
+    private Layer getSubsampledLayer(final Image image, final ValueMap imageTransformersWithParams) {
+        final ValueMap resizeParams = getResizeParams(imageTransformersWithParams);
+        final String reference = image.getFileReference();
+        if (resizeParams == null || StringUtils.isBlank(reference)
+                || StringUtils.isNotBlank(image.get(Image.PN_IMAGE_CROP))
+                || StringUtils.isNotBlank(image.get(Image.PN_IMAGE_ROTATE))) {
+            // Crop coordinates refer to the original size
+            return null;
+        }
+
+        final Resource referencedResource = image.getResource().getResourceResolver().getResource(reference);
+        final InputStream data = referencedResource == null ? null : referencedResource.adaptTo(InputStream.class);
+        if (data == null) {
+            return null;
+        }
+
+        try (InputStream in = data; ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            final Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                if (StringUtils.equalsIgnoreCase("gif", reader.getFormatName())) {
+                    // Keep animations
+                    return null;
+                }
+
+                final int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), resizeParams);
+                if (subsampling < 2) {
+                    return null;
+                }
+
+                final ImageReadParam readParam = reader.getDefaultReadParam();
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                log.debug("Decoding [ {} ] with subsampling [ {} ]", reference, subsampling);
+                return new Layer(reader.read(0, readParam));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not decode a subsampled layer for [ {} ], decoding it in full", reference, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the params of the only resize transform, or null if there are other transforms
+     */
+    private ValueMap getResizeParams(final ValueMap imageTransformersWithParams) {
+        ValueMap resizeParams = null;
+        for (final String type : imageTransformersWithParams.keySet()) {
+            if (StringUtils.equals(TYPE_QUALITY, type) || StringUtils.equals(TYPE_PROGRESSIVE, type)) {
+                continue;
+            }
+
+            final ValueMap params = imageTransformersWithParams.get(type, EMPTY_PARAMS);
+            if (resizeParams != null || !(StringUtils.equals(TYPE_RESIZE, type) || StringUtils.equals(TYPE_BOUNDED_RESIZE, type))
+                    || params == null || params.get(PROP_ADD_URL_PARAMETERS, false)) {
+                return null;
+            }
+            resizeParams = params;
+        }
+        return resizeParams;
+    }
+
+    /**
+     * Computes the source subsampling for a resize, keeping the decoded image at least twice as large as the target
+     * so the resize still has pixels to interpolate.
+     *
+     * @param width the original width
+     * @param height the original height
+     * @param resizeParams the params of the resize or bounded-resize transform
+     * @return the subsampling, 1 if the image must be decoded in full
+     */
+    static int getSubsampling(final int width, final int height, final ValueMap resizeParams) {
+        final int targetWidth = resizeParams.get(KEY_WIDTH, resizeParams.get(KEY_WIDTH_ALIAS, 0));
+        final int targetHeight = resizeParams.get(KEY_HEIGHT, resizeParams.get(KEY_HEIGHT_ALIAS, 0));
+
+        double scale = Double.MAX_VALUE;
+        if (targetWidth > 0) {
+            scale = Math.min(scale, width / (double) targetWidth);
+        }
+        if (targetHeight > 0) {
+            scale = Math.min(scale, height / (double) targetHeight);
+        }
+
+        if (scale == Double.MAX_VALUE) {
+            return 1;
+        }
+        return Math.max(1, (int) (scale / 2));
+    }
+
     /**
      * Gets the Image layer.
      *
@@ -609,7 +821,8 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
     }
 
     @Activate
-    protected final void activate(final Map<String, String> properties) {
+    protected final void activate(final ComponentContext context) {
+        final Dictionary<?, ?> properties = context.getProperties();
         final String regex = PropertiesUtil.toString(properties.get(PROP_ASSET_RENDITION_PICKER_REGEX),
                 DEFAULT_ASSET_RENDITION_PICKER_REGEX);
         final String fileNameRegex = PropertiesUtil.toString(properties.get(NAMED_IMAGE_FILENAME_PATTERN),
@@ -635,6 +848,30 @@ public class NamedTransformImageServlet extends SlingSafeMethodsServlet implemen
           log.info("Warnings for the use of the NamedTransfomringImageServlet disabled");
         }
 
+        if (PropertiesUtil.toBoolean(properties.get(PROP_RENDITION_CACHE_ENABLED), DEFAULT_RENDITION_CACHE_ENABLED)) {
+            final long maxSizeInMb = PropertiesUtil.toLong(properties.get(PROP_RENDITION_CACHE_MAX_SIZE_IN_MB),
+                    DEFAULT_RENDITION_CACHE_MAX_SIZE_IN_MB);
+            File directory = context.getBundleContext().getDataFile("named-transform-renditions");
+            if (directory == null) {
+                directory = new File(System.getProperty("java.io.tmpdir"), "acs-commons-named-transform-renditions");
+            }
+
+            try {
+                renditionCache = new RenditionCache(directory, maxSizeInMb * BYTES_IN_MB);
+                log.info("Rendition cache of [ {} ] MB in [ {} ]", maxSizeInMb, directory);
+            } catch (IOException e) {
+                log.error("Could not create the rendition cache in [ {} ], transforming every request", directory, e);
+            }
+        }
+    }
+
+    @Deactivate
+    protected final void deactivate() {
+        final RenditionCache cache = this.renditionCache;
+        this.renditionCache = null;
+        if (cache != null) {
+            cache.close();
+        }
     }
 
     protected final void bindNamedImageTransformers(final NamedImageTransformer service,
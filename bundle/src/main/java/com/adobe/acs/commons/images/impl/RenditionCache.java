@@ -0,0 +1,236 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.images.impl;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Disk backed cache of transformed images, evicting the least recently served renditions beyond a maximum size.
+ * Cached renditions are streamed from their files, so they are served from the OS page cache instead of the heap.
+ * Concurrent requests for a rendition that is not cached yet wait for a single rendering, for a limited time.
+ */
+final class RenditionCache {
+    private static final Logger log = LoggerFactory.getLogger(RenditionCache.class);
+
+    static final long DEFAULT_AWAIT_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Encodes a transformed image.
+     */
+    @FunctionalInterface
+    interface Renderer {
+        /**
+         * @param out the stream to write the encoded image to
+         * @return false if there is no image to render
+         * @throws IOException if the image cannot be encoded
+         */
+        boolean render(OutputStream out) throws IOException;
+    }
+
+    private final File directory;
+
+    private final long maxSizeInBytes;
+
+    /* How long to wait for a concurrent rendering before rendering the image again */
+    private final long awaitTimeoutMillis;
+
+    /* Guarded by this; iterates from the least to the most recently served rendition */
+    private final LinkedHashMap<String, CachedRendition> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeInBytes;
+
+    private final Map<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+
+    RenditionCache(final File directory, final long maxSizeInBytes) throws IOException {
+        this(directory, maxSizeInBytes, DEFAULT_AWAIT_TIMEOUT_MILLIS);
+    }
+
+    RenditionCache(final File directory, final long maxSizeInBytes, final long awaitTimeoutMillis) throws IOException {
+        this.directory = directory;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.awaitTimeoutMillis = awaitTimeoutMillis;
+
+        // The index is not persisted, so renditions left by a previous run cannot be accounted for
+        FileUtils.deleteDirectory(directory);
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Writes the rendition identified by key, rendering and caching it first if needed.
+     *
+     * @param key identifies the source image, its version and the transforms applied to it
+     * @param renderer renders the rendition on a cache miss
+     * @param out the stream to write the rendition to
+     * @return false if there is no image to render
+     * @throws IOException if the rendition cannot be rendered or written
+     */
+    boolean write(final String key, final Renderer renderer, final OutputStream out) throws IOException {
+        File file = get(key);
+
+        if (file == null) {
+            final CompletableFuture<File> rendering = new CompletableFuture<>();
+            final CompletableFuture<File> existing = inFlight.putIfAbsent(key, rendering);
+
+            if (existing == null) {
+                try {
+                    file = get(key);
+                    if (file == null) {
+                        file = render(key, renderer);
+                    }
+                    rendering.complete(file);
+                } catch (IOException | RuntimeException e) {
+                    rendering.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, rendering);
+                }
+            } else {
+                try {
+                    file = await(existing);
+                } catch (TimeoutException e) {
+                    // Don't tie up the request thread on a rendering that hangs; this rendering is not cached
+                    log.warn("Concurrent rendering of [ {} ] did not finish within {} ms, rendering it again", key,
+                            awaitTimeoutMillis);
+                    return renderer.render(out);
+                }
+            }
+        }
+
+        if (file == null) {
+            return false;
+        }
+
+        try {
+            Files.copy(file.toPath(), out);
+        } catch (NoSuchFileException e) {
+            // Evicted since it was looked up; nothing has been written yet
+            log.debug("Rendition [ {} ] was evicted while being served, rendering it again", file.getName());
+            return renderer.render(out);
+        }
+        return true;
+    }
+
+    synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized void clear() {
+        for (final CachedRendition rendition : index.values()) {
+            FileUtils.deleteQuietly(rendition.file);
+        }
+        index.clear();
+        sizeInBytes = 0;
+    }
+
+    void close() {
+        clear();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    private synchronized File get(final String key) {
+        final CachedRendition rendition = index.get(key);
+        return rendition == null ? null : rendition.file;
+    }
+
+    private File render(final String key, final Renderer renderer) throws IOException {
+        final File tmp = File.createTempFile("rendition", ".tmp", directory);
+        try {
+            final boolean rendered;
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                rendered = renderer.render(os);
+            }
+            if (!rendered) {
+                return null;
+            }
+
+            final long length = tmp.length();
+            final File file = new File(directory, DigestUtils.sha256Hex(key));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            put(key, new CachedRendition(file, length));
+            return file;
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    private synchronized void put(final String key, final CachedRendition rendition) {
+        final CachedRendition previous = index.put(key, rendition);
+        if (previous != null) {
+            sizeInBytes -= previous.length;
+        }
+        sizeInBytes += rendition.length;
+
+        // Always keep the rendition just added, even if it exceeds the maximum size on its own
+        final Iterator<CachedRendition> iterator = index.values().iterator();
+        while (sizeInBytes > maxSizeInBytes && index.size() > 1) {
+            final CachedRendition evicted = iterator.next();
+            iterator.remove();
+            sizeInBytes -= evicted.length;
+            FileUtils.deleteQuietly(evicted.file);
+        }
+    }
+
+    private File await(final CompletableFuture<File> rendering) throws IOException, TimeoutException {
+        try {
+            return rendering.get(awaitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a concurrent rendering");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Concurrent rendering failed", e.getCause());
+        }
+    }
+
+    private static final class CachedRendition {
+        private final File file;
+
+        private final long length;
+
+        private CachedRendition(final File file, final long length) {
+            this.file = file;
+            this.length = length;
+        }
+    }
+}
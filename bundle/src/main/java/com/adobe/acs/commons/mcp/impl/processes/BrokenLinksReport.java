@@ -41,7 +41,9 @@ import org.slf4j.LoggerFactory;
 import javax.jcr.RepositoryException;
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,6 +51,8 @@ import java.util.Set;
 import java.util.List;
 import java.util.EnumMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -93,6 +97,16 @@ public class BrokenLinksReport extends ProcessDefinition implements Serializable
             options = {"default=text"})
     private String htmlFields;
 
+    @FormField(
+            name = "Single pass",
+            description = "If checked, the tree is read once, links are extracted with a lightweight scanner "
+                    + "and every distinct link is resolved only once, in batches. Recommended for large sites",
+            component = CheckboxComponent.class
+    )
+    private boolean singlePass = false;
+
+    static final int RESOLVE_BATCH_SIZE = 1000;
+
     private transient Set<String> excludeList;
     private transient Set<String> deepCheckList;
     private transient Pattern regex;
@@ -133,6 +147,10 @@ public class BrokenLinksReport extends ProcessDefinition implements Serializable
     }
 
     public void buildReport(ActionManager manager) {
+        if (singlePass) {
+            buildReportInSinglePass(manager);
+            return;
+        }
         TreeFilteringResourceVisitor visitor = new TreeFilteringResourceVisitor();
         visitor.setBreadthFirstMode();
         visitor.setTraversalFilterChecked(null);
@@ -150,6 +168,153 @@ public class BrokenLinksReport extends ProcessDefinition implements Serializable
         manager.deferredWithResolver(rr -> visitor.accept(rr.getResource(sourcePath)));
     }
 
+    private void buildReportInSinglePass(ActionManager manager) {
+        LinkIndex links = new LinkIndex(regex, excludeList, deepCheckList);
+        TreeFilteringResourceVisitor visitor = new TreeFilteringResourceVisitor();
+        visitor.setDepthFirstMode();
+        visitor.setTraversalFilterChecked(null);
+        visitor.setResourceVisitorChecked((resource, depth) -> links.add(resource));
+        manager.deferredWithResolver(rr -> {
+            visitor.accept(rr.getResource(sourcePath));
+            List<String> targets = new ArrayList<>(links.targetProperties.keySet());
+            log.debug("Found {} distinct links in {} properties under {}", targets.size(), links.propertyRefs.size(), sourcePath);
+            for (int i = 0; i < targets.size(); i += RESOLVE_BATCH_SIZE) {
+                List<String> batch = targets.subList(i, Math.min(targets.size(), i + RESOLVE_BATCH_SIZE));
+                manager.deferredWithResolver(batchResolver -> resolveLinks(batchResolver, batch, links));
+            }
+        });
+    }
+
+    private void resolveLinks(ResourceResolver rr, List<String> targets, LinkIndex links) {
+        for (String target : targets) {
+            if (ResourceUtil.isNonExistingResource(rr.resolve(target))) {
+                links.brokenTargets.add(target);
+                for (String propertyPath : links.targetProperties.get(target)) {
+                    // rebuilt from the shared state, so concurrent batches cannot drop each other's links
+                    reportData.compute(propertyPath, (key, row) -> {
+                        EnumMap<Report, Object> updated = new EnumMap<>(Report.class);
+                        updated.put(Report.reference, links.propertyRefs.get(key).stream()
+                                .filter(links.brokenTargets::contains)
+                                .collect(Collectors.joining(",")));
+                        return updated;
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Links found in a single traversal, with each distinct target recorded
+     * once along with the properties referring to it.
+     */
+    static final class LinkIndex {
+        private final Matcher matcher;
+        private final Set<String> skipList;
+        private final Set<String> htmlFields;
+        final Map<String, List<String>> propertyRefs = new HashMap<>();
+        final Map<String, List<String>> targetProperties = new HashMap<>();
+        final Set<String> brokenTargets = ConcurrentHashMap.newKeySet();
+
+        LinkIndex(Pattern regex, Set<String> skipList, Set<String> htmlFields) {
+            this.matcher = regex.matcher("");
+            this.skipList = skipList;
+            this.htmlFields = htmlFields;
+        }
+
+        void add(Resource resource) {
+            for (Map.Entry<String, Object> property : resource.getValueMap().entrySet()) {
+                if (skipList.contains(property.getKey())) {
+                    continue;
+                }
+                Object value = property.getValue();
+                String propertyPath = resource.getPath() + "/" + property.getKey();
+                boolean html = htmlFields.contains(property.getKey());
+                if (value instanceof String) {
+                    addValue(propertyPath, (String) value, html);
+                } else if (value instanceof String[]) {
+                    for (String item : (String[]) value) {
+                        addValue(propertyPath, item, html);
+                    }
+                }
+            }
+        }
+
+        private void addValue(String propertyPath, String value, boolean html) {
+            if (html) {
+                scanLinks(value, link -> addLink(propertyPath, link));
+            } else {
+                addLink(propertyPath, value);
+            }
+        }
+
+        private void addLink(String propertyPath, String link) {
+            if (matcher.reset(link).matches()) {
+                propertyRefs.computeIfAbsent(propertyPath, p -> new ArrayList<>(1)).add(link);
+                List<String> properties = targetProperties.computeIfAbsent(link, l -> new ArrayList<>(1));
+                if (properties.isEmpty() || !properties.get(properties.size() - 1).equals(propertyPath)) {
+                    properties.add(propertyPath);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract the values of href and src attributes from an html fragment.
+     * Unlike a full html parser this does not build any intermediate
+     * structures, which matters when scanning every property of a large site.
+     *
+     * @param html html fragment
+     * @param links receives every extracted link
+     */
+    static void scanLinks(String html, Consumer<String> links) {
+        int length = html.length();
+        for (int i = html.indexOf('='); i >= 0; i = html.indexOf('=', i + 1)) {
+            int nameEnd = i;
+            while (nameEnd > 0 && Character.isWhitespace(html.charAt(nameEnd - 1))) {
+                nameEnd--;
+            }
+            if (!isAttribute(html, nameEnd, "href") && !isAttribute(html, nameEnd, "src")) {
+                continue;
+            }
+            int start = i + 1;
+            while (start < length && Character.isWhitespace(html.charAt(start))) {
+                start++;
+            }
+            if (start == length) {
+                return;
+            }
+            int end;
+            char quote = html.charAt(start);
+            if (quote == '"' || quote == '\'') {
+                start++;
+                end = html.indexOf(quote, start);
+                if (end < 0) {
+                    return;
+                }
+            } else if (quote == '<') {
+                // not inside a tag
+                continue;
+            } else {
+                end = start;
+                while (end < length && !Character.isWhitespace(html.charAt(end)) && html.charAt(end) != '>') {
+                    end++;
+                }
+            }
+            String link = html.substring(start, end).trim();
+            if (!link.isEmpty()) {
+                links.accept(link.indexOf('&') < 0 ? link : link.replace("&amp;", "&"));
+            }
+            i = end;
+        }
+    }
+
+    private static boolean isAttribute(String html, int nameEnd, String name) {
+        int nameStart = nameEnd - name.length();
+        return nameStart > 0
+                && html.regionMatches(true, nameStart, name, 0, name.length())
+                && Character.isWhitespace(html.charAt(nameStart - 1));
+    }
+
     /**
      * Collect references from a JCR property.
      * A property can be one of:
@@ -36,6 +36,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -161,7 +162,8 @@ public class DataImporter extends ProcessDefinition {
 
     @FormField(
             name = "Import in sorted order",
-            description = "If checked, nodes will be imported in the order determined by their paths",
+            description = "If checked, nodes will be imported in the order determined by their paths. "
+                    + "If unchecked, rows are streamed from the file as they are imported, which uses much less memory for large files",
             component = CheckboxComponent.class,
             options = "checked"
     )
@@ -183,6 +185,7 @@ public class DataImporter extends ProcessDefinition {
     }
 
     Spreadsheet data;
+    private boolean streamData = false;
     private List<EnumMap<ReportColumns, Object>> reportRows;
 
     protected synchronized EnumMap<ReportColumns, Object> trackActivity(String item, String action, Integer count) {
@@ -213,11 +216,16 @@ public class DataImporter extends ProcessDefinition {
     public void buildProcess(ProcessInstance instance, ResourceResolver rr) throws LoginException, RepositoryException {
         if (data == null && importFile != null) {
             try {
-                data = new Spreadsheet(enableHeaderNameConversion, importFile, PATH).buildSpreadsheet();
+                data = new Spreadsheet(enableHeaderNameConversion, importFile, PATH);
                 if (presortData) {
+                    data.buildSpreadsheet();
                     data.sortRows(PATH);
+                    instance.getInfo().setDescription("Import " + data.getFileName() + " (" + data.getRowCount() + " rows)");
+                } else {
+                    // Rows are read lazily while the import runs
+                    streamData = true;
+                    instance.getInfo().setDescription("Import " + data.getFileName());
                 }
-                instance.getInfo().setDescription("Import " + data.getFileName() + " (" + data.getRowCount() + " rows)");
             } catch (IOException ex) {
                 instance.getInfo().setDescription("Import " + data.getFileName() + " (failed)");
                 throw new RepositoryException("Unable to parse input file", ex);
@@ -234,22 +242,30 @@ public class DataImporter extends ProcessDefinition {
         report.persist(rr, instance.getPath() + "/jcr:content/report");
     }
 
-    private void importData(ActionManager manager) {
-        data.getDataRowsAsCompositeVariants().forEach((row) -> {
-            manager.deferredWithResolver(rr -> {
-                String path = row.get(PATH).toString();
-                Resource r = rr.getResource(path);
-                if (r == null) {
-                    handleMissingNode(path, rr, row);
-                } else if (mergeMode.update) {
-                    updateMetadata(path, rr, row);
-                } else {
-                    incrementCount(skippedNodes, 1);
-                    if (detailedReport) {
-                        trackActivity(path, "Skipped", null);
-                    }
+    private void importData(ActionManager manager) throws IOException {
+        if (streamData) {
+            try (Stream<Map<String, CompositeVariant>> rows = data.streamDataRows()) {
+                rows.forEach(row -> importRow(manager, row));
+            }
+        } else {
+            data.getDataRowsAsCompositeVariants().forEach(row -> importRow(manager, row));
+        }
+    }
+
+    private void importRow(ActionManager manager, Map<String, CompositeVariant> row) {
+        manager.deferredWithResolver(rr -> {
+            String path = row.get(PATH).toString();
+            Resource r = rr.getResource(path);
+            if (r == null) {
+                handleMissingNode(path, rr, row);
+            } else if (mergeMode.update) {
+                updateMetadata(path, rr, row);
+            } else {
+                incrementCount(skippedNodes, 1);
+                if (detailedReport) {
+                    trackActivity(path, "Skipped", null);
                 }
-            });
+            }
         });
     }
 
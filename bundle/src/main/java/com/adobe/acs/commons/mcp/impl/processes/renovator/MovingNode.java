@@ -21,7 +21,6 @@ import com.day.cq.audit.AuditLog;
 import com.day.cq.audit.AuditLogEntry;
 import com.day.cq.wcm.api.PageEvent;
 import com.day.cq.wcm.api.PageModification;
-import com.day.cq.wcm.commons.ReferenceSearch;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 
@@ -36,7 +35,6 @@ import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import static com.adobe.acs.commons.mcp.impl.processes.renovator.Util.isActivated;
 import static com.adobe.acs.commons.util.visitors.SimpleFilteringResourceVisitor.toList;
@@ -174,17 +172,14 @@ public abstract class MovingNode {
 
     public abstract void move(ReplicatorQueue replicatorQueue, ResourceResolver rr) throws IllegalAccessException, MovingException;
 
-    public void findReferences(ResourceResolver rr, String referenceSearchRoot, int maxReferences) throws IllegalAccessException {
-        ReferenceSearch refSearch = new ReferenceSearch();
-        refSearch.setExact(true);
-        refSearch.setHollow(true);
-        refSearch.setMaxReferencesPerPage(maxReferences);
-        refSearch.setSearchRoot(referenceSearchRoot);
-        refSearch.search(rr, sourcePath).values().stream()
-                .peek(p -> allReferences.add(p.getPagePath()))
-                .filter(p -> isActivated(rr, p.getPagePath()))
-                .map(ReferenceSearch.Info::getPagePath)
-                .collect(Collectors.toCollection(() -> publishedReferences));
+    public void findReferences(ResourceResolver rr, ReferenceIndex referenceIndex) {
+        // Every referencing page is kept, otherwise pages beyond a limit would keep broken links after the move
+        for (String page : referenceIndex.getReferencingPages(sourcePath, -1)) {
+            allReferences.add(page);
+            if (referenceIndex.isActivated(page)) {
+                publishedReferences.add(page);
+            }
+        }
         if(isActivated(rr, sourcePath)){
             publishedReferences.add(destinationPath);
         }
@@ -0,0 +1,199 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.mcp.impl.processes.renovator;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.replication.ReplicationStatus;
+import com.day.cq.wcm.api.NameConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the pages referring to any of a set of moved paths, built from a
+ * single traversal of the reference search root. Like ReferenceSearch with
+ * exact matching, a reference is a string property containing the path, not
+ * followed by a further path segment, anywhere inside a page.
+ */
+public class ReferenceIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceIndex.class);
+
+    // Pages are not expected here, and these trees can be very large
+    private static final Set<String> SKIPPED_PATHS = new HashSet<>(Arrays.asList(
+            "/apps", "/home", "/jcr:system", "/libs", "/oak:index", "/tmp", "/var"));
+
+    private final Set<String> paths;
+    private final Set<String> pathPrefixes = new HashSet<>();
+    private final int maxPathLength;
+    private final Map<String, Set<String>> referencingPages = new HashMap<>();
+    private final Map<String, Boolean> activatedPages = new HashMap<>();
+    private long visitedResources = 0;
+
+    /**
+     * @param paths Paths to look for
+     */
+    public ReferenceIndex(Collection<String> paths) {
+        this.paths = new HashSet<>(paths);
+        int maxLength = 0;
+        for (String path : this.paths) {
+            maxLength = Math.max(maxLength, path.length());
+            for (int i = path.indexOf('/', 1); i > 0; i = path.indexOf('/', i + 1)) {
+                pathPrefixes.add(path.substring(0, i));
+            }
+        }
+        maxPathLength = maxLength;
+    }
+
+    /**
+     * Traverse the search root once and record every page referring to one
+     * of the indexed paths. The replication status of each referring page is
+     * looked up once, however many of the paths it refers to.
+     *
+     * @param rr Resource resolver
+     * @param searchRoot Root of the traversal
+     */
+    public void build(ResourceResolver rr, String searchRoot) {
+        Resource root = rr.getResource(searchRoot);
+        if (root == null || paths.isEmpty()) {
+            return;
+        }
+        LinkedList<Resource> stack = new LinkedList<>();
+        LinkedList<String> pageStack = new LinkedList<>();
+        stack.push(root);
+        pageStack.push("");
+        while (!stack.isEmpty()) {
+            Resource res = stack.pop();
+            String page = pageStack.pop();
+            visitedResources++;
+            String type = res.getValueMap().get(JcrConstants.JCR_PRIMARYTYPE, String.class);
+            if (NameConstants.NT_PAGE.equals(type)) {
+                page = res.getPath();
+            } else if (page.isEmpty() && DamConstants.NT_DAM_ASSET.equals(type)) {
+                // Assets cannot contain pages
+                continue;
+            } else if (!page.isEmpty()) {
+                indexProperties(rr, res, page);
+            }
+            for (Iterator<Resource> children = res.listChildren(); children.hasNext();) {
+                Resource child = children.next();
+                if (!SKIPPED_PATHS.contains(child.getPath())) {
+                    stack.push(child);
+                    pageStack.push(page);
+                }
+            }
+        }
+        LOG.debug("Indexed references to {} paths in {} resources under {}", paths.size(), visitedResources, searchRoot);
+    }
+
+    /**
+     * @param path Indexed path
+     * @param maxReferences Maximum number of pages to return, -1 for all
+     * @return pages referring to the path
+     */
+    public List<String> getReferencingPages(String path, int maxReferences) {
+        Set<String> pages = referencingPages.getOrDefault(path, Collections.emptySet());
+        if (maxReferences < 0 || pages.size() <= maxReferences) {
+            return new ArrayList<>(pages);
+        }
+        List<String> limited = new ArrayList<>(maxReferences);
+        for (Iterator<String> i = pages.iterator(); limited.size() < maxReferences; ) {
+            limited.add(i.next());
+        }
+        return limited;
+    }
+
+    /**
+     * @param page Referencing page
+     * @return true if the page was activated when the index was built
+     */
+    public boolean isActivated(String page) {
+        return activatedPages.getOrDefault(page, false);
+    }
+
+    public long getVisitedResources() {
+        return visitedResources;
+    }
+
+    private void indexProperties(ResourceResolver rr, Resource res, String page) {
+        for (Object value : res.getValueMap().values()) {
+            if (value instanceof String) {
+                indexValue((String) value, rr, page);
+            } else if (value instanceof String[]) {
+                for (String item : (String[]) value) {
+                    indexValue(item, rr, page);
+                }
+            }
+        }
+    }
+
+    private void indexValue(String value, ResourceResolver rr, String page) {
+        for (int start = value.indexOf('/'); start >= 0; start = value.indexOf('/', start + 1)) {
+            if (start > 0 && isPathCharacter(value.charAt(start - 1))) {
+                continue;
+            }
+            String path = findPathAt(value, start);
+            if (path != null) {
+                referencingPages.computeIfAbsent(path, p -> new LinkedHashSet<>()).add(page);
+                activatedPages.computeIfAbsent(page, p -> Util.isActivated(rr, p));
+            }
+        }
+    }
+
+    /**
+     * Find the longest indexed path starting at the given position. Only the
+     * prefixes of indexed paths are followed, so most values are rejected at
+     * their first or second path segment.
+     */
+    private String findPathAt(String value, int start) {
+        String found = null;
+        int end = Math.min(value.length(), start + maxPathLength);
+        for (int i = start + 1; i <= end; i++) {
+            // A reference ends where the path does, not in the middle of a name or before a child segment
+            if (i == value.length() || !isPathCharacter(value.charAt(i)) || value.charAt(i) == '.') {
+                String candidate = value.substring(start, i);
+                if (paths.contains(candidate)) {
+                    found = candidate;
+                }
+            }
+            if (i < value.length() && value.charAt(i) == '/' && !pathPrefixes.contains(value.substring(start, i))) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isPathCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '/' || c == '-' || c == '_' || c == ':' || c == '.';
+    }
+}
@@ -131,7 +131,7 @@ public class Renovator extends ProcessDefinition {
     private String destinationJcrPath;
 
     @FormField(name = "Max References",
-            description = "Limit of how many page references to handle (max per page)",
+            description = "Limit of how many referencing pages to list per moved node in the detailed report (all references are updated)",
             hint = "-1 = All, 0 = None, etc.",
             component = TextfieldComponent.class,
             required = false,
@@ -218,6 +218,7 @@ public class Renovator extends ProcessDefinition {
     ReplicatorQueue replicatorQueue = new ReplicatorQueue();
     ReplicationOptions replicationOptions;
     private final Set<MovingNode> moves = Collections.synchronizedSet(new HashSet<>());
+    private transient ReferenceIndex referenceIndex = new ReferenceIndex(Collections.emptySet());
     private final Set<String> additionalTargetFolders = Collections.synchronizedSet(new TreeSet<>());
     final Map<String, String> movePaths = Collections.synchronizedMap(new HashMap<>());
 
@@ -575,31 +576,35 @@ public class Renovator extends ProcessDefinition {
         }
     }
 
-    public void findReferences(ResourceResolver rr, MovingNode node) throws IllegalAccessException {
-        node.findReferences(rr, referenceSearchRoot, maxReferences);
+    public void findReferences(ResourceResolver rr, MovingNode node) {
+        node.findReferences(rr, referenceIndex);
     }
 
+    // Index references to all moved nodes in one pass instead of one reference search per node
     protected void identifyReferences(ActionManager manager) {
         AtomicInteger discoveredReferences = new AtomicInteger();
         manager.deferredWithResolver(rr -> {
-            moves.forEach(node -> {
-                manager.deferredWithResolver(rr2 -> {
-                    node.visit(childNode -> {
-                        if (childNode.isSupposedToBeReferenced()) {
-                            manager.deferredWithResolver(rr3 -> {
-                                Actions.setCurrentItem("Looking for references to " + childNode.getSourcePath());
-                                findReferences(rr3, childNode);
-                                discoveredReferences.addAndGet(childNode.getAllReferences().size());
-                                if (detailedReport) {
-                                    note(childNode.getSourcePath(), Report.all_references, childNode.getAllReferences().size());
-                                    note(childNode.getSourcePath(), Report.referred_in,childNode.getAllReferences().toString());
-                                    note(childNode.getSourcePath(), Report.published_references, childNode.getPublishedReferences().size());
-                                }
-                            });
-                        }
-                    });
-                });
-            });
+            Set<String> referencedPaths = new HashSet<>();
+            moves.forEach(node -> node.visit(childNode -> {
+                if (childNode.isSupposedToBeReferenced()) {
+                    referencedPaths.add(childNode.getSourcePath());
+                }
+            }));
+            Actions.setCurrentItem("Looking for references to " + referencedPaths.size() + " nodes under " + referenceSearchRoot);
+            referenceIndex = new ReferenceIndex(referencedPaths);
+            referenceIndex.build(rr, referenceSearchRoot);
+            moves.forEach(node -> node.visit(childNode -> {
+                if (childNode.isSupposedToBeReferenced()) {
+                    findReferences(rr, childNode);
+                    discoveredReferences.addAndGet(childNode.getAllReferences().size());
+                    if (detailedReport) {
+                        note(childNode.getSourcePath(), Report.all_references, childNode.getAllReferences().size());
+                        note(childNode.getSourcePath(), Report.referred_in,
+                                referenceIndex.getReferencingPages(childNode.getSourcePath(), maxReferences).toString());
+                        note(childNode.getSourcePath(), Report.published_references, childNode.getPublishedReferences().size());
+                    }
+                }
+            }));
         });
         manager.onFinish(() -> {
             note("All discovered references", Report.misc, "Discovered " + discoveredReferences.get() + " references.");
@@ -20,6 +20,7 @@ package com.adobe.acs.commons.models.injectors.impl;
 import com.adobe.acs.commons.models.injectors.annotation.HierarchicalPageProperty;
 import com.adobe.acs.commons.models.injectors.annotation.PageProperty;
 import com.adobe.acs.commons.util.impl.ReflectionUtil;
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
 import com.day.cq.commons.inherit.HierarchyNodeInheritanceValueMap;
 import com.day.cq.commons.inherit.InheritanceValueMap;
 import com.day.cq.wcm.api.Page;
@@ -33,18 +34,26 @@ import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.servlet.ServletRequest;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.adobe.acs.commons.models.injectors.impl.InjectorUtils.*;
 
 @Component(
         property = {
-                Constants.SERVICE_RANKING + ":Integer=5502"
+                Constants.SERVICE_RANKING + ":Integer=5502",
+                "jmx.objectname=com.adobe.acs.commons:type=Hierarchical Page Property Injector"
         },
-        service = Injector.class
+        service = {Injector.class, DynamicMBean.class}
 )
-public class HierarchicalPagePropertyInjector implements Injector {
+public class HierarchicalPagePropertyInjector extends AnnotatedStandardMBean
+        implements Injector, HierarchicalPagePropertyInjectorMBean {
 
     /**
      * Source value used for injector
@@ -55,6 +64,17 @@ public class HierarchicalPagePropertyInjector implements Injector {
 
     private static final Logger LOG = LoggerFactory.getLogger(HierarchicalPagePropertyInjector.class);
 
+    private static final String SNAPSHOTS_ATTRIBUTE = HierarchicalPagePropertyInjector.class.getName() + ".snapshots";
+
+    private final LongAdder inheritedLookups = new LongAdder();
+    private final LongAdder snapshotHits = new LongAdder();
+    private final LongAdder ancestorReads = new LongAdder();
+    private final LongAdder avoidedAncestorReads = new LongAdder();
+
+    public HierarchicalPagePropertyInjector() throws NotCompliantMBeanException {
+        super(HierarchicalPagePropertyInjectorMBean.class);
+    }
+
     @Override
     public String getName() {
         return SOURCE;
@@ -73,7 +93,7 @@ public class HierarchicalPagePropertyInjector implements Injector {
             Resource adaptableRes = lookUpFromPage(adaptable, currentResource, element);
             if (adaptableRes != null) {
                 if (useInheritance(element)) {
-                    InheritanceValueMap inheritanceValueMap = new HierarchyNodeInheritanceValueMap(adaptableRes);
+                    InheritanceValueMap inheritanceValueMap = getInheritanceValueMap(adaptable, adaptableRes);
                     return ReflectionUtil.convertValueMapValue(inheritanceValueMap, name, declaredType);
                 } else {
                     return ReflectionUtil.convertValueMapValue(adaptableRes.getValueMap(), name, declaredType);
@@ -85,6 +105,33 @@ public class HierarchicalPagePropertyInjector implements Injector {
 
     }
 
+    /**
+     * Returns the inherited properties of the page content resource. For requests, they are resolved once per page and
+     * request and shared by all injections, so that the ancestors are not read again for every injected field.
+     */
+    @SuppressWarnings("unchecked")
+    private InheritanceValueMap getInheritanceValueMap(Object adaptable, Resource contentResource) {
+        inheritedLookups.increment();
+        if (!(adaptable instanceof ServletRequest)) {
+            return new HierarchyNodeInheritanceValueMap(contentResource);
+        }
+        ServletRequest request = (ServletRequest) adaptable;
+        Map<String, InheritedPagePropertiesSnapshot> snapshots =
+                (Map<String, InheritedPagePropertiesSnapshot>) request.getAttribute(SNAPSHOTS_ATTRIBUTE);
+        if (snapshots == null) {
+            snapshots = new HashMap<>();
+            request.setAttribute(SNAPSHOTS_ATTRIBUTE, snapshots);
+        }
+        InheritedPagePropertiesSnapshot snapshot = snapshots.get(contentResource.getPath());
+        if (snapshot == null) {
+            snapshot = new InheritedPagePropertiesSnapshot(contentResource, ancestorReads, avoidedAncestorReads);
+            snapshots.put(contentResource.getPath(), snapshot);
+        } else {
+            snapshotHits.increment();
+        }
+        return snapshot;
+    }
+
     private Resource lookUpFromPage(Object adaptable, Resource currentResource, AnnotatedElement element) {
 
         boolean useCurrentPage = useCurrentPage(element);
@@ -125,5 +172,37 @@ public class HierarchicalPagePropertyInjector implements Injector {
         return element.isAnnotationPresent(HierarchicalPageProperty.class) && element.getAnnotation(HierarchicalPageProperty.class).inherit();
     }
 
+    @Override
+    public long getInheritedLookups() {
+        return inheritedLookups.sum();
+    }
 
+    @Override
+    public long getSnapshotHits() {
+        return snapshotHits.sum();
+    }
+
+    @Override
+    public double getSnapshotHitRate() {
+        long lookups = inheritedLookups.sum();
+        return lookups > 0 ? (double) snapshotHits.sum() / lookups : 0;
+    }
+
+    @Override
+    public long getAncestorReads() {
+        return ancestorReads.sum();
+    }
+
+    @Override
+    public long getAvoidedAncestorReads() {
+        return avoidedAncestorReads.sum();
+    }
+
+    @Override
+    public void resetStatistics() {
+        inheritedLookups.reset();
+        snapshotHits.reset();
+        ancestorReads.reset();
+        avoidedAncestorReads.reset();
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.models.injectors.impl;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@Description("ACS AEM Commons - Hierarchical Page Property Injector")
+public interface HierarchicalPagePropertyInjectorMBean {
+
+    @Description("Number of inherited property injections")
+    long getInheritedLookups();
+
+    @Description("Number of inherited property injections served by a snapshot already resolved for the same page and request")
+    long getSnapshotHits();
+
+    @Description("Ratio of snapshot hits to inherited property injections")
+    double getSnapshotHitRate();
+
+    @Description("Number of ancestor page properties read to resolve inherited properties")
+    long getAncestorReads();
+
+    @Description("Number of ancestor page properties which did not need to be read again because they were already part of a snapshot")
+    long getAvoidedAncestorReads();
+
+    @Description("Reset the statistics")
+    void resetStatistics();
+}
@@ -0,0 +1,113 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.models.injectors.impl;
+
+import com.day.cq.commons.inherit.InheritanceValueMap;
+import com.day.cq.commons.jcr.JcrConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The inherited properties of a page's content resource, looked up like
+ * {@link com.day.cq.commons.inherit.HierarchyNodeInheritanceValueMap} does: in the content resource itself first, then
+ * in the content resources of the ancestors. The ancestors are only read once, and only as far up as a lookup needs,
+ * so that the snapshot can be shared by all injections for the same page during a request.
+ */
+class InheritedPagePropertiesSnapshot extends ValueMapDecorator implements InheritanceValueMap {
+
+    private final ValueMap properties;
+
+    private final List<ValueMap> ancestorProperties = new ArrayList<>();
+
+    private final LongAdder ancestorReads;
+
+    private final LongAdder avoidedAncestorReads;
+
+    private Resource nextAncestor;
+
+    InheritedPagePropertiesSnapshot(Resource contentResource, LongAdder ancestorReads, LongAdder avoidedAncestorReads) {
+        this(contentResource.getValueMap(), contentResource.getParent(), ancestorReads, avoidedAncestorReads);
+    }
+
+    private InheritedPagePropertiesSnapshot(ValueMap properties, Resource page, LongAdder ancestorReads,
+                                            LongAdder avoidedAncestorReads) {
+        super(properties);
+        this.properties = properties;
+        this.nextAncestor = page != null ? page.getParent() : null;
+        this.ancestorReads = ancestorReads;
+        this.avoidedAncestorReads = avoidedAncestorReads;
+    }
+
+    @Override
+    public <T> T get(String name, Class<T> type) {
+        return properties.get(name, type);
+    }
+
+    @Override
+    public <T> T get(String name, T defaultValue) {
+        return properties.get(name, defaultValue);
+    }
+
+    @Override
+    public <T> T getInherited(String name, Class<T> type) {
+        T value = properties.get(name, type);
+        for (int i = 0; value == null; i++) {
+            ValueMap ancestor = getAncestorProperties(i);
+            if (ancestor == null) {
+                break;
+            }
+            value = ancestor.get(name, type);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getInherited(String name, T defaultValue) {
+        Class<T> type = defaultValue != null ? (Class<T>) defaultValue.getClass() : (Class<T>) Object.class;
+        T value = getInherited(name, type);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @param index the index of the ancestor with a content resource, starting with the closest one
+     * @return the properties of that ancestor's content resource, or {@code null} if there is no such ancestor
+     */
+    private ValueMap getAncestorProperties(int index) {
+        if (index < ancestorProperties.size()) {
+            avoidedAncestorReads.increment();
+            return ancestorProperties.get(index);
+        }
+        while (nextAncestor != null) {
+            Resource ancestorContent = nextAncestor.getChild(JcrConstants.JCR_CONTENT);
+            nextAncestor = nextAncestor.getParent();
+            if (ancestorContent != null) {
+                ancestorReads.increment();
+                ValueMap ancestor = ancestorContent.getValueMap();
+                ancestorProperties.add(ancestor);
+                return ancestor;
+            }
+        }
+        return null;
+    }
+}
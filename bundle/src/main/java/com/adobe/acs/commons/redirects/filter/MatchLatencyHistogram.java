@@ -0,0 +1,83 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.redirects.filter;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the time spent matching requests against the redirect rules.
+ */
+class MatchLatencyHistogram {
+
+    /**
+     * upper bounds of the buckets in microseconds, the last bucket is unbounded
+     */
+    private static final long[] BUCKETS = {10, 50, 100, 500, 1000, 5000, 10000, 50000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+
+    void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 0;
+        while (bucket < BUCKETS.length && micros >= BUCKETS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    TabularData toTabularData() throws OpenDataException {
+        String latency = "Latency";
+        String requests = "Requests";
+        String matchLatency = "Match Latency";
+        CompositeType rowType = new CompositeType(matchLatency, matchLatency,
+                new String[]{latency, requests},
+                new String[]{latency, requests},
+                new OpenType[]{SimpleType.STRING, SimpleType.LONG});
+
+        TabularDataSupport tabularData = new TabularDataSupport(
+                new TabularType(matchLatency, matchLatency, rowType, new String[]{latency}));
+        for (int i = 0; i < counts.length(); i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(latency, i < BUCKETS.length ? "< " + BUCKETS[i] + " us" : ">= " + BUCKETS[BUCKETS.length - 1] + " us");
+            row.put(requests, counts.get(i));
+            tabularData.put(new CompositeDataSupport(rowType, row));
+        }
+        return tabularData;
+    }
+}
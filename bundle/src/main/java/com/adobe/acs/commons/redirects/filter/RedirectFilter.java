@@ -39,12 +39,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -73,6 +77,7 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestPathInfo;
 import org.apache.sling.api.resource.AbstractResourceVisitor;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
@@ -136,6 +141,11 @@ public class RedirectFilter extends AnnotatedStandardMBean
 
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    /**
+     * Maximum number of changed paths patched into a cached redirect configuration, more changes reload it
+     */
+    static final int MAX_PATCHED_CHANGES = 100;
+
     @ObjectClassDefinition(name = "ACS Commons Redirect Filter")
     public @interface Configuration {
         @AttributeDefinition(name = "Enable Redirect Filter", description = "Indicates whether the redirect filter is enabled or not.", type = AttributeType.BOOLEAN)
@@ -193,6 +203,18 @@ public class RedirectFilter extends AnnotatedStandardMBean
     private Configuration config;
     private ExecutorService executor;
     Cache<String, RedirectConfiguration> rulesCache;
+    private final MatchLatencyHistogram matchLatency = new MatchLatencyHistogram();
+
+    /**
+     * paths changed since the cached redirect configurations were loaded, keyed by configuration path.
+     * Changes are added with {@link Map#compute} and taken with {@link Map#remove}, both are atomic per key.
+     */
+    private final Map<String, Set<String>> pendingChanges = new ConcurrentHashMap<>();
+
+    /**
+     * redirect configurations being reloaded in the background
+     */
+    private final Set<String> reloading = ConcurrentHashMap.newKeySet();
 
     public RedirectFilter() throws NotCompliantMBeanException {
         super(RedirectFilterMBean.class);
@@ -271,10 +293,9 @@ public class RedirectFilter extends AnnotatedStandardMBean
             if(replicationPaths != null) {
                 for (String path : replicationPaths) {
                     if (path.contains(redirectSubPath)) {
-                        // loading redirect configurations can be expensive and needs to run
-                        // asynchronously,
-                        // outside of the Sling event processing chain
-                        executor.submit(() -> invalidate(path));
+                        // only record the change, loading redirect configurations can be expensive and
+                        // runs outside of the Sling event processing chain
+                        invalidate(path);
                     }
                 }
             }
@@ -290,17 +311,18 @@ public class RedirectFilter extends AnnotatedStandardMBean
         for(ResourceChange e : changes){
             String path = e.getPath();
             if(path.contains(redirectSubPath)){
-                executor.submit(() -> invalidate(path));
+                invalidate(path);
             }
         }
     }
 
     /**
-     * Detect the redirect configuration and invalidate the cached rules
+     * Detect the redirect configuration and mark the cached rules as changed
      *
      * Given an even path, e.g. /conf/global/settings/redirects/redirect-rule-2
      * this method will figure out the corresponding configuration (/conf/global/settings/redirects)
-     * and invalidate the cached rules
+     * and record the change. The next request using the configuration patches the changed rules into
+     * a copy of the cached rules, or triggers a reload if the configuration changed as a whole.
      *
      * @param changePath    the event path
      */
@@ -310,17 +332,120 @@ public class RedirectFilter extends AnnotatedStandardMBean
         String cacheKey = changePath;
         while( cacheKey != null){
             if(cacheKey.endsWith(redirectSubPath)){
-                log.debug("invalidating {}", cacheKey);
-                rulesCache.invalidate(cacheKey);
+                log.debug("invalidating {} in {}", changePath, cacheKey);
+                addPendingChanges(cacheKey, Collections.singleton(changePath));
                 break;
             }
             cacheKey = ResourceUtil.getParent(cacheKey);
         }
     }
 
+    /**
+     * Record changes of a redirect configuration. The set of changes is only modified while the map entry is locked,
+     * so changes cannot be added to a set that {@link #getRedirectConfiguration(Resource)} already took out of the map.
+     *
+     * @param configPath the redirect configuration path
+     * @param changes    the changed paths
+     */
+    private void addPendingChanges(String configPath, Collection<String> changes) {
+        pendingChanges.compute(configPath, (key, pending) -> {
+            Set<String> result = pending != null ? pending : new HashSet<>();
+            result.addAll(changes);
+            return result;
+        });
+    }
+
     @Override
     public void invalidateAll() {
         rulesCache.invalidateAll();
+        pendingChanges.clear();
+    }
+
+    /**
+     * Get the cached rules of a redirect configuration, taking changes since they were loaded into account.
+     * <ul>
+     *     <li>rules are loaded on first use</li>
+     *     <li>changed rules are patched into a copy of the cached rules</li>
+     *     <li>if the configuration changed as a whole, or too many rules changed, the rules are reloaded in the
+     *     background and the cached rules are used until the reload is done</li>
+     * </ul>
+     *
+     * @param configResource the redirect configuration, e.g. /conf/global/settings/redirects
+     * @return the rules of the configuration
+     */
+    RedirectConfiguration getRedirectConfiguration(Resource configResource) throws ExecutionException {
+        String configPath = configResource.getPath();
+        RedirectConfiguration rules = rulesCache.getIfPresent(configPath);
+        if (rules == null) {
+            pendingChanges.remove(configPath);
+            return rulesCache.get(configPath, () -> loadRules(configResource));
+        }
+        if (reloading.contains(configPath)) {
+            return rules;
+        }
+        Set<String> changes = pendingChanges.remove(configPath);
+        if (changes == null) {
+            return rules;
+        }
+        if (changes.contains(configPath) || changes.size() > MAX_PATCHED_CHANGES) {
+            reload(configResource);
+            return rules;
+        }
+
+        long t0 = System.currentTimeMillis();
+        RedirectConfiguration patched = rules.patch(changes, configResource.getResourceResolver());
+        if (!rulesCache.asMap().replace(configPath, rules, patched)) {
+            // the rules were updated concurrently, patch them again on the next request
+            addPendingChanges(configPath, changes);
+            return rules;
+        }
+        log.debug("{} changes patched into {} in {} ms", changes.size(), configPath, System.currentTimeMillis() - t0);
+        return patched;
+    }
+
+    /**
+     * Reload the rules of a redirect configuration on the executor
+     *
+     * @param configResource the redirect configuration
+     */
+    private void reload(Resource configResource) {
+        String configPath = configResource.getPath();
+        if (!reloading.add(configPath)) {
+            return;
+        }
+        ResourceResolver resolver;
+        try {
+            resolver = configResource.getResourceResolver().clone(null);
+        } catch (LoginException e) {
+            log.warn("unable to reload {} in the background, reloading it right away", configPath, e);
+            try {
+                rulesCache.put(configPath, loadRules(configResource));
+            } finally {
+                reloading.remove(configPath);
+            }
+            return;
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    Resource resource = resolver.getResource(configPath);
+                    if (resource != null) {
+                        rulesCache.put(configPath, loadRules(resource));
+                    } else {
+                        rulesCache.invalidate(configPath);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("failed to reload redirect rules from {}", configPath, e);
+                } finally {
+                    reloading.remove(configPath);
+                    resolver.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the filter is being deactivated
+            reloading.remove(configPath);
+            resolver.close();
+        }
     }
 
     RedirectConfiguration loadRules(Resource storageResource) {
@@ -348,6 +473,10 @@ public class RedirectFilter extends AnnotatedStandardMBean
         return rulesCache;
     }
 
+    ExecutorService getExecutor(){
+        return executor; // for testing
+    }
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         if (!(request instanceof SlingHttpServletRequest)
@@ -623,7 +752,7 @@ public class RedirectFilter extends AnnotatedStandardMBean
         String configPath = configResource.getPath();
         try {
             log.trace("Loading redirect rules from caconfig {} mapped to resource path {}", configResource.getPath(), resource.getPath());
-            RedirectConfiguration rules = rulesCache.get(configPath, () -> loadRules(configResource));
+            RedirectConfiguration rules = getRedirectConfiguration(configResource);
             RequestPathInfo requestPathInfo = slingRequest.getRequestPathInfo();
             String resourcePath = requestPathInfo.getResourcePath(); // /content/mysite/en/page.html
 
@@ -633,15 +762,20 @@ public class RedirectFilter extends AnnotatedStandardMBean
             if(ignoreSelectors && requestPathInfo.getSelectorString() != null){
                 resourcePath = removeSelectors(resourcePath, resource.getResourceMetadata().getResolutionPathInfo());
             }
+            long start = System.nanoTime();
             RedirectMatch m = rules.match(resourcePath, contextPrefix, slingRequest);
+            long elapsed = System.nanoTime() - start;
             if (m == null && mapUrls()) { // try mapped url
                 String mappedUrl= mapUrl(resourcePath, slingRequest); // https://www.mysite.com/en/page.html
                 if(!resourcePath.equals(mappedUrl)) { // don't bother if sling mappings are not defined for this path
                     log.trace("No redirect rule found for resource path {}, trying mapped url {}");
                     String mappedPath = URI.create(mappedUrl).getPath();  // /en/page.html
+                    start = System.nanoTime();
                     m = rules.match(mappedPath, "", slingRequest);
+                    elapsed += System.nanoTime() - start;
                 }
             }
+            matchLatency.record(elapsed);
             return m;
         } catch (ExecutionException e){
             log.error("failed to load redirect rules from {}", configPath, e);
@@ -754,6 +888,23 @@ public class RedirectFilter extends AnnotatedStandardMBean
         return config.configName();
     }
 
+    /**
+     * JMX Operation: histogram of the time spent matching requests against the redirect rules
+     */
+    @Override
+    public TabularData getMatchLatency() throws OpenDataException {
+        return matchLatency.toTabularData();
+    }
+
+    @Override
+    public void resetMatchLatency() {
+        matchLatency.reset();
+    }
+
+    MatchLatencyHistogram getMatchLatencyHistogram() {
+        return matchLatency;
+    }
+
     void setAdditionalHeaders(RedirectRule redirectRule, HttpServletResponse response){
         for(Header header : onDeliveryHeaders){
             response.addHeader(header.getName(), header.getValue());
@@ -18,11 +18,13 @@
 package com.adobe.acs.commons.redirects.filter;
 
 import com.adobe.granite.jmx.annotation.Description;
+import org.osgi.annotation.versioning.ProviderType;
 
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 import java.util.Collection;
 
+@ProviderType
 @Description("ACS Redirect Manager MBean")
 public interface RedirectFilterMBean {
 
@@ -40,4 +42,10 @@ public interface RedirectFilterMBean {
 
     @Description("Node name to store redirect configurations")
     String getConfigName();
+
+    @Description("Histogram of the time spent matching requests against the redirect rules")
+    TabularData getMatchLatency() throws OpenDataException;
+
+    @Description("Reset the match latency histogram")
+    void resetMatchLatency();
 }
\ No newline at end of file
@@ -17,15 +17,15 @@
  */
 package com.adobe.acs.commons.redirects.models;
 
-import com.adobe.acs.commons.redirects.filter.RedirectFilter;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -34,6 +34,12 @@ import java.util.regex.Pattern;
 public class RedirectConfiguration {
 
     private boolean nonRegexRequestURIRules = false;
+
+    /**
+     * all rules keyed by the path of their resource, in the order they were loaded
+     */
+    private Map<String, RedirectRule> rules;
+
     /**
      * path rules keyed by source, e.g. path1 -> path2.
      * This makes lookup by path a O(1) operation
@@ -49,15 +55,22 @@ public class RedirectConfiguration {
      * regex rules keyed by their regex pattern.
      */
     private Map<Pattern, RedirectRule> patternRules;
+
+    /**
+     * regex rules bucketed by the literal prefix of their regex
+     */
+    private RegexRuleIndex regexRules;
     private String path;
     private String name;
 
     public static final RedirectConfiguration EMPTY = new RedirectConfiguration();
 
     private RedirectConfiguration(){
+        rules = new LinkedHashMap<>();
         pathRules = new LinkedHashMap<>();
         caseInsensitiveRules = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         patternRules = new LinkedHashMap<>();
+        regexRules = new RegexRuleIndex();
     }
 
     public RedirectConfiguration(Resource resource, String storageSuffix) {
@@ -74,10 +87,76 @@ public class RedirectConfiguration {
     }
 
     void loadRules(Resource configResource) {
-        Collection<RedirectRule> rules = RedirectFilter.getRules(configResource);
-        for (RedirectRule rule : rules) {
+        addRules(readRules(configResource));
+    }
+
+    /**
+     * Creates a copy of this configuration with the redirect rules at or below the given paths read again. Rules
+     * which are gone are dropped and the rules keep the order of the repository, as regex rules are matched in that
+     * order; if new rules were added, the configuration is traversed again to place them without reading the other
+     * rules again. This configuration is not modified, so it can keep serving requests while the copy is built.
+     *
+     * @param changedPaths paths of the changed redirect rules or of resources containing them, e.g. shards
+     * @param resolver     the resource resolver to read the changed rules with
+     * @return the patched copy of this configuration
+     */
+    public RedirectConfiguration patch(Collection<String> changedPaths, ResourceResolver resolver) {
+        Map<String, RedirectRule> patchedRules = new LinkedHashMap<>(rules);
+        boolean added = false;
+        for (String changedPath : changedPaths) {
+            Resource resource = resolver.getResource(changedPath);
+            Map<String, RedirectRule> reloadedRules = resource == null ? Collections.emptyMap() : readRules(resource);
+            String descendantPrefix = changedPath + "/";
+            patchedRules.keySet().removeIf(rulePath -> (rulePath.equals(changedPath) || rulePath.startsWith(descendantPrefix))
+                    && !reloadedRules.containsKey(rulePath));
+            added |= !patchedRules.keySet().containsAll(reloadedRules.keySet());
+            patchedRules.putAll(reloadedRules);
+        }
+        Resource configResource = added ? resolver.getResource(path) : null;
+        if (configResource != null) {
+            patchedRules = inRepositoryOrder(patchedRules, configResource);
+        }
+        RedirectConfiguration patched = new RedirectConfiguration();
+        patched.path = path;
+        patched.name = name;
+        patched.addRules(patchedRules);
+        return patched;
+    }
+
+    /**
+     * @return the rules in the order they are stored below the configuration resource, followed by any rules which
+     * were not found there
+     */
+    private static Map<String, RedirectRule> inRepositoryOrder(Map<String, RedirectRule> rulesByPath, Resource configResource) {
+        Map<String, RedirectRule> remaining = new LinkedHashMap<>(rulesByPath);
+        Map<String, RedirectRule> ordered = new LinkedHashMap<>();
+        for (Resource res : Redirects.readRedirects(configResource)) {
+            RedirectRule rule = remaining.remove(res.getPath());
+            if (rule != null) {
+                ordered.put(res.getPath(), rule);
+            }
+        }
+        ordered.putAll(remaining);
+        return ordered;
+    }
+
+    private static Map<String, RedirectRule> readRules(Resource resource) {
+        Map<String, RedirectRule> rules = new LinkedHashMap<>();
+        for (Resource res : Redirects.readRedirects(resource)) {
+            RedirectRule rule = res.adaptTo(RedirectRule.class);
+            if (rule != null) {
+                rules.put(res.getPath(), rule);
+            }
+        }
+        return rules;
+    }
+
+    private void addRules(Map<String, RedirectRule> rulesByPath) {
+        rules = rulesByPath;
+        for (RedirectRule rule : rulesByPath.values()) {
             if (rule.getRegex() != null) {
                 patternRules.put(rule.getRegex(), rule);
+                regexRules.add(rule);
             } else {
                 Map<String, RedirectRule> map = rule.isCaseInsensitive() ? caseInsensitiveRules : pathRules;
                 if(rule.getEvaluateURI()){
@@ -131,7 +210,8 @@ public class RedirectConfiguration {
      * Performs two tries:
      * <ol>
      *     <li>Match by exact path. This is O(1) lookup in a hashtable keyed by path</li>
-     *     <li>Match by a regular expression. This is O(N) linear lookup in a list of rules keyed by their regex patterns</li>
+     *     <li>Match by a regular expression. Only the rules whose literal prefix matches the path are evaluated,
+     *     in the order they were loaded</li>
      * </ol>
      *
      * @param requestPath   the request to match
@@ -147,7 +227,8 @@ public class RedirectConfiguration {
      * Performs two tries:
      * <ol>
      *     <li>Match by exact path. This is O(1) lookup in a hashtable keyed by path</li>
-     *     <li>Match by a regular expression. This is O(N) linear lookup in a list of rules keyed by their regex patterns</li>
+     *     <li>Match by a regular expression. Only the rules whose literal prefix matches the path are evaluated,
+     *     in the order they were loaded</li>
      * </ol>
      *
      * @param resourcePath   the request to match
@@ -167,47 +248,11 @@ public class RedirectConfiguration {
         if (rule != null) {
             match = new RedirectMatch(rule, null);
         } else {
-            for (Map.Entry<Pattern, RedirectRule> entry : getPatternRules().entrySet()) {
-                boolean evaluateURI = entry.getValue().getEvaluateURI();
-                String pathToEvaluate = determinePathToEvaluate(normalizedPath, evaluateURI, request);
-                Matcher m = getRuleMatch(entry.getKey(), pathToEvaluate, contextPrefix, entry.getValue().isCaseInsensitive());
-                if (m.matches()) {
-                    match = new RedirectMatch(entry.getValue(), m);
-                    break;
-                }
-            }
+            match = regexRules.match(normalizedPath, contextPrefix, request);
         }
         return match;
     }
 
-    /**
-     * Utility method that gets the pattern rule taking an optional context prefix into account
-     * @param rulePattern the regex pattern to match the path
-     * @param pathToEvaluate the path to evaluate for redirects
-     * @param contextPrefix the optional context prefix
-     * @return the matcher associated with the rule
-     */
-    private Matcher getRuleMatch(Pattern rulePattern, String pathToEvaluate, String contextPrefix, boolean nc) {
-        if("".equals(contextPrefix)) {
-            return rulePattern.matcher(pathToEvaluate);
-        } else {
-            //we add the context prefix to the pattern since a pattern might be too broad otherwise,
-            //i.e. "/(.*)" will match anything
-            if(!rulePattern.toString().startsWith(contextPrefix)) {
-                rulePattern = RedirectRule.toRegex(contextPrefix + rulePattern.toString(), nc);
-            }
-            Matcher matcher = rulePattern.matcher(pathToEvaluate);
-            if(!matcher.matches()) {
-                if (pathToEvaluate.startsWith(contextPrefix)) {
-                    matcher = rulePattern.matcher(pathToEvaluate.replace(contextPrefix, ""));
-                } else {
-                    matcher = rulePattern.matcher(contextPrefix + pathToEvaluate);
-                }
-            }
-            return matcher;
-        }
-    }
-
     /**
      * Utility method that gets the path rule taking an optional context prefix into account
      * @param normalizedPath the normalized path
@@ -0,0 +1,168 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.redirects.models;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.adobe.acs.commons.util.impl.RegexUtil.literalPrefix;
+
+/**
+ * Regex redirect rules of a configuration, bucketed by the literal prefix of their regex.
+ * <p>
+ * A path is only matched against the rules whose literal prefix it starts with, and against the rules without a
+ * usable literal prefix, e.g. case-insensitive ones. Candidates are evaluated in the order the rules were loaded,
+ * so the first matching rule wins as before. The context prefixed variants of the rules are compiled and bucketed
+ * once per context prefix rather than on every request.
+ */
+class RegexRuleIndex {
+
+    private final List<RedirectRule> rules = new ArrayList<>();
+
+    /**
+     * compiled rules keyed by context prefix
+     */
+    private final Map<String, CompiledRules> compiledRules = new ConcurrentHashMap<>();
+
+    private boolean evaluateURI = false;
+
+    void add(RedirectRule rule) {
+        rules.add(rule);
+        evaluateURI |= rule.getEvaluateURI();
+        compiledRules.clear();
+    }
+
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * Match a path against the regex rules.
+     *
+     * @param normalizedPath the normalized request path
+     * @param contextPrefix  the optional context prefix, empty if there is none
+     * @param request        the current sling request, may be null
+     * @return match of the first matching rule or null
+     */
+    RedirectMatch match(String normalizedPath, String contextPrefix, SlingHttpServletRequest request) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        CompiledRules compiled = compiledRules.computeIfAbsent(contextPrefix, prefix -> new CompiledRules(rules, prefix));
+        BitSet candidates = new BitSet(rules.size());
+        compiled.collectCandidates(normalizedPath, contextPrefix, candidates);
+        if (evaluateURI && request != null) {
+            compiled.collectCandidates(request.getRequestURI(), contextPrefix, candidates);
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            RedirectRule rule = rules.get(i);
+            String pathToEvaluate = RedirectConfiguration.determinePathToEvaluate(normalizedPath, rule.getEvaluateURI(), request);
+            Matcher m = getRuleMatch(compiled.patterns[i], pathToEvaluate, contextPrefix);
+            if (m.matches()) {
+                return new RedirectMatch(rule, m);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Utility method that gets the pattern rule match taking an optional context prefix into account
+     * @param rulePattern the regex pattern to match the path, prefixed with the context prefix
+     * @param pathToEvaluate the path to evaluate for redirects
+     * @param contextPrefix the optional context prefix
+     * @return the matcher associated with the rule
+     */
+    private static Matcher getRuleMatch(Pattern rulePattern, String pathToEvaluate, String contextPrefix) {
+        Matcher matcher = rulePattern.matcher(pathToEvaluate);
+        if (!contextPrefix.isEmpty() && !matcher.matches()) {
+            if (pathToEvaluate.startsWith(contextPrefix)) {
+                matcher = rulePattern.matcher(pathToEvaluate.replace(contextPrefix, ""));
+            } else {
+                matcher = rulePattern.matcher(contextPrefix + pathToEvaluate);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * The rule patterns for a context prefix, bucketed in a trie by their literal prefix
+     */
+    private static final class CompiledRules {
+        private final Pattern[] patterns;
+        private final Node root = new Node();
+
+        CompiledRules(List<RedirectRule> rules, String contextPrefix) {
+            patterns = new Pattern[rules.size()];
+            for (int i = 0; i < patterns.length; i++) {
+                RedirectRule rule = rules.get(i);
+                Pattern rulePattern = rule.getRegex();
+                if (!contextPrefix.isEmpty() && !rulePattern.toString().startsWith(contextPrefix)) {
+                    // we add the context prefix to the pattern since a pattern might be too broad otherwise,
+                    // i.e. "/(.*)" will match anything
+                    Pattern prefixed = RedirectRule.toRegex(contextPrefix + rulePattern.toString(), rule.isCaseInsensitive());
+                    if (prefixed != null) {
+                        rulePattern = prefixed;
+                    }
+                }
+                patterns[i] = rulePattern;
+                root.getOrCreate(literalPrefix(rulePattern)).rules.add(i);
+            }
+        }
+
+        void collectCandidates(String path, String contextPrefix, BitSet candidates) {
+            if (path == null) {
+                return;
+            }
+            root.collect(path, candidates);
+            if (!contextPrefix.isEmpty()) {
+                root.collect(path.startsWith(contextPrefix) ? path.replace(contextPrefix, "") : contextPrefix + path, candidates);
+            }
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Integer> rules = new ArrayList<>();
+
+        Node getOrCreate(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+
+        void collect(String path, BitSet candidates) {
+            Node node = this;
+            for (int i = 0; node != null; i++) {
+                for (int rule : node.rules) {
+                    candidates.set(rule);
+                }
+                node = i < path.length() ? node.children.get(path.charAt(i)) : null;
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.sling.api.resource.ResourceDecorator;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.jcr.base.util.AccessControlUtil;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Reference;
@@ -37,8 +38,14 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Calendar;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * ResourceDecorator that instruments remote assets to sync binaries as needed.
@@ -56,14 +63,31 @@ public class RemoteAssetDecorator implements ResourceDecorator {
     private static final Logger LOG = LoggerFactory.getLogger(RemoteAssetDecorator.class);
     private static int SYNC_WAIT_SECONDS = 100;
 
+    private static final int MAX_CACHED_USERS = 10000;
+
     private static String ADMIN_ID = "admin";
 
     /**
-     * This set stores resource paths for remote assets that are in the process
-     * of being sync'd from the remote server.  This prevents an infinite loop
-     * when the RemoteAssetSync service fetches the asset in order to update it.
+     * This map stores resource paths for remote assets that are in the process
+     * of being sync'd from the remote server, along with a future completed
+     * when the sync finishes.  This prevents an infinite loop when the
+     * RemoteAssetSync service fetches the asset in order to update it, and
+     * lets parallel requests for the same asset wait for the sync in progress.
+     */
+    private static Map<String, CompletableFuture<Boolean>> remoteResourcesSyncing = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a (non-whitelisted, non-admin) user is allowed to sync binaries,
+     * by user id, so the user manager is only consulted once per user.
      */
-    private static Set<String> remoteResourcesSyncing = new ConcurrentSkipListSet<>();
+    private final Map<String, Boolean> allowedUsers = new ConcurrentHashMap<>();
+
+    /**
+     * The configured DAM sync paths, sorted and with paths already covered by
+     * a shorter sync path removed, so the only candidate prefix of any
+     * resource path is its floor entry.
+     */
+    private NavigableSet<String> syncPathPrefixes = new TreeSet<>();
 
     @Reference
     private RemoteAssetsBinarySync assetSync;
@@ -71,6 +95,12 @@ public class RemoteAssetDecorator implements ResourceDecorator {
     @Reference
     private RemoteAssetsConfigImpl config;
 
+    @Activate
+    protected void activate() {
+        this.syncPathPrefixes = toPrefixSet(this.config.getDamSyncPaths());
+        this.allowedUsers.clear();
+    }
+
     /**
      * When resolving a remote asset, first sync the asset from the remote server.
      * @param resource The resource being resolved.
@@ -90,11 +120,17 @@ public class RemoteAssetDecorator implements ResourceDecorator {
             return resource;
         }
 
-        boolean syncSuccessful = false;
-        if (isAlreadySyncing(resource.getPath())) {
-            syncSuccessful = waitForSyncInProgress(resource);
+        String resourcePath = resource.getPath();
+        boolean syncSuccessful;
+        CompletableFuture<Boolean> syncInProgress = getSyncInProgress(resourcePath);
+        if (syncInProgress == null) {
+            CompletableFuture<Boolean> sync = new CompletableFuture<>();
+            syncInProgress = remoteResourcesSyncing.putIfAbsent(resourcePath, sync);
+            syncSuccessful = syncInProgress == null
+                    ? syncAssetBinaries(resource, sync)
+                    : waitForSyncInProgress(resourcePath, syncInProgress);
         } else {
-            syncSuccessful = syncAssetBinaries(resource);
+            syncSuccessful = waitForSyncInProgress(resourcePath, syncInProgress);
         }
         if (syncSuccessful) {
             LOG.trace("Refreshing resource after binary sync of {}", resource.getPath());
@@ -139,14 +175,37 @@ public class RemoteAssetDecorator implements ResourceDecorator {
             return false;
         }
 
-        boolean matchesSyncPath = false;
-        for (String syncPath : this.config.getDamSyncPaths()) {
-            if (resource.getPath().startsWith(syncPath)) {
-                matchesSyncPath = true;
+        return matchesSyncPath(resource.getPath()) && isAllowedUser(resource);
+    }
+
+    /**
+     * Check if the path is under one of the configured DAM sync paths.
+     * @param path Path to check
+     * @return true if the path starts with a sync path, else false
+     */
+    private boolean matchesSyncPath(String path) {
+        String syncPath = this.syncPathPrefixes.floor(path);
+        return syncPath != null && path.startsWith(syncPath);
+    }
+
+    /**
+     * Sorts the sync paths and drops any path that starts with another sync
+     * path.  In the resulting set, every string sorting between a prefix and a
+     * path starting with it also starts with that prefix, so a path's floor
+     * entry is the only entry that can be its prefix.
+     * @param syncPaths Configured sync paths
+     * @return The minimal sorted set of prefixes
+     */
+    static NavigableSet<String> toPrefixSet(Collection<String> syncPaths) {
+        NavigableSet<String> prefixes = new TreeSet<>();
+        String previous = null;
+        for (String syncPath : new TreeSet<>(syncPaths)) {
+            if (previous == null || !syncPath.startsWith(previous)) {
+                prefixes.add(syncPath);
+                previous = syncPath;
             }
         }
-
-        return matchesSyncPath && isAllowedUser(resource);
+        return prefixes;
     }
 
     /**
@@ -172,12 +231,24 @@ public class RemoteAssetDecorator implements ResourceDecorator {
                 return true;
             }
 
-            Session session = resourceResolver.adaptTo(Session.class);
-            User currentUser = (User) getUserManager(session).getAuthorizable(userId);
-            if (currentUser != null && !currentUser.isSystemUser()) {
+            Boolean allowed = this.allowedUsers.get(userId);
+            if (allowed == null) {
+                Session session = resourceResolver.adaptTo(Session.class);
+                User currentUser = (User) getUserManager(session).getAuthorizable(userId);
+                if (currentUser == null) {
+                    LOG.trace("Avoiding binary sync b/c this is a non-whitelisted service user: {}", userId);
+                    return false;
+                }
+                allowed = !currentUser.isSystemUser();
+                if (this.allowedUsers.size() >= MAX_CACHED_USERS) {
+                    this.allowedUsers.clear();
+                }
+                this.allowedUsers.put(userId, allowed);
+            }
+            if (allowed) {
                 return true;
             } else {
-                LOG.trace("Avoiding binary sync b/c this is a non-whitelisted service user: {}", session.getUserID());
+                LOG.trace("Avoiding binary sync b/c this is a non-whitelisted service user: {}", userId);
             }
         } else {
             LOG.trace("Avoiding binary sync for admin user");
@@ -185,50 +256,47 @@ public class RemoteAssetDecorator implements ResourceDecorator {
         return false;
     }
 
-    protected boolean isAlreadySyncing(String resourcePath) {
-        return remoteResourcesSyncing.contains(resourcePath);
+    protected CompletableFuture<Boolean> getSyncInProgress(String resourcePath) {
+        return remoteResourcesSyncing.get(resourcePath);
     }
 
-    private boolean waitForSyncInProgress(Resource resource) {
-        String resourcePath = resource.getPath();
-
+    private boolean waitForSyncInProgress(String resourcePath, CompletableFuture<Boolean> syncInProgress) {
         LOG.debug("Already sync'ing {} - waiting for parallel sync to complete", resourcePath);
         try {
             // Wait for asset already sync'ing
-            long originalTime = System.currentTimeMillis();
-            while (isAlreadySyncing(resourcePath) && (System.currentTimeMillis() - originalTime) < (1000 * SYNC_WAIT_SECONDS)) {
-                Thread.sleep(100);
-            }
-            if (isAlreadySyncing(resourcePath)) {
-                LOG.warn("Waited {} seconds for parallel binary sync to complete for: {} - giving up", SYNC_WAIT_SECONDS, resourcePath);
-            } else {
-                LOG.debug("Parallel sync of {} complete", resourcePath);
-                return true;
-            }
+            boolean syncSuccessful = syncInProgress.get(SYNC_WAIT_SECONDS, TimeUnit.SECONDS);
+            LOG.debug("Parallel sync of {} complete", resourcePath);
+            return syncSuccessful;
+        } catch (TimeoutException e) {
+            LOG.warn("Waited {} seconds for parallel binary sync to complete for: {} - giving up", SYNC_WAIT_SECONDS, resourcePath);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Failed to wait for parallel binary sync for remote asset: {}", resourcePath, e);
         } catch (Exception e) {
             LOG.error("Failed to wait for parallel binary sync for remote asset: {}", resourcePath, e);
         }
         return false;
     }
 
-    private boolean syncAssetBinaries(Resource resource) {
+    private boolean syncAssetBinaries(Resource resource, CompletableFuture<Boolean> sync) {
         String resourcePath = resource.getPath();
+        boolean syncSuccessful = false;
         try {
-            remoteResourcesSyncing.add(resourcePath);
             LOG.info("Sync'ing remote asset binaries: {}", resourcePath);
 
             if (this.assetSync.syncAsset(resource)) {
                 LOG.debug("Sync of remote asset binaries for {} complete", resourcePath);
-                return true;
+                syncSuccessful = true;
             } else {
                 LOG.error("Failed to sync binaries for remote asset: {}", resourcePath);
             }
         } catch (Exception e) {
             LOG.error("Failed to sync binaries for remote asset: {}", resourcePath, e);
         } finally {
-            remoteResourcesSyncing.remove(resourcePath);
+            sync.complete(syncSuccessful);
+            remoteResourcesSyncing.remove(resourcePath, sync);
         }
-        return false;
+        return syncSuccessful;
     }
 
     protected UserManager getUserManager(Session session) throws RepositoryException {
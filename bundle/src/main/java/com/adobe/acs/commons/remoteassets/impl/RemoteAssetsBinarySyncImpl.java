@@ -19,12 +19,22 @@ package com.adobe.acs.commons.remoteassets.impl;
 
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpResponseException;
@@ -34,7 +44,9 @@ import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,15 +61,36 @@ import com.day.cq.dam.commons.util.DamUtil;
  * Service to sync a remote asset's binaries a from remote server.
  *
  * Pulls the binaries for a remote asset in order to make it a true local asset.
+ * Rendition binaries are downloaded in parallel to temporary files and then
+ * written to the asset one at a time, as the resource resolver is not thread-safe.
  */
 @Component(service=RemoteAssetsBinarySync.class)
 public class RemoteAssetsBinarySyncImpl implements RemoteAssetsBinarySync {
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoteAssetsBinarySyncImpl.class);
+    private static final int RENDITION_FETCH_THREADS = 4;
 
     @Reference
     private RemoteAssetsConfigImpl remoteAssetsConfig;
 
+    private ExecutorService renditionFetcher;
+
+    @Activate
+    protected void activate() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(RENDITION_FETCH_THREADS, RENDITION_FETCH_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        this.renditionFetcher = pool;
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (this.renditionFetcher != null) {
+            this.renditionFetcher.shutdownNow();
+            this.renditionFetcher = null;
+        }
+    }
+
     /**
      * @see RemoteAssetsBinarySync#syncAsset(Resource)
      * @param resource Resource
@@ -74,15 +107,26 @@ public class RemoteAssetsBinarySyncImpl implements RemoteAssetsBinarySync {
                 URI pathUri = new URI(null, null, asset.getPath(), null);
                 String baseUrl = this.remoteAssetsConfig.getServer().concat(pathUri.toString()).concat("/_jcr_content/renditions/");
 
-                Iterator<? extends Rendition> renditions = asset.listRenditions();
-                while (renditions.hasNext()) {
-                    Rendition assetRendition = renditions.next();
-                    if (StringUtils.isEmpty(assetRendition.getMimeType())) {
-                        continue;
+                List<RemoteRendition> remoteRenditions = new ArrayList<>();
+                try {
+                    Iterator<? extends Rendition> renditions = asset.listRenditions();
+                    while (renditions.hasNext()) {
+                        Rendition assetRendition = renditions.next();
+                        if (StringUtils.isEmpty(assetRendition.getMimeType())) {
+                            continue;
+                        }
+                        String renditionName = assetRendition.getName();
+                        String remoteUrl = String.format("%s%s", baseUrl, renditionName);
+                        remoteRenditions.add(new RemoteRendition(renditionName, assetRendition.getMimeType(),
+                                this.renditionFetcher.submit(() -> fetchRendition(remoteUrl, renditionName))));
+                    }
+                    for (RemoteRendition remoteRendition : remoteRenditions) {
+                        setRenditionOnAsset(remoteRendition, asset);
+                    }
+                } finally {
+                    for (RemoteRendition remoteRendition : remoteRenditions) {
+                        remoteRendition.discard();
                     }
-                    String renditionName = assetRendition.getName();
-                    String remoteUrl = String.format("%s%s", baseUrl, renditionName);
-                    setRenditionOnAsset(remoteUrl, assetRendition, asset, renditionName);
                 }
 
                 ModifiableValueMap localResProps = localRes.adaptTo(ModifiableValueMap.class);
@@ -104,27 +148,59 @@ public class RemoteAssetsBinarySyncImpl implements RemoteAssetsBinarySync {
     }
 
     /**
-     * Fetch binary from URL and set into the asset rendition.
+     * Fetch binary from URL into a temporary file.
      * @param remoteUrl String
-     * @param assetRendition Rendition
-     * @param asset Asset
      * @param renditionName String
-     * @throws FileNotFoundException exception
+     * @return Path of the downloaded binary, or null if a rendition other than the original was not found
+     * @throws IOException exception
      */
-    private void setRenditionOnAsset(String remoteUrl, Rendition assetRendition, Asset asset, String renditionName)
-            throws IOException {
-
+    private Path fetchRendition(String remoteUrl, String renditionName) throws IOException {
         LOG.debug("Syncing from remote asset url: {}", remoteUrl);
         Executor executor = this.remoteAssetsConfig.getRemoteAssetsHttpExecutor();
-        try (InputStream inputStream = executor.execute(Request.Get(remoteUrl)).returnContent().asStream()) {
-            asset.addRendition(renditionName, inputStream, assetRendition.getMimeType());
+        Path binary = Files.createTempFile("remote-asset-", ".bin");
+        try {
+            executor.execute(Request.Get(remoteUrl)).saveContent(binary.toFile());
+            return binary;
         } catch (HttpResponseException fne) {
+            Files.deleteIfExists(binary);
             if (DamConstants.ORIGINAL_FILE.equals(renditionName) || fne.getStatusCode() != HTTP_NOT_FOUND) {
                 throw fne;
             }
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(binary);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the fetched binary and set it into the asset rendition.
+     * @param remoteRendition RemoteRendition
+     * @param asset Asset
+     * @throws IOException exception
+     */
+    private void setRenditionOnAsset(RemoteRendition remoteRendition, Asset asset) throws IOException {
+
+        Path binary;
+        try {
+            binary = remoteRendition.binary.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to fetch rendition " + remoteRendition.name, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching rendition " + remoteRendition.name);
+        }
 
-            asset.removeRendition(renditionName);
-            LOG.warn("Rendition '{}' not found on remote environment. Removing local rendition.", renditionName);
+        if (binary == null) {
+            asset.removeRendition(remoteRendition.name);
+            LOG.warn("Rendition '{}' not found on remote environment. Removing local rendition.", remoteRendition.name);
+            return;
+        }
+        try (InputStream inputStream = Files.newInputStream(binary)) {
+            asset.addRendition(remoteRendition.name, inputStream, remoteRendition.mimeType);
         }
     }
 
@@ -142,4 +218,35 @@ public class RemoteAssetsBinarySyncImpl implements RemoteAssetsBinarySync {
         remoteAssetsResolver.commit();
 
     }
+
+    /**
+     * A rendition whose binary is being fetched from the remote server.
+     */
+    private static final class RemoteRendition {
+        private final String name;
+        private final String mimeType;
+        private final Future<Path> binary;
+
+        RemoteRendition(String name, String mimeType, Future<Path> binary) {
+            this.name = name;
+            this.mimeType = mimeType;
+            this.binary = binary;
+        }
+
+        /**
+         * Removes the downloaded binary, if any, once the fetch has finished.
+         */
+        void discard() {
+            try {
+                Path file = binary.get();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | IOException e) {
+                LOG.debug("Unable to remove temporary binary for rendition '{}'", name, e);
+            }
+        }
+    }
 }
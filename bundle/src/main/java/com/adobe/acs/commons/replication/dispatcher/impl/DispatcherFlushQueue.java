@@ -0,0 +1,227 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.acs.commons.replication.dispatcher.impl;
+
+import com.adobe.acs.commons.replication.dispatcher.DispatcherFlushFilter.FlushType;
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.day.cq.replication.ReplicationActionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotCompliantMBeanException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the flush paths derived from replications for a short window and flushes them in batches.
+ * Paths are de-duplicated per replication action type and flush type, and hierarchical flushes of paths below
+ * another flushed path are dropped, as flushing the ancestor already flushes them.
+ */
+final class DispatcherFlushQueue extends AnnotatedStandardMBean implements DispatcherFlushQueueMBean {
+    private static final Logger log = LoggerFactory.getLogger(DispatcherFlushQueue.class);
+
+    /**
+     * Issues the flush of a batch of paths.
+     */
+    @FunctionalInterface
+    interface BatchFlusher {
+        void flush(ReplicationActionType actionType, FlushType flushType, String... paths);
+    }
+
+    private final BatchFlusher batchFlusher;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long batchingWindowInMs;
+
+    private final int maxPendingPaths;
+
+    private Map<ReplicationActionType, Map<FlushType, Set<String>>> pending = new LinkedHashMap<>();
+
+    private int pendingPaths = 0;
+
+    private int maxObservedPendingPaths = 0;
+
+    private boolean scheduled = false;
+
+    private final AtomicLong requestedPaths = new AtomicLong();
+
+    private final AtomicLong flushedPaths = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong backPressureFlushes = new AtomicLong();
+
+    private volatile long lastBatchDurationInMs = 0;
+
+    DispatcherFlushQueue(BatchFlusher batchFlusher, ScheduledExecutorService scheduler, long batchingWindowInMs,
+                         int maxPendingPaths) throws NotCompliantMBeanException {
+        super(DispatcherFlushQueueMBean.class);
+        this.batchFlusher = batchFlusher;
+        this.scheduler = scheduler;
+        this.batchingWindowInMs = batchingWindowInMs;
+        this.maxPendingPaths = maxPendingPaths;
+    }
+
+    /**
+     * Queues the flush of a path. The batch is flushed once the batching window has passed, or right away on the
+     * calling thread if too many paths are pending.
+     */
+    void add(ReplicationActionType actionType, FlushType flushType, String path) {
+        requestedPaths.incrementAndGet();
+
+        boolean backPressure = false;
+        synchronized (this) {
+            if (pending.computeIfAbsent(actionType, type -> new EnumMap<>(FlushType.class))
+                    .computeIfAbsent(flushType, type -> new LinkedHashSet<>())
+                    .add(path)) {
+                pendingPaths++;
+                maxObservedPendingPaths = Math.max(maxObservedPendingPaths, pendingPaths);
+            }
+
+            if (pendingPaths >= maxPendingPaths) {
+                backPressure = true;
+            } else if (!scheduled) {
+                scheduled = true;
+                scheduler.schedule(this::flushPending, batchingWindowInMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (backPressure) {
+            backPressureFlushes.incrementAndGet();
+            log.debug("[ {} ] flush paths pending; flushing them on the replicating thread", maxPendingPaths);
+            flushPending();
+        }
+    }
+
+    @Override
+    public void flushPending() {
+        final Map<ReplicationActionType, Map<FlushType, Set<String>>> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            pendingPaths = 0;
+            scheduled = false;
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        int count = 0;
+        for (final Map.Entry<ReplicationActionType, Map<FlushType, Set<String>>> byActionType : batch.entrySet()) {
+            for (final Map.Entry<FlushType, Set<String>> byFlushType : byActionType.getValue().entrySet()) {
+                final Set<String> paths = FlushType.Hierarchical.equals(byFlushType.getKey())
+                        ? collapse(byFlushType.getValue()) : byFlushType.getValue();
+
+                batchFlusher.flush(byActionType.getKey(), byFlushType.getKey(), paths.toArray(new String[0]));
+                count += paths.size();
+            }
+        }
+
+        flushedPaths.addAndGet(count);
+        batches.incrementAndGet();
+        lastBatchDurationInMs = System.currentTimeMillis() - start;
+        log.debug("Flushed a batch of [ {} ] paths in [ {} ] ms", count, lastBatchDurationInMs);
+    }
+
+    /**
+     * @return the paths that have no ancestor in the paths, in lexicographic order
+     */
+    static Set<String> collapse(Set<String> paths) {
+        final Set<String> collapsed = new LinkedHashSet<>();
+
+        // Ancestors sort before their descendants
+        for (final String path : new TreeSet<>(paths)) {
+            if (!hasAncestorIn(path, collapsed)) {
+                collapsed.add(path);
+            }
+        }
+
+        return collapsed;
+    }
+
+    private static boolean hasAncestorIn(String path, Set<String> ancestors) {
+        if (ancestors.contains("/")) {
+            return true;
+        }
+
+        int index = path.lastIndexOf('/');
+        while (index > 0) {
+            if (ancestors.contains(path.substring(0, index))) {
+                return true;
+            }
+            index = path.lastIndexOf('/', index - 1);
+        }
+        return false;
+    }
+
+    @Override
+    public long getBatchingWindowInMs() {
+        return batchingWindowInMs;
+    }
+
+    @Override
+    public int getMaxPendingPaths() {
+        return maxPendingPaths;
+    }
+
+    @Override
+    public synchronized int getPendingPaths() {
+        return pendingPaths;
+    }
+
+    @Override
+    public synchronized int getMaxObservedPendingPaths() {
+        return maxObservedPendingPaths;
+    }
+
+    @Override
+    public long getRequestedPaths() {
+        return requestedPaths.get();
+    }
+
+    @Override
+    public long getFlushedPaths() {
+        return flushedPaths.get();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @Override
+    public long getBackPressureFlushes() {
+        return backPressureFlushes.get();
+    }
+
+    @Override
+    public long getLastBatchDurationInMs() {
+        return lastBatchDurationInMs;
+    }
+}
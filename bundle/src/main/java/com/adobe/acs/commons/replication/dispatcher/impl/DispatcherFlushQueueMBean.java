@@ -0,0 +1,55 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.acs.commons.replication.dispatcher.impl;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@Description("ACS AEM Commons - Dispatcher Flush Rules - Flush Queue")
+public interface DispatcherFlushQueueMBean {
+    @Description("Batching window in milliseconds")
+    long getBatchingWindowInMs();
+
+    @Description("Number of pending paths beyond which the replicating thread flushes the batch itself")
+    int getMaxPendingPaths();
+
+    @Description("Number of paths waiting for the next batch")
+    int getPendingPaths();
+
+    @Description("Largest number of paths that waited for a batch")
+    int getMaxObservedPendingPaths();
+
+    @Description("Total number of flush paths derived from replications")
+    long getRequestedPaths();
+
+    @Description("Total number of paths flushed after de-duplication and ancestor collapsing")
+    long getFlushedPaths();
+
+    @Description("Total number of batches flushed")
+    long getBatches();
+
+    @Description("Number of batches flushed by replicating threads because too many paths were pending")
+    long getBackPressureFlushes();
+
+    @Description("Duration of the last batch in milliseconds")
+    long getLastBatchDurationInMs();
+
+    /* Operations */
+    @Description("Flush the pending paths now")
+    void flushPending();
+}
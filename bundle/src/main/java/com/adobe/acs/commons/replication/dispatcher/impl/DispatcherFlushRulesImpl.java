@@ -45,13 +45,22 @@ import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -121,6 +130,25 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
             value = { })
     private static final String PROP_RESOURCE_ONLY_FLUSH_RULES = "prop.rules.resource-only";
 
+
+    /* Batching */
+    private static final long DEFAULT_BATCHING_WINDOW_IN_MS = 0L;
+
+    @Property(label = "Batching Window (ms)",
+            description = "Collects the flush paths of replications for this many milliseconds and flushes them "
+                    + "as one batch, de-duplicated and without hierarchical flushes below other flushed paths. "
+                    + "0 flushes during each replication. [ Default: 0 ]",
+            longValue = DEFAULT_BATCHING_WINDOW_IN_MS)
+    private static final String PROP_BATCHING_WINDOW_IN_MS = "prop.batching.window-ms";
+
+    private static final int DEFAULT_MAX_PENDING_PATHS = 10000;
+
+    @Property(label = "Max Pending Paths",
+            description = "Number of pending flush paths beyond which the replicating thread flushes the batch "
+                    + "itself instead of waiting for the batching window. [ Default: 10000 ]",
+            intValue = DEFAULT_MAX_PENDING_PATHS)
+    private static final String PROP_MAX_PENDING_PATHS = "prop.batching.max-pending-paths";
+
     private static final String SERVICE_NAME = "dispatcher-flush";
     protected static final Map<String, Object> AUTH_INFO;
 
@@ -141,6 +169,10 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
     private Map<Pattern, String[]> resourceOnlyFlushRules = new LinkedHashMap<Pattern, String[]>();
     private ReplicationActionType replicationActionType = null;
 
+    private ScheduledExecutorService flushScheduler = null;
+    private DispatcherFlushQueue flushQueue = null;
+    private ServiceRegistration flushQueueRegistration = null;
+
     /**
      * {@inheritDoc}
      */
@@ -159,6 +191,14 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
         final ReplicationActionType flushActionType =
                 replicationActionType == null ? replicationAction.getType() : replicationActionType;
 
+        final DispatcherFlushQueue queue = this.flushQueue;
+        if (queue != null) {
+            // Flush paths are batched, so no resource resolver is needed here
+            queue(queue, path, flushActionType, this.hierarchicalFlushRules, FlushType.Hierarchical);
+            queue(queue, path, flushActionType, this.resourceOnlyFlushRules, FlushType.ResourceOnly);
+            return;
+        }
+
         try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(AUTH_INFO)){
 
             // Flush full content hierarchies
@@ -204,6 +244,39 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
         }
     }
 
+    private void queue(final DispatcherFlushQueue queue, final String path, final ReplicationActionType flushActionType,
+                       final Map<Pattern, String[]> flushRules, final FlushType flushType) {
+        for (final Map.Entry<Pattern, String[]> entry : flushRules.entrySet()) {
+            final Matcher m = entry.getKey().matcher(path);
+
+            if (m.matches()) {
+                for (final String value : entry.getValue()) {
+                    final String flushPath = m.replaceAll(value);
+
+                    log.debug("Queueing {} flush of associated path: {} ~> {}", flushType, path, flushPath);
+                    queue.add(flushActionType, flushType, flushPath);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes a batch of queued paths.
+     */
+    private void flushBatch(final ReplicationActionType flushActionType, final FlushType flushType,
+                            final String... flushPaths) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(AUTH_INFO)) {
+            dispatcherFlusher.flush(resourceResolver, flushActionType, false,
+                    FlushType.Hierarchical.equals(flushType) ? HIERARCHICAL_FILTER : RESOURCE_ONLY_FILTER,
+                    flushPaths);
+        } catch (ReplicationException e) {
+            log.error("Error issuing batched dispatcher flush of [ {} ] paths, some downstream replication exception occurred: {}",
+                    flushPaths.length, e.getMessage(), e);
+        } catch (LoginException e) {
+            log.error("Error issuing batched dispatcher flush due to a repository login exception: {}", e.getMessage(), e);
+        }
+    }
+
     /**
      * Checks if this service should react to or ignore this replication action.
      *
@@ -242,7 +315,7 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
     }
 
     @Activate
-    protected final void activate(final Map<String, String> properties) throws Exception {
+    protected final void activate(final BundleContext bundleContext, final Map<String, String> properties) throws Exception {
         /* Replication Action Type */
         this.replicationActionType = this.configureReplicationActionType(
                 PropertiesUtil.toString(properties.get(PROP_REPLICATION_ACTION_TYPE_NAME),
@@ -261,6 +334,37 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
                         DEFAULT_RESOURCE_ONLY_FLUSH_RULES), "="));
 
         log.debug("ResourceOnly flush rules: {}", this.resourceOnlyFlushRules);
+
+        /* Batching */
+        final long batchingWindowInMs = PropertiesUtil.toLong(properties.get(PROP_BATCHING_WINDOW_IN_MS),
+                DEFAULT_BATCHING_WINDOW_IN_MS);
+        if (batchingWindowInMs > 0) {
+            this.activateFlushQueue(bundleContext, batchingWindowInMs, Math.max(1,
+                    PropertiesUtil.toInteger(properties.get(PROP_MAX_PENDING_PATHS), DEFAULT_MAX_PENDING_PATHS)),
+                    properties.get("service.pid"));
+        }
+    }
+
+    private void activateFlushQueue(final BundleContext bundleContext, final long batchingWindowInMs,
+                                    final int maxPendingPaths, final String pid) {
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            this.flushQueue = new DispatcherFlushQueue(this::flushBatch, this.flushScheduler, batchingWindowInMs,
+                    maxPendingPaths);
+        } catch (NotCompliantMBeanException e) {
+            log.error("Unable to create the dispatcher flush queue; flushing during each replication", e);
+            this.flushScheduler.shutdown();
+            this.flushScheduler = null;
+            return;
+        }
+
+        final Dictionary<String, Object> serviceProps = new Hashtable<>();
+        serviceProps.put("jmx.objectname", "com.adobe.acs.commons:type=Dispatcher Flush Rules,name="
+                + ObjectName.quote(StringUtils.defaultIfBlank(pid, String.valueOf(System.identityHashCode(this)))));
+        this.flushQueueRegistration = bundleContext.registerService(DynamicMBean.class.getName(), this.flushQueue,
+                serviceProps);
+
+        log.debug("Batching flush paths for [ {} ] ms, up to [ {} ] pending paths", batchingWindowInMs, maxPendingPaths);
     }
 
     /**
@@ -302,6 +406,20 @@ public class DispatcherFlushRulesImpl implements Preprocessor, DispatcherFlushRu
 
     @Deactivate
     protected final void deactivate(final Map<String, String> properties) {
+        if (this.flushQueueRegistration != null) {
+            this.flushQueueRegistration.unregister();
+            this.flushQueueRegistration = null;
+        }
+        if (this.flushQueue != null) {
+            // Do not drop the paths of replications that already happened
+            this.flushQueue.flushPending();
+            this.flushQueue = null;
+        }
+        if (this.flushScheduler != null) {
+            this.flushScheduler.shutdownNow();
+            this.flushScheduler = null;
+        }
+
         this.hierarchicalFlushRules = new HashMap<Pattern, String[]>();
         this.resourceOnlyFlushRules = new HashMap<Pattern, String[]>();
         this.replicationActionType = null;
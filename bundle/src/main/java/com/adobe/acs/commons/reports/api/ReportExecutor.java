@@ -19,6 +19,7 @@ package com.adobe.acs.commons.reports.api;
 
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
@@ -57,6 +58,20 @@ public interface ReportExecutor {
    */
   ResultsPage getAllResults() throws ReportException;
 
+  /**
+   * Return all of the results based on the request parameters and supplied
+   * configuration settings as an iterator. Implementations should fetch the
+   * results lazily, so that large reports can be exported row by row without
+   * holding every result in memory. The default implementation iterates over
+   * {@link #getAllResults()}.
+   * 
+   * @return an iterator over all of the results
+   * @throws ReportException
+   */
+  default Iterator<? extends Object> iterateAllResults() throws ReportException {
+    return getAllResults().getResults().iterator();
+  }
+
   /**
    * Return the page of results based on the request parameters and supplied
    * configuration settings in the configuration resource.
@@ -18,13 +18,15 @@
 package com.adobe.acs.commons.reports.internal;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -36,15 +38,19 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
 import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.acs.commons.reports.api.ReportCellCSVExporter;
 import com.adobe.acs.commons.reports.api.ReportException;
 import com.adobe.acs.commons.reports.api.ReportExecutor;
-import com.adobe.acs.commons.reports.api.ResultsPage;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.day.text.csv.Csv;
 
@@ -54,10 +60,12 @@ import com.day.text.csv.Csv;
 @Component(service = { Servlet.class }, property = {
     "sling.servlet.resourceTypes=acs-commons/components/utilities/report-builder/report-page",
     "sling.servlet.selectors=report", "sling.servlet.extensions=csv", "sling.servlet.methods=GET" })
+@Designate(ocd = ReportCSVExportServlet.Config.class)
 public class ReportCSVExportServlet extends SlingSafeMethodsServlet {
 
   private static final long serialVersionUID = 2794836639686938093L;
   private static final Logger log = LoggerFactory.getLogger(ReportCSVExportServlet.class);
+  static final int DEFAULT_FLUSH_INTERVAL = 100;
 
   @Reference
   private transient DynamicClassLoaderManager dynamicClassLoaderManager;
@@ -65,6 +73,32 @@ public class ReportCSVExportServlet extends SlingSafeMethodsServlet {
   @Reference
   private DelimiterConfiguration delimiterConfiguration;
 
+  private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+  private boolean gzipEnabled = false;
+
+  @ObjectClassDefinition(name = "ACS Commons - Report CSV Export Servlet")
+  @interface Config {
+    @AttributeDefinition(
+        name = "Flush Interval",
+        description = "Number of rows written between flushes of the response, so the download starts while the report is still being read."
+    )
+    int flush_interval() default DEFAULT_FLUSH_INTERVAL;
+
+    @AttributeDefinition(
+        name = "Gzip",
+        description = "Compress the export with gzip when the client accepts it."
+    )
+    boolean gzip_enabled() default false;
+  }
+
+  @Activate
+  @Modified
+  protected void activate(Config config) {
+    this.flushInterval = Math.max(1, config.flush_interval());
+    this.gzipEnabled = config.gzip_enabled();
+  }
+
   @Override
   protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response)
       throws ServletException, IOException {
@@ -81,7 +115,14 @@ public class ReportCSVExportServlet extends SlingSafeMethodsServlet {
     Csv csv = null;
 
     try {
-      writer = response.getWriter();
+      if (gzipEnabled && acceptsGzip(request)) {
+        response.setHeader("Content-Encoding", "gzip");
+        response.addHeader("Vary", "Accept-Encoding");
+        // sync flush, so that each periodic flush reaches the client
+        writer = new OutputStreamWriter(new GZIPOutputStream(response.getOutputStream(), true), StandardCharsets.UTF_8);
+      } else {
+        writer = response.getWriter();
+      }
 
       // write the BOM to indicate this is a UTF-8 file
       writer.write("\uFEFF");
@@ -116,9 +157,17 @@ public class ReportCSVExportServlet extends SlingSafeMethodsServlet {
       if (csv != null) {
         csv.close();
       }
+      if (writer != null) {
+        // finishes the gzip stream if csv could not be initialized
+        writer.close();
+      }
     }
   }
 
+  private static boolean acceptsGzip(SlingHttpServletRequest request) {
+    return StringUtils.contains(request.getHeader("Accept-Encoding"), "gzip");
+  }
+
   private List<ReportCellCSVExporter> writeHeaders(SlingHttpServletRequest request, final Csv csv) throws IOException {
     List<String> row = new ArrayList<>();
     List<ReportCellCSVExporter> exporters = new ArrayList<>();
@@ -158,24 +207,25 @@ public class ReportCSVExportServlet extends SlingSafeMethodsServlet {
     executor.setConfiguration(config);
     log.debug("Retrieved executor {}", executor);
 
-    ResultsPage queryResult = executor.getAllResults();
-    Stream<? extends Object> results = queryResult.getResults();
-    log.debug("Retrieved {} results", queryResult.getResultSize());
-
-    results.forEach(r -> {
+    Iterator<? extends Object> results = executor.iterateAllResults();
+    int count = 0;
+    while (results.hasNext()) {
+      Object r = results.next();
       List<String> row = new ArrayList<>();
       try {
         for (ReportCellCSVExporter exporter : exporters) {
           row.add(exporter.getValue(r));
         }
         csv.writeRow(row.toArray(new String[row.size()]));
-        writer.flush();
+        if (++count % flushInterval == 0) {
+          writer.flush();
+        }
       } catch (Exception e) {
         log.warn("Exception writing row: " + row, e);
       }
-    });
+    }
 
-    log.debug("Results written successfully");
+    log.debug("{} results written successfully", count);
 
   }
 }
@@ -21,11 +21,15 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -64,6 +68,7 @@ import com.adobe.acs.commons.util.ParameterUtil;
 import com.adobe.acs.commons.util.impl.QueryHelperImpl;
 import com.day.cq.search.PredicateGroup;
 import com.day.cq.search.QueryBuilder;
+import com.day.cq.search.result.Hit;
 import com.day.cq.search.result.SearchResult;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
@@ -76,6 +81,8 @@ public class QueryReportExecutor implements ReportExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(QueryReportExecutor.class);
 
+    static final int EXPORT_BATCH_SIZE = 1000;
+
     private QueryReportConfig config;
 
     private int page;
@@ -114,10 +121,15 @@ public class QueryReportExecutor implements ReportExecutor {
     }
 
     private com.day.cq.search.Query prepareQueryBuilderQuery() throws ReportException {
+        return prepareQueryBuilderQuery(Collections.emptyMap());
+    }
+
+    private com.day.cq.search.Query prepareQueryBuilderQuery(Map<String, String> defaults) throws ReportException {
 
         Session session = getSession();
-        final Map<String, String> params = ParameterUtil.toMap(prepareStatement().split("\n\n?"), "=", false, null,
-                true);
+        final Map<String, String> params = new HashMap<>(defaults);
+        params.putAll(ParameterUtil.toMap(prepareStatement().split("\n\n?"), "=", false, null,
+                true));
 
         return queryBuilder.createQuery(PredicateGroup.create(params),
                 session);
@@ -183,6 +195,25 @@ public class QueryReportExecutor implements ReportExecutor {
         return fetchResults(Integer.MAX_VALUE, 0);
     }
 
+    /**
+     * Iterate over all results without loading them at once. JCR queries are
+     * already read lazily from the node iterator, Query Builder queries are
+     * fetched in batches of {@value #EXPORT_BATCH_SIZE} hits.
+     */
+    @Override
+    public Iterator<Resource> iterateAllResults() throws ReportException {
+        if (!isQueryBuilder()) {
+            try {
+                return getResultsFromQuery(Integer.MAX_VALUE, 0).getLeft().iterator();
+            } catch (RepositoryException re) {
+                throw new ReportException("Exception executing search results", re);
+            }
+        }
+        // counting the total for every batch would read the whole result set each time
+        com.day.cq.search.Query query = prepareQueryBuilderQuery(Collections.singletonMap("p.guessTotal", "true"));
+        return new QueryBuilderResultIterator(query, request.getResourceResolver(), EXPORT_BATCH_SIZE);
+    }
+
     private void addQueryDetails(Map<String, String> details) throws ReportException {
         try {
             final QueryManager queryManager = getSession().getWorkspace()
@@ -288,4 +319,67 @@ public class QueryReportExecutor implements ReportExecutor {
         this.page = page;
     }
 
+    /**
+     * Reads the hits of a Query Builder query one batch at a time.
+     */
+    private static final class QueryBuilderResultIterator implements Iterator<Resource> {
+
+        private final com.day.cq.search.Query query;
+        private final ResourceResolver resolver;
+        private final int batchSize;
+        private Iterator<Hit> hits = Collections.emptyIterator();
+        private long offset = 0;
+        private boolean lastBatch = false;
+        private Resource next;
+
+        QueryBuilderResultIterator(com.day.cq.search.Query query, ResourceResolver resolver, int batchSize) {
+            this.query = query;
+            this.resolver = resolver;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (hits.hasNext()) {
+                    next = getResource(hits.next());
+                } else if (lastBatch) {
+                    return false;
+                } else {
+                    fetchBatch();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Resource resource = next;
+            next = null;
+            return resource;
+        }
+
+        private void fetchBatch() {
+            log.debug("Fetching results with limit {} and offset {}", batchSize, offset);
+            query.setStart(offset);
+            query.setHitsPerPage(batchSize);
+            List<Hit> batch = query.getResult().getHits();
+            offset += batch.size();
+            lastBatch = batch.size() < batchSize;
+            hits = batch.iterator();
+        }
+
+        private Resource getResource(Hit hit) {
+            try {
+                return resolver.getResource(hit.getPath());
+            } catch (RepositoryException e) {
+                log.warn("Could not get node behind search result hit", e);
+                return null;
+            }
+        }
+    }
+
 }
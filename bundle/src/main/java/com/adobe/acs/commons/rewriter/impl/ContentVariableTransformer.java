@@ -30,8 +30,6 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -40,6 +38,7 @@ import java.util.Map;
  */
 public class ContentVariableTransformer extends ContentHandlerBasedTransformer {
 
+    private SlingHttpServletRequest request;
     private Map<String, Object> contentVariableReplacements;
     private PropertyAggregatorService aggregatorService;
     private PropertyConfigService propertyConfigService;
@@ -55,60 +54,56 @@ public class ContentVariableTransformer extends ContentHandlerBasedTransformer {
 
     @Override
     public void init(ProcessingContext processingContext, ProcessingComponentConfiguration processingComponentConfiguration) throws IOException {
-        SlingHttpServletRequest request = processingContext.getRequest();
-
-        contentVariableReplacements = aggregatorService.getProperties(request);
+        // The content variables are only aggregated once the first placeholder is found
+        request = processingContext.getRequest();
     }
 
     public void startElement(String uri, String localName, String quaName, Attributes atts) throws SAXException {
         if (shouldRun()) {
-            AttributesImpl newAttrs = new AttributesImpl(atts);
-            for (int i = 0; i < newAttrs.getLength(); i++) {
-                String currentAttribute = newAttrs.getValue(i);
+            AttributesImpl newAttrs = null;
+            for (int i = 0; i < atts.getLength(); i++) {
+                String currentAttribute = atts.getValue(i);
                 if (StringUtils.isBlank(currentAttribute)) {
                     continue;
                 }
-                final List<String> keys = ContentVariableReplacementUtil.getKeys(currentAttribute);
-                for (String key : keys) {
-                    // If the placeholder key is in the map then replace it
-                    if (ContentVariableReplacementUtil.hasKey(contentVariableReplacements, key)) {
-                        String replaceValue =
-                                (String) ContentVariableReplacementUtil.getValue(contentVariableReplacements, key);
-                        String newAttrValue = ContentVariableReplacementUtil.doReplacement(currentAttribute, key,
-                                replaceValue, propertyConfigService.getAction(key));
-                        currentAttribute = newAttrValue;
-                        newAttrs.setValue(i, newAttrValue);
+                String newAttrValue = ContentVariableReplacementUtil.replacePlaceholders(currentAttribute,
+                        this::getContentVariableReplacements, propertyConfigService);
+                if (!currentAttribute.equals(newAttrValue)) {
+                    if (newAttrs == null) {
+                        newAttrs = new AttributesImpl(atts);
                     }
+                    newAttrs.setValue(i, newAttrValue);
                 }
             }
-            getContentHandler().startElement(uri, localName, quaName, newAttrs);
+            getContentHandler().startElement(uri, localName, quaName, newAttrs != null ? newAttrs : atts);
         } else {
             getContentHandler().startElement(uri, localName, quaName, atts);
         }
     }
 
     public void characters(char[] ch, int start, int length) throws SAXException {
-        String currentString = new String(ch, start, length);
-
         if (shouldRun()) {
-
-            // Get the current placeholders in the string
-            final List<String> keys = ContentVariableReplacementUtil.getKeys(currentString);
-            for (String key : keys) {
-                // If the placeholder key is in the map then replace it
-                if (ContentVariableReplacementUtil.hasKey(contentVariableReplacements, key)) {
-                    final String placeholderReplacement =
-                            String.valueOf(ContentVariableReplacementUtil.getValue(contentVariableReplacements, key));
-                    currentString = ContentVariableReplacementUtil.doReplacement(currentString, key,
-                            placeholderReplacement, propertyConfigService.getAction(key));
-                }
+            String currentString = new String(ch, start, length);
+            String replacedString = ContentVariableReplacementUtil.replacePlaceholders(currentString,
+                    this::getContentVariableReplacements, propertyConfigService);
+            if (!currentString.equals(replacedString)) {
+                getContentHandler().characters(replacedString.toCharArray(), 0, replacedString.length());
+                return;
             }
         }
 
-        getContentHandler().characters(currentString.toCharArray(), 0, currentString.length());
+        getContentHandler().characters(ch, start, length);
+    }
+
+    private Map<String, Object> getContentVariableReplacements() {
+        if (contentVariableReplacements == null) {
+            contentVariableReplacements = aggregatorService.getProperties(request);
+        }
+        return contentVariableReplacements;
     }
 
     private boolean shouldRun() {
-        return aggregatorService != null && contentVariableReplacements != null && contentVariableReplacements.size() > 0;
+        return aggregatorService != null && request != null
+                && (contentVariableReplacements == null || contentVariableReplacements.size() > 0);
     }
 }
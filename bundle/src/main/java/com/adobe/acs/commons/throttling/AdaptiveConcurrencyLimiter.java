@@ -0,0 +1,129 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Limits the number of requests handled concurrently, instead of the number of requests per minute.
+ * 
+ * The limit adapts to the measured latency: every request completing within the target latency
+ * counts towards raising the limit by one (once as many requests as the current limit completed in
+ * time), while a request exceeding the target latency reduces the limit by a fixed ratio. The limit
+ * never exceeds the value returned by the LoadEstimator, so a CPU based estimator lowers the ceiling
+ * as the CPU load rises.
+ * 
+ * All state is kept in atomics, requests never wait for a lock.
+ * 
+ */
+class AdaptiveConcurrencyLimiter {
+
+    static final int MIN_LIMIT = 1;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final LoadEstimator ceiling;
+
+    private final long targetLatencyMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger limit;
+
+    /**
+     * Requests completed within the target latency since the limit was last changed.
+     */
+    private final AtomicInteger completedInTime = new AtomicInteger();
+
+    AdaptiveConcurrencyLimiter(LoadEstimator ceiling, long targetLatencyMillis) {
+        this.ceiling = ceiling;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.limit = new AtomicInteger(getCeiling());
+    }
+
+    /**
+     * Acquire a permit if the limit has not been reached yet.
+     *
+     * @return true if the request may pass, false if it needs to be throttled
+     */
+    boolean tryAcquire() {
+        int max = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit regardless of the limit, used for requests which pass after being delayed.
+     */
+    void acquire() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Release a permit and adapt the limit to the latency of the completed request.
+     *
+     * @param latencyNanos the time it took to handle the request
+     */
+    void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        int current = limit.get();
+        if (TimeUnit.NANOSECONDS.toMillis(latencyNanos) > targetLatencyMillis) {
+            int reduced = Math.max(MIN_LIMIT, (int) (current * BACKOFF_RATIO));
+            if (reduced < current && limit.compareAndSet(current, reduced)) {
+                completedInTime.set(0);
+            }
+        } else if (completedInTime.incrementAndGet() >= current) {
+            completedInTime.set(0);
+            limit.compareAndSet(current, Math.min(current + 1, getCeiling()));
+        }
+    }
+
+    /**
+     * @return the current concurrency limit, capped by the ceiling
+     */
+    int getLimit() {
+        int max = getCeiling();
+        int current = limit.get();
+        if (current > max) {
+            limit.compareAndSet(current, max);
+            return max;
+        }
+        return current;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    long getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    private int getCeiling() {
+        return Math.max(MIN_LIMIT, ceiling.getMaxRequestPerMinute());
+    }
+
+}
@@ -34,11 +34,20 @@ public class CpuLoadEstimator implements LoadEstimator {
     private static final String OPERATING_SYSTEM_MBEAN = "java.lang:type=OperatingSystem";
     private static final String CPU_LOAD = "SystemCpuLoad";
 
+    /**
+     * The CPU load is read at most once per interval, as the estimate is requested
+     * for every throttled request.
+     */
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
     MBeanServer mbs;
     ObjectName name;
 
     ThrottlingConfiguration tc;
 
+    private volatile long nextRefresh;
+    private volatile int maxRequestsPerMinute;
+
     public CpuLoadEstimator(ThrottlingConfiguration tc) {
         this.tc = tc;
         preseed();
@@ -63,6 +72,16 @@ public class CpuLoadEstimator implements LoadEstimator {
     }
 
     public int getMaxRequestPerMinute() {
+        long now = System.currentTimeMillis();
+        if (now >= nextRefresh) {
+            // concurrent refreshes are harmless, they all read the same mbean
+            maxRequestsPerMinute = readMaxRequestPerMinute();
+            nextRefresh = now + REFRESH_INTERVAL_MS;
+        }
+        return maxRequestsPerMinute;
+    }
+
+    private int readMaxRequestPerMinute() {
 
         int cpuLoad;
         try {
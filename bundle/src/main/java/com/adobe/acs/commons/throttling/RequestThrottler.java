@@ -19,9 +19,14 @@ package com.adobe.acs.commons.throttling;
 
 import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 import javax.servlet.Filter;
@@ -40,9 +45,13 @@ import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * Allows to throttle certain requests, that means limit the amount of requests
  * matching some path criteria per minute.
@@ -107,6 +116,32 @@ import org.slf4j.LoggerFactory;
  * 
  * are throttled.
  * 
+ * Requests can be throttled separately per key, built from the configured
+ * 
+ * <pre>
+ * throttling_keys
+ * </pre>
+ * 
+ * : the matching filtered path, the client IP and whether the request is
+ * authenticated. Each key gets its own budget of requests per minute.
+ * 
+ * Instead of limiting the requests per minute, the throttler can limit the
+ * number of concurrently handled requests (
+ * 
+ * <pre>
+ * throttling_mode
+ * </pre>
+ * 
+ * ). This limit adapts to the measured latency of the requests, and is capped
+ * by
+ * 
+ * <pre>
+ * max_concurrent_requests
+ * </pre>
+ * 
+ * , which decreases linearly with the CPU load in the same way as the requests
+ * per minute.
+ * 
  * This implementation supports 2 modes of throttling:
  * <ul>
  * <li>rejecting the request with a configurable HTTP statuscode; is should be
@@ -120,7 +155,7 @@ import org.slf4j.LoggerFactory;
  *
  */
 
-@Component(property = { "sling.filter.scope=REQUEST" })
+@Component(service = { Filter.class, RequestThrottler.class }, property = { "sling.filter.scope=REQUEST" })
 @Designate(ocd = RequestThrottler.Config.class, factory = true)
 public class RequestThrottler implements Filter {
 
@@ -142,35 +177,135 @@ public class RequestThrottler implements Filter {
         @AttributeDefinition(name = "Filtered paths", description = "The paths (regular expressions) which are considered for this service")
         String[] filtered_paths();
 
+        @AttributeDefinition(name = "Throttling mode", description = "Limit the number of requests per minute, or the number of concurrent requests adapting to their latency", options = {
+                @Option(label = "Requests per minute", value = MODE_REQUESTS_PER_MINUTE),
+                @Option(label = "Adaptive concurrency", value = MODE_ADAPTIVE_CONCURRENCY) })
+        String throttling_mode() default MODE_REQUESTS_PER_MINUTE;
+
+        @AttributeDefinition(name = "Throttling keys", description = "Throttle requests separately by these dimensions: "
+                + KEY_PATH + " (the matching filtered path), " + KEY_CLIENT_IP + ", " + KEY_AUTH_STATE
+                + ". If empty, all matching requests are throttled together", cardinality = Integer.MAX_VALUE)
+        String[] throttling_keys() default {};
+
+        @AttributeDefinition(name = "maximum number of concurrent requests", description = "Adaptive concurrency mode: the maximum number of concurrent requests if the CPU usage exceeds the configured value")
+        int max_concurrent_requests() default 20;
+
+        @AttributeDefinition(name = "Target latency (ms)", description = "Adaptive concurrency mode: requests taking longer lower the concurrency limit; throttled requests are delayed by this time if not rejected")
+        int target_latency_ms() default 1000;
+
         String webconsole_configurationFactory_nameHint() default "{filtered.paths}";
 
     }
 
+    static final String MODE_REQUESTS_PER_MINUTE = "requests_per_minute";
+    static final String MODE_ADAPTIVE_CONCURRENCY = "adaptive_concurrency";
+
+    static final String KEY_PATH = "path";
+    static final String KEY_CLIENT_IP = "client_ip";
+    static final String KEY_AUTH_STATE = "auth_state";
+
+    private static final List<String> KEYS = Arrays.asList(KEY_PATH, KEY_CLIENT_IP, KEY_AUTH_STATE);
+
+    /**
+     * Above this number of keys, the least recently used keys are dropped. Keys
+     * without a request in the last minute are dropped anyway, as all their slots
+     * have expired.
+     */
+    static final int MAX_THROTTLING_KEYS = 10000;
+
     private static final Logger LOG = LoggerFactory.getLogger(RequestThrottler.class);
 
-    ThrottlingState state;
+    /**
+     * Never null, also in adaptive concurrency mode, so a request which is still
+     * filtered in requests per minute mode during a reconfiguration finds a state.
+     */
+    volatile ThrottlingState state;
     private Config config;
 
     CpuLoadEstimator loadEstimator;
 
     List<Pattern> filteredPaths;
 
+    /**
+     * All filtered paths combined into a single expression, null if they cannot be combined.
+     */
+    private Pattern combinedFilteredPaths;
+
+    List<String> throttlingKeys;
+
+    final Cache<String, ThrottlingState> keyedStates = CacheBuilder.newBuilder()
+            .maximumSize(MAX_THROTTLING_KEYS)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final LongAdder allowedRequests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+
     Clock clock;
 
     @Activate
     @Modified
     protected void activate(Config c) {
         this.config = c;
-        ThrottlingConfiguration tc = new ThrottlingConfiguration(c.max_requests_per_minute(),
-                c.start_throttling_percentage());
-        loadEstimator = new CpuLoadEstimator(tc);
         clock = Clock.systemUTC();
-        this.state = new ThrottlingState(clock, loadEstimator);
+        keyedStates.invalidateAll();
+
+        ThrottlingConfiguration rpm = new ThrottlingConfiguration(c.max_requests_per_minute(),
+                c.start_throttling_percentage());
+        CpuLoadEstimator rpmEstimator = new CpuLoadEstimator(rpm);
+        this.state = new ThrottlingState(clock, rpmEstimator);
+        if (MODE_ADAPTIVE_CONCURRENCY.equals(c.throttling_mode())) {
+            ThrottlingConfiguration tc = new ThrottlingConfiguration(c.max_concurrent_requests(),
+                    c.start_throttling_percentage());
+            loadEstimator = new CpuLoadEstimator(tc);
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(loadEstimator, c.target_latency_ms());
+        } else {
+            loadEstimator = rpmEstimator;
+            concurrencyLimiter = null;
+        }
 
         // precompile all patterns
         filteredPaths = Arrays.asList(config.filtered_paths()).stream().map(s -> Pattern.compile(s))
                 .collect(Collectors.toList());
+        combinedFilteredPaths = combine(filteredPaths);
+
+        throttlingKeys = new ArrayList<>();
+        String[] keys = c.throttling_keys() != null ? c.throttling_keys() : new String[0];
+        for (String key : keys) {
+            if (KEYS.contains(key)) {
+                throttlingKeys.add(key);
+            } else {
+                LOG.warn("Ignoring unknown throttling key '{}', supported keys are {}", key, KEYS);
+            }
+        }
+        if (concurrencyLimiter != null && !throttlingKeys.isEmpty()) {
+            LOG.warn("Throttling keys are not supported in adaptive concurrency mode and will be ignored");
+            throttlingKeys = Collections.emptyList();
+        }
+    }
 
+    /**
+     * Combine all patterns into a single alternation, so a path is matched in a single pass.
+     *
+     * @param patterns the patterns to combine
+     * @return the combined pattern, or null if there are no patterns or they cannot be combined
+     *         (e.g. because of duplicate named groups)
+     */
+    static Pattern combine(List<Pattern> patterns) {
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        if (patterns.size() == 1) {
+            return patterns.get(0);
+        }
+        try {
+            return Pattern.compile(patterns.stream().map(p -> "(?:" + p.pattern() + ")").collect(Collectors.joining("|")));
+        } catch (PatternSyntaxException e) {
+            LOG.debug("Cannot combine filtered paths into a single expression", e);
+            return null;
+        }
     }
 
     @Override
@@ -181,6 +316,12 @@ public class RequestThrottler implements Filter {
         SlingHttpServletResponse res = (SlingHttpServletResponse) response;
 
         if (needsFiltering(req.getResource().getPath())) {
+            // read once, the mode can be switched by a reconfiguration while the request is handled
+            AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter != null) {
+                doFilterWithConcurrencyLimit(req, res, chain, limiter);
+                return;
+            }
             doFilterInternal(req, res);
         }
 
@@ -190,8 +331,9 @@ public class RequestThrottler implements Filter {
 
     protected void doFilterInternal(SlingHttpServletRequest req, SlingHttpServletResponse res) throws IOException {
 
-        ThrottlingDecision decision = state.evaluateThrottling();
+        ThrottlingDecision decision = getState(req).evaluateThrottling();
         if (decision.getState().equals(ThrottlingDecision.State.THROTTLE)) {
+            throttledRequests.increment();
 
             if (this.config.reject_on_throttle()) {
                 String msg = "Request rejected because of throttling: " + decision.message;
@@ -208,16 +350,114 @@ public class RequestThrottler implements Filter {
 
         } else {
             // not throttled
+            allowedRequests.increment();
+            req.getRequestProgressTracker().log("Request not throttled");
+        }
+    }
+
+    protected void doFilterWithConcurrencyLimit(SlingHttpServletRequest req, SlingHttpServletResponse res,
+            FilterChain chain, AdaptiveConcurrencyLimiter concurrencyLimiter) throws IOException, ServletException {
+
+        if (concurrencyLimiter.tryAcquire()) {
+            allowedRequests.increment();
             req.getRequestProgressTracker().log("Request not throttled");
+        } else {
+            throttledRequests.increment();
+            String message = "concurrency limit of " + concurrencyLimiter.getLimit() + " reached";
+            if (this.config.reject_on_throttle()) {
+                String msg = "Request rejected because of throttling: " + message;
+                req.getRequestProgressTracker().log(msg);
+                LOG.info(msg);
+                res.sendError(config.http_status_on_reject(), message);
+                return;
+            }
+            String msg = "Throttling request (" + message + ")";
+            req.getRequestProgressTracker().log(msg);
+            LOG.info(msg);
+            delay(concurrencyLimiter.getTargetLatencyMillis());
+            concurrencyLimiter.acquire();
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param req the request
+     * @return the throttling state for the key of this request
+     */
+    ThrottlingState getState(SlingHttpServletRequest req) {
+        if (throttlingKeys.isEmpty()) {
+            return state;
         }
+        return keyedStates.asMap().computeIfAbsent(getThrottlingKey(req), k -> new ThrottlingState(clock, loadEstimator));
+    }
+
+    String getThrottlingKey(SlingHttpServletRequest req) {
+        StringBuilder key = new StringBuilder();
+        for (String dimension : throttlingKeys) {
+            if (key.length() > 0) {
+                key.append('|');
+            }
+            if (KEY_PATH.equals(dimension)) {
+                String path = req.getResource().getPath();
+                filteredPaths.stream().filter(p -> p.matcher(path).matches()).findFirst()
+                        .ifPresent(p -> key.append(p.pattern()));
+            } else if (KEY_CLIENT_IP.equals(dimension)) {
+                key.append(req.getRemoteAddr());
+            } else if (KEY_AUTH_STATE.equals(dimension)) {
+                key.append(req.getRemoteUser() != null ? "authenticated" : "anonymous");
+            }
+        }
+        return key.toString();
     }
 
     protected boolean needsFiltering(String path) {
 
+        if (combinedFilteredPaths != null) {
+            return combinedFilteredPaths.matcher(path).matches();
+        }
         return filteredPaths.stream().anyMatch(p -> p.matcher(path).matches());
 
     }
 
+    String getFilteredPaths() {
+        return filteredPaths.stream().map(Pattern::pattern).collect(Collectors.joining(", "));
+    }
+
+    String getThrottlingMode() {
+        return concurrencyLimiter != null ? MODE_ADAPTIVE_CONCURRENCY : MODE_REQUESTS_PER_MINUTE;
+    }
+
+    /**
+     * @return the current limit, either requests per minute or concurrent requests
+     */
+    int getCurrentLimit() {
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+        return limiter != null ? limiter.getLimit() : loadEstimator.getMaxRequestPerMinute();
+    }
+
+    int getThrottlingKeyCount() {
+        return throttlingKeys.isEmpty() ? 1 : (int) keyedStates.size();
+    }
+
+    long getAllowedRequests() {
+        return allowedRequests.sum();
+    }
+
+    long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    void resetCounters() {
+        allowedRequests.reset();
+        throttledRequests.reset();
+    }
+
     @SuppressWarnings("CQRules:CWE-676") // use appropriate in this case
     protected void delay(long ms) {
         try {
@@ -0,0 +1,37 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.throttling;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+@ProviderType
+@Description("MBean for the request throttlers")
+public interface RequestThrottlerMBean {
+
+    @Description("Get all request throttlers with their current limit and the number of allowed and throttled requests")
+    TabularData getThrottlers() throws OpenDataException;
+
+    @Description("Reset the allowed and throttled request counters of all request throttlers")
+    void resetCounters();
+
+}
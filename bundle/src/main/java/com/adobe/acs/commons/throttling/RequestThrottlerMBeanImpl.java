@@ -0,0 +1,101 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.throttling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.FieldOption;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Implementation of the Request Throttler MBean
+ */
+@Component(service = { DynamicMBean.class, RequestThrottlerMBean.class }, property = {
+        "jmx.objectname=com.adobe.acs.commons.throttling:type=Request Throttler" })
+public class RequestThrottlerMBeanImpl extends AnnotatedStandardMBean implements RequestThrottlerMBean {
+
+    private static final String PN_INDEX = "Index";
+    private static final String PN_FILTERED_PATHS = "Filtered Paths";
+    private static final String PN_MODE = "Mode";
+    private static final String PN_CURRENT_LIMIT = "Current Limit";
+    private static final String PN_KEYS = "Throttling Keys";
+    private static final String PN_ALLOWED = "Allowed Requests";
+    private static final String PN_THROTTLED = "Throttled Requests";
+
+    private static final String[] ITEM_NAMES = { PN_INDEX, PN_FILTERED_PATHS, PN_MODE, PN_CURRENT_LIMIT, PN_KEYS,
+            PN_ALLOWED, PN_THROTTLED };
+
+    @Reference(service = RequestThrottler.class, cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY,
+            fieldOption = FieldOption.UPDATE)
+    private CopyOnWriteArrayList<RequestThrottler> throttlers = new CopyOnWriteArrayList<>();
+
+    public RequestThrottlerMBeanImpl() throws NotCompliantMBeanException {
+        super(RequestThrottlerMBean.class);
+    }
+
+    @Override
+    public TabularData getThrottlers() throws OpenDataException {
+        CompositeType compositeType = new CompositeType("Request Throttler", "Request Throttler Instance",
+                ITEM_NAMES, ITEM_NAMES,
+                new OpenType[] { SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER,
+                    SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG });
+        TabularDataSupport tabularData = new TabularDataSupport(
+                new TabularType("Request Throttler", "Request Throttler Instance", compositeType, new String[] { PN_INDEX }));
+        int index = 0;
+        for (RequestThrottler throttler : throttlers) {
+            Map<String, Object> data = new HashMap<>();
+            data.put(PN_INDEX, index++);
+            data.put(PN_FILTERED_PATHS, throttler.getFilteredPaths());
+            data.put(PN_MODE, throttler.getThrottlingMode());
+            data.put(PN_CURRENT_LIMIT, throttler.getCurrentLimit());
+            data.put(PN_KEYS, throttler.getThrottlingKeyCount());
+            data.put(PN_ALLOWED, throttler.getAllowedRequests());
+            data.put(PN_THROTTLED, throttler.getThrottledRequests());
+            CompositeData cd = new CompositeDataSupport(compositeType, data);
+            tabularData.put(cd);
+        }
+        return tabularData;
+    }
+
+    @Override
+    public void resetCounters() {
+        throttlers.forEach(RequestThrottler::resetCounters);
+    }
+
+}
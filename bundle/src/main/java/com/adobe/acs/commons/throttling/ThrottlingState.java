@@ -34,6 +34,10 @@ import org.slf4j.LoggerFactory;
  * next request can be scheduled. The size of the array is determined dynamically by the
  * LoadEstimator, the adjustment is made on every request evaluated by this class.
  * 
+ * Evaluating a request only inspects the current slot, a slot whose timestamp is older than
+ * a minute counts as empty. Expired slots are only purged when the array is resized, so the
+ * work done under the lock does not depend on the number of slots.
+ * 
  * 
  * It works best if the LoadEstimator returns streamlined values which do not jump too much, otherwise
  * you might get a stop-and-go behavior.
@@ -80,21 +84,29 @@ public class ThrottlingState {
     protected synchronized ThrottlingDecision evaluateThrottling() {
 
         ThrottlingDecision result = null;
-        purgeExpiredEntries();
-        resize(loadEstimator.getMaxRequestPerMinute());
+        Instant now = clock.instant();
+        int maxRequests = loadEstimator.getMaxRequestPerMinute();
+        if (maxRequests != timestamps.length) {
+            purgeExpiredEntries(now);
+            resize(maxRequests);
+        }
+        if (timestamps.length == 0) {
+            return new ThrottlingDecision(ThrottlingDecision.State.THROTTLE).withDelay(ONE_MINUTE)
+                    .withMessage("throttling required (no requests permitted)");
+        }
 
         int idx = currentIndex.get();
-        if (isSlotEmpty(idx)) {
+        if (isSlotEmpty(idx, now)) {
             // 1 minute already passed, reuse that slot
 
-            timestamps[idx] = clock.instant();
+            timestamps[idx] = now;
             currentIndex.updateAndGet(index -> (index == this.timestamps.length - 1) ? 0 : index+1);
             result = new ThrottlingDecision(ThrottlingDecision.State.NOTHROTTLE);
 
         } else {
             // time has not yet passed, we need some throttling
 
-            long diff = timestamps[idx].toEpochMilli() + ONE_MINUTE - clock.instant().toEpochMilli();
+            long diff = timestamps[idx].toEpochMilli() + ONE_MINUTE - now.toEpochMilli();
             result = new ThrottlingDecision(ThrottlingDecision.State.THROTTLE).withDelay(diff)
                     .withMessage("throttling required (at least " + diff + " ms)");
 
@@ -105,20 +117,18 @@ public class ThrottlingState {
 
     /**
      * cleanup the timestamps array and replace all expired entries with
-     * Instant.EPOCH;
+     * Instant.EPOCH; this is only required before resizing, as the ordering of
+     * the resized array depends on it.
      *
+     * @param now the current time
      * @return the number of emptied slots
      */
-    private int purgeExpiredEntries() {
+    private int purgeExpiredEntries(Instant now) {
         int result = 0;
+        long nowMillis = now.toEpochMilli();
 
-        // the array is expected to be small; therefor we can iterate through all
-        // entries without a huge performance impact (although it would be possible
-        // to reduce the number of array accesses by a more efficient and complex
-        // algorithm
         for (int i = 0; i < timestamps.length; i++) {
-            long now = clock.instant().toEpochMilli();
-            if (now - timestamps[i].toEpochMilli() > ONE_MINUTE) {
+            if (nowMillis - timestamps[i].toEpochMilli() > ONE_MINUTE) {
                 timestamps[i] = Instant.EPOCH;
                 result++;
             }
@@ -190,8 +200,9 @@ public class ThrottlingState {
         return 0; // no free slot
     }
 
-    private boolean isSlotEmpty(int index) {
-        return (timestamps[index] == Instant.EPOCH);
+    private boolean isSlotEmpty(int index, Instant now) {
+        return (timestamps[index] == Instant.EPOCH)
+                || now.toEpochMilli() - timestamps[index].toEpochMilli() > ONE_MINUTE;
     }
 
 }
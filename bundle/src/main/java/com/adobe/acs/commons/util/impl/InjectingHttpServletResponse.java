@@ -0,0 +1,265 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.util.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A wrapper around a {@link HttpServletResponse} which injects content in front of a marker (like {@code </body>})
+ * of an HTML response written via {@link #getWriter()} while the response is streamed to the client.
+ * <p>
+ * Only a possibly partial marker at the end of each write is held back, so neither the time to first byte nor the heap usage
+ * grows with the size of the response. When injecting in front of the {@link Position#LAST last} marker, the
+ * content following the most recent marker is held back until the next marker is seen or the response is closed.
+ * <p>
+ * Whether to inject is decided with the first character written, as the content type is usually set by then.
+ * Responses written via {@link #getOutputStream()} are passed through as is.
+ */
+public class InjectingHttpServletResponse extends HttpServletResponseWrapper implements Closeable {
+
+    public enum Position {
+        /** Inject in front of the first occurrence of the marker. */
+        FIRST,
+        /** Inject in front of the last occurrence of the marker. */
+        LAST
+    }
+
+    private final String marker;
+
+    private final Position position;
+
+    private final BooleanSupplier acceptsInjection;
+
+    private final Consumer<PrintWriter> injection;
+
+    private InjectingWriter injectingWriter;
+
+    private PrintWriter printWriter;
+
+    /**
+     * @param wrappedResponse the response to stream to
+     * @param marker the marker to inject in front of
+     * @param position whether to inject in front of the first or the last occurrence of the marker
+     * @param acceptsInjection evaluated once with the first character written, in addition to the HTML content type check
+     * @param injection writes the injected content to the given (underlying) writer
+     */
+    public InjectingHttpServletResponse(HttpServletResponse wrappedResponse, String marker, Position position,
+                                        BooleanSupplier acceptsInjection, Consumer<PrintWriter> injection) {
+        super(wrappedResponse);
+        if (StringUtils.isEmpty(marker)) {
+            throw new IllegalArgumentException("The injection marker must not be empty");
+        }
+        this.marker = marker;
+        this.position = position;
+        this.acceptsInjection = acceptsInjection;
+        this.injection = injection;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (printWriter == null) {
+            injectingWriter = new InjectingWriter(super.getWriter());
+            printWriter = new PrintWriter(injectingWriter);
+        }
+        return printWriter;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (printWriter != null) {
+            printWriter.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (injectingWriter != null) {
+            injectingWriter.reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (injectingWriter != null) {
+            injectingWriter.reset();
+        }
+    }
+
+    /**
+     * @return {@code true} if the content has been injected
+     */
+    public boolean isInjected() {
+        return injectingWriter != null && injectingWriter.injected;
+    }
+
+    /**
+     * Writes out the content which has been held back, injecting in front of the last marker if necessary. The
+     * underlying response is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (printWriter != null) {
+            printWriter.flush();
+            injectingWriter.finish();
+        }
+    }
+
+    private final class InjectingWriter extends Writer {
+
+        private final PrintWriter out;
+
+        private final StringBuilder pending = new StringBuilder();
+
+        private Boolean scanning;
+
+        // true while pending starts with a marker which is a candidate for the LAST position
+        private boolean holding;
+
+        private boolean injected;
+
+        private boolean finished;
+
+        InjectingWriter(PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            write(CharBuffer.wrap(cbuf, off, len), len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            write(CharBuffer.wrap(str, off, off + len), len);
+        }
+
+        private void write(CharSequence chars, int len) {
+            if (len <= 0) {
+                return;
+            }
+            if (scanning == null) {
+                scanning = StringUtils.contains(getContentType(), "html") && acceptsInjection.getAsBoolean();
+            }
+            if (!scanning || injected || finished) {
+                out.append(chars);
+                return;
+            }
+
+            // markers can only start in the appended chars or in the held back tail in front of them
+            int searchFrom = Math.max(holding ? 1 : 0, pending.length() - marker.length() + 1);
+            pending.append(chars);
+
+            if (position == Position.FIRST) {
+                int index = pending.indexOf(marker, searchFrom);
+                if (index == -1) {
+                    release(pending.length() - partialMarkerLength());
+                } else {
+                    release(index);
+                    inject();
+                    release(pending.length());
+                }
+                return;
+            }
+
+            int index = pending.indexOf(marker, searchFrom);
+            while (index != -1) {
+                // a later marker supersedes the held back one
+                release(index);
+                holding = true;
+                index = pending.indexOf(marker, 1);
+            }
+            if (!holding) {
+                release(pending.length() - partialMarkerLength());
+            }
+        }
+
+        /**
+         * @return the length of the longest tail of the pending chars which the marker starts with
+         */
+        private int partialMarkerLength() {
+            for (int length = Math.min(marker.length() - 1, pending.length()); length > 0; length--) {
+                int start = pending.length() - length;
+                int i = 0;
+                while (i < length && pending.charAt(start + i) == marker.charAt(i)) {
+                    i++;
+                }
+                if (i == length) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        private void release(int count) {
+            if (count > 0) {
+                out.append(pending, 0, count);
+                pending.delete(0, count);
+            }
+        }
+
+        private void inject() {
+            injected = true;
+            injection.accept(out);
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (holding) {
+                inject();
+            }
+            release(pending.length());
+            out.flush();
+        }
+
+        void reset() {
+            pending.setLength(0);
+            scanning = null;
+            holding = false;
+            injected = false;
+            finished = false;
+        }
+
+        @Override
+        public void close() {
+            finish();
+            out.close();
+        }
+    }
+}
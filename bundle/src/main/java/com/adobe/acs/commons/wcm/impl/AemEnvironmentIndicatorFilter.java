@@ -19,7 +19,6 @@ package com.adobe.acs.commons.wcm.impl;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Dictionary;
@@ -34,8 +33,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.adobe.acs.commons.util.BufferedHttpServletResponse;
-import com.adobe.acs.commons.util.BufferedServletOutput.ResponseWriteMethod;
+import com.adobe.acs.commons.util.impl.InjectingHttpServletResponse;
 import com.day.cq.commons.PathInfo;
 import com.day.cq.wcm.api.WCMMode;
 
@@ -180,7 +178,6 @@ public class AemEnvironmentIndicatorFilter implements Filter {
     }
 
     @Override
-    @SuppressWarnings("squid:S3776")
     public final void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse,
                                final FilterChain filterChain) throws IOException, ServletException {
 
@@ -198,36 +195,17 @@ public class AemEnvironmentIndicatorFilter implements Filter {
             return;
         }
 
-        try (BufferedHttpServletResponse capturedResponse =
-                     new BufferedHttpServletResponse(response, new StringWriter(), null)) {
+        // The inner filter has decided by the time the page is written, so the response can be streamed
+        try (InjectingHttpServletResponse injectingResponse = new InjectingHttpServletResponse(response,
+                "</body>", InjectingHttpServletResponse.Position.LAST,
+                () -> innerFilterAcceptsInjection(request),
+                printWriter -> writeEnvironmentIndicator(css, innerHTML, titlePrefix, printWriter))) {
 
             request.setAttribute(INJECT_INDICATOR_PARAMETER, Boolean.TRUE);
 
             log.debug("Executing the rest of the filter chain");
-            filterChain.doFilter(request, capturedResponse);
+            filterChain.doFilter(request, injectingResponse);
             log.debug("Executing the rest of the filter chain");
-
-            if (StringUtils.contains(response.getContentType(), "html") && innerFilterAcceptsInjection(request)) {
-                // Get contents
-                final String contents = capturedResponse.getBufferedServletOutput()
-                        .getWriteMethod() == ResponseWriteMethod.WRITER
-                        ? capturedResponse.getBufferedServletOutput().getBufferedString()
-                        : null;
-
-                if (contents != null) {
-                    final int bodyIndex = StringUtils.lastIndexOf(contents, "</body>");
-                    if (bodyIndex != -1) {
-                        // prevent the captured response from being given out a 2nd time via the implicit close()
-                        capturedResponse.setFlushBufferOnClose(false);
-                        final PrintWriter printWriter = response.getWriter();
-                        printWriter.write(contents.substring(0, bodyIndex));
-
-                        writeEnvironmentIndicator(css, innerHTML, titlePrefix, printWriter);
-
-                        printWriter.write(contents.substring(bodyIndex));
-                    }
-                }
-            }
         }
     }
 
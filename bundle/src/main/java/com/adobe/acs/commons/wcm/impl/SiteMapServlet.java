@@ -25,20 +25,38 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.security.Principal;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.Privilege;
 import javax.servlet.ServletException;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.felix.scr.annotations.Activate;
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.PropertyUnbounded;
@@ -46,11 +64,18 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +85,7 @@ import com.day.cq.commons.inherit.InheritanceValueMap;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.day.cq.dam.api.Asset;
 import com.day.cq.dam.api.DamConstants;
+import com.day.cq.replication.ReplicationAction;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageFilter;
 import com.day.cq.wcm.api.PageManager;
@@ -91,6 +117,12 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
 
     private static final boolean DEFAULT_USE_VANITY_URL = true;
 
+    private static final boolean DEFAULT_PREGENERATE = false;
+
+    private static final int DEFAULT_MAX_URLS_PER_FILE = 50000;
+
+    private static final int DEFAULT_REBUILD_DELAY = 60;
+
     @Property(value = DEFAULT_EXTERNALIZER_DOMAIN, label = "Externalizer Domain", description = "Must correspond to a configuration of the Externalizer component. If blank the externalization will prepend the current request's scheme combined with the current request's host header.")
     private static final String PROP_EXTERNALIZER_DOMAIN = "externalizer.domain";
 
@@ -133,11 +165,38 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
     @Property(boolValue = DEFAULT_USE_VANITY_URL, label = "Use Vanity URLs", description = "Use the Vanity URL for generating the Page URL")
     private static final String USE_VANITY_URL = "use.vanity";
 
-    private static final String NS = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    @Property(boolValue = DEFAULT_PREGENERATE, label = "Pre-generate Site Maps", description = "If true, site maps are generated in the background with the service user and served from gzipped files on disk. Only pages and assets anonymous users can read are included, split into a site map index and shards. A site map is generated on its first request and regenerated after pages or assets below it are replicated. Requires an Externalizer Domain.")
+    private static final String PROP_PREGENERATE = "pregenerate.enabled";
+
+    @Property(intValue = DEFAULT_MAX_URLS_PER_FILE, label = "Max URLs per Site Map File", description = "Maximum number of URLs in a pre-generated site map shard. [ Default: 50000 ]")
+    private static final String PROP_MAX_URLS_PER_FILE = "pregenerate.max-urls-per-file";
+
+    @Property(intValue = DEFAULT_REBUILD_DELAY, label = "Rebuild Delay (seconds)", description = "Delay after a replication before a pre-generated site map is regenerated, so bulk replications regenerate it once. [ Default: 60 ]")
+    private static final String PROP_REBUILD_DELAY = "pregenerate.rebuild-delay";
+
+    static final String NS = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+    private static final String SERVICE_NAME = "sitemap-generator";
+
+    private static final Map<String, Object> AUTH_INFO = Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, (Object) SERVICE_NAME);
+
+    /**
+     * Writes the urls of a url set, one at a time.
+     */
+    @FunctionalInterface
+    interface UrlSetWriter {
+        /**
+         * @return the stream to write the next url element to
+         */
+        XMLStreamWriter nextUrl() throws XMLStreamException;
+    }
 
     @Reference
     private transient Externalizer externalizer;
 
+    @Reference
+    private transient ResourceResolverFactory resourceResolverFactory;
+
     private String externalizerDomain;
 
     private boolean includeInheritValue;
@@ -166,8 +225,22 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
 
     private boolean useVanityUrl;
 
+    private transient SiteMapStore siteMapStore;
+
+    private transient ScheduledExecutorService generator;
+
+    private transient ServiceRegistration replicationListener;
+
+    private int rebuildDelay;
+
+    /* Site roots whose site maps were requested */
+    private final transient Set<String> siteRoots = ConcurrentHashMap.newKeySet();
+
+    /* Site roots with a pending generation */
+    private final transient Set<String> scheduledSiteRoots = ConcurrentHashMap.newKeySet();
+
     @Activate
-    protected void activate(Map<String, Object> properties) {
+    protected void activate(BundleContext bundleContext, Map<String, Object> properties) {
         this.externalizerDomain = PropertiesUtil.toString(properties.get(PROP_EXTERNALIZER_DOMAIN),
                 DEFAULT_EXTERNALIZER_DOMAIN);
         this.includeLastModified = PropertiesUtil.toBoolean(properties.get(PROP_INCLUDE_LAST_MODIFIED),
@@ -190,6 +263,109 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
                 DEFAULT_REMOVE_TRAILING_SLASH);
         this.excludedPageTemplates = Arrays.asList(PropertiesUtil.toStringArray(properties.get(TEMPLATE_EXCLUDE_FROM_SITEMAP_PROPERTY),new String[0]));
         this.useVanityUrl =  PropertiesUtil.toBoolean(properties.get(USE_VANITY_URL), DEFAULT_USE_VANITY_URL);
+
+        if (PropertiesUtil.toBoolean(properties.get(PROP_PREGENERATE), DEFAULT_PREGENERATE)) {
+            if (StringUtils.isBlank(externalizerDomain)) {
+                log.warn("Site maps cannot be pre-generated without an externalizer domain; generating them on each request");
+            } else {
+                activatePregeneration(bundleContext, properties);
+            }
+        }
+    }
+
+    private void activatePregeneration(BundleContext bundleContext, Map<String, Object> properties) {
+        this.rebuildDelay = PropertiesUtil.toInteger(properties.get(PROP_REBUILD_DELAY), DEFAULT_REBUILD_DELAY);
+        final String pid = PropertiesUtil.toString(properties.get("service.pid"), externalizerDomain);
+
+        this.siteMapStore = new SiteMapStore(bundleContext.getDataFile("sitemaps/" + DigestUtils.sha1Hex(pid)),
+                Math.max(1, PropertiesUtil.toInteger(properties.get(PROP_MAX_URLS_PER_FILE), DEFAULT_MAX_URLS_PER_FILE)),
+                characterEncoding);
+        // Site maps stored before a restart or with a different configuration may be stale
+        this.siteMapStore.clear();
+        this.generator = Executors.newSingleThreadScheduledExecutor();
+
+        final Dictionary<String, Object> serviceProps = new Hashtable<>();
+        serviceProps.put(EventConstants.EVENT_TOPIC, ReplicationAction.EVENT_TOPIC);
+        this.replicationListener = bundleContext.registerService(EventHandler.class.getName(),
+                (EventHandler) this::handleReplication, serviceProps);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (replicationListener != null) {
+            replicationListener.unregister();
+            replicationListener = null;
+        }
+        if (generator != null) {
+            generator.shutdownNow();
+            generator = null;
+        }
+        if (siteMapStore != null) {
+            siteMapStore.clear();
+            siteMapStore = null;
+        }
+        siteRoots.clear();
+        scheduledSiteRoots.clear();
+    }
+
+    private void handleReplication(Event event) {
+        final ReplicationAction action = ReplicationAction.fromEvent(event);
+        if (action == null || action.getPath() == null) {
+            return;
+        }
+
+        final String path = action.getPath();
+        final boolean assetsIncluded = !damAssetTypes.isEmpty() && !damAssetProperty.isEmpty()
+                && path.startsWith(DamConstants.MOUNTPOINT_ASSETS + "/");
+        for (String siteRoot : siteRoots) {
+            if (assetsIncluded || path.equals(siteRoot) || path.startsWith(siteRoot + "/")) {
+                scheduleGeneration(siteRoot, rebuildDelay);
+            }
+        }
+    }
+
+    private void scheduleGeneration(String siteRoot, long delayInSeconds) {
+        final ScheduledExecutorService executor = this.generator;
+        if (executor != null && scheduledSiteRoots.add(siteRoot)) {
+            executor.schedule(() -> {
+                scheduledSiteRoots.remove(siteRoot);
+                generate(siteRoot);
+            }, delayInSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void generate(String siteRoot) {
+        final SiteMapStore store = this.siteMapStore;
+        if (store == null) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(AUTH_INFO);
+             SiteMapStore.Builder builder = store.builder(siteRoot)) {
+            final Page page = resourceResolver.adaptTo(PageManager.class).getPage(siteRoot);
+            if (page == null) {
+                log.debug("Site root [ {} ] no longer exists; not generating its site map", siteRoot);
+                siteRoots.remove(siteRoot);
+                return;
+            }
+
+            writeUrlSet(page, builder, resourceResolver, null, new AnonymousReadCheck(resourceResolver));
+            final int shards = builder.commit(shard -> applyUrlRewrites(
+                    externalizeUri(resourceResolver, null, String.format("%s.sitemap.%d.xml", siteRoot, shard))));
+
+            log.info("Generated site map of [ {} ] with [ {} ] files in [ {} ] ms", siteRoot, shards,
+                    System.currentTimeMillis() - start);
+        } catch (LoginException e) {
+            log.error("Unable to get the service resource resolver to generate the site map of [ {} ]", siteRoot, e);
+        } catch (RepositoryException e) {
+            // Without the check, pages anonymous users cannot read would end up in the public site map
+            log.warn("Unable to check which pages anonymous users can read; site maps are generated on each request instead", e);
+            this.siteMapStore = null;
+            store.clear();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            log.error("Unable to generate the site map of [ {} ]", siteRoot, e);
+        }
     }
 
     @Override
@@ -203,6 +379,19 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
         PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
         Page page = pageManager.getContainingPage(request.getResource());
 
+        final SiteMapStore store = this.siteMapStore;
+        if (store != null) {
+            String[] selectors = request.getRequestPathInfo().getSelectors();
+            int shard = selectors.length > 1 ? NumberUtils.toInt(selectors[1], -1) : -1;
+
+            siteRoots.add(page.getPath());
+            if (store.serve(page.getPath(), shard, request, response)) {
+                return;
+            }
+            // Serve this request on the fly until the site map is generated
+            scheduleGeneration(page.getPath(), 0);
+        }
+
         XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
         XMLStreamWriter stream = null;
         try {
@@ -212,23 +401,13 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
             stream.writeStartElement("", "urlset", NS);
             stream.writeNamespace("", NS);
 
-            // first do the current page
-            write(page, stream, request);
-
-            for (Iterator<Page> children = page.listChildren(new PageFilter(false, true), true); children.hasNext();) {
-                write(children.next(), stream, request);
-            }
-
-            if (damAssetTypes.size() > 0 && damAssetProperty.length() > 0) {
-                for (Resource assetFolder : getAssetFolders(page, resourceResolver)) {
-                    writeAssets(stream, assetFolder, request);
-                }
-            }
+            final XMLStreamWriter urlSet = stream;
+            writeUrlSet(page, () -> urlSet, resourceResolver, request, null);
 
             stream.writeEndElement();
 
             stream.writeEndDocument();
-        } catch (XMLStreamException e) {
+        } catch (XMLStreamException | RepositoryException e) {
             throw new IOException(e);
         } finally {
             if (stream != null) {
@@ -244,6 +423,28 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
         }
     }
 
+    /**
+     * @param request the request, or null when generating in the background
+     * @param readCheck the check for pages and assets read with the service user, or null when reading with the
+     *                  request's resource resolver
+     */
+    private void writeUrlSet(Page page, UrlSetWriter out, ResourceResolver resourceResolver,
+                             SlingHttpServletRequest request, AnonymousReadCheck readCheck)
+            throws XMLStreamException, RepositoryException {
+        // first do the current page
+        write(page, out, resourceResolver, request, readCheck);
+
+        for (Iterator<Page> children = page.listChildren(new PageFilter(false, true), true); children.hasNext();) {
+            write(children.next(), out, resourceResolver, request, readCheck);
+        }
+
+        if (damAssetTypes.size() > 0 && damAssetProperty.length() > 0) {
+            for (Resource assetFolder : getAssetFolders(page, resourceResolver)) {
+                writeAssets(out, assetFolder, resourceResolver, request, readCheck);
+            }
+        }
+    }
+
     private Collection<Resource> getAssetFolders(Page page, ResourceResolver resolver) {
         List<Resource> allAssetFolders = new ArrayList<Resource>();
         ValueMap properties = page.getProperties();
@@ -284,20 +485,23 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
     }
 
     @SuppressWarnings("squid:S1192")
-    private void write(Page page, XMLStreamWriter stream, SlingHttpServletRequest request) throws XMLStreamException {
-        if (isHiddenByPageProperty(page) || isHiddenByPageTemplate(page)) {
+    private void write(Page page, UrlSetWriter out, ResourceResolver resourceResolver, SlingHttpServletRequest request,
+                       AnonymousReadCheck readCheck) throws XMLStreamException, RepositoryException {
+        if (isHiddenByPageProperty(page) || isHiddenByPageTemplate(page)
+                || (readCheck != null && !readCheck.canRead(page.getPath()))) {
             return;
         }
+        XMLStreamWriter stream = out.nextUrl();
         stream.writeStartElement(NS, "url");
         String loc = "";
 
         if (useVanityUrl && !StringUtils.isEmpty(page.getVanityUrl())) {
-            loc = externalizeUri(request, page.getVanityUrl());
+            loc = externalizeUri(resourceResolver, request, page.getVanityUrl());
         } else if (!extensionlessUrls) {
-            loc = externalizeUri(request, String.format("%s.html", page.getPath()));
+            loc = externalizeUri(resourceResolver, request, String.format("%s.html", page.getPath()));
         } else {
             String urlFormat = removeTrailingSlash ? "%s" : "%s/";
-            loc = externalizeUri(request, String.format(urlFormat, page.getPath()));
+            loc = externalizeUri(resourceResolver, request, String.format(urlFormat, page.getPath()));
         }
 
         loc = applyUrlRewrites(loc);
@@ -345,19 +549,21 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
         return flag;
     }
 
-    private String externalizeUri(SlingHttpServletRequest request, String path) {
+    private String externalizeUri(ResourceResolver resourceResolver, SlingHttpServletRequest request, String path) {
         if (StringUtils.isNotBlank(externalizerDomain)) {
-            return externalizer.externalLink(request.getResourceResolver(), externalizerDomain, path);
+            return externalizer.externalLink(resourceResolver, externalizerDomain, path);
         } else {
             log.debug("No externalizer domain configured, take into account current host header {} and current scheme {}", request.getServerName(), request.getScheme());
             return externalizer.absoluteLink(request, request.getScheme(), path);
         }
     }
 
-    private void writeAsset(Asset asset, XMLStreamWriter stream, SlingHttpServletRequest request) throws XMLStreamException {
+    private void writeAsset(Asset asset, UrlSetWriter out, ResourceResolver resourceResolver,
+                            SlingHttpServletRequest request) throws XMLStreamException {
+        XMLStreamWriter stream = out.nextUrl();
         stream.writeStartElement(NS, "url");
 
-        String loc = externalizeUri(request, asset.getPath());
+        String loc = externalizeUri(resourceResolver, request, asset.getPath());
         writeElement(stream, "loc", loc);
 
         if (includeLastModified) {
@@ -384,18 +590,20 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
         stream.writeEndElement();
     }
 
-    private void writeAssets(final XMLStreamWriter stream, final Resource assetFolder, final SlingHttpServletRequest request)
-            throws XMLStreamException {
+    private void writeAssets(final UrlSetWriter out, final Resource assetFolder, final ResourceResolver resourceResolver,
+                             final SlingHttpServletRequest request, final AnonymousReadCheck readCheck)
+            throws XMLStreamException, RepositoryException {
         for (Iterator<Resource> children = assetFolder.listChildren(); children.hasNext();) {
             Resource assetFolderChild = children.next();
             if (assetFolderChild.isResourceType(DamConstants.NT_DAM_ASSET)) {
                 Asset asset = assetFolderChild.adaptTo(Asset.class);
 
-                if (damAssetTypes.contains(asset.getMimeType())) {
-                    writeAsset(asset, stream, request);
+                if (damAssetTypes.contains(asset.getMimeType())
+                        && (readCheck == null || readCheck.canRead(asset.getPath()))) {
+                    writeAsset(asset, out, resourceResolver, request);
                 }
             } else {
-                writeAssets(stream, assetFolderChild, request);
+                writeAssets(out, assetFolderChild, resourceResolver, request, readCheck);
             }
         }
     }
@@ -433,4 +641,34 @@ public final class SiteMapServlet extends SlingSafeMethodsServlet {
         stream.writeEndElement();
     }
 
+    /**
+     * Checks whether anonymous users can read a page or asset. Site maps generated in the background are read with the
+     * service user, which can read more than the public, e.g. pages restricted by closed user groups.
+     */
+    static final class AnonymousReadCheck {
+        // Permissions are evaluated by principal name
+        private static final Principal ANONYMOUS = () -> "anonymous";
+
+        private final JackrabbitAccessControlManager accessControlManager;
+
+        private final Set<Principal> principals;
+
+        private final Privilege[] read;
+
+        AnonymousReadCheck(ResourceResolver resourceResolver) throws RepositoryException {
+            final Session session = resourceResolver.adaptTo(Session.class);
+            if (!(session instanceof JackrabbitSession)
+                    || !(session.getAccessControlManager() instanceof JackrabbitAccessControlManager)) {
+                throw new RepositoryException("The permissions of anonymous users cannot be evaluated");
+            }
+            this.accessControlManager = (JackrabbitAccessControlManager) session.getAccessControlManager();
+            this.principals = new HashSet<>(Arrays.asList(ANONYMOUS,
+                    ((JackrabbitSession) session).getPrincipalManager().getEveryone()));
+            this.read = new Privilege[] { accessControlManager.privilegeFromName(Privilege.JCR_READ) };
+        }
+
+        boolean canRead(String path) throws RepositoryException {
+            return accessControlManager.hasPrivileges(path, principals, read);
+        }
+    }
 }
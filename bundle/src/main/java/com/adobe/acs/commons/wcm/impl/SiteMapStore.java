@@ -0,0 +1,284 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.wcm.impl;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores pre-generated site maps as gzipped files on disk, one directory per site root. A site map with more URLs than
+ * fit in one file is split into shards listed by a site map index.
+ */
+final class SiteMapStore {
+    private static final Logger log = LoggerFactory.getLogger(SiteMapStore.class);
+
+    private static final String INDEX_FILE = "index.xml.gz";
+
+    private static final String SHARD_FILE_SUFFIX = ".xml.gz";
+
+    private static final FastDateFormat DATE_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd");
+
+    private final File directory;
+
+    private final int maxUrlsPerFile;
+
+    private final String characterEncoding;
+
+    SiteMapStore(File directory, int maxUrlsPerFile, String characterEncoding) {
+        this.directory = directory;
+        this.maxUrlsPerFile = maxUrlsPerFile;
+        this.characterEncoding = StringUtils.defaultIfEmpty(characterEncoding, "UTF-8");
+    }
+
+    private File getSiteMapDirectory(String rootPath) {
+        return new File(directory, DigestUtils.sha1Hex(rootPath));
+    }
+
+    private static File getShardFile(File siteMapDirectory, int shard) {
+        return new File(siteMapDirectory, shard + SHARD_FILE_SUFFIX);
+    }
+
+    /**
+     * @return the number of stored shards of the site map, 0 if it has not been generated
+     */
+    int getShardCount(String rootPath) {
+        final File siteMapDirectory = getSiteMapDirectory(rootPath);
+        if (!new File(siteMapDirectory, INDEX_FILE).isFile()) {
+            return 0;
+        }
+        int shards = 0;
+        while (getShardFile(siteMapDirectory, shards).isFile()) {
+            shards++;
+        }
+        return shards;
+    }
+
+    /**
+     * Streams the stored site map, or the shard of it, gzipped if the client accepts it.
+     *
+     * @param shard the shard, or -1 for the site map itself, which is the index if there is more than one shard
+     * @return false if the site map has not been generated
+     */
+    boolean serve(String rootPath, int shard, SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws IOException {
+        final int shards = getShardCount(rootPath);
+        if (shards == 0) {
+            return false;
+        }
+
+        final File siteMapDirectory = getSiteMapDirectory(rootPath);
+        final File file;
+        if (shard < 0) {
+            file = shards == 1 ? getShardFile(siteMapDirectory, 0) : new File(siteMapDirectory, INDEX_FILE);
+        } else if (shard < shards) {
+            file = getShardFile(siteMapDirectory, shard);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return true;
+        }
+
+        response.setContentType(request.getResponseContentType());
+        response.setCharacterEncoding(characterEncoding);
+        response.setDateHeader("Last-Modified", file.lastModified());
+        response.addHeader("Vary", "Accept-Encoding");
+
+        try (InputStream in = new FileInputStream(file)) {
+            if (StringUtils.contains(request.getHeader("Accept-Encoding"), "gzip")) {
+                response.setHeader("Content-Encoding", "gzip");
+                response.setContentLength((int) file.length());
+                IOUtils.copy(in, response.getOutputStream());
+            } else {
+                IOUtils.copy(new GZIPInputStream(in), response.getOutputStream());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts generating the site map of a site root. The stored site map is only replaced on
+     * {@link Builder#commit(IntFunction)}.
+     */
+    Builder builder(String rootPath) throws IOException {
+        return new Builder(getSiteMapDirectory(rootPath));
+    }
+
+    /**
+     * Removes all stored site maps.
+     */
+    void clear() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    /**
+     * Writes the URLs of a site map into shards of at most maxUrlsPerFile URLs.
+     */
+    final class Builder implements SiteMapServlet.UrlSetWriter, Closeable {
+        private final File siteMapDirectory;
+
+        private final File workDirectory;
+
+        private int shards = 0;
+
+        private int urls = 0;
+
+        private OutputStream out;
+
+        private XMLStreamWriter stream;
+
+        private Builder(File siteMapDirectory) throws IOException {
+            this.siteMapDirectory = siteMapDirectory;
+            this.workDirectory = new File(siteMapDirectory.getPath() + ".tmp");
+            FileUtils.deleteQuietly(workDirectory);
+            FileUtils.forceMkdir(workDirectory);
+        }
+
+        @Override
+        public XMLStreamWriter nextUrl() throws XMLStreamException {
+            if (stream == null || urls >= maxUrlsPerFile) {
+                endShard();
+                try {
+                    out = new GZIPOutputStream(new FileOutputStream(getShardFile(workDirectory, shards)));
+                } catch (IOException e) {
+                    throw new XMLStreamException("Unable to create site map shard", e);
+                }
+                stream = XMLOutputFactory.newFactory().createXMLStreamWriter(out, characterEncoding);
+                stream.writeStartDocument(characterEncoding, "1.0");
+                stream.writeStartElement("", "urlset", SiteMapServlet.NS);
+                stream.writeNamespace("", SiteMapServlet.NS);
+                shards++;
+                urls = 0;
+            }
+            urls++;
+            return stream;
+        }
+
+        private void endShard() throws XMLStreamException {
+            if (stream != null) {
+                stream.writeEndElement();
+                stream.writeEndDocument();
+                stream.close();
+                stream = null;
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new XMLStreamException("Unable to write site map shard", e);
+                }
+            }
+        }
+
+        /**
+         * Replaces the stored site map. Shards whose content did not change are kept as they are, so their last
+         * modified date in the index only changes when their URLs do.
+         *
+         * @param shardLocations the external URL of each shard
+         * @return the number of shards
+         */
+        int commit(IntFunction<String> shardLocations) throws IOException, XMLStreamException {
+            if (shards == 0) {
+                // Site maps always have a url set, even an empty one
+                nextUrl();
+                urls = 0;
+            }
+            endShard();
+
+            FileUtils.forceMkdir(siteMapDirectory);
+            int replaced = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                final File generated = getShardFile(workDirectory, shard);
+                final File stored = getShardFile(siteMapDirectory, shard);
+                if (!stored.isFile() || !FileUtils.contentEquals(generated, stored)) {
+                    Files.move(generated.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    replaced++;
+                }
+            }
+            for (int shard = shards; getShardFile(siteMapDirectory, shard).isFile(); shard++) {
+                Files.delete(getShardFile(siteMapDirectory, shard).toPath());
+            }
+
+            final File index = new File(workDirectory, INDEX_FILE);
+            try (OutputStream indexOut = new GZIPOutputStream(new FileOutputStream(index))) {
+                final XMLStreamWriter indexStream = XMLOutputFactory.newFactory().createXMLStreamWriter(indexOut,
+                        characterEncoding);
+                indexStream.writeStartDocument(characterEncoding, "1.0");
+                indexStream.writeStartElement("", "sitemapindex", SiteMapServlet.NS);
+                indexStream.writeNamespace("", SiteMapServlet.NS);
+                for (int shard = 0; shard < shards; shard++) {
+                    indexStream.writeStartElement(SiteMapServlet.NS, "sitemap");
+                    writeElement(indexStream, "loc", shardLocations.apply(shard));
+                    writeElement(indexStream, "lastmod",
+                            DATE_FORMAT.format(getShardFile(siteMapDirectory, shard).lastModified()));
+                    indexStream.writeEndElement();
+                }
+                indexStream.writeEndElement();
+                indexStream.writeEndDocument();
+                indexStream.close();
+            }
+            Files.move(index.toPath(), new File(siteMapDirectory, INDEX_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.debug("Stored site map [ {} ] with [ {} ] shards, [ {} ] of which changed", siteMapDirectory, shards,
+                    replaced);
+            return shards;
+        }
+
+        private void writeElement(XMLStreamWriter indexStream, String elementName, String text)
+                throws XMLStreamException {
+            indexStream.writeStartElement(SiteMapServlet.NS, elementName);
+            indexStream.writeCharacters(text);
+            indexStream.writeEndElement();
+        }
+
+        @Override
+        public void close() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (XMLStreamException e) {
+                    log.debug("Unable to close site map shard", e);
+                }
+                IOUtils.closeQuietly(out);
+            }
+            FileUtils.deleteQuietly(workDirectory);
+        }
+    }
+}
@@ -154,6 +154,11 @@ public class SystemNotificationsImpl extends AbstractHtmlRequestInjector impleme
         return StringUtils.indexOf(originalContents, "</body>");
     }
 
+    @Override
+    protected String getInjectMarker() {
+        return "</body>";
+    }
+
     @Override
     public List<Resource> getNotifications(final SlingHttpServletRequest request,
                                            final Resource notificationsFolder) {
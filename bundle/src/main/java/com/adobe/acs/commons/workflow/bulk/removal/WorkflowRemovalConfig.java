@@ -35,6 +35,7 @@ public final class WorkflowRemovalConfig {
     private final long olderThanMillis;
     private int batchSize = 1000;
     private int maxDurationInMins = 0;
+    private int parallelism = 1;
 
     /**
      * Config for workflow removal instances that match the parameter criteria.
@@ -94,4 +95,16 @@ public final class WorkflowRemovalConfig {
     public final void setMaxDurationInMins(int maxDurationInMins) {
         this.maxDurationInMins = maxDurationInMins;
     }
+
+    public final int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism number of workers removing dated workflow instance folders concurrently, each with its own
+     *                    resource resolver; 1 removes them on the calling thread
+     */
+    public final void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
 }
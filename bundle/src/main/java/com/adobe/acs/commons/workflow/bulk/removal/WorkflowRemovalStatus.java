@@ -29,10 +29,13 @@ public final class WorkflowRemovalStatus {
     private static final String KEY_CHECKED_COUNT = "checkedCount";
     private static final String KEY_COMPLETED_AT = "completedAt";
     private static final String KEY_DURATION = "duration";
+    private static final String KEY_FOLDER_COUNT = "folderCount";
     private static final String KEY_FORCE_QUIT_AT = "forceQuitAt";
     private static final String KEY_ERRED_AT = "erredAt";
     private static final String KEY_INITIATED_BY = "initiatedBy";
+    private static final String KEY_PROCESSED_FOLDER_COUNT = "processedFolderCount";
     private static final String KEY_REMOVED_COUNT = "removedCount";
+    private static final String KEY_REMOVED_PER_SECOND = "removedPerSecond";
     private static final String KEY_RUNNING = "running";
     private static final String KEY_STARTED_AT = "startedAt";
 
@@ -47,7 +50,8 @@ public final class WorkflowRemovalStatus {
     private Calendar forceQuitAt;
     private int checked = 0;
     private int removed = 0;
-
+    private int folders = 0;
+    private int processedFolders = 0;
 
     public WorkflowRemovalStatus(ResourceResolver resourceResolver) {
         this.running = true;
@@ -113,6 +117,22 @@ public final class WorkflowRemovalStatus {
         this.removed = removed;
     }
 
+    public final int getFolders() {
+        return folders;
+    }
+
+    public final void setFolders(int folders) {
+        this.folders = folders;
+    }
+
+    public final int getProcessedFolders() {
+        return processedFolders;
+    }
+
+    public final void setProcessedFolders(int processedFolders) {
+        this.processedFolders = processedFolders;
+    }
+
     public String getErredAt() {
         if (this.erredAt == null) {
             return null;
@@ -147,6 +167,17 @@ public final class WorkflowRemovalStatus {
         return (end.getTimeInMillis() - start.getTimeInMillis()) / MS_IN_SECOND;
     }
 
+    private Calendar getEndedAt() {
+        if (this.erredAt != null) {
+            return this.erredAt;
+        } else if (this.forceQuitAt != null) {
+            return this.forceQuitAt;
+        } else if (this.completedAt != null) {
+            return this.completedAt;
+        }
+        return Calendar.getInstance();
+    }
+
     public JsonObject getJSON() {
         final JsonObject json = new JsonObject();
 
@@ -154,6 +185,13 @@ public final class WorkflowRemovalStatus {
         json.addProperty(KEY_INITIATED_BY, this.getInitiatedBy());
         json.addProperty(KEY_CHECKED_COUNT, this.getChecked());
         json.addProperty(KEY_REMOVED_COUNT, this.getRemoved());
+        json.addProperty(KEY_FOLDER_COUNT, this.getFolders());
+        json.addProperty(KEY_PROCESSED_FOLDER_COUNT, this.getProcessedFolders());
+
+        final long duration = getDuration(this.startedAt, getEndedAt());
+        if (duration > 0) {
+            json.addProperty(KEY_REMOVED_PER_SECOND, this.getRemoved() / duration);
+        }
 
         if (this.getStartedAt() != null) {
             json.addProperty(KEY_STARTED_AT, this.getStartedAt());
@@ -38,6 +38,7 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -53,11 +54,21 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
@@ -222,6 +233,10 @@ public final class WorkflowInstanceRemoverImpl implements WorkflowInstanceRemove
                                        final WorkflowRemovalConfig workflowRemovalConfig)
             throws PersistenceException, WorkflowRemovalException, InterruptedException, WorkflowRemovalForceQuitException {
 
+        if (workflowRemovalConfig.getParallelism() > 1) {
+            return removeWorkflowInstancesInParallel(resourceResolver, workflowRemovalConfig);
+        }
+
         final long start = System.currentTimeMillis();
         long end = -1;
 
@@ -412,6 +427,369 @@ public final class WorkflowInstanceRemoverImpl implements WorkflowInstanceRemove
         return count;
     }
 
+    /**
+     * Removes the matching workflow instances with a pool of workers, each removing whole dated folders with its own
+     * resource resolver. Folders are handed out oldest first. A folder whose instances all match is removed in one
+     * operation instead of instance by instance.
+     */
+    @SuppressWarnings("squid:S1141")
+    private int removeWorkflowInstancesInParallel(final ResourceResolver resourceResolver,
+                                                  final WorkflowRemovalConfig workflowRemovalConfig)
+            throws PersistenceException, WorkflowRemovalException, InterruptedException, WorkflowRemovalForceQuitException {
+
+        final long start = System.currentTimeMillis();
+        final int maxDurationInMins = workflowRemovalConfig.getMaxDurationInMins();
+        final long end = maxDurationInMins > 0 ? start + maxDurationInMins * MS_IN_ONE_MINUTE : -1;
+
+        final List<ResourceResolver> workerResourceResolvers = new ArrayList<>();
+        try {
+            for (int i = 0; i < workflowRemovalConfig.getParallelism(); i++) {
+                workerResourceResolvers.add(resourceResolver.clone(null));
+            }
+        } catch (LoginException | UnsupportedOperationException e) {
+            log.warn("Unable to clone the resource resolver for parallel workflow removal; removing sequentially", e);
+            workerResourceResolvers.forEach(ResourceResolver::close);
+
+            final WorkflowRemovalConfig sequentialConfig = new WorkflowRemovalConfig(workflowRemovalConfig.getModelIds(),
+                    workflowRemovalConfig.getStatuses(), workflowRemovalConfig.getPayloads(),
+                    workflowRemovalConfig.getOlderThan(), workflowRemovalConfig.getOlderThanMillis());
+            sequentialConfig.setBatchSize(workflowRemovalConfig.getBatchSize());
+            sequentialConfig.setMaxDurationInMins(maxDurationInMins);
+            return removeWorkflowInstances(resourceResolver, sequentialConfig);
+        }
+
+        final ParallelRemoval removal = new ParallelRemoval(new InstanceFilter(workflowRemovalConfig, start),
+                workflowRemovalConfig.getBatchSize(), end);
+        final ExecutorService executor = Executors.newFixedThreadPool(workerResourceResolvers.size());
+
+        try {
+            this.start(resourceResolver);
+
+            for (Resource containerFolder : this.getWorkflowInstanceFolders(resourceResolver)) {
+                for (Resource folder : this.getSortedAndFilteredFolders(containerFolder)) {
+                    removal.folders.add(folder.getPath());
+                }
+            }
+            this.status.get().setFolders(removal.folders.size());
+
+            final List<Future<Void>> workers = new ArrayList<>();
+            for (final ResourceResolver workerResourceResolver : workerResourceResolvers) {
+                workers.add(executor.submit(() -> {
+                    try {
+                        removal.removeFolders(workerResourceResolver);
+                        return null;
+                    } catch (Exception e) {
+                        // Stop the other workers
+                        removal.stopped.set(true);
+                        throw e;
+                    }
+                }));
+            }
+
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throwWorkerException(e.getCause());
+                }
+            }
+
+            this.complete(resourceResolver, removal.checked.get(), removal.removed.get());
+
+        } catch (PersistenceException e) {
+            removal.stop(executor);
+            this.forceQuit.set(false);
+            log.error("Error persisting changes with Workflow Removal", e);
+            this.error();
+            throw e;
+        } catch (WorkflowRemovalMaxDurationExceededException e) {
+            log.warn("Workflow removal exceeded max duration of [ {} ] minutes. Final removal commits initiating...", maxDurationInMins);
+            removal.stop(executor);
+            this.complete(resourceResolver, removal.checked.get(), removal.removed.get());
+        } catch (WorkflowRemovalException e) {
+            removal.stop(executor);
+            this.forceQuit.set(false);
+            log.error("Error with Workflow Removal", e);
+            this.error();
+            throw e;
+        } catch (InterruptedException e) {
+            removal.stop(executor);
+            this.forceQuit.set(false);
+            log.error("Errors in persistence retries during Workflow Removal", e);
+            this.error();
+            throw e;
+        } catch (WorkflowRemovalForceQuitException e) {
+            // Workers still running must see the force quit until they stopped
+            removal.stop(executor);
+            this.forceQuit.set(false);
+            log.warn("Workflow removal was force quit. The removal state is unknown.");
+            this.internalForceQuit();
+            throw e;
+        } finally {
+            removal.stop(executor);
+            workerResourceResolvers.forEach(ResourceResolver::close);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Workflow Removal Process Finished! "
+                            + "Removed a total of [ {} ] workflow instances from [ {} ] folders with [ {} ] workers in [ {} ] ms",
+                    removal.removed.get(), removal.processedFolders.get(), workerResourceResolvers.size(),
+                    System.currentTimeMillis() - start);
+        }
+
+        return removal.removed.get();
+    }
+
+    private static void throwWorkerException(final Throwable cause)
+            throws PersistenceException, WorkflowRemovalException, InterruptedException, WorkflowRemovalForceQuitException,
+            WorkflowRemovalMaxDurationExceededException {
+        if (cause instanceof WorkflowRemovalMaxDurationExceededException) {
+            throw (WorkflowRemovalMaxDurationExceededException) cause;
+        } else if (cause instanceof PersistenceException) {
+            throw (PersistenceException) cause;
+        } else if (cause instanceof WorkflowRemovalException) {
+            throw (WorkflowRemovalException) cause;
+        } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        } else if (cause instanceof WorkflowRemovalForceQuitException) {
+            throw (WorkflowRemovalForceQuitException) cause;
+        } else {
+            throw new WorkflowRemovalException("Workflow removal worker failed: " + cause.getMessage());
+        }
+    }
+
+    private static void awaitWorkers(final ExecutorService executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Waiting for workflow removal workers to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * State of a parallel removal shared by its workers.
+     */
+    private final class ParallelRemoval {
+        private final InstanceFilter filter;
+
+        private final int batchSize;
+
+        private final long end;
+
+        private final Queue<String> folders = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        private final AtomicInteger checked = new AtomicInteger();
+
+        private final AtomicInteger removed = new AtomicInteger();
+
+        private final AtomicInteger processedFolders = new AtomicInteger();
+
+        private final String today = new SimpleDateFormat(WORKFLOW_FOLDER_FORMAT).format(new Date());
+
+        private ParallelRemoval(final InstanceFilter filter, final int batchSize, final long end) {
+            this.filter = filter;
+            this.batchSize = batchSize;
+            this.end = end;
+        }
+
+        /**
+         * Stops the workers and waits until they finished their current batch.
+         */
+        private void stop(final ExecutorService executor) {
+            stopped.set(true);
+            awaitWorkers(executor);
+        }
+
+        private void removeFolders(final ResourceResolver resourceResolver)
+                throws PersistenceException, InterruptedException, WorkflowRemovalForceQuitException,
+                WorkflowRemovalMaxDurationExceededException {
+            int pending = 0;
+            String path;
+
+            while (!stopped.get() && (path = folders.poll()) != null) {
+                final Resource folder = resourceResolver.getResource(path);
+                if (folder != null) {
+                    try {
+                        pending = removeFolder(resourceResolver, folder, pending);
+                    } catch (WorkflowRemovalMaxDurationExceededException e) {
+                        // Commit what has been removed so far
+                        stopped.set(true);
+                        save(resourceResolver);
+                        throw e;
+                    }
+                }
+                processedFolders.incrementAndGet();
+
+                if (pending >= batchSize) {
+                    pending = commitBatch(resourceResolver);
+                }
+            }
+
+            if (!forceQuit.get()) {
+                save(resourceResolver);
+                progress();
+            }
+        }
+
+        /**
+         * Commits the removed nodes pending a commit.
+         *
+         * @return the number of removed nodes still pending a commit
+         */
+        private int commitBatch(final ResourceResolver resourceResolver) throws PersistenceException, InterruptedException {
+            save(resourceResolver);
+            progress();
+            log.info("Removed a running total of [ {} ] workflow instances", removed.get());
+            return 0;
+        }
+
+        /**
+         * Removes the matching instances of the folder, committing every batch of removed instances on the way.
+         *
+         * @param pending the number of removed nodes pending a commit
+         * @return the number of removed nodes pending a commit
+         */
+        private int removeFolder(final ResourceResolver resourceResolver, final Resource folder, final int pending)
+                throws PersistenceException, InterruptedException, WorkflowRemovalForceQuitException,
+                WorkflowRemovalMaxDurationExceededException {
+            final List<Resource> matches = new ArrayList<>();
+            int remaining = 0;
+
+            for (final Resource instance : folder.getChildren()) {
+                if (forceQuit.get()) {
+                    throw new WorkflowRemovalForceQuitException();
+                } else if (end > 0 && System.currentTimeMillis() >= end) {
+                    throw new WorkflowRemovalMaxDurationExceededException();
+                } else if (stopped.get()) {
+                    return pending;
+                }
+
+                if (!StringUtils.equals(NT_CQ_WORKFLOW, instance.getValueMap().get(JcrConstants.JCR_PRIMARYTYPE, String.class))) {
+                    remaining++;
+                    continue;
+                }
+
+                checked.incrementAndGet();
+
+                if (filter.matches(instance)) {
+                    matches.add(instance);
+                } else {
+                    remaining++;
+                }
+            }
+
+            if (remaining == 0
+                    && isWorkflowDatedFolder(folder)
+                    && !StringUtils.startsWith(folder.getName(), today)) {
+                // Every instance matches, so remove them with their folder
+                try {
+                    folder.adaptTo(Node.class).remove();
+                    removed.addAndGet(matches.size());
+                    log.debug("Removed workflow folder [ {} ] with [ {} ] workflow instances", folder.getPath(), matches.size());
+                    return pending + matches.size() + 1;
+                } catch (RepositoryException e) {
+                    log.error("Could not remove workflow folder at [ {} ]. Removing its instances one by one...",
+                            folder.getPath(), e);
+                }
+            }
+
+            int uncommitted = pending;
+            for (final Resource instance : matches) {
+                try {
+                    instance.adaptTo(Node.class).remove();
+                    log.debug("Removed workflow instance at [ {} ]", instance.getPath());
+                    removed.incrementAndGet();
+                    uncommitted++;
+                } catch (RepositoryException e) {
+                    log.error("Could not remove workflow instance at [ {} ]. Continuing...", instance.getPath(), e);
+                }
+
+                if (uncommitted >= batchSize) {
+                    uncommitted = commitBatch(resourceResolver);
+                }
+            }
+            return uncommitted;
+        }
+
+        private void progress() {
+            final WorkflowRemovalStatus removalStatus = status.get();
+            synchronized (removalStatus) {
+                removalStatus.setChecked(checked.get());
+                removalStatus.setRemoved(removed.get());
+                removalStatus.setProcessedFolders(processedFolders.get());
+            }
+        }
+    }
+
+    /**
+     * Removal criteria of a run, evaluated from the config once.
+     */
+    private final class InstanceFilter {
+        private final Set<String> statuses;
+
+        private final Set<String> modelIds;
+
+        private final Calendar olderThan;
+
+        private final long olderThanMillis;
+
+        private final long startTimeDelta;
+
+        private final Collection<Pattern> payloads;
+
+        private InstanceFilter(final WorkflowRemovalConfig workflowRemovalConfig, final long start) {
+            this.statuses = new HashSet<>(workflowRemovalConfig.getStatuses());
+            this.modelIds = new HashSet<>(workflowRemovalConfig.getModelIds());
+            this.olderThan = workflowRemovalConfig.getOlderThan();
+            this.olderThanMillis = workflowRemovalConfig.getOlderThanMillis();
+            this.startTimeDelta = start - olderThanMillis;
+            this.payloads = new ArrayList<>(workflowRemovalConfig.getPayloads());
+        }
+
+        /**
+         * Checks the cheap criteria first, so the status, which may look up jobs and work items, is only resolved
+         * for otherwise matching instances.
+         */
+        private boolean matches(final Resource instance) {
+            final ValueMap properties = instance.getValueMap();
+            final String model = properties.get(PN_MODEL_ID, String.class);
+            final Calendar startTime = properties.get(PN_START_TIME, properties.get(PN_STARTED_AT, Calendar.class));
+            final String payload = properties.get(PAYLOAD_PATH, String.class);
+
+            if (StringUtils.isBlank(payload)) {
+                log.warn("Unable to find payload for Workflow instance [ {} ]", instance.getPath());
+                return false;
+            } else if (!modelIds.isEmpty() && !modelIds.contains(model)) {
+                log.trace("Workflow instance [ {} ] has non-matching model of [ {} ]", instance.getPath(), model);
+                return false;
+            } else if (olderThan != null && startTime != null && startTime.after(olderThan)) {
+                log.trace("Workflow instance [ {} ] has non-matching start time of [ {} ]", instance.getPath(), startTime);
+                return false;
+            } else if (olderThanMillis > -1 && startTime != null && startTimeDelta < startTime.getTimeInMillis()) {
+                log.trace("Workflow instance [ {} ] has non-matching start time delta of [ {} ]ms", instance.getPath(),
+                        olderThanMillis);
+                return false;
+            } else if (!payloads.isEmpty() && payloads.stream().noneMatch(pattern -> pattern.matcher(payload).matches())) {
+                log.trace("Workflow instance [ {} ] has non-matching payload path [ {} ]", instance.getPath(), payload);
+                return false;
+            }
+
+            final String instanceStatus = statuses.isEmpty() ? null : getStatus(instance);
+            if (instanceStatus != null && !statuses.contains(instanceStatus)) {
+                log.trace("Workflow instance [ {} ] has non-matching status of [ {} ]", instance.getPath(), instanceStatus);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
     private Collection<Resource> getSortedAndFilteredFolders(Resource folderResource) {
         final Collection<Resource> sortedCollection = new TreeSet(new WorkflowInstanceFolderComparator());
         for (Resource folder : folderResource.getChildren()) {
@@ -156,6 +156,16 @@ public class WorkflowInstanceRemoverScheduler implements Runnable {
             intValue = DEFAULT_MAX_DURATION)
     public static final String PROP_MAX_DURATION = "max-duration";
 
+
+    private static final int DEFAULT_PARALLELISM = 1;
+    private int parallelism = DEFAULT_PARALLELISM;
+    @Property(label = "Parallelism",
+            description = "Number of workers removing dated workflow instance folders concurrently, each with its "
+                    + "own resource resolver. Folders whose instances all match are removed as a whole. "
+                    + "[ Default: 1 ]",
+            intValue = DEFAULT_PARALLELISM)
+    public static final String PROP_PARALLELISM = "parallelism";
+
     @Override
     @SuppressWarnings("squid:S2142")
     public final void run() {
@@ -166,6 +176,7 @@ public class WorkflowInstanceRemoverScheduler implements Runnable {
             WorkflowRemovalConfig workflowRemovalConfig = new WorkflowRemovalConfig(models, statuses, payloads, olderThan, olderThanMillis);
             workflowRemovalConfig.setBatchSize(batchSize);
             workflowRemovalConfig.setMaxDurationInMins(maxDuration);
+            workflowRemovalConfig.setParallelism(parallelism);
 
             int count = workflowInstanceRemover.removeWorkflowInstances(serviceResourceResolver, workflowRemovalConfig);
 
@@ -233,6 +244,8 @@ public class WorkflowInstanceRemoverScheduler implements Runnable {
 
         maxDuration = PropertiesUtil.toInteger(config.get(PROP_MAX_DURATION), DEFAULT_MAX_DURATION);
 
+        parallelism = Math.max(1, PropertiesUtil.toInteger(config.get(PROP_PARALLELISM), DEFAULT_PARALLELISM));
+
         final InfoWriter iw = new InfoWriter();
         iw.title("Workflow Instance Removal Configuration");
         iw.message("Workflow status: {}", statuses);
@@ -241,6 +254,7 @@ public class WorkflowInstanceRemoverScheduler implements Runnable {
         iw.message("Older than: {}", olderThan);
         iw.message("Batch size: {}", batchSize);
         iw.message("Max Duration (minutes): {}", maxDuration);
+        iw.message("Parallelism: {}", parallelism);
         iw.end();
 
         log.info(iw.toString());
@@ -254,5 +268,6 @@ public class WorkflowInstanceRemoverScheduler implements Runnable {
         payloads = new ArrayList<Pattern>();
         batchSize = DEFAULT_BATCH_SIZE;
         maxDuration = DEFAULT_MAX_DURATION;
+        parallelism = DEFAULT_PARALLELISM;
     }
 }
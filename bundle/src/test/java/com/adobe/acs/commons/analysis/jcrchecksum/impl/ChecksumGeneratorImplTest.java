@@ -604,4 +604,53 @@ public class ChecksumGeneratorImplTest {
         assertFalse(checksumGenerator.isExcludedSubTree(session.getNode("/content/parent1/child"), opts));
         assertTrue(checksumGenerator.isExcludedSubTree(session.getNode("/content/parent2/child"), opts));
     }
+
+    @Test
+    public void testGenerateChecksums_MerkleTree() throws RepositoryException, IOException {
+        setupAsset1();
+        session.save();
+
+        final Map<String, String> expected = checksumGenerator.generateChecksums(session, "/content");
+
+        final DefaultChecksumGeneratorOptions opts = new DefaultChecksumGeneratorOptions();
+        opts.setMerkleTree(true);
+        final Map<String, String> actual = checksumGenerator.generateChecksums(session, "/content", opts);
+
+        // Same checksums for the checksumable nodes, plus the aggregated checksums of their ancestors
+        assertEquals(expected.get("/content/dam/foo.jpg/jcr:content"), actual.get("/content/dam/foo.jpg/jcr:content"));
+        assertEquals(4, actual.size());
+        assertEquals(DigestUtils.sha1Hex("/content/dam/foo.jpg/jcr:content=" + actual.get("/content/dam/foo.jpg/jcr:content")),
+                actual.get("/content/dam/foo.jpg"));
+        assertTrue(actual.containsKey("/content/dam"));
+        assertTrue(actual.containsKey("/content"));
+
+        opts.setMerkleTreeDepth(1);
+        final Map<String, String> topLevel = checksumGenerator.generateChecksums(session, "/content", opts);
+        assertEquals(2, topLevel.size());
+        assertEquals(actual.get("/content"), topLevel.get("/content"));
+        assertEquals(actual.get("/content/dam"), topLevel.get("/content/dam"));
+    }
+
+    @Test
+    public void testGenerateChecksums_MerkleTreeReusesDamSha1() throws RepositoryException, IOException {
+        Node asset = setupAsset1();
+        asset.getNode("renditions/original/jcr:content")
+                .setProperty("jcr:data", ValueFactoryImpl.getInstance().createBinary(new ByteArrayInputStream("original".getBytes())));
+        asset.getNode("metadata").setProperty("dam:sha1", DigestUtils.sha1Hex("original"));
+        session.save();
+
+        final DefaultChecksumGeneratorOptions opts = new DefaultChecksumGeneratorOptions();
+        opts.addExcludedProperties("dam:sha1");
+        final Map<String, String> expected = checksumGenerator.generateChecksums(session, "/content", opts);
+
+        opts.setMerkleTree(true);
+        assertEquals(expected.get("/content/dam/foo.jpg/jcr:content"),
+                checksumGenerator.generateChecksums(session, "/content", opts).get("/content/dam/foo.jpg/jcr:content"));
+
+        // the stored digest is trusted over the binary
+        asset.getNode("metadata").setProperty("dam:sha1", "stale");
+        session.save();
+        assertFalse(expected.get("/content/dam/foo.jpg/jcr:content").equals(
+                checksumGenerator.generateChecksums(session, "/content", opts).get("/content/dam/foo.jpg/jcr:content")));
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.adobe.acs.commons.analysis.jcrchecksum.impl.servlets;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.testing.mock.sling.MockSling;
@@ -33,7 +35,16 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.jcr.Node;
+import javax.jcr.Session;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
 public class JSONDumpServletTest {
@@ -71,4 +82,65 @@ public class JSONDumpServletTest {
         assertEquals("ERROR: At least one path must be specified", response
                 .getOutputAsString());
     }
+
+    @Test
+    public void testPagedDump() throws Exception {
+        Session session = context.resourceResolver().adaptTo(Session.class);
+        Node content = session.getRootNode().addNode("content", "nt:unstructured");
+        for (String name : new String[]{"a", "b", "c"}) {
+            Node page = content.addNode(name, "cq:Page");
+            page.addNode("jcr:content", "cq:PageContent").setProperty("jcr:title", name);
+        }
+        session.save();
+
+        JsonObject first = getPage(null);
+        assertEquals(2, first.getAsJsonObject("nodes").size());
+        assertTrue(first.has("cursor"));
+
+        JsonObject second = getPage(first.get("cursor").getAsString());
+        assertEquals(1, second.getAsJsonObject("nodes").size());
+        assertFalse(second.has("cursor"));
+
+        Set<String> dumped = new HashSet<>(first.getAsJsonObject("nodes").keySet());
+        dumped.addAll(second.getAsJsonObject("nodes").keySet());
+        assertEquals(3, dumped.size());
+        assertTrue(dumped.contains("/content/c/jcr:content"));
+    }
+
+    @Test
+    public void testPagedDumpWithDeletedCursor() throws Exception {
+        Session session = context.resourceResolver().adaptTo(Session.class);
+        Node content = session.getRootNode().addNode("content", "nt:unstructured");
+        for (String name : new String[]{"a", "b", "c"}) {
+            Node page = content.addNode(name, "cq:Page");
+            page.addNode("jcr:content", "cq:PageContent").setProperty("jcr:title", name);
+        }
+        session.save();
+
+        JsonObject first = getPage(null);
+        String cursor = first.get("cursor").getAsString();
+        session.getNode(cursor).remove();
+        session.save();
+
+        JsonObject second = getPage(cursor);
+        assertFalse(second.has("cursor"));
+        assertTrue(second.getAsJsonObject("errors").has(cursor));
+    }
+
+    private JsonObject getPage(String cursor) throws Exception {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("paths", "/content");
+        parameters.put(ServletConstants.MAX_NODES, "2");
+        if (cursor != null) {
+            parameters.put(ServletConstants.CURSOR, cursor);
+        }
+        request.setParameterMap(parameters);
+        request.setMethod("GET");
+
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(request, response);
+
+        return new JsonParser().parse(response.getOutputAsString()).getAsJsonObject();
+    }
 }
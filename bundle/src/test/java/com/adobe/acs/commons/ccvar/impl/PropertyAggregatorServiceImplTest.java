@@ -19,7 +19,10 @@ package com.adobe.acs.commons.ccvar.impl;
 
 import com.adobe.acs.commons.ccvar.PropertyAggregatorService;
 import io.wcm.testing.mock.aem.junit.AemContext;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.junit.Before;
 import org.junit.Rule;
@@ -27,6 +30,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -99,6 +103,30 @@ public class PropertyAggregatorServiceImplTest {
         assertEquals(expected, properties);
     }
 
+    @Test
+    public void testCachedPagePropertiesAreInvalidatedOnChange() throws PersistenceException {
+        context.registerInjectActivateService(new PropertyConfigServiceImpl(), defaultConfigMap());
+        AllPagePropertiesContentVariableProvider provider = context.registerInjectActivateService(new AllPagePropertiesContentVariableProvider());
+        service = context.registerInjectActivateService(new PropertyAggregatorServiceImpl());
+
+        String pagePath = "/content/we-retail/language-masters/en/experience/arctic-surfing-in-lofoten";
+        context.request().setResource(context.resourceResolver().getResource(pagePath));
+        assertEquals("Arctic Surfing In Lofoten", service.getProperties(context.request()).get("page_properties.jcr:title"));
+
+        Resource parentContent = context.resourceResolver().getResource("/content/we-retail/language-masters/en/experience/jcr:content");
+        parentContent.adaptTo(ModifiableValueMap.class).put("newInheritedProperty", "newValue");
+        context.resourceResolver().getResource(pagePath + "/jcr:content").adaptTo(ModifiableValueMap.class).put("jcr:title", "Changed");
+        context.resourceResolver().commit();
+
+        // still served from the cache
+        assertEquals("Arctic Surfing In Lofoten", service.getProperties(context.request()).get("page_properties.jcr:title"));
+
+        provider.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, parentContent.getPath(), false)));
+        Map<String, Object> properties = service.getProperties(context.request());
+        assertEquals("Changed", properties.get("page_properties.jcr:title"));
+        assertEquals("newValue", properties.get("inherited_page_properties.newInheritedProperty"));
+    }
+
     private Map<String, Object> defaultPropertyMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("inherited_page_properties.jcr:primaryType", "cq:PageContent");
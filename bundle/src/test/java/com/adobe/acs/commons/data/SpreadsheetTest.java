@@ -27,6 +27,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
@@ -238,6 +240,26 @@ public class SpreadsheetTest {
         }
     }
 
+    @Test
+    public void testStreamDataRows() throws IOException {
+        Spreadsheet built = new Spreadsheet(new ByteArrayInputStream(workbookData.toByteArray())).buildSpreadsheet();
+        Spreadsheet streamed = new Spreadsheet(new ByteArrayInputStream(workbookData.toByteArray()));
+        try (Stream<Map<String, CompositeVariant>> rows = streamed.streamDataRows()) {
+            assertEquals(built.getHeaderRow(), streamed.getHeaderRow());
+            assertEquals(6, streamed.getRowCount());
+            assertRowsEqual(built.getDataRowsAsCompositeVariants(), rows.collect(Collectors.toList()));
+        }
+        assertTrue(streamed.getDataRowsAsCompositeVariants().isEmpty());
+    }
+
+    @Test
+    public void testStreamDataRowsWithSheetTypes() throws IOException {
+        InputStream dataTypesFile = SpreadsheetTest.class.getResourceAsStream("/com/adobe/acs/commons/data/spreadsheet-data-types.xlsx");
+        try (Stream<Map<String, CompositeVariant>> rows = new Spreadsheet(false, dataTypesFile).streamDataRows(Locale.US)) {
+            assertRowsEqual(dataTypesSheet.getDataRowsAsCompositeVariants(), rows.collect(Collectors.toList()));
+        }
+    }
+
     @Test
     public void testHeadersWithCaseInsensitivityList() {
         Spreadsheet spreadsheet = new Spreadsheet(true, CASE_INSENSITIVE_HEADERS);
@@ -260,6 +282,24 @@ public class SpreadsheetTest {
         assertEquals("test:camelcase", spreadsheet.convertHeaderName("test:camelCase"));
     }
 
+    private static void assertRowsEqual(List<Map<String, CompositeVariant>> expected, List<Map<String, CompositeVariant>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).keySet(), actual.get(i).keySet());
+            for (String column : expected.get(i).keySet()) {
+                CompositeVariant expectedValue = expected.get(i).get(column);
+                CompositeVariant actualValue = actual.get(i).get(column);
+                assertEquals(column, expectedValue.toString(), actualValue.toString());
+                Object expectedProperty = expectedValue.toPropertyValue();
+                if (expectedProperty instanceof Object[]) {
+                    assertArrayEquals(column, (Object[]) expectedProperty, (Object[]) actualValue.toPropertyValue());
+                } else {
+                    assertEquals(column, expectedProperty, actualValue.toPropertyValue());
+                }
+            }
+        }
+    }
+
     private static XSSFRow createRow(XSSFSheet sheet, String... values) {
         int rowNum = sheet.getPhysicalNumberOfRows();
         XSSFRow row = sheet.createRow(rowNum);
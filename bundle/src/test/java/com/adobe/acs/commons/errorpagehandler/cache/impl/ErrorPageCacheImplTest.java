@@ -19,27 +19,37 @@
 package com.adobe.acs.commons.errorpagehandler.cache.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import com.google.common.cache.Cache;
+
 import junitx.util.PrivateAccessor;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ErrorPageCacheImplTest {
     private static final int FAR_FUTURE_EXPIRY = Integer.MAX_VALUE;
 
-    @Spy
-    private ConcurrentHashMap<String, CacheEntry> cache;
+    private Map<String, CacheEntry> cache;
 
     private ErrorPageCacheImpl errorPageCache;
     private Supplier<String> includedStringSupplier;
@@ -50,6 +60,7 @@ public class ErrorPageCacheImplTest {
     private static final int NUM_INITIAL_REQUESTS = NUM_INITIAL_HITS + NUM_INITIAL_MISSES;
 
     @Before
+    @SuppressWarnings("unchecked")
     public void setUp() throws Exception {
         errorPageCache = new ErrorPageCacheImpl(1, false) {
 
@@ -58,7 +69,7 @@ public class ErrorPageCacheImplTest {
                 return includedStringSupplier.get();
             }
         };
-        PrivateAccessor.setField(errorPageCache, "cache", cache);
+        cache = ((Cache<String, CacheEntry>) PrivateAccessor.getField(errorPageCache, "cache")).asMap();
 
         // 1 Miss
         // 2 Hits
@@ -209,4 +220,130 @@ public class ErrorPageCacheImplTest {
 
         assertEquals(expResult, result);
     }
+
+    @Test
+    public void testGet_StaleWhileRefreshing() throws Exception {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+
+        CacheEntry earth = cache.get("/content/earth");
+        earth.setExpiresIn(-1);
+        AtomicInteger renders = new AtomicInteger();
+        includedStringSupplier = () -> {
+            renders.incrementAndGet();
+            // a concurrent request while this one renders the error page
+            assertEquals("hello earth", errorPageCache.get("/content/earth", request, response));
+            return "hello new earth";
+        };
+
+        assertEquals("hello new earth", errorPageCache.get("/content/earth", request, response));
+        assertEquals(1, renders.get());
+        assertEquals(2 + 1, earth.getHits());
+        assertEquals(1 + 1, earth.getMisses());
+        assertFalse(earth.isExpired(new Date()));
+    }
+
+    @Test
+    public void testGet_WaitsForFirstRender() throws Exception {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renders = new AtomicInteger();
+        includedStringSupplier = () -> {
+            renders.incrementAndGet();
+            rendering.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hello venus";
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> errorPageCache.get("/content/venus", request, response));
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+            Future<String> concurrent = executor.submit(() -> errorPageCache.get("/content/venus", request, response));
+
+            release.countDown();
+            assertEquals("hello venus", first.get(5, TimeUnit.SECONDS));
+            assertEquals("hello venus", concurrent.get(5, TimeUnit.SECONDS));
+            assertEquals(1, renders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGet_RendersAgainAfterFirstRenderTimeout() throws Exception {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        PrivateAccessor.setField(errorPageCache, "firstRenderTimeoutMillis", 50L);
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renders = new AtomicInteger();
+        includedStringSupplier = () -> {
+            if (renders.incrementAndGet() > 1) {
+                return "hello again";
+            }
+            rendering.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hello venus";
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(() -> errorPageCache.get("/content/venus", request, response));
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+            // the first rendering hangs, so this request renders the error page itself
+            assertEquals("hello again", errorPageCache.get("/content/venus", request, response));
+            release.countDown();
+            assertEquals("hello venus", first.get(5, TimeUnit.SECONDS));
+            assertEquals(2, renders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGet_BoundedBySize() throws Exception {
+        errorPageCache = new ErrorPageCacheImpl(FAR_FUTURE_EXPIRY, false, 1) {
+
+            @Override
+            public String getIncludeAsString(String path, SlingHttpServletRequest slingRequest, SlingHttpServletResponse slingResponse) {
+                return includedStringSupplier.get();
+            }
+        };
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        includedStringSupplier = () -> StringUtils.repeat("x", 600);
+
+        errorPageCache.get("/content/earth.html", request, response);
+        errorPageCache.get("/content/mars.html", request, response);
+
+        assertEquals(1, errorPageCache.getCacheEntriesCount());
+        assertEquals("", errorPageCache.getCacheData("/content/earth.html"));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        cache.put("/content/earth/404.html", new CacheEntry());
+        cache.put("/content/earth/404.mobile.html", new CacheEntry());
+        cache.put("/content/earthling/404.html", new CacheEntry());
+
+        assertEquals(2, errorPageCache.invalidate("/content/earth/404"));
+        assertTrue(cache.containsKey("/content/earthling/404.html"));
+
+        // changes below an error page and replication of a parent invalidate it as well
+        assertEquals(1, errorPageCache.invalidate("/content/earthling/404/jcr:content/root"));
+        assertEquals(2, errorPageCache.invalidateCacheData("/content"));
+        assertEquals(0, errorPageCache.getCacheEntriesCount());
+    }
 }
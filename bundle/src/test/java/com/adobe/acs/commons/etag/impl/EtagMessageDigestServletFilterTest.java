@@ -25,6 +25,9 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.NotCompliantMBeanException;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -34,7 +37,13 @@ import javax.servlet.ServletResponse;
 import org.apache.http.HttpHeaders;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
 import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.junit.Assert;
 import org.junit.Before;
@@ -43,6 +52,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.osgi.framework.BundleContext;
 
 import com.adobe.acs.commons.util.BufferedSlingHttpServletResponse;
 
@@ -61,20 +71,30 @@ public class EtagMessageDigestServletFilterTest {
 
     @Mock
     RequestProgressTracker tracker; 
+
+    @Mock
+    BundleContext bundleContext;
+
     EtagMessageDigestServletFilter filter;
 
     private static final String EXAMPLE_TEXT = "The quick brown fox jumps over the lazy dog";
 
     @Before
-    public void setUp() {
+    public void setUp() throws NotCompliantMBeanException {
         Mockito.when(configuration.messageDigestAlgorithm()).thenReturn("MD5");
         Mockito.when(configuration.ignoredResponseHeaders()).thenReturn(new String[] { "ignoredHeader" });
         filter = new EtagMessageDigestServletFilter();
-        filter.activate(configuration);
+        filter.activate(bundleContext, configuration);
         bufferedResponse = new BufferedSlingHttpServletResponse(mockResponse);
         Mockito.when(mockRequest.getRequestProgressTracker()).thenReturn(tracker);
     }
 
+    @Test
+    public void testNoResourceChangeListenerWithoutIndex() {
+        Mockito.verify(bundleContext, Mockito.never()).registerService(Mockito.eq(ResourceChangeListener.class),
+                Mockito.any(ResourceChangeListener.class), Mockito.any());
+    }
+
     @Test
     public void testCalculateFromResponseWithEmptyString() throws NoSuchAlgorithmException, UnsupportedEncodingException {
         // the MD5 is taken from https://en.wikipedia.org/wiki/MD5
@@ -202,4 +222,70 @@ public class EtagMessageDigestServletFilterTest {
         Mockito.verify(mockResponse).setStatus(304);
         
     }
+
+    @Test
+    public void testDoFilterAnswersConditionalRequestFromIndex() throws IOException, ServletException {
+        Mockito.when(configuration.enabled()).thenReturn(true);
+        Mockito.when(configuration.indexEnabled()).thenReturn(true);
+        Mockito.when(configuration.indexMaxEntries()).thenReturn(100);
+        Mockito.when(configuration.indexTtlSeconds()).thenReturn(300);
+        Mockito.when(configuration.ignoredResponseHeaders()).thenReturn(new String[] { "Cache-Control" });
+        Mockito.when(configuration.resource_paths()).thenReturn(new String[] { "/content" });
+        filter.activate(bundleContext, configuration);
+        Mockito.verify(bundleContext).registerService(Mockito.eq(ResourceChangeListener.class), Mockito.eq(filter), Mockito.any());
+
+        Mockito.when(mockRequest.getMethod()).thenReturn(HttpConstants.METHOD_GET);
+        RequestPathInfo pathInfo = Mockito.mock(RequestPathInfo.class);
+        Mockito.when(pathInfo.getResourcePath()).thenReturn("/content/page");
+        Mockito.when(pathInfo.getExtension()).thenReturn("html");
+        Mockito.when(mockRequest.getRequestPathInfo()).thenReturn(pathInfo);
+        Resource resource = Mockito.mock(Resource.class);
+        ResourceMetadata metadata = new ResourceMetadata();
+        metadata.setModificationTime(1000L);
+        Mockito.when(resource.getResourceMetadata()).thenReturn(metadata);
+        Mockito.when(resource.getPath()).thenReturn("/content/page");
+        Mockito.when(mockRequest.getResource()).thenReturn(resource);
+        Mockito.when(mockResponse.getStatus()).thenReturn(200);
+        Mockito.when(mockResponse.getHeaderNames()).thenReturn(Collections.singletonList("Cache-Control"));
+        Mockito.when(mockResponse.getHeaders("Cache-Control")).thenReturn(Collections.singletonList("max-age=60"));
+        Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+        AtomicInteger renderCount = new AtomicInteger();
+        final FilterChain chain = (request, response) -> {
+            renderCount.incrementAndGet();
+            response.getWriter().write(EXAMPLE_TEXT);
+        };
+
+        // the first request is rendered and fills the index
+        filter.doFilter(mockRequest, mockResponse, chain);
+        Assert.assertEquals(1, renderCount.get());
+        Assert.assertEquals(1, filter.getIndexSize());
+
+        // a conditional request is answered from the index
+        Mockito.when(mockRequest.getHeaders(HttpHeaders.IF_NONE_MATCH))
+                .thenAnswer(invocation -> new Vector<>(Collections.singletonList("\"9e107d9d372bb6826bd81d3542a419d6\"")).elements());
+        filter.doFilter(mockRequest, mockResponse, chain);
+        Assert.assertEquals(1, renderCount.get());
+        Mockito.verify(mockResponse).setStatus(304);
+        Mockito.verify(mockResponse).addHeader("Cache-Control", "max-age=60");
+        Assert.assertEquals(1, filter.getIndexHits());
+        Assert.assertEquals(EXAMPLE_TEXT.length(), filter.getIndexBytesSaved());
+
+        // a change of the resource invalidates the index, so the response is rendered again
+        filter.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page/jcr:content", false)));
+        Assert.assertEquals(0, filter.getIndexSize());
+        filter.doFilter(mockRequest, mockResponse, chain);
+        Assert.assertEquals(2, renderCount.get());
+        Assert.assertEquals(1, filter.getIndexMisses());
+        Mockito.verify(mockResponse, Mockito.times(2)).setStatus(304);
+    }
+
+    @Test
+    public void testIndexInvalidation() {
+        Assert.assertTrue(EtagIndex.isAffected("/content/page", "/content/page"));
+        Assert.assertTrue(EtagIndex.isAffected("/content/page", "/content/page/jcr:content/par"));
+        Assert.assertTrue(EtagIndex.isAffected("/content/page", "/content"));
+        Assert.assertFalse(EtagIndex.isAffected("/content/page", "/content/page2"));
+        Assert.assertFalse(EtagIndex.isAffected("/content/page", "/content/other"));
+    }
 }
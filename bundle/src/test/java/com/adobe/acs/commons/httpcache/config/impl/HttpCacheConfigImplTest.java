@@ -221,6 +221,41 @@ public class HttpCacheConfigImplTest {
 
     }
 
+    @Test
+    public void test_accepts_sling_request_multiple_patterns() throws HttpCacheRepositoryAccessException {
+
+        Map<String,Object> properties = new HashMap<>();
+
+        properties.put(PROP_REQUEST_URI_PATTERNS, new String[]{"/content/site/(.*)", "/conf/(x|y)/\\1.json", "/etc/[a-z]{4}.html"});
+        properties.put(PROP_BLACKLISTED_REQUEST_URI_PATTERNS, new String[]{"/content/site/private/.*", "(?i)/CONTENT/SITE/.*\\.TXT"});
+
+        activateWithDefaultValues(properties);
+
+        when(request.getRequestURI()).thenReturn("/content/site/page.html", "/conf/x/x.json", "/etc/page.html",
+                "/conf/x/y.json", "/content/site/private/page.html", "/content/site/robots.txt");
+
+        assertTrue(systemUnderTest.accepts(request));
+        assertTrue(systemUnderTest.accepts(request));
+        assertTrue(systemUnderTest.accepts(request));
+        assertFalse(systemUnderTest.accepts(request));
+        assertFalse(systemUnderTest.accepts(request));
+        assertFalse(systemUnderTest.accepts(request));
+    }
+
+    @Test
+    public void test_can_invalidate_multiple_patterns() {
+
+        Map<String,Object> properties = new HashMap<>();
+
+        properties.put(PROP_CACHE_INVALIDATION_PATH_PATTERNS, new String[]{"/content/site/.*", "/conf/site/.*"});
+
+        activateWithDefaultValues(properties);
+
+        assertTrue(systemUnderTest.canInvalidate("/content/site/page/jcr:content"));
+        assertTrue(systemUnderTest.canInvalidate("/conf/site/settings"));
+        assertFalse(systemUnderTest.canInvalidate("/content/other/page"));
+    }
+
     @Test
     public void test_build_cachekey() throws HttpCacheKeyCreationException {
 
@@ -21,9 +21,11 @@ import com.adobe.acs.commons.fam.ThrottledTaskRunner;
 import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
 import com.adobe.acs.commons.httpcache.engine.CacheContent;
 import com.adobe.acs.commons.httpcache.engine.HttpCacheServletResponseWrapper;
+import com.adobe.acs.commons.httpcache.exception.HttpCacheDataStreamException;
 import com.adobe.acs.commons.httpcache.exception.HttpCacheException;
 import com.adobe.acs.commons.httpcache.keys.CacheKey;
 import com.adobe.acs.commons.httpcache.store.HttpCacheStore;
+import com.adobe.acs.commons.httpcache.rule.HttpCacheHandlingRule;
 import com.adobe.acs.commons.httpcache.store.mem.impl.MemTempSinkImpl;
 import com.day.cq.commons.feed.StringResponseWrapper;
 import org.apache.commons.collections4.map.SingletonMap;
@@ -46,18 +48,29 @@ import org.mockito.junit.MockitoRule;
 import org.mockito.stubbing.Answer;
 
 import javax.management.NotCompliantMBeanException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.adobe.acs.commons.httpcache.engine.impl.HttpCacheEngineImpl.PROP_GLOBAL_CACHE_HANDLING_RULES_PID;
 import static com.adobe.acs.commons.httpcache.engine.impl.HttpCacheEngineImpl.PROP_GLOBAL_RESPONSE_COOKIE_EXCLUSIONS;
 import static com.adobe.acs.commons.httpcache.engine.impl.HttpCacheEngineImpl.PROP_GLOBAL_RESPONSE_HEADER_EXCLUSIONS;
 import static com.adobe.acs.commons.httpcache.store.HttpCacheStore.VALUE_JCR_CACHE_STORE_TYPE;
@@ -276,7 +289,7 @@ public class HttpCacheEngineImplTest {
         HttpCacheConfig foundConfig = systemUnderTest.getCacheConfig(request, HttpCacheConfig.FilterScope.REQUEST);
         assertSame(jcrCacheConfig, foundConfig);
 
-        verify(jcrCacheStore,atLeastOnce()).put(eq(mockedCacheKey), cacheContentCaptor.capture());
+        verify(jcrCacheStore,atLeastOnce()).put(eq(mockedCacheKey), cacheContentCaptor.capture(), eq(jcrCacheConfig));
 
         final CacheContent capturedContent = cacheContentCaptor.getValue();
         assertEquals("utf-8", capturedContent.getCharEncoding());
@@ -300,4 +313,231 @@ public class HttpCacheEngineImplTest {
         assertEquals("rendered-html", cachedHTML);
     }
 
+    @Test
+    public void test_cache_response_rejected_by_rule_closes_temp_sink() throws HttpCacheException, IOException {
+        Map<String, Object> props = new HashMap<>();
+        props.put(PROP_GLOBAL_CACHE_HANDLING_RULES_PID, new String[]{"rejecting-rule"});
+        systemUnderTest.activate(props);
+
+        HttpCacheHandlingRule rejectingRule = mock(HttpCacheHandlingRule.class);
+        when(rejectingRule.onResponseCache(any(), any(), any(), any())).thenReturn(false);
+        systemUnderTest.bindHttpCacheHandlingRule(rejectingRule, Collections.singletonMap("service.pid", "rejecting-rule"));
+
+        SlingHttpServletRequest request = new MockSlingHttpServletRequest("/content/acs-commons/home", "my-selector", "html", "", "");
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getWriter()).thenReturn(new PrintWriter(new ByteArrayOutputStream()));
+        when(jcrCacheConfig.buildCacheKey(request)).thenReturn(mock(CacheKey.class));
+
+        AtomicBoolean closed = new AtomicBoolean();
+        when(jcrCacheStore.createTempSink()).thenReturn(new MemTempSinkImpl() {
+            @Override
+            public InputStream createInputStream() throws HttpCacheDataStreamException {
+                return new FilterInputStream(super.createInputStream()) {
+                    @Override
+                    public void close() throws IOException {
+                        closed.set(true);
+                        super.close();
+                    }
+                };
+            }
+        });
+
+        HttpCacheServletResponseWrapper wrappedResponse = systemUnderTest.wrapResponse(request, response, jcrCacheConfig);
+        wrappedResponse.getWriter().write("rendered-html");
+        systemUnderTest.cacheResponse(request, wrappedResponse, jcrCacheConfig);
+
+        verify(jcrCacheStore, never()).put(any(), any(), any());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void test_coalesce_cache_miss_disabled() throws HttpCacheException {
+        SlingHttpServletRequest request = mockRequestWithAttributes();
+
+        assertFalse(systemUnderTest.coalesceCacheMiss(request, jcrCacheConfig));
+        verify(jcrCacheConfig, never()).buildCacheKey(request);
+        assertEquals(0, systemUnderTest.getCacheMissesInFlightCount());
+    }
+
+    @Test
+    public void test_coalesce_cache_miss() throws Exception {
+        SlingHttpServletRequest leader = mockRequestWithAttributes();
+        SlingHttpServletRequest follower = mockRequestWithAttributes();
+        CacheKey mockedCacheKey = mock(CacheKey.class);
+        when(jcrCacheConfig.isRequestCoalescingEnabled()).thenReturn(true);
+        when(jcrCacheConfig.getRequestCoalescingTimeout()).thenReturn(10000L);
+        when(jcrCacheConfig.buildCacheKey(any(SlingHttpServletRequest.class))).thenReturn(mockedCacheKey);
+        when(jcrCacheStore.createTempSink()).thenReturn(new MemTempSinkImpl());
+
+        assertFalse(systemUnderTest.coalesceCacheMiss(leader, jcrCacheConfig));
+        assertEquals(1, systemUnderTest.getCacheMissesInFlightCount());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> coalesced = executor.submit(() -> systemUnderTest.coalesceCacheMiss(follower, jcrCacheConfig));
+            while (systemUnderTest.getCoalescedRequestsCount() == 0) {
+                Thread.sleep(5);
+            }
+            assertFalse(coalesced.isDone());
+
+            // the leader caches the response
+            when(jcrCacheStore.contains(mockedCacheKey)).thenReturn(true);
+            HttpCacheServletResponseWrapper wrappedResponse = systemUnderTest.wrapResponse(leader, mockResponse(), jcrCacheConfig);
+            wrappedResponse.getWriter().write("rendered-html");
+            systemUnderTest.cacheResponse(leader, wrappedResponse, jcrCacheConfig);
+            systemUnderTest.releaseCacheMiss(leader, jcrCacheConfig);
+
+            assertTrue(coalesced.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, systemUnderTest.getCacheMissesInFlightCount());
+        assertEquals(0, systemUnderTest.getCoalescingTimeoutsCount());
+        verify(jcrCacheStore, times(1)).put(eq(mockedCacheKey), any(CacheContent.class), eq(jcrCacheConfig));
+    }
+
+    @Test
+    public void test_coalesce_cache_miss_timeout() throws HttpCacheException {
+        CacheKey mockedCacheKey = mock(CacheKey.class);
+        when(jcrCacheConfig.isRequestCoalescingEnabled()).thenReturn(true);
+        when(jcrCacheConfig.getRequestCoalescingTimeout()).thenReturn(10L);
+        when(jcrCacheConfig.buildCacheKey(any(SlingHttpServletRequest.class))).thenReturn(mockedCacheKey);
+
+        assertFalse(systemUnderTest.coalesceCacheMiss(mockRequestWithAttributes(), jcrCacheConfig));
+        assertFalse(systemUnderTest.coalesceCacheMiss(mockRequestWithAttributes(), jcrCacheConfig));
+
+        assertEquals(1, systemUnderTest.getCoalescedRequestsCount());
+        assertEquals(1, systemUnderTest.getCoalescingTimeoutsCount());
+        verify(jcrCacheStore, never()).contains(mockedCacheKey);
+    }
+
+    @Test
+    public void test_release_uncached_miss() throws HttpCacheException {
+        SlingHttpServletRequest leader = mockRequestWithAttributes();
+        CacheKey mockedCacheKey = mock(CacheKey.class);
+        when(jcrCacheConfig.isRequestCoalescingEnabled()).thenReturn(true);
+        when(jcrCacheConfig.getRequestCoalescingTimeout()).thenReturn(10000L);
+        when(jcrCacheConfig.buildCacheKey(any(SlingHttpServletRequest.class))).thenReturn(mockedCacheKey);
+
+        assertFalse(systemUnderTest.coalesceCacheMiss(leader, jcrCacheConfig));
+        // the response does not qualify for caching
+        systemUnderTest.releaseCacheMiss(leader, jcrCacheConfig);
+        assertEquals(0, systemUnderTest.getCacheMissesInFlightCount());
+
+        // the next miss leads instead of waiting
+        assertFalse(systemUnderTest.coalesceCacheMiss(mockRequestWithAttributes(), jcrCacheConfig));
+        assertEquals(0, systemUnderTest.getCoalescedRequestsCount());
+        assertEquals(1, systemUnderTest.getCacheMissesInFlightCount());
+    }
+
+    @Test
+    public void test_deliver_stale_cache_content() throws HttpCacheException, IOException {
+        CacheKey mockedCacheKey = mock(CacheKey.class);
+        when(jcrCacheConfig.isServeStaleEnabled()).thenReturn(true);
+        when(jcrCacheConfig.isRequestCoalescingEnabled()).thenReturn(true);
+        when(jcrCacheConfig.buildCacheKey(any(SlingHttpServletRequest.class))).thenReturn(mockedCacheKey);
+        when(jcrCacheStore.getStaleIfPresent(mockedCacheKey)).thenAnswer(invocation -> new CacheContent(200, "utf-8",
+                "text/html", Collections.emptyMap(), getClass().getResourceAsStream("cachecontent.html"),
+                HttpCacheServletResponseWrapper.ResponseWriteMethod.PRINTWRITER));
+
+        // the first request refreshes the stale content
+        SlingHttpServletRequest refreshing = mockRequestWithAttributes();
+        assertFalse(systemUnderTest.deliverStaleCacheContent(refreshing, new MockSlingHttpServletResponse(), jcrCacheConfig));
+        assertFalse(systemUnderTest.coalesceCacheMiss(refreshing, jcrCacheConfig));
+        assertEquals(1, systemUnderTest.getStaleRefreshesCount());
+        assertEquals(0, systemUnderTest.getCoalescedRequestsCount());
+
+        // the following requests get the stale content
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        assertTrue(systemUnderTest.deliverStaleCacheContent(mockRequestWithAttributes(), response, jcrCacheConfig));
+        assertEquals(IOUtils.toString(getClass().getResourceAsStream("cachecontent.html"), StandardCharsets.UTF_8), response.getOutput().toString());
+        assertEquals(1, systemUnderTest.getStaleHitsCount());
+
+        // until the refresh is done
+        systemUnderTest.releaseCacheMiss(refreshing, jcrCacheConfig);
+        assertFalse(systemUnderTest.deliverStaleCacheContent(mockRequestWithAttributes(), new MockSlingHttpServletResponse(), jcrCacheConfig));
+        assertEquals(2, systemUnderTest.getStaleRefreshesCount());
+    }
+
+    @Test
+    public void test_deliver_stale_cache_content_disabled() throws HttpCacheException {
+        SlingHttpServletRequest request = mockRequestWithAttributes();
+
+        assertFalse(systemUnderTest.deliverStaleCacheContent(request, new MockSlingHttpServletResponse(), jcrCacheConfig));
+        verify(jcrCacheStore, never()).getStaleIfPresent(any(CacheKey.class));
+    }
+
+    @Test
+    public void test_deliver_precompressed_cache_content() throws HttpCacheException, IOException {
+        byte[] data = "<html>cached</html>".getBytes(StandardCharsets.UTF_8);
+        byte[] gzipData = new byte[] { 31, -117, 8, 0 };
+        CacheKey mockedCacheKey = mock(CacheKey.class);
+        when(jcrCacheConfig.getFilterScope()).thenReturn(HttpCacheConfig.FilterScope.REQUEST);
+        when(jcrCacheConfig.buildCacheKey(any(SlingHttpServletRequest.class))).thenReturn(mockedCacheKey);
+        when(jcrCacheStore.getIfPresent(mockedCacheKey)).thenAnswer(invocation -> new CacheContent(200, "utf-8", "text/html",
+                new HashMap<>(), ByteBuffer.wrap(data), ByteBuffer.wrap(gzipData),
+                HttpCacheServletResponseWrapper.ResponseWriteMethod.PRINTWRITER));
+
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=0.8");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SlingHttpServletResponse response = mockResponse(output);
+
+        assertTrue(systemUnderTest.deliverCacheContent(request, response, jcrCacheConfig));
+        assertArrayEquals(gzipData, output.toByteArray());
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response).setContentLength(gzipData.length);
+        verify(response, never()).getWriter();
+
+        // clients refusing gzip get the content as it is
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0");
+        output.reset();
+        response = mockResponse(output);
+
+        assertTrue(systemUnderTest.deliverCacheContent(request, response, jcrCacheConfig));
+        assertArrayEquals(data, output.toByteArray());
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response).setContentLength(data.length);
+    }
+
+    private static SlingHttpServletRequest mockRequestWithAttributes() {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        Map<String, Object> attributes = new HashMap<>();
+        lenient().when(request.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        lenient().doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request).setAttribute(anyString(), any());
+        return request;
+    }
+
+    private static SlingHttpServletResponse mockResponse() throws IOException {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getHeaderNames()).thenReturn(Collections.emptyList());
+        when(response.getWriter()).thenReturn(new PrintWriter(new ByteArrayOutputStream()));
+        return response;
+    }
+
+    private static SlingHttpServletResponse mockResponse(ByteArrayOutputStream output) throws IOException {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                output.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // No need to do anything
+            }
+        });
+        return response;
+    }
 }
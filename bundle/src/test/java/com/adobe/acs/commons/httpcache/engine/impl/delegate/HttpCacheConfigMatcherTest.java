@@ -0,0 +1,112 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.engine.impl.delegate;
+
+import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
+import com.adobe.acs.commons.httpcache.config.impl.HttpCacheConfigImpl;
+import com.adobe.acs.commons.httpcache.keys.CacheKeyFactory;
+import org.apache.sling.testing.mock.osgi.junit.OsgiContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class HttpCacheConfigMatcherTest {
+
+    @Rule
+    public final OsgiContext context = new OsgiContext();
+
+    private final List<HttpCacheConfig> cacheConfigs = new ArrayList<>();
+
+    @Before
+    public void init() {
+        context.registerService(CacheKeyFactory.class, mock(CacheKeyFactory.class));
+        for (int i = 0; i < 60; i++) {
+            cacheConfigs.add(config(
+                    new String[]{"/content/site" + i + "/.*\\.html", "^/content/dam/site" + i + "/[^/]+\\.json"},
+                    new String[]{"/content/site" + i + "(/.*)?"}));
+        }
+        cacheConfigs.add(config(new String[]{"(?i)/CONTENT/.*"}, new String[]{"/etc/.*|/conf/.*"}));
+    }
+
+    private HttpCacheConfig config(String[] requestUriPatterns, String[] invalidationPathPatterns) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("httpcache.config.requesturi.patterns", requestUriPatterns);
+        properties.put("httpcache.config.invalidation.oak.paths", invalidationPathPatterns);
+        return context.registerInjectActivateService(new HttpCacheConfigImpl(), properties);
+    }
+
+    @Test
+    public void candidatesCoverLinearScan() {
+        HttpCacheConfigMatcher matcher = new HttpCacheConfigMatcher(cacheConfigs);
+
+        for (String uri : Arrays.asList("/content/site7/en.html", "/content/site42/en/page.html",
+                "/content/dam/site3/data.json", "/CONTENT/SITE1/en.html", "/libs/page.html", "", "/")) {
+            List<HttpCacheConfig> candidates = matcher.getCandidates(uri);
+            List<HttpCacheConfig> matching = cacheConfigs.stream()
+                    .filter(config -> matchesAny(config.getRequestUriPatterns(), uri))
+                    .collect(Collectors.toList());
+            assertTrue(uri, candidates.containsAll(matching));
+            assertTrue(uri, candidates.size() <= 3);
+        }
+        assertEquals(Arrays.asList(cacheConfigs.get(7), cacheConfigs.get(60)), matcher.getCandidates("/content/site7/en.html"));
+    }
+
+    @Test
+    public void invalidationCandidatesCoverLinearScan() {
+        HttpCacheConfigMatcher matcher = new HttpCacheConfigMatcher(cacheConfigs);
+
+        for (String path : Arrays.asList("/content/site7", "/content/site42/en/jcr:content", "/conf/site/settings",
+                "/content/dam/site3/data.json", "/var/audit")) {
+            List<HttpCacheConfig> candidates = matcher.getInvalidationCandidates(path);
+            List<HttpCacheConfig> matching = cacheConfigs.stream()
+                    .filter(config -> config.canInvalidate(path))
+                    .collect(Collectors.toList());
+            assertTrue(path, candidates.containsAll(matching));
+            assertTrue(path, candidates.size() <= 3);
+        }
+    }
+
+    @Test
+    public void otherConfigsAreAlwaysCandidates() {
+        HttpCacheConfig custom = mock(HttpCacheConfig.class);
+        List<HttpCacheConfig> configs = new ArrayList<>(cacheConfigs.subList(0, 2));
+        configs.add(custom);
+        HttpCacheConfigMatcher matcher = new HttpCacheConfigMatcher(configs);
+
+        assertEquals(Arrays.asList(cacheConfigs.get(1), custom), matcher.getCandidates("/content/site1/en.html"));
+        assertEquals(Collections.singletonList(custom), matcher.getCandidates("/libs/page.html"));
+        assertEquals(Collections.singletonList(custom), matcher.getInvalidationCandidates("/var/audit"));
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String data) {
+        return patterns.stream().anyMatch(pattern -> pattern.matcher(data).matches());
+    }
+}
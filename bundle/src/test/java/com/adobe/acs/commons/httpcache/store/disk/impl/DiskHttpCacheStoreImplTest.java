@@ -0,0 +1,304 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.disk.impl;
+
+import com.adobe.acs.commons.httpcache.engine.CacheContent;
+import com.adobe.acs.commons.httpcache.engine.HttpCacheServletResponseWrapper;
+import com.adobe.acs.commons.httpcache.exception.HttpCacheDataStreamException;
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+import com.adobe.acs.commons.httpcache.store.HttpCacheStore;
+import com.adobe.acs.commons.httpcache.store.TempSink;
+import com.adobe.acs.commons.util.impl.exception.CacheMBeanException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.apache.sling.testing.mock.osgi.junit.OsgiContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.NotCompliantMBeanException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiskHttpCacheStoreImplTest {
+
+    private static final String INPUT = "SomeSillyTextForTesting";
+
+    @Rule
+    public final OsgiContext context = new OsgiContext();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, Object> config = new HashMap<>();
+    private final Instant currentInstant = Clock.systemUTC().instant();
+
+    @Before
+    public void setup() {
+        DynamicClassLoaderManager dclm = mock(DynamicClassLoaderManager.class);
+        when(dclm.getDynamicClassLoader()).thenReturn(getClass().getClassLoader());
+        context.registerService(DynamicClassLoaderManager.class, dclm);
+
+        config.put(DiskHttpCacheStoreImpl.PN_ROOTPATH, folder.getRoot().getAbsolutePath());
+        config.put(HttpCacheStore.PN_TTL, 10L);
+    }
+
+    private DiskHttpCacheStoreImpl createStore() throws NotCompliantMBeanException {
+        DiskHttpCacheStoreImpl store = new DiskHttpCacheStoreImpl();
+        store.clock = Clock.fixed(currentInstant, ZoneId.systemDefault());
+        return context.registerInjectActivateService(store, config);
+    }
+
+    private static CacheContent content(String body) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("X-Test", Collections.singletonList("value"));
+        return new CacheContent(200, "UTF-8", "text/html", headers,
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                HttpCacheServletResponseWrapper.ResponseWriteMethod.OUTPUTSTREAM);
+    }
+
+    private static String read(CacheContent content) throws IOException {
+        return IOUtils.toString(content.getInputDataStream(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void simplePutAndDelete() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        CacheKey key = new TestKey("/content/geometrixx/en.html", "/content/geometrixx/en");
+
+        store.put(key, content(INPUT));
+        assertTrue(store.contains(key));
+        assertEquals(1, store.size());
+
+        CacheContent cached = store.getIfPresent(key);
+        assertEquals(200, cached.getStatus());
+        assertEquals("text/html", cached.getContentType());
+        assertEquals(Collections.singletonList("value"), cached.getHeaders().get("X-Test"));
+        assertEquals(HttpCacheServletResponseWrapper.ResponseWriteMethod.OUTPUTSTREAM, cached.getWriteMethod());
+        assertEquals(INPUT, read(cached));
+        assertEquals(INPUT, store.getCacheEntry(key.toString()));
+
+        store.invalidate(new TestKey("/content/geometrixx/en/jcr:content.html", "/content/geometrixx/en"));
+        assertEquals(0, store.size());
+        assertNull(store.getIfPresent(key));
+        assertFalse(store.contains(key));
+    }
+
+    @Test
+    public void overwriteKeepsLatest() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        CacheKey key = new TestKey("/content/a.html", "/content/a");
+
+        store.put(key, content("first"));
+        store.put(key, content("second"));
+
+        assertEquals(1, store.size());
+        assertEquals("second", read(store.getIfPresent(key)));
+    }
+
+    @Test
+    public void readsFromActiveSegment() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        CacheKey large = new TestKey("/content/large.html", "/content/large");
+        CacheKey small = new TestKey("/content/small.html", "/content/small");
+        String largeBody = StringUtils.repeat('x', (int) DiskSegment.REMAP_STEP + 1);
+
+        // The large entry is mapped, the small one after it is read onto the heap
+        store.put(large, content(largeBody));
+        store.put(small, content(INPUT));
+
+        assertEquals(largeBody, read(store.getIfPresent(large)));
+        assertEquals(INPUT, read(store.getIfPresent(small)));
+        assertEquals(largeBody, read(store.getIfPresent(large)));
+    }
+
+    @Test
+    public void survivesRestart() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        CacheKey kept = new TestKey("/content/a.html", "/content/a");
+        CacheKey invalidated = new TestKey("/content/b.html", "/content/b");
+        store.put(kept, content(INPUT));
+        store.put(invalidated, content(INPUT));
+        store.invalidate(invalidated);
+        store.deactivate();
+
+        DiskHttpCacheStoreImpl restarted = createStore();
+        assertEquals(1, restarted.size());
+        assertFalse(restarted.contains(invalidated));
+        assertEquals(INPUT, read(restarted.getIfPresent(kept)));
+    }
+
+    @Test
+    public void expiration() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        CacheKey key = new TestKey("/content/a.html", "/content/a");
+        store.put(key, content(INPUT));
+        assertTrue(store.contains(key));
+
+        // fast forward : 12 seconds
+        store.clock = Clock.fixed(currentInstant.plus(12, ChronoUnit.SECONDS), ZoneId.systemDefault());
+
+        assertFalse(store.contains(key));
+        assertEquals(1, store.getCacheEntriesCount());
+
+        store.purgeExpiredEntries();
+        assertEquals(0, store.getCacheEntriesCount());
+        assertNull(store.getIfPresent(key));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        config.put(HttpCacheStore.PN_MAXSIZE, 1L);
+        DiskHttpCacheStoreImpl store = createStore();
+        String body = StringUtils.repeat('x', 400 * 1024);
+
+        CacheKey first = new TestKey("/content/1.html", "/content/1");
+        CacheKey second = new TestKey("/content/2.html", "/content/2");
+        CacheKey third = new TestKey("/content/3.html", "/content/3");
+        store.put(first, content(body));
+        store.clock = Clock.fixed(currentInstant.plusMillis(1), ZoneId.systemDefault());
+        store.put(second, content(body));
+        store.clock = Clock.fixed(currentInstant.plusMillis(2), ZoneId.systemDefault());
+        store.put(third, content(body));
+
+        assertFalse(store.contains(first));
+        assertTrue(store.contains(third));
+    }
+
+    @Test
+    public void compactsSegments() throws Exception {
+        config.put(DiskHttpCacheStoreImpl.PN_SEGMENTSIZE, 1L);
+        DiskHttpCacheStoreImpl store = createStore();
+        String body = StringUtils.repeat('x', 300 * 1024);
+
+        for (int i = 0; i < 8; i++) {
+            store.put(new TestKey("/content/" + i + ".html", "/content/" + i), content(body + i));
+        }
+        int segmentsBefore = store.getSegmentCount();
+        assertTrue(segmentsBefore > 1);
+
+        for (int i = 0; i < 7; i++) {
+            store.invalidate(new TestKey("/content/" + i + ".html", "/content/" + i));
+        }
+        store.purgeExpiredEntries();
+
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        assertEquals(body + 7, read(store.getIfPresent(new TestKey("/content/7.html", "/content/7"))));
+    }
+
+    @Test
+    public void invalidateAll() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        store.put(new TestKey("/content/a.html", "/content/a"), content(INPUT));
+        store.put(new TestKey("/content/b.html", "/content/b"), content(INPUT));
+
+        store.invalidateAll();
+        assertEquals(0, store.size());
+
+        CacheKey key = new TestKey("/content/c.html", "/content/c");
+        store.put(key, content(INPUT));
+        assertEquals(INPUT, read(store.getIfPresent(key)));
+    }
+
+    @Test
+    public void tempSinkSpoolsToDisk() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        TempSink sink = store.createTempSink();
+        try (OutputStream out = sink.createOutputStream()) {
+            out.write(INPUT.getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = sink.createInputStream()) {
+            assertEquals(INPUT.length(), sink.length());
+            assertEquals(INPUT, IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+        assertEquals(-1, sink.length());
+    }
+
+    @Test(expected = HttpCacheDataStreamException.class)
+    public void nonSerializableKeyIsRejected() throws Exception {
+        DiskHttpCacheStoreImpl store = createStore();
+        store.put(mock(CacheKey.class), content(INPUT));
+    }
+
+    @Test
+    public void cacheEntryOfUnknownKey() throws NotCompliantMBeanException, CacheMBeanException {
+        DiskHttpCacheStoreImpl store = createStore();
+        assertEquals("Invalid cache key parameter.", store.getCacheEntry("unknown"));
+    }
+
+    private static class TestKey implements CacheKey {
+        private final String uri;
+        private final String hierarchyResourcePath;
+
+        TestKey(String uri, String hierarchyResourcePath) {
+            this.uri = uri;
+            this.hierarchyResourcePath = hierarchyResourcePath;
+        }
+
+        @Override
+        public String getUri() {
+            return uri;
+        }
+
+        @Override
+        public String getHierarchyResourcePath() {
+            return hierarchyResourcePath;
+        }
+
+        @Override
+        public boolean isInvalidatedBy(CacheKey cacheKey) {
+            return StringUtils.equals(hierarchyResourcePath, cacheKey.getHierarchyResourcePath());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TestKey && Objects.equals(uri, ((TestKey) o).uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return uri.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return uri;
+        }
+    }
+}
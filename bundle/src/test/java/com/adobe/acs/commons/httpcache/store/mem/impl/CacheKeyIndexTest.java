@@ -0,0 +1,129 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.httpcache.store.mem.impl;
+
+import com.adobe.acs.commons.httpcache.config.HttpCacheConfig;
+import com.adobe.acs.commons.httpcache.keys.AbstractCacheKey;
+import com.adobe.acs.commons.httpcache.keys.CacheKey;
+import org.junit.Test;
+
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CacheKeyIndexTest {
+
+    private final CacheKeyIndex index = new CacheKeyIndex();
+
+    @Test
+    public void candidatesByPath() {
+        CacheKey en = new PathKey("/content/site/en.html", "/content/site/en");
+        CacheKey enJson = new PathKey("/content/site/en.model.json", "/content/site/en");
+        CacheKey de = new PathKey("/content/site/de.html", "/content/site/de");
+        index.add(en, new Object(), null);
+        index.add(enJson, new Object(), null);
+        index.add(de, new Object(), null);
+
+        Collection<CacheKey> candidates = index.getInvalidationCandidates(new PathKey("/content/site/en/jcr:content", "/content/site/en"));
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.contains(en));
+        assertTrue(candidates.contains(enJson));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void keysWithCustomInvalidationAreAlwaysCandidates() {
+        CacheKey custom = mock(CacheKey.class);
+        when(custom.getHierarchyResourcePath()).thenReturn("/content/site/en");
+        index.add(custom, new Object(), null);
+
+        assertTrue(index.getInvalidationCandidates(new PathKey("/content/site/de.html", "/content/site/de")).contains(custom));
+    }
+
+    @Test
+    public void candidatesByConfig() {
+        HttpCacheConfig config = mock(HttpCacheConfig.class);
+        HttpCacheConfig otherConfig = mock(HttpCacheConfig.class);
+        CacheKey configured = new PathKey("/content/site/en.html", "/content/site/en");
+        CacheKey other = new PathKey("/content/site/de.html", "/content/site/de");
+        CacheKey unattributed = new PathKey("/content/site/fr.html", "/content/site/fr");
+        index.add(configured, new Object(), config);
+        index.add(other, new Object(), otherConfig);
+        index.add(unattributed, new Object(), null);
+
+        Collection<CacheKey> candidates = index.getCandidates(config);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.contains(configured));
+        assertTrue(candidates.contains(unattributed));
+    }
+
+    @Test
+    public void removalOnlyForRegisteredValue() {
+        CacheKey key = new PathKey("/content/site/en.html", "/content/site/en");
+        Object first = new Object();
+        Object second = new Object();
+        index.add(key, first, null);
+        index.add(key, second, null);
+
+        // late notification for the replaced value
+        index.remove(key, first);
+        assertEquals(1, index.size());
+        assertTrue(index.getInvalidationCandidates(key).contains(key));
+
+        index.remove(key, second);
+        assertEquals(0, index.size());
+        assertFalse(index.getInvalidationCandidates(key).contains(key));
+    }
+
+    @Test
+    public void recordsInvalidationCost() {
+        index.recordInvalidation(5, 2, System.nanoTime());
+        index.recordInvalidation(3, 1, System.nanoTime());
+
+        assertEquals(2, index.getInvalidationCount());
+        assertEquals(8, index.getCandidatesExamined());
+        assertEquals(3, index.getEntriesInvalidated());
+    }
+
+    static class PathKey extends AbstractCacheKey implements CacheKey {
+        PathKey(String uri, String hierarchyResourcePath) {
+            this.uri = uri;
+            this.resourcePath = hierarchyResourcePath;
+            this.hierarchyResourcePath = hierarchyResourcePath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && getUri().equals(((PathKey) o).getUri());
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getUri();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.adobe.acs.commons.httpcache.exception.HttpCacheKeyCreationException;
 import com.adobe.acs.commons.httpcache.keys.CacheKey;
 import com.adobe.acs.commons.httpcache.store.caffeine.impl.CaffeineMemHttpCacheStoreImpl;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,15 +35,20 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.openmbean.CompositeType;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -119,6 +125,117 @@ public class MemHttpCacheStoreImplTest {
         assertFalse("doesn't contain entry we just removed",systemUnderTest.contains(key));
     }
 
+    @Test
+    public void test_remove_examines_indexed_keys_only() throws HttpCacheDataStreamException {
+        for (int i = 0; i < 10; i++) {
+            CacheContent content = mock(CacheContent.class);
+            when(content.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+            systemUnderTest.put(new CacheKeyIndexTest.PathKey("/content/page" + i + ".html", "/content/page" + i), content);
+        }
+        assertEquals(10, systemUnderTest.getInvalidationIndexSize());
+
+        systemUnderTest.invalidate(new CacheKeyIndexTest.PathKey("/content/page3/jcr:content", "/content/page3"));
+
+        assertEquals(9, systemUnderTest.size());
+        assertFalse(systemUnderTest.contains(new CacheKeyIndexTest.PathKey("/content/page3.html", "/content/page3")));
+        assertEquals(1, systemUnderTest.getInvalidationCandidatesExamined());
+        assertEquals(1, systemUnderTest.getInvalidatedEntriesCount());
+        assertEquals(9, systemUnderTest.getInvalidationIndexSize());
+    }
+
+    @Test
+    public void test_remove_by_cacheconfig_examines_config_keys_only() throws HttpCacheDataStreamException, HttpCacheKeyCreationException {
+        HttpCacheConfig config = mock(HttpCacheConfig.class);
+        HttpCacheConfig otherConfig = mock(HttpCacheConfig.class);
+        CacheKey key = new CacheKeyIndexTest.PathKey("/content/a.html", "/content/a");
+        CacheKey otherKey = new CacheKeyIndexTest.PathKey("/content/b.html", "/content/b");
+        CacheContent content = mock(CacheContent.class);
+        when(content.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+        systemUnderTest.put(key, content, config);
+        CacheContent otherContent = mock(CacheContent.class);
+        when(otherContent.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+        systemUnderTest.put(otherKey, otherContent, otherConfig);
+
+        when(config.knows(key)).thenReturn(true);
+        systemUnderTest.invalidate(config);
+
+        assertFalse(systemUnderTest.contains(key));
+        assertTrue(systemUnderTest.contains(otherKey));
+        assertEquals(1, systemUnderTest.getInvalidationCandidatesExamined());
+    }
+
+    @Test
+    public void test_invalidated_entry_kept_as_stale() throws HttpCacheDataStreamException, IOException {
+        properties.put("httpcache.cachestore.memcache.graceperiod", 60L);
+        systemUnderTest.activate(properties);
+        assertEquals(60L, systemUnderTest.getGracePeriod());
+
+        CacheKey key = new CacheKeyIndexTest.PathKey("/content/a.html", "/content/a");
+        CacheContent content = mock(CacheContent.class);
+        when(content.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+        systemUnderTest.put(key, content);
+        assertNull(systemUnderTest.getStaleIfPresent(key));
+
+        systemUnderTest.invalidate(new CacheKeyIndexTest.PathKey("/content/a/jcr:content", "/content/a"));
+        assertFalse(systemUnderTest.contains(key));
+        assertEquals(1, systemUnderTest.getStaleEntriesCount());
+        CacheContent staleContent = systemUnderTest.getStaleIfPresent(key);
+        assertEquals(IOUtils.toString(getClass().getResourceAsStream("cachecontent.html"), StandardCharsets.UTF_8),
+                IOUtils.toString(staleContent.getInputDataStream(), StandardCharsets.UTF_8));
+
+        // refreshing the entry drops the stale entry
+        CacheContent freshContent = mock(CacheContent.class);
+        when(freshContent.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+        systemUnderTest.put(key, freshContent);
+        assertNull(systemUnderTest.getStaleIfPresent(key));
+
+        systemUnderTest.invalidate(new CacheKeyIndexTest.PathKey("/content/a/jcr:content", "/content/a"));
+        systemUnderTest.invalidateAll();
+        assertEquals(0, systemUnderTest.getStaleEntriesCount());
+    }
+
+    @Test
+    public void test_invalidated_entry_not_kept_without_grace_period() throws HttpCacheDataStreamException {
+        CacheKey key = new CacheKeyIndexTest.PathKey("/content/a.html", "/content/a");
+        CacheContent content = mock(CacheContent.class);
+        when(content.getInputDataStream()).thenReturn(getClass().getResourceAsStream("cachecontent.html"));
+        systemUnderTest.put(key, content);
+
+        systemUnderTest.invalidate(key);
+        assertNull(systemUnderTest.getStaleIfPresent(key));
+        assertEquals(0, systemUnderTest.getStaleEntriesCount());
+    }
+
+    @Test
+    public void test_put_precompressed() throws HttpCacheDataStreamException, IOException {
+        properties.put("httpcache.cachestore.memcache.gzip", true);
+        systemUnderTest.activate(properties);
+
+        String html = StringUtils.repeat(IOUtils.toString(getClass().getResourceAsStream("cachecontent.html"), StandardCharsets.UTF_8), 4);
+        CacheKey key = mock(CacheKey.class);
+        CacheContent content = mock(CacheContent.class);
+        when(content.getContentType()).thenReturn("text/html;charset=utf-8");
+        when(content.getInputDataStream()).thenReturn(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+        systemUnderTest.put(key, content);
+
+        CacheContent retrievedContent = systemUnderTest.getIfPresent(key);
+        assertEquals(html, IOUtils.toString(retrievedContent.getInputDataStream(), StandardCharsets.UTF_8));
+        ByteBuffer gzipData = retrievedContent.getGzipDataBuffer();
+        assertNotNull(gzipData);
+        assertTrue(gzipData.remaining() < html.length());
+        byte[] compressed = new byte[gzipData.remaining()];
+        gzipData.get(compressed);
+        assertEquals(html, IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8));
+
+        // small or binary content is not compressed
+        CacheKey imageKey = mock(CacheKey.class);
+        CacheContent image = mock(CacheContent.class);
+        when(image.getContentType()).thenReturn("image/png");
+        when(image.getInputDataStream()).thenReturn(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+        systemUnderTest.put(imageKey, image);
+        assertNull(systemUnderTest.getIfPresent(imageKey).getGzipDataBuffer());
+    }
+
     @Test
     public void test_get_cache_entry_type() throws OpenDataException {
         CompositeType compositeType = systemUnderTest.getCacheEntryType();
@@ -18,6 +18,7 @@
 
 package com.adobe.acs.commons.images.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -30,26 +31,38 @@ import static org.mockito.Mockito.when;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.mime.MimeTypeService;
 import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.osgi.service.component.ComponentContext;
 
 import com.adobe.acs.commons.images.ImageTransformer;
 import com.adobe.acs.commons.images.NamedImageTransformer;
+import com.day.cq.commons.jcr.JcrConstants;
 import com.day.image.Layer;
+import io.wcm.testing.mock.aem.junit.AemContext;
 import org.apache.sling.api.resource.Resource;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -63,6 +76,9 @@ public final class NamedTransformImageServletTest {
     private static final String IMAGE_TRANSFORM_RESIZE = "resize";
     private static final String IMAGE_TRANSFORM_GREYSCALE = "greyscale";
 
+    @Rule
+    public final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
     @Spy
     private final FeaturedNamedImageTransformer featureImageTransformer = new FeaturedNamedImageTransformer();
 
@@ -128,6 +144,47 @@ public final class NamedTransformImageServletTest {
         namedImageTransformers.put(NAMED_TRANSFORM_SMALL, smallImageTransformer);
     }
 
+    @Test
+    public void testRenditionCacheServesRepeatedRequests() throws Exception {
+        context.load().binaryFile("/img/test.png", "/content/dam/test.png", "image/png");
+        final Resource content = context.resourceResolver().getResource("/content/dam/test.png/jcr:content");
+        content.adaptTo(ModifiableValueMap.class).put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+        context.resourceResolver().commit();
+
+        final Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put("rendition-cache.enabled", true);
+        final ComponentContext componentContext = mock(ComponentContext.class);
+        when(componentContext.getProperties()).thenReturn(properties);
+        when(componentContext.getBundleContext()).thenReturn(context.bundleContext());
+        FieldUtils.writeField(servlet, "mimeTypeService", context.getService(MimeTypeService.class), true);
+        servlet.activate(componentContext);
+
+        try {
+            final byte[] first = renderTransform("/content/dam/test.png", "/" + NAMED_TRANSFORM_SMALL + "/image.png");
+            final byte[] second = renderTransform("/content/dam/test.png", "/" + NAMED_TRANSFORM_SMALL + "/image.png");
+
+            assertTrue(first.length > 0);
+            assertArrayEquals(first, second);
+            // the second request is served from the rendition cache without transforming the image again
+            verify(resizeImageTransformer, times(1)).transform(any(Layer.class), any(ValueMap.class));
+        } finally {
+            servlet.deactivate();
+        }
+    }
+
+    private byte[] renderTransform(final String path, final String suffix) throws Exception {
+        final org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest transformRequest = context.request();
+        transformRequest.setResource(context.resourceResolver().getResource(path));
+        final MockRequestPathInfo pathInfo = (MockRequestPathInfo) transformRequest.getRequestPathInfo();
+        pathInfo.setResourcePath(path);
+        pathInfo.setExtension("transform");
+        pathInfo.setSuffix(suffix);
+
+        final MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(transformRequest, response);
+        return response.getOutput();
+    }
+
     @Test
     public void testBinders() {
         final Map<Object, Object> props = new HashMap<>();
@@ -273,6 +330,25 @@ public final class NamedTransformImageServletTest {
 
     }
 
+    @Test
+    public void test_getSubsampling() {
+        ValueMap resizeParams = new ValueMapDecorator(new HashMap<String, Object>());
+
+        // no dimensions
+        assertEquals(1, NamedTransformImageServlet.getSubsampling(4000, 3000, resizeParams));
+
+        resizeParams.put("width", 500);
+        assertEquals(4, NamedTransformImageServlet.getSubsampling(4000, 3000, resizeParams));
+
+        // the dimension scaled down the least wins
+        resizeParams.put("h", 1000);
+        assertEquals(1, NamedTransformImageServlet.getSubsampling(4000, 3000, resizeParams));
+
+        // upscaling
+        resizeParams.remove("h");
+        assertEquals(1, NamedTransformImageServlet.getSubsampling(400, 300, resizeParams));
+    }
+
     @Test
     public void test_isProgressiveJpeg() {
         ValueMap progressiveTransforms = new ValueMapDecorator(new HashMap<String, Object>());
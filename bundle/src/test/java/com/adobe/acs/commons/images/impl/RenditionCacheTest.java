@@ -0,0 +1,170 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.images.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RenditionCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private RenditionCache cache;
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new RenditionCache(folder.newFolder("renditions"), 10);
+    }
+
+    @Test
+    public void testWriteCachesRendition() throws IOException {
+        assertEquals("abc", write("key", "abc"));
+        assertEquals("abc", write("key", "def"));
+
+        assertEquals(1, renders.get());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testNothingRendered() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertFalse(cache.write("key", o -> false, out));
+        assertEquals(0, cache.size());
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyServed() throws IOException {
+        write("first", "1234");
+        write("second", "1234");
+        write("first", "1234");
+        write("third", "1234");
+
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getSizeInBytes());
+        assertEquals(3, renders.get());
+
+        // second was evicted, first is still cached
+        write("first", "1234");
+        assertEquals(3, renders.get());
+        write("second", "1234");
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsRenderOnce() throws Exception {
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(() -> write("key", o -> {
+                rendering.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                o.write("abc".getBytes(StandardCharsets.UTF_8));
+                return true;
+            }));
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+            final Future<String> second = executor.submit(() -> write("key", "def"));
+            release.countDown();
+
+            assertEquals("abc", first.get(5, TimeUnit.SECONDS));
+            assertEquals("abc", second.get(5, TimeUnit.SECONDS));
+            assertEquals(0, renders.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestRendersAgainAfterTimeout() throws Exception {
+        cache = new RenditionCache(folder.newFolder("timeout"), 10, 50);
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> first = executor.submit(() -> write("key", o -> {
+                rendering.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                o.write("abc".getBytes(StandardCharsets.UTF_8));
+                return true;
+            }));
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+            assertEquals("def", write("key", "def"));
+            assertEquals(1, renders.get());
+
+            release.countDown();
+            assertEquals("abc", first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        write("key", "abc");
+        cache.close();
+
+        assertEquals(0, cache.size());
+        assertFalse(folder.getRoot().toPath().resolve("renditions").toFile().exists());
+    }
+
+    private String write(final String key, final String data) throws IOException {
+        return write(key, o -> {
+            renders.incrementAndGet();
+            o.write(data.getBytes(StandardCharsets.UTF_8));
+            return true;
+        });
+    }
+
+    private String write(final String key, final RenditionCache.Renderer renderer) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(key, renderer, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
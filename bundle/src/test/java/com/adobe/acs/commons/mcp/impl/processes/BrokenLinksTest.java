@@ -24,6 +24,7 @@ import com.adobe.acs.commons.mcp.ControlledProcessManager;
 import com.adobe.acs.commons.mcp.form.AbstractResourceImpl;
 import com.adobe.acs.commons.mcp.impl.ProcessInstanceImpl;
 import com.adobe.acs.commons.mcp.impl.processes.BrokenLinksReport.Report;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -51,6 +52,7 @@ import org.junit.Test;
 import static com.adobe.acs.commons.fam.impl.ActionManagerTest.*;
 import static com.adobe.acs.commons.mcp.impl.processes.BrokenLinksReport.collectBrokenReferences;
 import static com.adobe.acs.commons.mcp.impl.processes.BrokenLinksReport.collectPaths;
+import static com.adobe.acs.commons.mcp.impl.processes.BrokenLinksReport.scanLinks;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
@@ -74,6 +76,15 @@ public class BrokenLinksTest {
 
     @Test
     public void reportBrokenReferences() throws Exception {
+        reportBrokenReferences(false);
+    }
+
+    @Test
+    public void reportBrokenReferencesInSinglePass() throws Exception {
+        reportBrokenReferences(true);
+    }
+
+    private void reportBrokenReferences(boolean singlePass) throws Exception {
         final ResourceResolver rr = getEnhancedMockResolver();
 
         AbstractResourceImpl content = new AbstractResourceImpl("/content", "cq:Page", "cq:Page", new HashMap<>());
@@ -113,6 +124,7 @@ public class BrokenLinksTest {
         values.put("sourcePath", "/content");
         values.put("propertyRegex", "^/(etc|content)/.+");
         values.put("excludeProperties", "ignoredRef");
+        values.put("singlePass", String.valueOf(singlePass));
 
         ProcessInstanceImpl instance = new ProcessInstanceImpl(getControlledProcessManager(), tool, "broken references");
         instance.init(rr, values);
@@ -174,6 +186,14 @@ public class BrokenLinksTest {
         assertEquals(Arrays.asList("/ref1"), collectPaths(property("text", "<p><a href='/ref1'>hello</p>"), htmlFields).collect(Collectors.toList()));
     }
 
+    @Test
+    public void testScanLinks() {
+        List<String> links = new ArrayList<>();
+        scanLinks("<p><a href='/ref1'>hello</a><img class=\"x\" SRC = \"/ref2\">"
+                + "<a data-href=\"/not-a-link\" href=/ref3>x</a> href=<a href=\"/ref4?a=1&amp;b=2\">", links::add);
+        assertEquals(Arrays.asList("/ref1", "/ref2", "/ref3", "/ref4?a=1&b=2"), links);
+    }
+
     private Map.Entry property(String key, Object value){
         return new Map.Entry<String, Object>() {
             @Override
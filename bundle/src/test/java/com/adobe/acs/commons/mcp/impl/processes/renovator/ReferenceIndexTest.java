@@ -0,0 +1,88 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.mcp.impl.processes.renovator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.DamConstants;
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class ReferenceIndexTest {
+
+    private static final String IMAGE = "/content/dam/folder/an image.jpg";
+    private static final String PDF = "/content/dam/folder/doc.pdf";
+    private static final String RENDITIONS = "/content/dam/folder/other.png";
+
+    @Rule
+    public AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+    private ReferenceIndex index;
+
+    @Before
+    public void setUp() {
+        context.create().page("/content/site");
+        context.create().page("/content/site/en");
+        context.create().page("/content/site/de");
+        context.create().resource("/content/site/en/jcr:content/root/image", "fileReference", IMAGE);
+        context.create().resource("/content/site/en/jcr:content/root/text",
+                "text", "<p><a href=\"" + PDF + "\">Download</a> <a href=\"" + PDF + "x\">Not this one</a></p>");
+        context.create().resource("/content/site/de/jcr:content/root/list",
+                "links", new String[]{PDF, RENDITIONS + "/jcr:content/renditions/original"});
+        context.create().resource(IMAGE, ImmutableMap.of(JcrConstants.JCR_PRIMARYTYPE, DamConstants.NT_DAM_ASSET));
+        context.create().resource(IMAGE + "/jcr:content/metadata", "dam:self", IMAGE);
+
+        index = new ReferenceIndex(Arrays.asList(IMAGE, PDF, RENDITIONS));
+        index.build(context.resourceResolver(), "/");
+    }
+
+    @Test
+    public void findsReferencingPagesInOnePass() {
+        assertEquals(Collections.singletonList("/content/site/en"), index.getReferencingPages(IMAGE, -1));
+
+        List<String> pdfReferences = index.getReferencingPages(PDF, -1);
+        assertEquals(2, pdfReferences.size());
+        assertTrue(pdfReferences.contains("/content/site/en"));
+        assertTrue(pdfReferences.contains("/content/site/de"));
+        assertFalse(index.isActivated("/content/site/de"));
+    }
+
+    @Test
+    public void ignoresReferencesToChildren() {
+        assertTrue(index.getReferencingPages(RENDITIONS, -1).isEmpty());
+    }
+
+    @Test
+    public void limitsReferencesPerPath() {
+        assertEquals(1, index.getReferencingPages(PDF, 1).size());
+        assertTrue(index.getReferencingPages(PDF, 0).isEmpty());
+    }
+}
@@ -77,4 +77,25 @@ public class HierarchicalPagePropertyInjectorTest {
 
         assertEquals("inherited!", hierarchicalModel.getSkipLevelHierarchicalPagePropertyString());
     }
+
+    @Test
+    public void test_inheritedPropertiesAreResolvedOncePerRequest() {
+        context.currentPage("/content/we-retail/language-masters/en/experience");
+        context.currentResource("/content/we-retail/language-masters/en/experience/arctic-surfing-in-lofoten/jcr:content/root");
+
+        SlingHttpServletRequest adaptable = context.request();
+        assertEquals("inherited!", adaptable.adaptTo(TestHierarchicalPagePropertiesModel.class).getHierarchicalPagePropertyString());
+        long ancestorReads = injector.getAncestorReads();
+        long snapshotHits = injector.getSnapshotHits();
+        assertTrue(ancestorReads > 0);
+
+        assertEquals("inherited!", adaptable.adaptTo(TestHierarchicalPagePropertiesModel.class).getHierarchicalPagePropertyString());
+        assertEquals(ancestorReads, injector.getAncestorReads());
+        assertTrue(injector.getSnapshotHits() > snapshotHits);
+        assertTrue(injector.getAvoidedAncestorReads() > 0);
+        assertTrue(injector.getSnapshotHitRate() > 0);
+
+        injector.resetStatistics();
+        assertEquals(0, injector.getInheritedLookups());
+    }
 }
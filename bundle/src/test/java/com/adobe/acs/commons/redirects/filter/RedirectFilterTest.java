@@ -24,7 +24,6 @@ import com.adobe.acs.commons.redirects.models.RedirectConfiguration;
 import com.adobe.acs.commons.redirects.models.RedirectRule;
 import com.adobe.acs.commons.redirects.models.Redirects;
 import com.day.cq.wcm.api.WCMMode;
-import com.google.common.cache.Cache;
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -65,6 +64,7 @@ import static com.adobe.acs.commons.redirects.filter.RedirectFilter.getRules;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -788,11 +788,31 @@ public class RedirectFilterTest {
     }
 
     @Test
-    public void testInvalidateOnChange() throws Exception {
+    public void testReloadOnConfigurationChange() throws Exception {
+        withRules(
+            new RedirectResourceBuilder(context)
+                    .setSource("/content/we-retail/en/one")
+                    .setTarget("/content/we-retail/en/two")
+                    .setStatusCode(302).build()
+        );
+        assertEquals("/content/we-retail/en/two.html", navigate("/content/we-retail/en/one.html").getHeader("Location"));
+
+        new RedirectResourceBuilder(context)
+                .setSource("/content/we-retail/en/three")
+                .setTarget("/content/we-retail/en/four")
+                .setStatusCode(302).build();
+        filter.invalidate(redirectStoragePath);
 
-        Cache<String, RedirectConfiguration> rulesCache = mock(Cache.class);
-        filter.rulesCache = rulesCache;
+        // the rules are reloaded on the executor, requests are served from the previous rules meanwhile
+        navigate("/content/we-retail/en/three.html");
+        filter.getExecutor().submit(() -> { }).get();
 
+        assertEquals("/content/we-retail/en/four.html", navigate("/content/we-retail/en/three.html").getHeader("Location"));
+        assertEquals(2, filter.getRulesCache().getIfPresent(redirectStoragePath).getPathRules().size());
+    }
+
+    @Test
+    public void testInvalidateOnChange() throws Exception {
         withRules(
             new RedirectResourceBuilder(context)
                     .setSource("/content/we-retail/en/one")
@@ -800,19 +820,58 @@ public class RedirectFilterTest {
                     .setNodeName("redirect-1")
                     .setStatusCode(302).build()
         );
-
+        assertEquals("/content/we-retail/en/two.html", navigate("/content/we-retail/en/one.html").getHeader("Location"));
+        RedirectConfiguration loadedRules = filter.getRulesCache().getIfPresent(redirectStoragePath);
+
+        // added rules are patched into a copy of the cached rules
+        new RedirectResourceBuilder(context)
+                .setSource("/content/we-retail/en/three")
+                .setTarget("/content/we-retail/en/four")
+                .setNodeName("redirect-2")
+                .setStatusCode(302).build();
+        filter.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.ADDED,
+                "/conf/global/settings/redirects/redirect-2", false, null, null, null)));
+        assertEquals("/content/we-retail/en/four.html", navigate("/content/we-retail/en/three.html").getHeader("Location"));
+        RedirectConfiguration patchedRules = filter.getRulesCache().getIfPresent(redirectStoragePath);
+        assertNotSame(loadedRules, patchedRules);
+        assertEquals(1, loadedRules.getPathRules().size());
+        assertEquals(2, patchedRules.getPathRules().size());
+
+        // removed rules are dropped
+        context.resourceResolver().delete(context.resourceResolver().getResource("/conf/global/settings/redirects/redirect-1"));
         filter.invalidate("/conf/global/settings/redirects/redirect-1");
-        verify(rulesCache, times(1)).invalidate(eq("/conf/global/settings/redirects"));
+        assertNull(navigate("/content/we-retail/en/one.html").getHeader("Location"));
+        assertEquals(1, filter.getRulesCache().getIfPresent(redirectStoragePath).getPathRules().size());
+    }
 
+    @Test
+    public void testPatchKeepsRepositoryOrder() throws Exception {
         withRules(
-            new RedirectResourceBuilder(context, "/conf/my-site/en/settings/redirects")
-                    .setSource("/content/my-site/en/one")
-                    .setTarget("/contentmy-site/en/two")
+            new RedirectResourceBuilder(context, redirectStoragePath + "/shard-1")
+                    .setSource("/content/we-retail/en/one/(.*)")
+                    .setTarget("/content/we-retail/en/first/$1")
                     .setNodeName("redirect-1")
+                    .setStatusCode(302).build(),
+            new RedirectResourceBuilder(context, redirectStoragePath + "/shard-2")
+                    .setSource("/content/we-retail/(.*)")
+                    .setTarget("/content/we-retail/last/$1")
+                    .setNodeName("redirect-3")
                     .setStatusCode(302).build()
         );
-        filter.invalidate("/conf/my-site/en/settings/redirects/redirect-1");
-        verify(rulesCache, times(1)).invalidate(eq("/conf/my-site/en/settings/redirects"));
+        assertEquals("/content/we-retail/last/en/two", navigate("/content/we-retail/en/two").getHeader("Location"));
+
+        // a regex rule added in between the others is matched before the last one, as after a full reload
+        new RedirectResourceBuilder(context, redirectStoragePath + "/shard-1")
+                .setSource("/content/we-retail/en/(.*)")
+                .setTarget("/content/we-retail/en/second/$1")
+                .setNodeName("redirect-2")
+                .setStatusCode(302).build();
+        filter.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.ADDED,
+                redirectStoragePath + "/shard-1/redirect-2", false, null, null, null)));
+
+        assertEquals("/content/we-retail/en/first/page", navigate("/content/we-retail/en/one/page").getHeader("Location"));
+        assertEquals("/content/we-retail/en/second/two", navigate("/content/we-retail/en/two").getHeader("Location"));
+        assertEquals("/content/we-retail/last/fr/two", navigate("/content/we-retail/fr/two").getHeader("Location"));
     }
 
     @Test
@@ -1473,4 +1532,41 @@ public class RedirectFilterTest {
         assertEquals("/content/we-retail/en/two", navigate("/content/we-retail/en/one").getHeader("Location"));
         assertEquals("/content/we-retail/en/two", navigate("/content/we-retail/EN/ONE").getHeader("Location"));
     }
+
+    @Test
+    public void testPatternRulesMatchInLoadOrder() throws Exception {
+        withRules(
+                new RedirectResourceBuilder(context)
+                        .setSource("/content/we-retail/en/products/(.*)")
+                        .setTarget("/content/we-retail/en/shop/$1")
+                        .setStatusCode(302).build(),
+                new RedirectResourceBuilder(context)
+                        .setSource("/content/we-retail/(.*)/products/(.*)")
+                        .setTarget("/content/we-retail/$1/catalog/$2")
+                        .setStatusCode(302).build(),
+                new RedirectResourceBuilder(context)
+                        .setSource("/content/geometrixx/(.*)")
+                        .setTarget("/content/we-retail/$1")
+                        .setStatusCode(302).build(),
+                new RedirectResourceBuilder(context)
+                        .setSource("/content/WE-RETAIL/de/(.*)")
+                        .setTarget("/content/we-retail/en/$1")
+                        .setCaseInsensitive(true)
+                        .setStatusCode(302).build()
+        );
+        assertEquals("/content/we-retail/en/shop/shirts.html", navigate("/content/we-retail/en/products/shirts.html").getHeader("Location"));
+        assertEquals("/content/we-retail/fr/catalog/shirts.html", navigate("/content/we-retail/fr/products/shirts.html").getHeader("Location"));
+        assertEquals("/content/we-retail/en/page.html", navigate("/content/geometrixx/en/page.html").getHeader("Location"));
+        assertEquals("/content/we-retail/en/page.html", navigate("/content/we-retail/de/page.html").getHeader("Location"));
+
+        MatchLatencyHistogram histogram = filter.getMatchLatencyHistogram();
+        assertEquals(9, filter.getMatchLatency().size());
+        long requests = 0;
+        for (int i = 0; i < 9; i++) {
+            requests += histogram.getCount(i);
+        }
+        assertEquals(4, requests);
+        filter.resetMatchLatency();
+        assertEquals(0, histogram.getCount(0));
+    }
 }
\ No newline at end of file
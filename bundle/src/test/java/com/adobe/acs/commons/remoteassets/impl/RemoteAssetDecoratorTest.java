@@ -26,17 +26,24 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -251,6 +258,23 @@ public class RemoteAssetDecoratorTest {
         }
     }
 
+    @Test
+    public void testServiceUserIsOnlyLookedUpOnce() throws Exception {
+        setupFinish();
+        try (ResourceResolver serviceResourceResolver = getUserResourceResolver("serviceuser", true)) {
+            assertResourceDoesNotSync(serviceResourceResolver, TEST_REMOTE_ASSET_CONTENT_PATH);
+            assertResourceDoesNotSync(serviceResourceResolver, TEST_REMOTE_ASSET_CONTENT_PATH);
+            verify(remoteAssetDecorator, times(1)).getUserManager(serviceResourceResolver.adaptTo(Session.class));
+        }
+    }
+
+    @Test
+    public void testSyncPathPrefixSet() {
+        NavigableSet<String> prefixes = RemoteAssetDecorator.toPrefixSet(
+                Arrays.asList("/content/dam/b/c", "/content/dam/b", "/content/dam/a", "/content/dam/bb"));
+        assertEquals(Arrays.asList("/content/dam/a", "/content/dam/b"), new ArrayList<>(prefixes));
+    }
+
     @Test
     public void testGetResourceDoesNotSyncAssetNotFlaggedAsRemote() {
         Resource assetContent = context.resourceResolver().getResource(TEST_REMOTE_ASSET_CONTENT_PATH);
@@ -316,7 +340,9 @@ public class RemoteAssetDecoratorTest {
 
     @Test
     public void testGetResourceHandlesExceptionWaitingForSyncInProgress() {
-        when(remoteAssetDecorator.isAlreadySyncing(TEST_REMOTE_ASSET_CONTENT_PATH)).thenReturn(true).thenReturn(true).thenThrow(new RuntimeException("test failed waiting"));
+        CompletableFuture<Boolean> syncInProgress = new CompletableFuture<>();
+        syncInProgress.completeExceptionally(new RuntimeException("test failed waiting"));
+        doReturn(syncInProgress).when(remoteAssetDecorator).getSyncInProgress(TEST_REMOTE_ASSET_CONTENT_PATH);
 
         setupFinish();
         assertResourceDoesNotSync(getUserResourceResolver(), TEST_REMOTE_ASSET_CONTENT_PATH);
@@ -329,16 +355,13 @@ public class RemoteAssetDecoratorTest {
     @Test
     public void testGetResourceWaitsForSyncInProgress() {
         Resource assetContent = context.resourceResolver().getResource(TEST_REMOTE_ASSET_CONTENT_PATH);
-        when(remoteAssetDecorator.isAlreadySyncing(TEST_REMOTE_ASSET_CONTENT_PATH)).thenReturn(true).thenReturn(true).thenReturn(true)
-                .then(new Answer<Boolean>() {
-                    @Override
-                    public Boolean answer(InvocationOnMock invocationOnMock) throws Throwable {
-                        ModifiableValueMap resourceProps = assetContent.adaptTo(ModifiableValueMap.class);
-                        resourceProps.remove(IS_REMOTE_ASSET);
-                        resourceProps.put(TEST_MOCK_SYNC, true);
-                        return false;
-                    }
-                }).thenReturn(false);
+        doAnswer(invocationOnMock -> {
+            // The parallel sync completes once it is found in progress
+            ModifiableValueMap resourceProps = assetContent.adaptTo(ModifiableValueMap.class);
+            resourceProps.remove(IS_REMOTE_ASSET);
+            resourceProps.put(TEST_MOCK_SYNC, true);
+            return CompletableFuture.completedFuture(true);
+        }).when(remoteAssetDecorator).getSyncInProgress(TEST_REMOTE_ASSET_CONTENT_PATH);
 
         setupFinish();
 
@@ -0,0 +1,110 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.acs.commons.replication.dispatcher.impl;
+
+import com.adobe.acs.commons.replication.dispatcher.DispatcherFlushFilter.FlushType;
+import com.day.cq.replication.ReplicationActionType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DispatcherFlushQueueTest {
+
+    private final List<String> flushed = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private DispatcherFlushQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = mock(ScheduledExecutorService.class);
+        queue = new DispatcherFlushQueue((actionType, flushType, paths) -> {
+            for (String path : paths) {
+                flushed.add(actionType + " " + flushType + " " + path);
+            }
+        }, scheduler, 500, 100);
+    }
+
+    @Test
+    public void testBatchIsScheduledOnce() {
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/a");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/b");
+
+        verify(scheduler, times(1)).schedule(any(Runnable.class), eq(500L), eq(TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.getPendingPaths());
+        assertEquals(0, flushed.size());
+    }
+
+    @Test
+    public void testDuplicateAndDescendantPathsAreCoalesced() {
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/site/en/page");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/site");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/site");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.Hierarchical, "/content/site-b");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.ResourceOnly, "/content/site/en/page");
+        queue.add(ReplicationActionType.ACTIVATE, FlushType.ResourceOnly, "/content/site/en/page");
+        queue.add(ReplicationActionType.DELETE, FlushType.Hierarchical, "/content/site/en");
+
+        queue.flushPending();
+
+        assertEquals(Arrays.asList(
+                "ACTIVATE Hierarchical /content/site",
+                "ACTIVATE Hierarchical /content/site-b",
+                "ACTIVATE ResourceOnly /content/site/en/page",
+                "DELETE Hierarchical /content/site/en"), flushed);
+        assertEquals(7, queue.getRequestedPaths());
+        assertEquals(4, queue.getFlushedPaths());
+        assertEquals(1, queue.getBatches());
+        assertEquals(0, queue.getPendingPaths());
+    }
+
+    @Test
+    public void testCollapse() {
+        assertEquals(new LinkedHashSet<>(Arrays.asList("/a", "/a-b", "/b")), DispatcherFlushQueue.collapse(
+                new LinkedHashSet<>(Arrays.asList("/a/c", "/a-b", "/a", "/a-b/c/d", "/b"))));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("/")), DispatcherFlushQueue.collapse(
+                new LinkedHashSet<>(Arrays.asList("/a/c", "/"))));
+    }
+
+    @Test
+    public void testBackPressureFlushesOnCallingThread() {
+        for (int i = 0; i < 100; i++) {
+            queue.add(ReplicationActionType.ACTIVATE, FlushType.ResourceOnly, "/content/page-" + i);
+        }
+
+        assertEquals(100, flushed.size());
+        assertEquals(1, queue.getBackPressureFlushes());
+        assertEquals(100, queue.getMaxObservedPendingPaths());
+        assertEquals(0, queue.getPendingPaths());
+    }
+}
@@ -136,6 +136,18 @@ public class QueryReportExecutorTest {
         assertEquals(2, results.getResultSize());
     }
 
+    @Test
+    public void iteratesAllResults() throws ReportException {
+        QueryReportExecutor executor = new QueryReportExecutor(context.request(), queryBuilder);
+        executor.setConfiguration(
+                createConfig(1, statement, language));
+
+        List<String> paths = new ArrayList<>();
+        executor.iterateAllResults().forEachRemaining(r -> paths.add(r.getPath()));
+        Collections.sort(paths);
+        assertEquals(Arrays.asList("/test/item1", "/test/item2"), paths);
+    }
+
     @Test
     public void supportsDetails() throws ReportException {
         QueryReportExecutor executor = new QueryReportExecutor(context.request(), queryBuilder);
@@ -0,0 +1,98 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.throttling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    @Test
+    public void rejectsAboveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 2, 1000);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release(FAST);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void slowRequestsReduceLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 20, 1000);
+        assertEquals(20, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(SLOW);
+        assertEquals(18, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(SLOW);
+        }
+        assertEquals(AdaptiveConcurrencyLimiter.MIN_LIMIT, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void fastRequestsRaiseLimitUpToCeiling() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 10, 1000);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+            limiter.release(SLOW);
+        }
+        assertEquals(7, limiter.getLimit());
+
+        // the limit grows by one once as many requests as the limit completed in time
+        for (int i = 0; i < 7; i++) {
+            limiter.acquire();
+            limiter.release(FAST);
+        }
+        assertEquals(8, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(FAST);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void ceilingFollowsLoadEstimator() {
+        int[] ceiling = { 10 };
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> ceiling[0], 1000);
+        assertEquals(10, limiter.getLimit());
+
+        ceiling[0] = 4;
+        assertEquals(4, limiter.getLimit());
+
+        ceiling[0] = 0;
+        assertEquals(AdaptiveConcurrencyLimiter.MIN_LIMIT, limiter.getLimit());
+    }
+
+}
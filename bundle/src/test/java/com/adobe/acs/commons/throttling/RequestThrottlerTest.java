@@ -17,6 +17,7 @@
  */
 package com.adobe.acs.commons.throttling;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -30,7 +31,9 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.testing.mock.sling.junit.SlingContext;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -123,4 +126,74 @@ public class RequestThrottlerTest {
 
     }
 
+    @Test
+    public void throttlingKeys() {
+        when(config.filtered_paths()).thenReturn(new String[] { "/content/.*" });
+        when(config.max_requests_per_minute()).thenReturn(1);
+        when(config.start_throttling_percentage()).thenReturn(100);
+        when(config.throttling_keys()).thenReturn(new String[] { RequestThrottler.KEY_CLIENT_IP, RequestThrottler.KEY_AUTH_STATE });
+        rt.activate(config);
+
+        SlingHttpServletRequest first = mockRequest("/content/foobar", "10.0.0.1");
+        SlingHttpServletRequest second = mockRequest("/content/foobar", "10.0.0.2");
+        assertEquals("10.0.0.1|anonymous", rt.getThrottlingKey(first));
+
+        assertEquals(ThrottlingDecision.State.NOTHROTTLE, rt.getState(first).evaluateThrottling().getState());
+        assertEquals(ThrottlingDecision.State.THROTTLE, rt.getState(first).evaluateThrottling().getState());
+        // another client has its own budget
+        assertEquals(ThrottlingDecision.State.NOTHROTTLE, rt.getState(second).evaluateThrottling().getState());
+        assertEquals(2, rt.getThrottlingKeyCount());
+    }
+
+    @Test
+    public void adaptiveConcurrencyRejectsAboveLimit() throws Exception {
+        when(config.filtered_paths()).thenReturn(new String[] { "/content/.*" });
+        when(config.throttling_mode()).thenReturn(RequestThrottler.MODE_ADAPTIVE_CONCURRENCY);
+        when(config.max_concurrent_requests()).thenReturn(1);
+        when(config.start_throttling_percentage()).thenReturn(100);
+        when(config.target_latency_ms()).thenReturn(1000);
+        when(config.reject_on_throttle()).thenReturn(true);
+        when(config.http_status_on_reject()).thenReturn(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        rt.activate(config);
+
+        SlingHttpServletRequest request = mockRequest("/content/foobar", "10.0.0.1");
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        SlingHttpServletResponse concurrentResponse = mock(SlingHttpServletResponse.class);
+        FilterChain concurrentChain = mock(FilterChain.class);
+        // a second request arrives while the first one is being handled
+        FilterChain chain = (req, res) -> rt.doFilter(request, concurrentResponse, concurrentChain);
+
+        rt.doFilter(request, response, chain);
+
+        verify(concurrentResponse).sendError(eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), any());
+        verify(concurrentChain, never()).doFilter(any(), any());
+        verify(response, never()).sendError(anyInt(), any());
+        assertEquals(1, rt.getAllowedRequests());
+        assertEquals(1, rt.getThrottledRequests());
+        assertEquals(0, rt.concurrencyLimiter.getInFlight());
+    }
+
+    @Test
+    public void stateAvailableAfterSwitchingToAdaptiveConcurrency() {
+        when(config.filtered_paths()).thenReturn(new String[] { "/content/.*" });
+        when(config.max_requests_per_minute()).thenReturn(10);
+        when(config.start_throttling_percentage()).thenReturn(100);
+        when(config.throttling_mode()).thenReturn(RequestThrottler.MODE_ADAPTIVE_CONCURRENCY);
+        rt.activate(config);
+
+        // a request which was already filtered in requests per minute mode
+        SlingHttpServletRequest request = mockRequest("/content/foobar", "10.0.0.1");
+        assertEquals(ThrottlingDecision.State.NOTHROTTLE, rt.getState(request).evaluateThrottling().getState());
+    }
+
+    private SlingHttpServletRequest mockRequest(String path, String remoteAddr) {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(path);
+        when(request.getResource()).thenReturn(resource);
+        when(request.getRemoteAddr()).thenReturn(remoteAddr);
+        when(request.getRequestProgressTracker()).thenReturn(mock(RequestProgressTracker.class));
+        return request;
+    }
+
 }
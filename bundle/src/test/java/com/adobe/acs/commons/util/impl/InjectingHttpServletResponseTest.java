@@ -0,0 +1,109 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.util.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adobe.acs.commons.util.impl.InjectingHttpServletResponse.Position;
+
+public class InjectingHttpServletResponseTest {
+
+    private MockSlingHttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        response = new MockSlingHttpServletResponse();
+        response.setContentType("text/html");
+    }
+
+    @Test
+    public void injectsInFrontOfFirstMarkerSplitAcrossWrites() throws IOException {
+        InjectingHttpServletResponse injecting = injecting(Position.FIRST);
+        PrintWriter writer = injecting.getWriter();
+        writer.write("<html><body>one</bo");
+        writer.flush();
+        // everything but a possible partial marker has been streamed
+        assertEquals("<html><body>one", response.getOutputAsString());
+        writer.write("dy><body>two</body></html>");
+        injecting.close();
+
+        assertTrue(injecting.isInjected());
+        assertEquals("<html><body>one<!--injected--></body><body>two</body></html>", response.getOutputAsString());
+    }
+
+    @Test
+    public void injectsInFrontOfLastMarker() throws IOException {
+        InjectingHttpServletResponse injecting = injecting(Position.LAST);
+        PrintWriter writer = injecting.getWriter();
+        for (char c : "<html><body><script>'</body>'</script></bo".toCharArray()) {
+            writer.write(c);
+        }
+        writer.write("dy></html>");
+        writer.flush();
+        assertFalse(injecting.isInjected());
+        injecting.close();
+
+        assertEquals("<html><body><script>'</body>'</script><!--injected--></body></html>", response.getOutputAsString());
+    }
+
+    @Test
+    public void passesThroughWithoutMarker() throws IOException {
+        InjectingHttpServletResponse injecting = injecting(Position.FIRST);
+        injecting.getWriter().write("<html></bod");
+        injecting.close();
+
+        assertFalse(injecting.isInjected());
+        assertEquals("<html></bod", response.getOutputAsString());
+    }
+
+    @Test
+    public void passesThroughNonHtml() throws IOException {
+        response.setContentType("application/json");
+        InjectingHttpServletResponse injecting = injecting(Position.LAST);
+        injecting.getWriter().write("{\"html\":\"</body>\"}");
+        injecting.close();
+
+        assertFalse(injecting.isInjected());
+        assertEquals("{\"html\":\"</body>\"}", response.getOutputAsString());
+    }
+
+    @Test
+    public void passesThroughWhenNotAccepted() throws IOException {
+        InjectingHttpServletResponse injecting = new InjectingHttpServletResponse(response, "</body>", Position.FIRST,
+                () -> false, out -> out.write("<!--injected-->"));
+        injecting.getWriter().write("<body></body>");
+        injecting.close();
+
+        assertFalse(injecting.isInjected());
+        assertEquals("<body></body>", response.getOutputAsString());
+    }
+
+    private InjectingHttpServletResponse injecting(Position position) {
+        return new InjectingHttpServletResponse(response, "</body>", position, () -> true,
+                out -> out.write("<!--injected-->"));
+    }
+}
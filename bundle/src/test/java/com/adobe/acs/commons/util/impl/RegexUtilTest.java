@@ -0,0 +1,49 @@
+/*
+ * ACS AEM Commons
+ *
+ * Copyright (C) 2013 - 2023 Adobe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.acs.commons.util.impl;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static com.adobe.acs.commons.util.impl.RegexUtil.literalPrefix;
+import static org.junit.Assert.assertEquals;
+
+public class RegexUtilTest {
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("/content/site/", literalPrefix(Pattern.compile("/content/site/.*")));
+        assertEquals("/content/site", literalPrefix(Pattern.compile("^/content/site(/.*)?")));
+        assertEquals("/content/we-retail/", literalPrefix(Pattern.compile("^/content/we-retail/(.*)/page")));
+        assertEquals("/content/site.", literalPrefix(Pattern.compile("/content/site\\.[a-z]+")));
+        assertEquals("/content/site", literalPrefix(Pattern.compile("/content/sites?/.*")));
+        assertEquals("/content/sit", literalPrefix(Pattern.compile("/content/site{0,1}/.*")));
+        assertEquals("/content/site", literalPrefix(Pattern.compile("/content/site+/.*")));
+        assertEquals("/content/", literalPrefix(Pattern.compile("/content/\\w+")));
+    }
+
+    @Test
+    public void testNoLiteralPrefix() {
+        assertEquals("", literalPrefix(Pattern.compile("/content/a|/content/b")));
+        assertEquals("", literalPrefix(Pattern.compile("/content/one/(.*)|/content/two/(.*)")));
+        assertEquals("", literalPrefix(Pattern.compile("/content/.*", Pattern.CASE_INSENSITIVE)));
+        assertEquals("", literalPrefix(Pattern.compile("(?i)/content/.*")));
+        assertEquals("", literalPrefix(Pattern.compile("(.*)")));
+    }
+}
@@ -19,21 +19,35 @@ package com.adobe.acs.commons.wcm.impl;
 
 import com.day.cq.commons.Externalizer;
 import io.wcm.testing.mock.aem.junit.AemContext;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
+import org.apache.jackrabbit.api.security.principal.PrincipalManager;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import javax.jcr.Session;
+import javax.jcr.security.Privilege;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
@@ -52,6 +66,9 @@ public class SiteMapServletTest {
     @Mock
     private Externalizer externalizer;
 
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
     @InjectMocks
     private SiteMapServlet servlet = new SiteMapServlet();
 
@@ -77,7 +94,7 @@ public class SiteMapServletTest {
 
     @Test
     public void testDefaultPageSetup() throws Exception {
-        servlet.activate(new HashMap<String, Object>() {{
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
                 put("externalizer.domain", "external");
             }
         });
@@ -93,7 +110,7 @@ public class SiteMapServletTest {
 
     @Test
     public void testExtensionlessPages() throws Exception {
-        servlet.activate(new HashMap<String, Object>() {{
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
                 put("externalizer.domain", "external");
                 put("extensionless.urls", true);
             }
@@ -110,7 +127,7 @@ public class SiteMapServletTest {
 
     @Test
     public void testExtensionlessAndSlashlessPages() throws Exception {
-        servlet.activate(new HashMap<String, Object>() {{
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
                 put("externalizer.domain", "external");
                 put("extensionless.urls", true);
                 put("remove.slash", true);
@@ -126,4 +143,141 @@ public class SiteMapServletTest {
         assertThat(output, hasXPath("(//ns:loc)[3]/text()", equalTo("http://test.com/content/geometrixx/en/about")).withNamespaceContext(NS));
     }
 
+    @Test
+    public void testPregeneratedShards() throws Exception {
+        mockServiceResourceResolver(null);
+        when(externalizer.externalLink(ArgumentMatchers.any(ResourceResolver.class), eq("external"), anyString())).then(i -> "http://test.com" + i.getArgument(2));
+
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
+                put("externalizer.domain", "external");
+                put("pregenerate.enabled", true);
+                put("pregenerate.max-urls-per-file", 2);
+            }
+        });
+
+        try {
+            // The first request is served on the fly while the site map is generated
+            MockSlingHttpServletResponse firstResponse = new MockSlingHttpServletResponse();
+            servlet.doGet(getRequest("sitemap", null), firstResponse);
+            assertThat(firstResponse.getOutputAsString(), hasXPath("(//ns:loc)[1]/text()", equalTo("http://test.com/content/geometrixx/en.html")).withNamespaceContext(NS));
+
+            String index = awaitIndex();
+            assertNotNull("The site map index should have been generated", index);
+            assertThat(index, hasXPath("(//ns:sitemap/ns:loc)[1]/text()", equalTo("http://test.com/content/geometrixx/en.sitemap.0.xml")).withNamespaceContext(NS));
+
+            MockSlingHttpServletResponse shardResponse = new MockSlingHttpServletResponse();
+            servlet.doGet(getRequest("sitemap.0", null), shardResponse);
+            String shard = shardResponse.getOutputAsString();
+            assertThat(shard, hasXPath("count(//ns:url)", equalTo("2")).withNamespaceContext(NS));
+            assertThat(shard, hasXPath("(//ns:loc)[1]/text()", equalTo("http://test.com/content/geometrixx/en.html")).withNamespaceContext(NS));
+
+            MockSlingHttpServletResponse gzipResponse = new MockSlingHttpServletResponse();
+            servlet.doGet(getRequest("sitemap.0", "gzip, deflate"), gzipResponse);
+            assertEquals("gzip", gzipResponse.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", gzipResponse.getHeader("Vary"));
+
+            MockSlingHttpServletResponse missingResponse = new MockSlingHttpServletResponse();
+            servlet.doGet(getRequest("sitemap.99", null), missingResponse);
+            assertEquals(404, missingResponse.getStatus());
+        } finally {
+            servlet.deactivate();
+        }
+    }
+
+    @Test
+    public void testPregeneratedSiteMapOnlyContainsAnonymouslyReadablePages() throws Exception {
+        mockServiceResourceResolver("/content/geometrixx/en/about");
+        when(externalizer.externalLink(ArgumentMatchers.any(ResourceResolver.class), eq("external"), anyString())).then(i -> "http://test.com" + i.getArgument(2));
+
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
+                put("externalizer.domain", "external");
+                put("pregenerate.enabled", true);
+                put("pregenerate.max-urls-per-file", 1);
+            }
+        });
+
+        try {
+            servlet.doGet(getRequest("sitemap", null), new MockSlingHttpServletResponse());
+
+            String index = awaitIndex();
+            assertNotNull("The site map index should have been generated", index);
+            assertThat(index, hasXPath("count(//ns:sitemap)", equalTo("2")).withNamespaceContext(NS));
+            for (int shard = 0; shard < 2; shard++) {
+                MockSlingHttpServletResponse shardResponse = new MockSlingHttpServletResponse();
+                servlet.doGet(getRequest("sitemap." + shard, null), shardResponse);
+                assertThat(shardResponse.getOutputAsString(), not(containsString("/content/geometrixx/en/about")));
+            }
+        } finally {
+            servlet.deactivate();
+        }
+    }
+
+    @Test
+    public void testStoredSiteMapsAreClearedOnActivation() throws Exception {
+        File staleSiteMap = new File(context.bundleContext().getDataFile("sitemaps/" + DigestUtils.sha1Hex("stale")), "0.xml.gz");
+        FileUtils.writeStringToFile(staleSiteMap, "stale", StandardCharsets.UTF_8);
+
+        servlet.activate(context.bundleContext(), new HashMap<String, Object>() {{
+                put("externalizer.domain", "external");
+                put("pregenerate.enabled", true);
+                put("service.pid", "stale");
+            }
+        });
+        try {
+            assertFalse(staleSiteMap.exists());
+        } finally {
+            servlet.deactivate();
+        }
+    }
+
+    /**
+     * The service resource resolver reads the test content, and is closed after each generation.
+     *
+     * @param unreadablePath a path anonymous users cannot read, or null
+     */
+    private void mockServiceResourceResolver(String unreadablePath) throws Exception {
+        JackrabbitAccessControlManager accessControlManager = mock(JackrabbitAccessControlManager.class);
+        when(accessControlManager.privilegeFromName(Privilege.JCR_READ)).thenReturn(mock(Privilege.class));
+        when(accessControlManager.hasPrivileges(anyString(), anySet(), any())).then(i -> !i.getArgument(0).equals(unreadablePath));
+        PrincipalManager principalManager = mock(PrincipalManager.class);
+        when(principalManager.getEveryone()).thenReturn(() -> "everyone");
+        JackrabbitSession session = mock(JackrabbitSession.class);
+        when(session.getAccessControlManager()).thenReturn(accessControlManager);
+        when(session.getPrincipalManager()).thenReturn(principalManager);
+
+        ResourceResolver serviceResourceResolver = mock(ResourceResolver.class, delegatesTo(context.resourceResolver()));
+        doNothing().when(serviceResourceResolver).close();
+        doReturn(session).when(serviceResourceResolver).adaptTo(Session.class);
+        when(resourceResolverFactory.getServiceResourceResolver(any())).thenReturn(serviceResourceResolver);
+    }
+
+    private String awaitIndex() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            MockSlingHttpServletResponse indexResponse = new MockSlingHttpServletResponse();
+            servlet.doGet(getRequest("sitemap", null), indexResponse);
+            if (indexResponse.getOutputAsString().contains("sitemapindex")) {
+                return indexResponse.getOutputAsString();
+            }
+            Thread.sleep(100);
+        }
+        return null;
+    }
+
+    private MockSlingHttpServletRequest getRequest(String selectors, String acceptEncoding) {
+        MockSlingHttpServletRequest shardRequest = new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext()) {
+            @Override
+            public String getResponseContentType() {
+                return "text/xml";
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return "Accept-Encoding".equals(name) ? acceptEncoding : super.getHeader(name);
+            }
+        };
+        shardRequest.setResource(context.resourceResolver().getResource("/content/geometrixx/en"));
+        ((MockRequestPathInfo) shardRequest.getRequestPathInfo()).setSelectorString(selectors);
+        ((MockRequestPathInfo) shardRequest.getRequestPathInfo()).setExtension("xml");
+        return shardRequest;
+    }
 }
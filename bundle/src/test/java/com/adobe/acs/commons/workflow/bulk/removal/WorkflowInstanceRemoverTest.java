@@ -18,6 +18,7 @@
 package com.adobe.acs.commons.workflow.bulk.removal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
@@ -169,4 +170,29 @@ public class WorkflowInstanceRemoverTest {
         assertEquals("All workflows should have been checked",3, workflowInstanceRemover.getStatus().getChecked());
         assertEquals("Only workflows with specified modelID should be deleted", 2, workflowInstanceRemover.getStatus().getRemoved());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void removeAllTestWorkflowsInParallel() throws Exception {
+        Collection<String> statuses = new ArrayList<>();
+        statuses.add("COMPLETED");
+        statuses.add("ABORTED");
+        statuses.add("RUNNING");
+
+        Collection<Pattern> payloads = new ArrayList<>();
+        payloads.add(Pattern.compile("/content/dam/.*"));
+
+        WorkflowRemovalConfig workflowRemovalConfig = new WorkflowRemovalConfig(null, statuses, payloads, null, -1);
+        workflowRemovalConfig.setParallelism(2);
+
+        WorkflowInstanceRemover workflowInstanceRemover = ctx.getService(WorkflowInstanceRemover.class);
+        int removed = workflowInstanceRemover.removeWorkflowInstances(ctx.resourceResolver(), workflowRemovalConfig);
+
+        assertEquals(3, removed);
+        assertEquals(3, workflowInstanceRemover.getStatus().getChecked());
+        assertEquals(3, workflowInstanceRemover.getStatus().getRemoved());
+
+        ctx.resourceResolver().refresh();
+        assertNull("The dated folder should be removed with its instances",
+                ctx.resourceResolver().getResource("/var/workflow/instances/server0/2021-05-06"));
+    }
+}